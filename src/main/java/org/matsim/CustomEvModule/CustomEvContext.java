@@ -17,15 +17,20 @@ import org.matsim.CustomEvModule.Hub.ChargingHub;
 import org.matsim.CustomEvModule.Hub.HubManager;
 import org.matsim.CustomEvModule.EVfleet.EvFleetManager;
 import org.matsim.CustomEvModule.EVfleet.EvModel;
+import org.matsim.CustomEvModule.EVfleet.SocTargetTable;
 import org.matsim.CustomEvModule.EVfleet.factory.EvVehicleFactory;
 import org.matsim.CustomEvModule.EVfleet.strategy.fleet.CsvFleetGenerationStrategy;
 import org.matsim.CustomEvModule.EVfleet.strategy.fleet.EvFleetStrategy;
+import org.matsim.CustomEvModule.EVfleet.strategy.fleet.SocDistribution;
+import org.matsim.CustomEvModule.EVfleet.strategy.plan.CarLinkIndex;
+import org.matsim.CustomEvModule.EVfleet.strategy.plan.CsvPlanGenerationStrategy;
 import org.matsim.CustomEvModule.EVfleet.strategy.plan.PlanGenerationStrategy;
+import org.matsim.CustomEvModule.EVfleet.strategy.plan.RandomPlanGenerator;
 import org.matsim.CustomEvModule.EVfleet.strategy.plan.StaticPlanGenerator;
 import org.matsim.ServerEvSetup.ConfigRun.ConfigRun;
-import org.matsim.ServerEvSetup.ConfigRun.ConfigRun.PlanGenerationStrategyEnum;
 import org.matsim.ServerEvSetup.ConfigRun.ConfigRun.VehicleGenerationStrategyEnum;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -41,6 +46,7 @@ public final class CustomEvContext {
     private final HubManager hubManager;
     private final EvFleetManager evFleetManager;
     private final ChargingInfrastructureSpecification infraSpec;
+    private final SocTargetTable socTargets;
 
     /**
      * Costruttore standard: genera modelli da ConfigRun (modalità legacy/file-based).
@@ -49,6 +55,8 @@ public final class CustomEvContext {
         this.infraSpec      = new ChargingInfrastructureSpecificationDefaultImpl();
         this.hubManager     = initializeHubManager(scenario, config.getCsvResourceHub(), infraSpec);
         this.evFleetManager = initializeEvFleetManager(scenario, config);
+        this.socTargets     = initializeSocTargets(scenario, config);
+        this.hubManager.enablePowerSeries(config.getPowerSeriesResolutionS(), config.getPowerSeriesHorizonH() * 3600.0);
 
         registerDefaultVehicles(
             scenario.getVehicles().getFactory(),
@@ -67,6 +75,8 @@ public final class CustomEvContext {
         this.infraSpec      = new ChargingInfrastructureSpecificationDefaultImpl();
         this.hubManager     = initializeHubManagerWithModels(scenario, chargingHubs, infraSpec);
         this.evFleetManager = initializeEvFleetManagerWithModels(scenario, config, evModels);
+        this.socTargets     = initializeSocTargets(scenario, config);
+        this.hubManager.enablePowerSeries(config.getPowerSeriesResolutionS(), config.getPowerSeriesHorizonH() * 3600.0);
 
         registerDefaultVehicles(
             scenario.getVehicles().getFactory(),
@@ -85,6 +95,8 @@ public final class CustomEvContext {
         this.infraSpec      = new ChargingInfrastructureSpecificationDefaultImpl();
         this.hubManager     = initializeHubManagerWithSpecs(scenario, hubSpecs, infraSpec);
         this.evFleetManager = initializeEvFleetManagerWithModels(scenario, config, evModels);
+        this.socTargets     = initializeSocTargets(scenario, config);
+        this.hubManager.enablePowerSeries(config.getPowerSeriesResolutionS(), config.getPowerSeriesHorizonH() * 3600.0);
 
         registerDefaultVehicles(
             scenario.getVehicles().getFactory(),
@@ -95,6 +107,24 @@ public final class CustomEvContext {
         log.info("{CustomEvContext} Scenario dati (server-generated hubs & EVs) preparati.");
     }
     
+    /*
+    *  SoC target per persona della flotta: attributo o distribuzione (targetSocMean/StdDev)
+    */
+    private SocTargetTable initializeSocTargets(Scenario scenario, ConfigRun config) {
+        List<Id<Person>> drivers = new ArrayList<>();
+        for (EvModel model : evFleetManager.getEvModels()) {
+            drivers.add(Id.createPersonId(model.getVehicleId()));
+        }
+        double stdDev = config.getTargetSocStdDev() != null ? config.getTargetSocStdDev() : 0.0;
+        return SocTargetTable.build(
+            scenario.getPopulation(),
+            drivers,
+            SocDistribution.truncatedNormal(config.getTargetSocMean(), stdDev),
+            evFleetManager.getSeed(),
+            config.getTargetSocMean()
+        );
+    }
+
     /*
     *  Inizializzazione Hub Manager con specifiche pure dal server
     */
@@ -120,14 +150,27 @@ public final class CustomEvContext {
 
         EvFleetManager evFleetManager = new EvFleetManager();
 
-        evFleetManager.setPlanStrategy(
-            createPlanStrategy(config.getPlanStrategy())
-        );
+        if (config.getFleetSeed() != null) {
+            evFleetManager.setSeed(config.getFleetSeed());
+        }
 
         evFleetManager.setVehicleFactory(
             new EvVehicleFactory()
         );
 
+        // Quota della popolazione caricata convertita in EV: i modelli del server non servono
+        if (config.getEvShare() != null) {
+            if (evModels != null && !evModels.isEmpty()) {
+                log.warn("{CustomEvContext} evShare impostato: {} modelli EV pre-generati ignorati", evModels.size());
+            }
+            convertPopulation(scenario, config, evFleetManager);
+            return evFleetManager;
+        }
+
+        evFleetManager.setPlanStrategy(
+            createPlanStrategy(config, scenario)
+        );
+
         // Registra i modelli pre-generati e setup scenario
         evFleetManager.registerEvModels(evModels, scenario);
 
@@ -146,16 +189,26 @@ public final class CustomEvContext {
 
         EvFleetManager evFleetManager = new EvFleetManager();
 
+        if (config.getFleetSeed() != null) {
+            evFleetManager.setSeed(config.getFleetSeed());
+        }
+
+        evFleetManager.setVehicleFactory(
+            new EvVehicleFactory()
+        );
+
+        // Quota della popolazione caricata convertita in EV: nessun agente sintetico
+        if (config.getEvShare() != null) {
+            convertPopulation(scenario, config, evFleetManager);
+            return evFleetManager;
+        }
+
         evFleetManager.setFleetStrategy(
             createFleetStrategy(config.getVehicleStrategy())
         );
 
         evFleetManager.setPlanStrategy(
-            createPlanStrategy(config.getPlanStrategy())
-        );
-
-        evFleetManager.setVehicleFactory(
-            new EvVehicleFactory()
+            createPlanStrategy(config, scenario)
         );
 
         evFleetManager.generateFleet(
@@ -169,17 +222,42 @@ public final class CustomEvContext {
     private EvFleetStrategy createFleetStrategy(VehicleGenerationStrategyEnum strategy) {
         return switch (strategy) {
             case FROM_CSV -> new CsvFleetGenerationStrategy();
-            case UNIFORM  -> throw new RuntimeException();
-            case NORMAL   -> throw new RuntimeException();
+            case UNIFORM  -> new CsvFleetGenerationStrategy(SocDistribution.Shape.UNIFORM);
+            case NORMAL   -> new CsvFleetGenerationStrategy(SocDistribution.Shape.NORMAL);
             default       -> throw new RuntimeException();
         };
     }
 
-    private PlanGenerationStrategy createPlanStrategy(PlanGenerationStrategyEnum strategy) {
-        return switch (strategy) {
+    /*
+    *  Conversione di una quota degli automobilisti in EV (hub già registrati)
+    */
+    private void convertPopulation(Scenario scenario, ConfigRun config, EvFleetManager evFleetManager) {
+        double socStdDev = config.getSocStdDev() != null ? config.getSocStdDev() : 0.0;
+        evFleetManager.convertPopulation(
+            scenario,
+            config,
+            hubManager.getChargingHubs(),
+            SocDistribution.fromMoments(socShape(config.getVehicleStrategy()), config.getSocMedio(), socStdDev)
+        );
+    }
+
+    private SocDistribution.Shape socShape(VehicleGenerationStrategyEnum strategy) {
+        return strategy == VehicleGenerationStrategyEnum.UNIFORM ? SocDistribution.Shape.UNIFORM : SocDistribution.Shape.NORMAL;
+    }
+
+    private PlanGenerationStrategy createPlanStrategy(ConfigRun config, Scenario scenario) {
+        return switch (config.getPlanStrategy()) {
             case STATIC       -> new StaticPlanGenerator();
-            case RANDOM       -> throw new RuntimeException();
-            case FROM_CSV     -> throw new RuntimeException();
+            case RANDOM       -> RandomPlanGenerator.build(scenario, hubManager.getChargingHubs());
+            case FROM_CSV     -> {
+                // Indice dei link condiviso tra validazione del CSV e fallback casuale
+                CarLinkIndex carLinks = CarLinkIndex.build(scenario.getNetwork(), RandomPlanGenerator.GRID_CELL_M);
+                yield new CsvPlanGenerationStrategy(
+                    config.getPlanCsvPath(),
+                    carLinks,
+                    new RandomPlanGenerator(carLinks, hubManager.getChargingHubs(), scenario.getNetwork())
+                );
+            }
             default           -> throw new RuntimeException();
         };
     }
@@ -248,6 +326,10 @@ public final class CustomEvContext {
         return evFleetManager;
     }
 
+    public SocTargetTable getSocTargets() {
+        return socTargets;
+    }
+
     public ChargingInfrastructureSpecification getInfraSpec(){
         return infraSpec;
     }
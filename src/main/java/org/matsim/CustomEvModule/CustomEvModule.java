@@ -5,11 +5,13 @@ package org.matsim.CustomEvModule;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.contrib.ev.charging.ChargingPower;
-import org.matsim.contrib.ev.charging.FastThenSlowCharging;
 import org.matsim.contrib.ev.discharging.AuxEnergyConsumption;
 import org.matsim.contrib.ev.discharging.DriveEnergyConsumption;
 import org.matsim.contrib.ev.infrastructure.ChargingInfrastructureSpecification;
 import org.matsim.core.controler.AbstractModule;
+import org.matsim.core.controler.listener.IterationEndsListener;
+import org.matsim.core.controler.listener.IterationStartsListener;
+import org.matsim.core.controler.listener.ShutdownListener;
 import org.matsim.core.mobsim.qsim.AbstractQSimModule;
 import org.matsim.vehicles.Vehicle;
 /*
@@ -18,9 +20,23 @@ import org.matsim.vehicles.Vehicle;
 import org.matsim.ServerEvSetup.ConfigRun.ConfigRun;
 import org.matsim.ServerEvSetup.SimulationInterface.SimulationBridgeInterface;
 import org.matsim.CustomEvModule.Hub.HubManager;
+import org.matsim.CustomEvModule.Hub.HubPowerSeries;
 import org.matsim.CustomEvModule.Hub.TargetSocChargingHandler;
+import org.matsim.CustomEvModule.Hub.selection.ChargerSelectionPolicy;
+import org.matsim.CustomEvModule.Hub.selection.HighestPowerSelectionPolicy;
+import org.matsim.CustomEvModule.Hub.selection.LeastLoadedHubSelectionPolicy;
+import org.matsim.CustomEvModule.Hub.selection.NearestHubSelectionPolicy;
+import org.matsim.CustomEvModule.Hub.selection.QueueAtHubSelectionPolicy;
+import org.matsim.CustomEvModule.Hub.selection.RandomSelectionPolicy;
 import org.matsim.CustomEvModule.EVfleet.EvFleetManager;
+import org.matsim.CustomEvModule.EVfleet.SocTargetTable;
+import org.matsim.CustomEvModule.EVfleet.Charging.AnalyticChargingEngine;
+import org.matsim.CustomEvModule.EVfleet.Charging.CurveChargingPowerFactory;
 import org.matsim.CustomEvModule.EVfleet.EnergyConsumption.EvConsumptionModelFactory;
+import org.matsim.CustomEvModule.EVfleet.EnergyConsumption.EnergyLookupGrid;
+import org.matsim.CustomEvModule.EVfleet.EnergyConsumption.LinkEnergyCache;
+import org.matsim.CustomEvModule.EVfleet.EnergyConsumption.LinkSlopeTable;
+import org.matsim.CustomEvModule.EVfleet.EnergyConsumption.TabulatedConsumptionModelFactory;
 import org.matsim.CustomEvModule.Monitoring.HubChargingMonitor;
 import org.matsim.CustomEvModule.Monitoring.QuickLinkDebugHandler;
 import org.matsim.CustomEvModule.Monitoring.TimeStepSocMonitor;
@@ -34,7 +50,6 @@ import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.Singleton;
 
-import java.util.Collections;
 import java.util.Set;
 
 import org.apache.logging.log4j.LogManager;
@@ -49,6 +64,7 @@ public class CustomEvModule extends AbstractModule {
     private final SimulationBridgeInterface           bridge;
     private final ChargingInfrastructureSpecification infraSpec;
     private final Network network;
+    private final SocTargetTable socTargets;
 
     private final ConfigRun config;
     private final boolean   debug_link;
@@ -60,6 +76,7 @@ public class CustomEvModule extends AbstractModule {
         EvFleetManager evFleetManager,
         ChargingInfrastructureSpecification infraSpec,
         Network network,
+        SocTargetTable socTargets,
         ConfigRun config
     ) {
         this.bridge = bridge;
@@ -67,6 +84,7 @@ public class CustomEvModule extends AbstractModule {
         this.evFleetManager = evFleetManager;
         this.infraSpec = infraSpec;
         this.network = network;
+        this.socTargets = socTargets;
         this.config = config;
         this.debug_link = config.isDebugLink();
         this.realtime = config.isRealTime();
@@ -81,14 +99,27 @@ public class CustomEvModule extends AbstractModule {
         bind(EvFleetManager.class).toInstance(evFleetManager);
         bind(HubManager.class).toInstance(hubManager);
         /*
+        *   Serie di potenza: il tempo di simulazione riparte da zero a ogni iterazione
+        */
+        addControlerListenerBinding().toInstance((IterationStartsListener) event -> {
+            HubPowerSeries powerSeries = hubManager.getPowerSeries();
+            if (powerSeries != null) powerSeries.reset();
+        });
+        /*
         *   Monitor inizio e fine ricarica a un hub
         */
         HubChargingMonitor hubChargingMonitor = new HubChargingMonitor(bridge);
         addEventHandlerBinding().toInstance(hubChargingMonitor);
         /*
+        *   Ricarica a eventi: fine sessione in coda a priorità, SoC calcolato su richiesta
+        */
+        AnalyticChargingEngine chargingEngine = new AnalyticChargingEngine();
+        bind(AnalyticChargingEngine.class).toInstance(chargingEngine);
+        addMobsimListenerBinding().toInstance(chargingEngine);
+        /*
         *   Andamento Soc nel tempo, settare il timestep per aggiornamento in discreto 
         */
-        TimeStepSocMonitor timeStepSocMonitor = new TimeStepSocMonitor(bridge, config.getStepSize());        
+        TimeStepSocMonitor timeStepSocMonitor = new TimeStepSocMonitor(bridge, chargingEngine, config.getStepSize());        
         addMobsimListenerBinding().toInstance(timeStepSocMonitor);
         /*
         *   Monitor dello stato del veicolo
@@ -96,13 +127,40 @@ public class CustomEvModule extends AbstractModule {
         VehicleStatusMonitor vehicleStatusMonitor = new VehicleStatusMonitor(bridge, network);
         addEventHandlerBinding().toInstance(vehicleStatusMonitor);
         /*
-        *   Modello di consumo del SoC
+        *   Pendenze della rete, risolte una volta sola (attributi / raster altimetrico)
         */
+        LinkSlopeTable slopeTable = LinkSlopeTable.build(network, config.getElevationRasterPath());
+        bind(LinkSlopeTable.class).toInstance(slopeTable);
+        /*
+        *   Modello di consumo del SoC: analitico o tabellare (griglie precalcolate)
+        */
+        boolean tabulated = config.getConsumptionModel() == ConfigRun.ConsumptionModelEnum.TABULATED;
+        EnergyLookupGrid.Resolution gridResolution = EnergyLookupGrid.Resolution.of(
+            config.getGridSpeedBins(), config.getGridCongestionBins(), config.getGridSlopeBins()
+        );
+        // Cache dell'energia per link, opzionale e solo per il modello analitico
+        LinkEnergyCache energyCache = !tabulated && config.isEnergyCache()
+            ? new LinkEnergyCache(config.getEnergyCacheSize(), config.getEnergyCacheMaxError())
+            : null;
+        if (energyCache != null) {
+            log.info("[CustomEvModule] Cache energia per link attiva: {} slot, errore max {}",
+                energyCache.capacity(), energyCache.getMaxError());
+            addControlerListenerBinding().toInstance((IterationEndsListener) event -> {
+                LinkEnergyCache.Stats stats = energyCache.stats();
+                log.info("[CustomEvModule] Cache energia fino all'iterazione {}: {} hit, {} miss, {} fuori chiave, hit rate {}%",
+                    event.getIteration(), stats.hits(), stats.misses(), stats.bypassed(),
+                    String.format("%.1f", stats.hitRate() * 100.0));
+            });
+        }
         bind(DriveEnergyConsumption.Factory.class).toProvider(new Provider<>() {
             @Inject private EvFleetManager providerEvFleetManager;
+            @Inject private LinkSlopeTable providerSlopeTable;
             @Override
             public DriveEnergyConsumption.Factory get() {
-                return new EvConsumptionModelFactory(providerEvFleetManager);
+                if (tabulated) {
+                    return new TabulatedConsumptionModelFactory(providerEvFleetManager, providerSlopeTable, gridResolution);
+                }
+                return new EvConsumptionModelFactory(providerEvFleetManager, providerSlopeTable, energyCache);
             }
         }).asEagerSingleton();
 
@@ -113,6 +171,11 @@ public class CustomEvModule extends AbstractModule {
         /*
         *   Handler della ricarica nel piano + strategia soc target
         */
+        bind(ChargerSelectionPolicy.class).toInstance(createSelectionPolicy());
+        bind(SocTargetTable.class).toInstance(socTargets);
+        addControlerListenerBinding().toInstance((ShutdownListener) event ->
+            socTargets.writeCsv(event.getServices().getControlerIO().getOutputFilename(SocTargetTable.OUTPUT_FILE))
+        );
         installQSimModule(new AbstractQSimModule() {
 			@Override protected void configureQSim() {
 				bind(TargetSocChargingHandler.class).in(Singleton.class);
@@ -121,15 +184,21 @@ public class CustomEvModule extends AbstractModule {
 		});
 
         /*
-        *  Modello di ricarica della charging station
+        *  Modello di ricarica: curva potenza/SoC per modello di veicolo (tabulata)
         */
-        bind(ChargingPower.Factory.class).toInstance(ev -> new FastThenSlowCharging(ev));
+        bind(ChargingPower.Factory.class).toProvider(new Provider<>() {
+            @Inject private EvFleetManager providerEvFleetManager;
+            @Override
+            public ChargingPower.Factory get() {
+                return new CurveChargingPowerFactory(providerEvFleetManager);
+            }
+        }).asEagerSingleton();
 
         /*
         *   Logger dei percorsi dei veicoli
         */
         if(debug_link) {
-            Set<Id<Vehicle>> electricVehicleIds = Collections.unmodifiableSet(evFleetManager.getFleet().keySet());
+            Set<Id<Vehicle>> electricVehicleIds = evFleetManager.getVehicleIds();
             QuickLinkDebugHandler debugHandler = new QuickLinkDebugHandler(electricVehicleIds);
             addEventHandlerBinding().toInstance(debugHandler);
         }
@@ -145,4 +214,15 @@ public class CustomEvModule extends AbstractModule {
         log.info("Modulo CustomEvModule installato con successo");
     }
 
+    private ChargerSelectionPolicy createSelectionPolicy() {
+        double radius = config.getSelectionRadiusM();
+        return switch (config.getChargerSelection()) {
+            case RANDOM        -> new RandomSelectionPolicy(radius);
+            case HIGHEST_POWER -> new HighestPowerSelectionPolicy(radius);
+            case LEAST_LOADED  -> new LeastLoadedHubSelectionPolicy(radius);
+            case NEAREST_WALK  -> new NearestHubSelectionPolicy(radius, config.getWalkPenaltyKwPerKm());
+            case QUEUE_AT_HUB  -> new QueueAtHubSelectionPolicy();
+        };
+    }
+
 }
@@ -0,0 +1,306 @@
+package org.matsim.CustomEvModule.EVfleet.Charging;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.contrib.ev.charging.ChargingEndEvent;
+import org.matsim.contrib.ev.charging.ChargingPower;
+import org.matsim.contrib.ev.charging.ChargingStartEvent;
+import org.matsim.contrib.ev.fleet.ElectricVehicle;
+import org.matsim.contrib.ev.infrastructure.ChargerSpecification;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.mobsim.framework.events.MobsimAfterSimStepEvent;
+import org.matsim.core.mobsim.framework.events.MobsimInitializedEvent;
+import org.matsim.core.mobsim.framework.listeners.MobsimAfterSimStepListener;
+import org.matsim.core.mobsim.framework.listeners.MobsimInitializedListener;
+import org.matsim.core.mobsim.qsim.QSim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Motore di ricarica a eventi: sostituisce l'avanzamento a passi fissi (chargeTimeStep)
+ * delle ChargingLogic MATSim per i veicoli collegati dal TargetSocChargingHandler.
+ *
+ * - la potenza è costante su ogni bin di SoC della ChargingCurve: l'istante di fine
+ *   (SoC target o batteria piena) si calcola in forma chiusa al collegamento
+ * - una sessione per veicolo in una coda a priorità per istante di fine: ad ogni passo
+ *   della QSim si estraggono solo le sessioni scadute (costo per sessione, non per durata);
+ *   le sessioni che non terminano mai (potenza nulla) non entrano in coda
+ * - le sessioni chiuse prima della fine restano in coda fino a una compattazione,
+ *   eseguita quando superano la metà della coda (costo ammortizzato per sessione)
+ * - lo SoC delle batterie collegate viene scritto solo quando richiesto (materialize),
+ *   tipicamente dal monitor dei timestep prima di leggere la flotta: si scorre l'elenco
+ *   compatto delle sessioni aperte, non la coda
+ *
+ * Veicoli con un ChargingPower diverso da CurveChargingPower caricano a potenza costante,
+ * quella calcolata al collegamento.
+ *
+ * Chiamato dalla QSim e dagli handler degli eventi: metodi sincronizzati, eventi emessi
+ * fuori dal lock.
+ */
+public class AnalyticChargingEngine implements MobsimInitializedListener, MobsimAfterSimStepListener {
+
+    private static final Logger log = LogManager.getLogger(AnalyticChargingEngine.class);
+
+    private final PriorityQueue<Session> completions =
+        new PriorityQueue<>(Comparator.comparingDouble((Session s) -> s.endTime));
+    // Sessioni chiuse ancora presenti in completions
+    private int staleQueued = 0;
+    // Sessione aperta per indice di Id<Vehicle>
+    private Session[] byVehicle = new Session[0];
+    // Sessioni aperte in forma compatta (rimozione per scambio con l'ultima)
+    private Session[] open = new Session[16];
+    private int openSessions = 0;
+    private EventsManager eventsManager;
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public void notifyMobsimInitialized(MobsimInitializedEvent event) {
+        if (event.getQueueSimulation() instanceof QSim qSim) {
+            reset(qSim.getEventsManager());
+            log.info("[AnalyticChargingEngine] Motore di ricarica associato alla QSim");
+        }
+    }
+
+    /**
+     * Svuota le sessioni e associa il motore al gestore degli eventi della nuova mobsim.
+     */
+    synchronized void reset(EventsManager eventsManager) {
+        completions.clear();
+        staleQueued = 0;
+        Arrays.fill(byVehicle, null);
+        Arrays.fill(open, 0, openSessions, null);
+        openSessions = 0;
+        this.eventsManager = eventsManager;
+    }
+
+    /**
+     * Collega il veicolo alla colonnina e pianifica la fine della ricarica.
+     *
+     * @param socTarget SoC relativo a cui terminare (limitato a 1)
+     */
+    public void plug(ElectricVehicle ev, ChargerSpecification charger, double socTarget, double now) {
+        Session session;
+        synchronized (this) {
+            close(ev);
+            session = new Session(ev, charger, socTarget, now);
+            int idx = ev.getId().index();
+            if (idx >= byVehicle.length) {
+                byVehicle = Arrays.copyOf(byVehicle, Math.max(idx + 1, byVehicle.length * 2));
+            }
+            byVehicle[idx] = session;
+            if (openSessions == open.length) {
+                open = Arrays.copyOf(open, open.length * 2);
+            }
+            session.openPos = openSessions;
+            open[openSessions++] = session;
+            if (session.endTime < Double.POSITIVE_INFINITY) {
+                session.queued = true;
+                completions.add(session);
+            }
+        }
+        emit(new ChargingStartEvent(now, charger.getId(), ev.getId(), session.startCharge));
+    }
+
+    /**
+     * Scollega il veicolo prima della fine: scrive l'energia caricata fino a now.
+     *
+     * @return false se il veicolo non era collegato
+     */
+    public boolean unplug(ElectricVehicle ev, double now) {
+        Session session;
+        synchronized (this) {
+            session = close(ev);
+            if (session == null) return false;
+            session.advance(now);
+            session.write();
+        }
+        emit(new ChargingEndEvent(now, session.charger.getId(), ev.getId(), session.charge));
+        return true;
+    }
+
+    /**
+     * Scrive nelle batterie collegate lo SoC all'istante now.
+     */
+    public synchronized void materialize(double now) {
+        for (int i = 0; i < openSessions; i++) {
+            Session session = open[i];
+            session.advance(now);
+            session.write();
+        }
+    }
+
+    public synchronized int getPluggedCount() {
+        return openSessions;
+    }
+
+    @Override
+    public void notifyMobsimAfterSimStep(MobsimAfterSimStepEvent e) {
+        double now = e.getSimulationTime();
+        List<Session> completed = null;
+        synchronized (this) {
+            while (!completions.isEmpty() && completions.peek().endTime <= now) {
+                Session session = completions.poll();
+                session.queued = false;
+                if (session.closed) {
+                    staleQueued--;
+                    continue;
+                }
+                close(session.ev);
+                session.advance(now);
+                session.write();
+                if (completed == null) completed = new ArrayList<>();
+                completed.add(session);
+            }
+        }
+        if (completed == null) return;
+        for (Session session : completed) {
+            emit(new ChargingEndEvent(now, session.charger.getId(), session.ev.getId(), session.charge));
+        }
+    }
+
+    private Session close(ElectricVehicle ev) {
+        int idx = ev.getId().index();
+        if (idx >= byVehicle.length || byVehicle[idx] == null) return null;
+        Session session = byVehicle[idx];
+        byVehicle[idx] = null;
+        session.closed = true;
+
+        Session last = open[--openSessions];
+        open[session.openPos] = last;
+        last.openPos = session.openPos;
+        open[openSessions] = null;
+
+        if (session.queued && ++staleQueued > completions.size() / 2) {
+            completions.removeIf(s -> s.closed);
+            staleQueued = 0;
+        }
+        return session;
+    }
+
+    private void emit(Event event) {
+        EventsManager events = eventsManager;
+        if (events != null) {
+            events.processEvent(event);
+        }
+    }
+
+    /**
+     * Sessione di ricarica: potenza costante a tratti per bin di SoC, con cursore
+     * (istante, carica, bin) che avanza solo in avanti.
+     */
+    static final class Session {
+
+        final ElectricVehicle ev;
+        final ChargerSpecification charger;
+        final double startCharge;
+        final double endTime;
+
+        private final ChargingCurve curve;
+        private final boolean ac;
+        private final double plugPower;
+        private final double constantPower;
+        private final double capacity;
+        private final double target;
+
+        private double time;
+        private double charge;
+        private int bin;
+        boolean closed;
+        boolean queued;
+        int openPos;
+
+        Session(ElectricVehicle ev, ChargerSpecification charger, double socTarget, double now) {
+            this(ev, charger, curveOf(ev), CurveChargingPower.isAc(charger), charger.getPlugPower(),
+                constantPowerOf(ev, charger), ev.getBattery().getCapacity(), ev.getBattery().getCharge(),
+                socTarget, now);
+        }
+
+        Session(
+            ElectricVehicle ev, ChargerSpecification charger,
+            ChargingCurve curve, boolean ac, double plugPower, double constantPower,
+            double capacity, double startCharge, double socTarget, double now
+        ) {
+            this.ev = ev;
+            this.charger = charger;
+            this.curve = curve;
+            this.ac = ac;
+            this.plugPower = plugPower;
+            this.constantPower = constantPower;
+            this.capacity = capacity;
+            this.startCharge = startCharge;
+            this.target = Math.max(startCharge, capacity * Math.min(1.0, socTarget));
+
+            this.time = now;
+            this.charge = startCharge;
+            this.bin = ChargingCurve.bin(capacity > 0.0 ? startCharge / capacity : 1.0);
+            this.endTime = completionTime();
+        }
+
+        private static ChargingCurve curveOf(ElectricVehicle ev) {
+            return ev.getChargingPower() instanceof CurveChargingPower curvePower ? curvePower.getCurve() : null;
+        }
+
+        private static double constantPowerOf(ElectricVehicle ev, ChargerSpecification charger) {
+            ChargingPower chargingPower = ev.getChargingPower();
+            return chargingPower instanceof CurveChargingPower ? 0.0 : chargingPower.calcChargingPower(charger);
+        }
+
+        private double power() {
+            return curve != null ? Math.min(plugPower, curve.power(bin, ac)) : constantPower;
+        }
+
+        private double binEnd() {
+            return curve != null ? Math.min(target, capacity * (bin + 1) / ChargingCurve.STEPS) : target;
+        }
+
+        /**
+         * Porta il cursore all'istante t (mai all'indietro).
+         */
+        void advance(double t) {
+            while (time < t && charge < target) {
+                double p = power();
+                if (p <= 0.0) {
+                    time = t;
+                    return;
+                }
+                double boundary = binEnd();
+                double dt = (boundary - charge) / p;
+                if (time + dt <= t) {
+                    time += dt;
+                    charge = boundary;
+                    if (bin < ChargingCurve.STEPS - 1) bin++;
+                } else {
+                    charge += p * (t - time);
+                    time = t;
+                }
+            }
+        }
+
+        /**
+         * Istante in cui la carica raggiunge il target (infinito con potenza nulla).
+         */
+        private double completionTime() {
+            double t0 = time, c0 = charge;
+            int b0 = bin;
+            advance(Double.POSITIVE_INFINITY);
+            double end = charge >= target ? time : Double.POSITIVE_INFINITY;
+            time = t0;
+            charge = c0;
+            bin = b0;
+            return end;
+        }
+
+        double charge() {
+            return charge;
+        }
+
+        void write() {
+            ev.getBattery().setCharge(charge);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.matsim.CustomEvModule.EVfleet.Charging;
+
+import org.matsim.CustomEvModule.EVfleet.EvSpec;
+
+/**
+ * Curva di ricarica potenza vs SoC di un modello di veicolo, tabulata una volta.
+ *
+ * La forma è generica e uguale per tutti i modelli: della scheda si usa solo la potenza
+ * di picco, che scala la curva. Non è una curva misurata del singolo modello.
+ *
+ * - DC: lineare a tratti sulla potenza di picco della scheda (fastChargingPowerKwDc):
+ *   rampa iniziale, plateau fino al 50%, calo fino all'80% e coda lenta fino al 100%
+ * - AC: limitata dal caricatore di bordo, costante fino al 90% e poi in calo
+ * - tabella di STEPS bin di SoC (valore al centro del bin): a runtime una lettura di array
+ *
+ * Il dataset non riporta la potenza AC del caricatore di bordo: si usa DEFAULT_AC_POWER_KW,
+ * limitata dalla potenza DC. Senza potenza DC valida si ricade su 1C.
+ */
+public final class ChargingCurve {
+
+    public static final int    STEPS               = 100;
+    public static final double DEFAULT_AC_POWER_KW = 11.0;
+
+    // Punti della curva DC: SoC e frazione della potenza di picco
+    private static final double[] DC_SOC      = { 0.00, 0.10, 0.50, 0.80, 1.00 };
+    private static final double[] DC_FRACTION = { 0.60, 1.00, 1.00, 0.45, 0.08 };
+
+    // Punti della curva AC: SoC e frazione della potenza del caricatore di bordo
+    private static final double[] AC_SOC      = { 0.00, 0.90, 1.00 };
+    private static final double[] AC_FRACTION = { 1.00, 1.00, 0.30 };
+
+    // Potenze in W per bin di SoC
+    private final float[] dcWatts;
+    private final float[] acWatts;
+
+    private ChargingCurve(float[] dcWatts, float[] acWatts) {
+        this.dcWatts = dcWatts;
+        this.acWatts = acWatts;
+    }
+
+    public static ChargingCurve of(EvSpec spec) {
+        double peakDcKw = spec.fastChargingPowerKwDc() > 0.0
+            ? spec.fastChargingPowerKwDc()
+            : Math.max(spec.nominalCapacityKwh(), DEFAULT_AC_POWER_KW);
+        double acKw = Math.min(DEFAULT_AC_POWER_KW, peakDcKw);
+        return new ChargingCurve(
+            tabulate(peakDcKw, DC_SOC, DC_FRACTION),
+            tabulate(acKw, AC_SOC, AC_FRACTION)
+        );
+    }
+
+    private static float[] tabulate(double peakKw, double[] socPoints, double[] fractions) {
+        float[] table = new float[STEPS];
+        for (int i = 0; i < STEPS; i++) {
+            double soc = (i + 0.5) / STEPS;
+            table[i] = (float) (peakKw * 1000.0 * piecewise(soc, socPoints, fractions));
+        }
+        return table;
+    }
+
+    static double piecewise(double soc, double[] socPoints, double[] fractions) {
+        int k = 1;
+        while (k < socPoints.length - 1 && soc > socPoints[k]) k++;
+        double t = (soc - socPoints[k - 1]) / (socPoints[k] - socPoints[k - 1]);
+        return fractions[k - 1] + t * (fractions[k] - fractions[k - 1]);
+    }
+
+    static int bin(double soc) {
+        int i = (int) (soc * STEPS);
+        return i < 0 ? 0 : (i >= STEPS ? STEPS - 1 : i);
+    }
+
+    /**
+     * Potenza (W) del bin di SoC, costante su tutto il bin: integrabile in forma chiusa.
+     */
+    double power(int bin, boolean ac) {
+        return ac ? acWatts[bin] : dcWatts[bin];
+    }
+
+    /**
+     * Potenza accettata dal veicolo (W) su una colonnina DC al SoC dato.
+     */
+    public double dcPower(double soc) {
+        return dcWatts[bin(soc)];
+    }
+
+    /**
+     * Potenza accettata dal veicolo (W) su una colonnina AC al SoC dato.
+     */
+    public double acPower(double soc) {
+        return acWatts[bin(soc)];
+    }
+}
@@ -0,0 +1,41 @@
+package org.matsim.CustomEvModule.EVfleet.Charging;
+
+import org.matsim.contrib.ev.charging.ChargingPower;
+import org.matsim.contrib.ev.fleet.Battery;
+import org.matsim.contrib.ev.fleet.ElectricVehicle;
+import org.matsim.contrib.ev.infrastructure.ChargerSpecification;
+
+/**
+ * Potenza di ricarica di un veicolo letta dalla curva del suo modello,
+ * limitata dalla potenza del plug.
+ */
+public class CurveChargingPower implements ChargingPower {
+
+    private static final String AC_TYPE = "AC";
+
+    private final ElectricVehicle electricVehicle;
+    private final ChargingCurve curve;
+
+    public CurveChargingPower(ElectricVehicle electricVehicle, ChargingCurve curve) {
+        this.electricVehicle = electricVehicle;
+        this.curve = curve;
+    }
+
+    @Override
+    public double calcChargingPower(ChargerSpecification charger) {
+        Battery battery = electricVehicle.getBattery();
+        double soc = battery.getSoc();
+        double vehiclePower = isAc(charger)
+            ? curve.acPower(soc)
+            : curve.dcPower(soc);
+        return Math.min(charger.getPlugPower(), vehiclePower);
+    }
+
+    static boolean isAc(ChargerSpecification charger) {
+        return AC_TYPE.equals(charger.getChargerType());
+    }
+
+    ChargingCurve getCurve() {
+        return curve;
+    }
+}
@@ -0,0 +1,65 @@
+package org.matsim.CustomEvModule.EVfleet.Charging;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.CustomEvModule.EVfleet.EvFleetManager;
+import org.matsim.CustomEvModule.EVfleet.EvModel;
+import org.matsim.CustomEvModule.EVfleet.EvSpec;
+import org.matsim.contrib.ev.charging.ChargingPower;
+import org.matsim.contrib.ev.charging.FastThenSlowCharging;
+import org.matsim.contrib.ev.fleet.ElectricVehicle;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Factory di CurveChargingPower: sostituisce FastThenSlowCharging (taper unico per tutti).
+ *
+ * All'avvio tabula una ChargingCurve per ogni scheda tecnica distinta della flotta
+ * (EvSpec condivise dal catalogo -> curva condivisa). La mappa è immutabile dopo la
+ * costruzione: veicoli non presenti nella flotta, o con una scheda aggiunta dopo l'avvio,
+ * ricadono su FastThenSlowCharging.
+ */
+public class CurveChargingPowerFactory implements ChargingPower.Factory {
+
+    private static final Logger log = LogManager.getLogger(CurveChargingPowerFactory.class);
+
+    private final EvFleetManager evFleetManager;
+    private final Map<EvSpec, ChargingCurve> curves;
+
+    public CurveChargingPowerFactory(EvFleetManager evFleetManager) {
+        this.evFleetManager = evFleetManager;
+        Map<EvSpec, ChargingCurve> bySpec = new HashMap<>();
+        for (EvModel evData : evFleetManager.getEvModels()) {
+            bySpec.computeIfAbsent(evData.getSpec(), ChargingCurve::of);
+        }
+        this.curves = Collections.unmodifiableMap(bySpec);
+        log.info("[CurveChargingPower] {} curve di ricarica precalcolate per {} veicoli",
+                curves.size(), evFleetManager.getStore().size());
+    }
+
+    @Override
+    public ChargingPower create(ElectricVehicle electricVehicle) {
+        EvModel evData = evFleetManager.getVehicle(electricVehicle.getId());
+        if (evData == null) {
+            log.warn("[CurveChargingPower] Veicolo {} non trovato in EvFleetManager, uso FastThenSlowCharging",
+                    electricVehicle.getId());
+            return new FastThenSlowCharging(electricVehicle);
+        }
+        ChargingCurve curve = curves.get(evData.getSpec());
+        if (curve == null) {
+            log.warn("[CurveChargingPower] Scheda del veicolo {} aggiunta dopo l'avvio, uso FastThenSlowCharging",
+                    electricVehicle.getId());
+            return new FastThenSlowCharging(electricVehicle);
+        }
+        return new CurveChargingPower(electricVehicle, curve);
+    }
+
+    /**
+     * Numero di curve distinte (modelli di veicolo).
+     */
+    public int getCurveCount() {
+        return curves.size();
+    }
+}
@@ -39,7 +39,7 @@ public class DatasetBasedDriveEnergyConsumption implements DriveEnergyConsumptio
     @Override
     public double calcEnergyConsumption(Link link, double travelTime, double linkEnterTime) {
         // 1. Ottieni i dati specifici del veicolo dal EvFleetManager
-        if(fleetManager.getFleet() == null) {
+        if(fleetManager.getStore() == null) {
             throw new RuntimeException("ERROR: EvFleetManager non inizializzato in DatasetBasedDriveEnergyConsumption");
         }
 
@@ -61,6 +61,7 @@ public class DatasetBasedDriveEnergyConsumption implements DriveEnergyConsumptio
         double totalConsumptionJoules = consumptionJoulesPerMeter * distanceMeters;
         // Aggiorna la distanza percorsa nel nostro EvModel per scopi di monitoraggio
         evData.addDistanceTraveled(distanceMeters);
+        evData.markBatteryChanged();
         // MATSim si aspetta che il consumo sia espresso in un valore POSITIVO
         log.debug("Consumo Veicolo aggiornato");
         return totalConsumptionJoules;
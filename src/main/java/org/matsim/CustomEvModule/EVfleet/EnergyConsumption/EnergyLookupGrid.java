@@ -0,0 +1,183 @@
+package org.matsim.CustomEvModule.EVfleet.EnergyConsumption;
+
+import java.util.SplittableRandom;
+
+/**
+ * Griglia 3-D precalcolata dell'energia per metro (J/m) di un tipo di veicolo,
+ * su velocità media × fattore di congestione × seno della pendenza.
+ *
+ * Il modello di trazione è lineare nella lunghezza del link: con v = L/tt e
+ * c = tt / (L/freespeed) l'energia vale L * g(v, c, sinA), quindi basta tabulare g.
+ * A runtime la risposta è un'interpolazione trilineare (8 letture di array).
+ *
+ * Il fattore di congestione viene limitato dal modello a 1.2: la griglia copre [0, 1.2].
+ */
+public final class EnergyLookupGrid {
+
+    /**
+     * Risoluzione e dominio della griglia.
+     */
+    public record Resolution(int speedBins, int congestionBins, int slopeBins) {
+
+        public static final int DEFAULT_SPEED_BINS      = 96;
+        public static final int DEFAULT_CONGESTION_BINS = 13;
+        public static final int DEFAULT_SLOPE_BINS      = 31;
+
+        public Resolution {
+            if (speedBins < 2 || congestionBins < 2 || slopeBins < 2) {
+                throw new IllegalArgumentException("Ogni asse della griglia richiede almeno 2 bin");
+            }
+        }
+
+        public static Resolution defaults() {
+            return new Resolution(DEFAULT_SPEED_BINS, DEFAULT_CONGESTION_BINS, DEFAULT_SLOPE_BINS);
+        }
+
+        /**
+         * Valori null sostituiti con i default.
+         */
+        public static Resolution of(Integer speedBins, Integer congestionBins, Integer slopeBins) {
+            return new Resolution(
+                speedBins      != null ? speedBins      : DEFAULT_SPEED_BINS,
+                congestionBins != null ? congestionBins : DEFAULT_CONGESTION_BINS,
+                slopeBins      != null ? slopeBins      : DEFAULT_SLOPE_BINS
+            );
+        }
+    }
+
+    // Dominio degli assi
+    static final double MIN_SPEED      = 0.5;   // m/s
+    static final double MAX_SPEED      = 45.0;  // m/s (~160 km/h)
+    static final double MIN_CONGESTION = 0.0;
+    static final double MAX_CONGESTION = 1.2;   // oltre il modello satura
+    static final double MIN_SIN_SLOPE  = -0.3;
+    static final double MAX_SIN_SLOPE  = 0.3;
+
+    private final int nv;
+    private final int nc;
+    private final int ns;
+    private final double invDv;
+    private final double invDc;
+    private final double invDs;
+
+    // Indicizzazione [iv][ic][is] appiattita
+    private final double[] energyPerMeter;
+
+    private EnergyLookupGrid(int nv, int nc, int ns, double[] energyPerMeter) {
+        this.nv = nv;
+        this.nc = nc;
+        this.ns = ns;
+        this.invDv = (nv - 1) / (MAX_SPEED - MIN_SPEED);
+        this.invDc = (nc - 1) / (MAX_CONGESTION - MIN_CONGESTION);
+        this.invDs = (ns - 1) / (MAX_SIN_SLOPE - MIN_SIN_SLOPE);
+        this.energyPerMeter = energyPerMeter;
+    }
+
+    /**
+     * Tabula il modello analitico (TractiveDriveEnergyConsumption.calcTractiveEnergy)
+     * per i coefficienti di un tipo di veicolo.
+     */
+    public static EnergyLookupGrid build(VehiclePhysics physics, Resolution resolution) {
+        int nv = resolution.speedBins();
+        int nc = resolution.congestionBins();
+        int ns = resolution.slopeBins();
+        double[] table = new double[nv * nc * ns];
+
+        int i = 0;
+        for (int iv = 0; iv < nv; iv++) {
+            double v = axis(MIN_SPEED, MAX_SPEED, nv, iv);
+            for (int ic = 0; ic < nc; ic++) {
+                double c = axis(MIN_CONGESTION, MAX_CONGESTION, nc, ic);
+                for (int is = 0; is < ns; is++) {
+                    double sinA = axis(MIN_SIN_SLOPE, MAX_SIN_SLOPE, ns, is);
+                    table[i++] = analyticPerMeter(physics, v, c, sinA);
+                }
+            }
+        }
+        return new EnergyLookupGrid(nv, nc, ns, table);
+    }
+
+    private static double axis(double min, double max, int n, int i) {
+        return min + (max - min) * i / (n - 1);
+    }
+
+    /**
+     * Energia analitica per metro: link di 1 m percorso in 1/v secondi
+     * con freespeed tale che la congestione valga c.
+     */
+    static double analyticPerMeter(VehiclePhysics physics, double v, double c, double sinA) {
+        double cosA = Math.sqrt(1.0 - sinA * sinA);
+        return TractiveDriveEnergyConsumption.calcTractiveEnergy(physics, 1.0, 1.0 / v, c * v, sinA, cosA);
+    }
+
+    /**
+     * Energia per metro interpolata (J/m). Gli input fuori dominio vengono saturati ai bordi.
+     */
+    public double energyPerMeter(double avgSpeed, double congestion, double sinSlope) {
+        double fv = clamp((avgSpeed - MIN_SPEED) * invDv, nv - 1);
+        double fc = clamp((congestion - MIN_CONGESTION) * invDc, nc - 1);
+        double fs = clamp((sinSlope - MIN_SIN_SLOPE) * invDs, ns - 1);
+
+        int iv = Math.min((int) fv, nv - 2);
+        int ic = Math.min((int) fc, nc - 2);
+        int is = Math.min((int) fs, ns - 2);
+        double tv = fv - iv;
+        double tc = fc - ic;
+        double ts = fs - is;
+
+        int strideV = nc * ns;
+        int base = (iv * nc + ic) * ns + is;
+
+        double[] t = energyPerMeter;
+        double c000 = t[base];
+        double c001 = t[base + 1];
+        double c010 = t[base + ns];
+        double c011 = t[base + ns + 1];
+        double c100 = t[base + strideV];
+        double c101 = t[base + strideV + 1];
+        double c110 = t[base + strideV + ns];
+        double c111 = t[base + strideV + ns + 1];
+
+        double c00 = c000 + (c001 - c000) * ts;
+        double c01 = c010 + (c011 - c010) * ts;
+        double c10 = c100 + (c101 - c100) * ts;
+        double c11 = c110 + (c111 - c110) * ts;
+
+        double c0 = c00 + (c01 - c00) * tc;
+        double c1 = c10 + (c11 - c10) * tc;
+
+        return c0 + (c1 - c0) * tv;
+    }
+
+    private static double clamp(double x, double max) {
+        return x < 0 ? 0 : (x > max ? max : x);
+    }
+
+    /**
+     * Errore massimo della griglia rispetto al modello analitico, stimato su campioni
+     * casuali (seed fisso) all'interno del dominio.
+     *
+     * @return {errore assoluto massimo in J/m, errore relativo massimo}
+     */
+    public double[] maxError(VehiclePhysics physics, int samples, long seed) {
+        SplittableRandom rng = new SplittableRandom(seed);
+        double maxAbs = 0.0;
+        double maxRel = 0.0;
+        for (int k = 0; k < samples; k++) {
+            double v = MIN_SPEED + rng.nextDouble() * (MAX_SPEED - MIN_SPEED);
+            double c = MIN_CONGESTION + rng.nextDouble() * (MAX_CONGESTION - MIN_CONGESTION);
+            double s = MIN_SIN_SLOPE + rng.nextDouble() * (MAX_SIN_SLOPE - MIN_SIN_SLOPE);
+
+            double exact = analyticPerMeter(physics, v, c, s);
+            double err = Math.abs(energyPerMeter(v, c, s) - exact);
+            maxAbs = Math.max(maxAbs, err);
+            // Relativo su un minimo di 1 J/m per non esplodere vicino allo zero
+            maxRel = Math.max(maxRel, err / Math.max(Math.abs(exact), 1.0));
+        }
+        return new double[]{maxAbs, maxRel};
+    }
+
+    public int size() {
+        return energyPerMeter.length;
+    }
+}
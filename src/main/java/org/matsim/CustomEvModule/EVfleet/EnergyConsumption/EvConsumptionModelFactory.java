@@ -3,41 +3,88 @@ package org.matsim.CustomEvModule.EVfleet.EnergyConsumption;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.matsim.CustomEvModule.EVfleet.EvFleetManager;
+import org.matsim.CustomEvModule.EVfleet.EvModel;
+import org.matsim.CustomEvModule.EVfleet.EvSpec;
 import org.matsim.contrib.ev.discharging.DriveEnergyConsumption;
 import org.matsim.contrib.ev.fleet.ElectricVehicle;
 import javax.inject.Inject;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
- * Factory che crea il modello di consumo DatasetBasedDriveEnergyConsumption.
+ * Factory che crea il modello di consumo TractiveDriveEnergyConsumption.
  * Questa factory riceve EvFleetManager tramite il suo costruttore,
  * che viene iniettato al momento del binding nel Controler (tramite toInstance).
+ *
+ * I modelli sono deduplicati per tipo di veicolo: un TractiveTypeModel per insieme
+ * distinto di coefficienti VehiclePhysics (scheda tecnica EvSpec -> tipo, risolto una
+ * volta per scheda), condiviso da tutti i veicoli del tipo. Per veicolo resta solo un
+ * handle con il tipo e l'EvModel della flotta. La tabella delle pendenze (LinkSlopeTable)
+ * è unica per la rete.
+ *
+ * Con una LinkEnergyCache l'indice del tipo è la chiave condivisa nella cache.
+ * La risoluzione del tipo è sincronizzata sulla factory: create può essere chiamata
+ * da più thread durante la costruzione della flotta.
  */
 public class EvConsumptionModelFactory implements DriveEnergyConsumption.Factory {
 
     private static final Logger log = LogManager.getLogger(EvConsumptionModelFactory.class);
 
     private final EvFleetManager evFleetManager;
+    private final LinkSlopeTable slopeTable;
+    private final LinkEnergyCache cache;
+    // Tipi condivisi: per scheda tecnica (lookup rapido) e per coefficienti (deduplica)
+    private final Map<EvSpec, TractiveTypeModel> typesBySpec = new HashMap<>();
+    private final Map<VehiclePhysics, TractiveTypeModel> typesByPhysics = new HashMap<>();
 
     /**
      * Costruttore iniettato da Guice. 
      * Il MATSim Controler inietterà EvFleetManager che è stato precedentemente bindato.
      * @param evFleetManager Il manager della flotta EV.
+     * @param slopeTable Pendenze della rete precalcolate all'avvio.
      */
     @Inject // Manteniamo @Inject per permettere a Guice di iniettare l'oggetto nella Factory
-    public EvConsumptionModelFactory(EvFleetManager evFleetManager) {
+    public EvConsumptionModelFactory(EvFleetManager evFleetManager, LinkSlopeTable slopeTable) {
+        this(evFleetManager, slopeTable, null);
+    }
+
+    /**
+     * @param cache Cache dell'energia per link condivisa dalla flotta, null se disattiva.
+     */
+    public EvConsumptionModelFactory(EvFleetManager evFleetManager, LinkSlopeTable slopeTable, LinkEnergyCache cache) {
         this.evFleetManager = evFleetManager;
+        this.slopeTable = slopeTable;
+        this.cache = cache;
     }
 
     @Override
     public DriveEnergyConsumption create(ElectricVehicle electricVehicle) {
-        log.info("Creazione modello di consumo per veicolo " + electricVehicle.getId());
-        if (this.evFleetManager.getFleet().containsKey(electricVehicle.getId())) {
-            log.info("Veicolo Trovato nel custom Manager.");
-        } else {
-            log.error("Veicolo non trovato in EvFleetManager");
+        EvModel evData = this.evFleetManager.getVehicle(electricVehicle.getId());
+        if (evData == null) {
+            log.error("Veicolo {} non trovato in EvFleetManager, consumo impostato a 0", electricVehicle.getId());
+            return new TractiveDriveEnergyConsumption((TractiveTypeModel) null, null);
+        }
+        log.debug("Creazione modello di consumo per veicolo {}", electricVehicle.getId());
+        return new TractiveDriveEnergyConsumption(typeOf(evData), evData);
+    }
+
+    private synchronized TractiveTypeModel typeOf(EvModel evData) {
+        TractiveTypeModel type = typesBySpec.get(evData.getSpec());
+        if (type == null) {
+            type = typesByPhysics.computeIfAbsent(
+                VehiclePhysics.of(evData),
+                physics -> new TractiveTypeModel(physics, slopeTable, cache, typesByPhysics.size())
+            );
+            typesBySpec.put(evData.getSpec(), type);
         }
-        // Restituisce l'istanza del tuo modello di consumo personalizzato.
-        //return new DatasetBasedDriveEnergyConsumption(electricVehicle, this.evFleetManager);
-        return new TractiveDriveEnergyConsumption(electricVehicle, evFleetManager);
+        return type;
+    }
+
+    /**
+     * Numero di tipi di veicolo distinti (modelli condivisi).
+     */
+    public synchronized int getTypeCount() {
+        return typesByPhysics.size();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,145 @@
+package org.matsim.CustomEvModule.EVfleet.EnergyConsumption;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache limitata e senza lock dell'energia per link, con chiave
+ * (indice del tipo di veicolo, indice del link, bucket del tempo di percorrenza).
+ *
+ * - direct-mapped: capacità potenza di due, uno slot per chiave (hash), una collisione
+ *   sovrascrive il contenuto precedente
+ * - ogni slot è un Entry immutabile (campi final): letture e scritture concorrenti non
+ *   vedono mai chiave e valore di voci diverse; una scrittura persa è solo un miss in più
+ * - il tempo di percorrenza è quantizzato su scala logaritmica e l'energia è calcolata
+ *   sul tempo rappresentativo del bucket, quindi il valore non dipende dal primo veicolo
+ *
+ * Errore di quantizzazione: il tempo rappresentativo dista al più maxError/2 (relativo)
+ * da quello reale; l'energia del modello di trazione varia al più col quadrato della
+ * velocità, quindi l'errore relativo resta entro circa maxError. Fanno eccezione i salti di
+ * efficienza del modello (8 e 20 m/s), che un bucket a cavallo della soglia può attraversare.
+ *
+ * Assume link statici (lunghezza, freespeed, pendenza) per tutta la simulazione.
+ */
+public final class LinkEnergyCache {
+
+    public static final int    DEFAULT_CAPACITY  = 1 << 20;
+    public static final double DEFAULT_MAX_ERROR = 0.01;
+
+    // Layout della chiave: tipo 12 bit | link 28 bit | bucket 24 bit
+    static final int  TYPE_BITS   = 12;
+    static final int  LINK_BITS   = 28;
+    static final int  BUCKET_BITS = 24;
+    private static final long TYPE_LIMIT   = 1L << TYPE_BITS;
+    private static final long LINK_LIMIT   = 1L << LINK_BITS;
+    private static final long BUCKET_LIMIT = 1L << BUCKET_BITS;
+
+    // Tempo minimo rappresentabile: i bucket partono da qui
+    private static final double MIN_TRAVEL_TIME = 1e-3;
+
+    /**
+     * Statistiche cumulative della cache.
+     */
+    public record Stats(long hits, long misses, long bypassed, int capacity) {
+        public double hitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0.0 : (double) hits / lookups;
+        }
+    }
+
+    private record Entry(long key, double energy) {}
+
+    private final Entry[] slots;
+    private final int mask;
+    private final double maxError;
+    private final double logRatio;
+    private final double logMinTravelTime;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bypassed = new LongAdder();
+
+    /**
+     * @param capacity numero di slot, arrotondato alla potenza di due superiore
+     * @param maxError errore relativo massimo dovuto alla quantizzazione, in (0, 0.5]
+     */
+    public LinkEnergyCache(int capacity, double maxError) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity must be in [1, 2^30]");
+        }
+        if (!(maxError > 0.0 && maxError <= 0.5)) {
+            throw new IllegalArgumentException("maxError must be in (0, 0.5]");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        this.slots = new Entry[size];
+        this.mask = size - 1;
+        this.maxError = maxError;
+        // Bucket di ampiezza relativa maxError: il centro dista al più maxError/2 dagli estremi
+        this.logRatio = Math.log1p(maxError);
+        this.logMinTravelTime = Math.log(MIN_TRAVEL_TIME);
+    }
+
+    /**
+     * Bucket del tempo di percorrenza, -1 se fuori dal dominio rappresentabile.
+     */
+    long bucket(double travelTime) {
+        if (!(travelTime >= MIN_TRAVEL_TIME)) return -1;
+        long b = Math.round((Math.log(travelTime) - logMinTravelTime) / logRatio);
+        return b < BUCKET_LIMIT ? b : -1;
+    }
+
+    /**
+     * Chiave della cache, -1 se tipo, link o tempo escono dal layout
+     * (il chiamante calcola allora sul tempo esatto, senza cache).
+     */
+    public long key(int typeIndex, int linkIndex, double travelTime) {
+        long bucket = bucket(travelTime);
+        if (bucket < 0 || typeIndex < 0 || typeIndex >= TYPE_LIMIT || linkIndex < 0 || linkIndex >= LINK_LIMIT) {
+            bypassed.increment();
+            return -1;
+        }
+        return ((long) typeIndex << (LINK_BITS + BUCKET_BITS)) | ((long) linkIndex << BUCKET_BITS) | bucket;
+    }
+
+    /**
+     * Tempo rappresentativo del bucket della chiave: il tempo su cui calcolare l'energia da memorizzare.
+     */
+    public double representativeTime(long key) {
+        long bucket = key & (BUCKET_LIMIT - 1);
+        return Math.exp(logMinTravelTime + bucket * logRatio);
+    }
+
+    /**
+     * Energia memorizzata per la chiave, NaN se assente.
+     */
+    public double get(long key) {
+        Entry entry = slots[spread(key) & mask];
+        if (entry != null && entry.key == key) {
+            hits.increment();
+            return entry.energy;
+        }
+        misses.increment();
+        return Double.NaN;
+    }
+
+    public void put(long key, double energy) {
+        slots[spread(key) & mask] = new Entry(key, energy);
+    }
+
+    private static int spread(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    public double getMaxError() {
+        return maxError;
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), bypassed.sum(), slots.length);
+    }
+}
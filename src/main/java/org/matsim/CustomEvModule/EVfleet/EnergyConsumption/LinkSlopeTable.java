@@ -0,0 +1,172 @@
+package org.matsim.CustomEvModule.EVfleet.EnergyConsumption;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.CustomEvModule.Utils.ElevationRaster;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.scenario.ProjectionUtils;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Tabella delle pendenze dell'intera rete, risolta una sola volta all'avvio.
+ *
+ * Contiene seno e coseno della pendenza in array primitivi densi indicizzati
+ * con Id<Link>.index(): il modello di consumo non esegue piu' lookup negli
+ * attributi, cast, atan/sin/cos ad ogni ingresso su un link.
+ *
+ * Priorità delle sorgenti per ogni link:
+ * 1. attributo "slope" del link (percentuale o frazione, come in precedenza)
+ * 2. raster altimetrico GeoTIFF opzionale (quota dei nodi from/to, letta nel CRS del raster)
+ * 3. pendenza nulla
+ *
+ * La tabella è immutabile ed è condivisa da tutti i modelli di consumo.
+ */
+public final class LinkSlopeTable {
+
+    private static final Logger log = LogManager.getLogger(LinkSlopeTable.class);
+
+    // CRS di OpenBerlin, usato se la rete non dichiara il proprio
+    private static final String DEFAULT_NETWORK_CRS = "EPSG:25832";
+
+    // Pendenza massima accettata da quote (evita valori assurdi su link molto corti)
+    private static final double MAX_ELEVATION_GRADE = 0.3;
+
+    private static final LinkSlopeTable FLAT = new LinkSlopeTable(new double[0], new double[0]);
+
+    private final double[] sinSlope;
+    private final double[] cosSlope;
+
+    private LinkSlopeTable(double[] sinSlope, double[] cosSlope) {
+        this.sinSlope = sinSlope;
+        this.cosSlope = cosSlope;
+    }
+
+    /**
+     * Tabella vuota: ogni link viene risolto dai suoi attributi (percorso lento).
+     */
+    public static LinkSlopeTable empty() {
+        return FLAT;
+    }
+
+    /**
+     * Costruisce la tabella per tutti i link della rete.
+     *
+     * @param network    rete MATSim
+     * @param rasterPath GeoTIFF delle quote (riproiettato se in un CRS diverso dalla rete), null o vuoto per non usarlo
+     */
+    public static LinkSlopeTable build(Network network, String rasterPath) {
+        ElevationRaster raster = null;
+        if (rasterPath != null && !rasterPath.isBlank()) {
+            try {
+                String networkCrs = ProjectionUtils.getCRS(network);
+                raster = ElevationRaster.load(rasterPath)
+                        .withNetworkCrs(networkCrs != null ? networkCrs : DEFAULT_NETWORK_CRS);
+                log.info("[LinkSlopeTable] Raster altimetrico caricato: {} ({}x{}, {})",
+                        rasterPath, raster.getWidth(), raster.getHeight(), raster.getCrs());
+            } catch (IOException e) {
+                log.error("[LinkSlopeTable] Impossibile caricare il raster {}: {}", rasterPath, e.getMessage());
+            }
+        }
+        return build(network, raster);
+    }
+
+    static LinkSlopeTable build(Network network, ElevationRaster raster) {
+        int size = 0;
+        for (Id<Link> id : network.getLinks().keySet()) {
+            size = Math.max(size, id.index() + 1);
+        }
+
+        double[] sin = new double[size];
+        double[] cos = new double[size];
+        Arrays.fill(cos, 1.0);
+
+        int fromAttribute = 0;
+        int fromRaster = 0;
+
+        for (Link link : network.getLinks().values()) {
+            int idx = link.getId().index();
+
+            double slope = attributeSlope(link);
+            if (!Double.isNaN(slope)) {
+                fromAttribute++;
+            } else if (raster != null && !Double.isNaN(slope = rasterSlope(link, raster))) {
+                fromRaster++;
+            } else {
+                continue;
+            }
+
+            double slopeRad = Math.atan(slope);
+            sin[idx] = Math.sin(slopeRad);
+            cos[idx] = Math.cos(slopeRad);
+        }
+
+        log.info("[LinkSlopeTable] {} link: {} da attributo, {} da raster",
+                network.getLinks().size(), fromAttribute, fromRaster);
+
+        return new LinkSlopeTable(sin, cos);
+    }
+
+    // ------------------------
+    // Accesso (hot path)
+    // ------------------------
+
+    public double sin(Link link) {
+        int idx = link.getId().index();
+        return idx < sinSlope.length ? sinSlope[idx] : Math.sin(Math.atan(slopeOrFlat(link)));
+    }
+
+    public double cos(Link link) {
+        int idx = link.getId().index();
+        return idx < cosSlope.length ? cosSlope[idx] : Math.cos(Math.atan(slopeOrFlat(link)));
+    }
+
+    public int size() {
+        return sinSlope.length;
+    }
+
+    // ------------------------
+    // Sorgenti di pendenza
+    // ------------------------
+
+    private static double slopeOrFlat(Link link) {
+        double slope = attributeSlope(link);
+        return Double.isNaN(slope) ? 0.0 : slope;
+    }
+
+    /**
+     * Pendenza dall'attributo "slope": supporta percentuale o frazione.
+     * NaN se assente o non numerico.
+     */
+    static double attributeSlope(Link link) {
+        Object value = link.getAttributes().getAttribute("slope");
+        if (!(value instanceof Double)) {
+            return Double.NaN;
+        }
+        double slope = (Double) value;
+        if (Math.abs(slope) > 0.3) {
+            slope = slope / 100.0; // percentuale
+        }
+        return slope;
+    }
+
+    private static double rasterSlope(Link link, ElevationRaster raster) {
+        Coord from = link.getFromNode().getCoord();
+        Coord to = link.getToNode().getCoord();
+        double zFrom = raster.elevationAt(from.getX(), from.getY());
+        double zTo = raster.elevationAt(to.getX(), to.getY());
+        return grade(zFrom, zTo, link.getLength());
+    }
+
+    private static double grade(double zFrom, double zTo, double length) {
+        if (Double.isNaN(zFrom) || Double.isNaN(zTo) || length <= 0) {
+            return Double.NaN;
+        }
+        double grade = (zTo - zFrom) / length;
+        return Math.max(-MAX_ELEVATION_GRADE, Math.min(MAX_ELEVATION_GRADE, grade));
+    }
+}
@@ -0,0 +1,91 @@
+package org.matsim.CustomEvModule.EVfleet.EnergyConsumption;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.CustomEvModule.EVfleet.EvFleetManager;
+import org.matsim.CustomEvModule.EVfleet.EvModel;
+import org.matsim.contrib.ev.discharging.DriveEnergyConsumption;
+import org.matsim.contrib.ev.fleet.ElectricVehicle;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Factory alternativa a EvConsumptionModelFactory: crea TabulatedDriveEnergyConsumption.
+ *
+ * All'avvio precalcola una EnergyLookupGrid per ogni tipo di veicolo distinto
+ * (coefficienti VehiclePhysics uguali -> griglia condivisa) e riporta l'errore
+ * massimo della griglia rispetto al modello analitico.
+ *
+ * create() può essere chiamata da più thread (veicoli aggiunti dopo l'avvio):
+ * le griglie sono in una ConcurrentHashMap, costruite una sola volta per tipo.
+ */
+public class TabulatedConsumptionModelFactory implements DriveEnergyConsumption.Factory {
+
+    private static final Logger log = LogManager.getLogger(TabulatedConsumptionModelFactory.class);
+
+    private static final int  ERROR_SAMPLES = 20_000;
+    private static final long ERROR_SEED    = 42L;
+
+    private final EvFleetManager evFleetManager;
+    private final LinkSlopeTable slopeTable;
+    private final EnergyLookupGrid.Resolution resolution;
+    private final Map<VehiclePhysics, EnergyLookupGrid> grids = new ConcurrentHashMap<>();
+
+    public TabulatedConsumptionModelFactory(
+        EvFleetManager evFleetManager,
+        LinkSlopeTable slopeTable,
+        EnergyLookupGrid.Resolution resolution
+    ) {
+        this.evFleetManager = evFleetManager;
+        this.slopeTable = slopeTable;
+        this.resolution = resolution;
+        precompute();
+    }
+
+    /**
+     * Una griglia per tipo di veicolo presente nella flotta, con stima dell'errore.
+     */
+    private void precompute() {
+        double worstAbs = 0.0;
+        double worstRel = 0.0;
+        for (EvModel evData : evFleetManager.getEvModels()) {
+            VehiclePhysics physics = VehiclePhysics.of(evData);
+            if (grids.containsKey(physics)) continue;
+
+            EnergyLookupGrid grid = EnergyLookupGrid.build(physics, resolution);
+            grids.put(physics, grid);
+
+            double[] err = grid.maxError(physics, ERROR_SAMPLES, ERROR_SEED);
+            worstAbs = Math.max(worstAbs, err[0]);
+            worstRel = Math.max(worstRel, err[1]);
+            log.debug("[TabulatedConsumption] Griglia {} {}: errore max {} J/m ({}%)",
+                    evData.getManufacturer(), evData.getModel(), err[0], err[1] * 100.0);
+        }
+        log.info("[TabulatedConsumption] {} griglie {}x{}x{} precalcolate, errore max vs modello analitico: {} J/m ({}%)",
+                grids.size(),
+                resolution.speedBins(), resolution.congestionBins(), resolution.slopeBins(),
+                String.format("%.4f", worstAbs),
+                String.format("%.3f", worstRel * 100.0));
+    }
+
+    @Override
+    public DriveEnergyConsumption create(ElectricVehicle electricVehicle) {
+        EvModel evData = evFleetManager.getVehicle(electricVehicle.getId());
+        if (evData == null) {
+            log.warn("[TabulatedConsumption] Veicolo {} non trovato in EvFleetManager, consumo impostato a 0",
+                    electricVehicle.getId());
+            return new TabulatedDriveEnergyConsumption(null, null, slopeTable);
+        }
+        // Veicoli aggiunti dopo l'avvio: griglia calcolata al primo uso
+        EnergyLookupGrid grid = grids.computeIfAbsent(VehiclePhysics.of(evData), p -> EnergyLookupGrid.build(p, resolution));
+        return new TabulatedDriveEnergyConsumption(evData, grid, slopeTable);
+    }
+
+    /**
+     * Numero di griglie distinte (tipi di veicolo).
+     */
+    public int getGridCount() {
+        return grids.size();
+    }
+}
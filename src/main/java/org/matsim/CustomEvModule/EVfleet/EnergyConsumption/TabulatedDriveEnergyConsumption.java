@@ -0,0 +1,50 @@
+package org.matsim.CustomEvModule.EVfleet.EnergyConsumption;
+
+import org.matsim.CustomEvModule.EVfleet.EvModel;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.contrib.ev.discharging.DriveEnergyConsumption;
+
+/**
+ * Variante tabellare del modello di trazione: l'energia per metro viene letta da una
+ * EnergyLookupGrid precalcolata per il tipo di veicolo (interpolazione trilineare)
+ * invece di valutare la fisica ad ogni link.
+ */
+public class TabulatedDriveEnergyConsumption implements DriveEnergyConsumption {
+
+    private final EvModel evData;
+    private final EnergyLookupGrid grid;
+    private final LinkSlopeTable slopeTable;
+
+    /**
+     * @param evData     modello EV della flotta, null se il veicolo non e' monitorato (consumo 0)
+     * @param grid       griglia del tipo di veicolo, null se evData e' null
+     * @param slopeTable pendenze della rete precalcolate
+     */
+    public TabulatedDriveEnergyConsumption(EvModel evData, EnergyLookupGrid grid, LinkSlopeTable slopeTable) {
+        this.evData = evData;
+        this.grid = grid;
+        this.slopeTable = slopeTable;
+    }
+
+    @Override
+    public double calcEnergyConsumption(Link link, double travelTime, double linkEnterTime) {
+        // Veicolo non monitorato: segnalato una sola volta dalla factory
+        if (evData == null || evData.getState() != EvModel.State.MOVING) {
+            return 0.0;
+        }
+
+        double length = link.getLength();
+        if (length <= 0) {
+            return 0.0;
+        }
+        double avgSpeed = length / travelTime;
+        double congestion = travelTime * link.getFreespeed() / length;
+        double energyJoules = grid.energyPerMeter(avgSpeed, congestion, slopeTable.sin(link)) * length;
+
+        // Aggiornamento distanza percorsa dal veicolo
+        evData.addDistanceTraveled(length);
+        // La batteria cambia: il veicolo verrà campionato al prossimo updateSoc
+        evData.markBatteryChanged();
+        return energyJoules;
+    }
+}
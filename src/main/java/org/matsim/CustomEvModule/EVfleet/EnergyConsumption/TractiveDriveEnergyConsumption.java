@@ -20,130 +20,124 @@ import org.matsim.contrib.ev.fleet.ElectricVehicle;
  * Modello di consumo basato sulla trazione (Tractive Energy Model), che simula
  * l'energia necessaria per superare le forze di resistenza: rotolamento, aerodinamica, pendenza.
  *
- * Utilizza la velocità media sul link e parametri fisici stimati dal EvModel.
- * NOTA: Richiede che l'attributo "slope" (pendenza in gradi) sia eventualmente disponibile sul Link.
+ * Utilizza la velocità media sul link e i coefficienti fisici precompilati (VehiclePhysics).
+ * L'istanza è un handle leggero per veicolo: fisica, pendenze e cache stanno nel
+ * TractiveTypeModel condiviso dal tipo, lo stato del veicolo negli array della flotta.
+ * La pendenza dei link è letta dalla LinkSlopeTable precalcolata all'avvio.
+ * Con una LinkEnergyCache le percorrenze ripetute dello stesso link, per lo stesso tipo
+ * di veicolo e tempo di percorrenza quantizzato, non rivalutano la fisica.
  */
 public class TractiveDriveEnergyConsumption implements DriveEnergyConsumption {
 
     private static final Logger log = LogManager.getLogger(TractiveDriveEnergyConsumption.class);
 
     // Costanti fisiche
-    private static final double GRAVITY     = 9.81;       // Accelerazione di gravità (m/s^2)
-    private static final double AIR_DENSITY = 1.225;      // Densità dell'aria (kg/m^3)
+    static final double GRAVITY     = 9.81;       // Accelerazione di gravità (m/s^2)
+    static final double AIR_DENSITY = 1.225;      // Densità dell'aria (kg/m^3)
 
     // Efficienze
     private static final double REGEN_EFFICIENCY  = 0.75;      // Efficienza rigenerativa
     private static final double MAX_REGEN_POWER_W = 50_000; // 50 kW
 
-    // Veicolo e fleet manager
-    private final ElectricVehicle electricVehicle;
-    private final EvFleetManager fleetManager;
-
-    public TractiveDriveEnergyConsumption(ElectricVehicle electricVehicle, EvFleetManager fleetManager) {
-        this.electricVehicle = electricVehicle;
-        this.fleetManager = fleetManager;
-    }
+    // Handle per veicolo: tipo condiviso + vista del veicolo sugli array della flotta
+    private final TractiveTypeModel type;
+    private final EvModel evData;
 
     /**
-     * Pendenza del link:
-     * supporta percentuale o angolo.
+     * @param type   modello condiviso del tipo di veicolo, null se il veicolo non e' monitorato
+     * @param evData modello EV della flotta, null se il veicolo non e' monitorato
      */
-    private double getSlopeAngleRadians(Link link) {
-        try {
-            Double slope = (Double) link.getAttributes().getAttribute("slope");
-            if (slope != null) {
-                if (Math.abs(slope) > 0.3) {
-                    slope = slope / 100.0; // percentuale
-                }
-                return Math.atan(slope);
-            }
-        } catch (Exception e) {
-            // fallback
-        }
-        return 0.0;
+    public TractiveDriveEnergyConsumption(TractiveTypeModel type, EvModel evData) {
+        this.type = type;
+        this.evData = evData;
     }
 
     /**
-     * Massa stimata del veicolo.
+     * Tipo non condiviso, senza cache: fisica valutata ad ogni link.
+     *
+     * @param evData     modello EV della flotta, null se il veicolo non e' monitorato
+     * @param physics    coefficienti fisici precompilati, null se evData e' null
+     * @param slopeTable pendenze della rete precalcolate, condivise tra tutti i veicoli
      */
-    private double calculateMassEstimate(EvModel evData) {
-        final double BASE_MASS_KG = 1300.0;
-        final double BATTERY_KG_PER_KWH = 5.0;
+    public TractiveDriveEnergyConsumption(EvModel evData, VehiclePhysics physics, LinkSlopeTable slopeTable) {
+        this(physics != null ? new TractiveTypeModel(physics, slopeTable) : null, evData);
+    }
 
-        double mass = BASE_MASS_KG +
-                evData.getNominalCapacityKwh() * BATTERY_KG_PER_KWH;
+    public TractiveDriveEnergyConsumption(EvModel evData, VehiclePhysics physics) {
+        this(evData, physics, LinkSlopeTable.empty());
+    }
 
-        if (evData.getSegment().equalsIgnoreCase("SUV")) {
-            mass += 200.0;
-        } else if (evData.getSegment().equalsIgnoreCase("Hatchback")) {
-            mass -= 100.0;
-        }
-        return mass;
+    public TractiveDriveEnergyConsumption(ElectricVehicle electricVehicle, EvFleetManager fleetManager) {
+        this(fleetManager.getVehicle(electricVehicle.getId()));
     }
 
-    /**
-     * Stima il coefficiente di resistenza al rotolamento Cr -> assumo 0.01 perchè ci metti dei pneumatici belli su un auto nuova 
-     */
-    private double calculateCrEstimate() {
-        return 0.010;
+    private TractiveDriveEnergyConsumption(EvModel evData) {
+        this(evData, evData != null ? VehiclePhysics.of(evData) : null);
     }
 
     /**
-    * Stima il prodotto Cd*A (coefficiente aerodinamico * area frontale) in m^2
-    * basato sul tipo di carrozzeria e dimensioni del veicolo
-    */
-    private double calculateCdaEstimate(EvModel evData) {
-        double cd;
-        String body = evData.getCarBodyType().toLowerCase();
-
-        if (body.contains("suv") || body.contains("van") || body.contains("wagon") || body.contains("estate")) cd = 0.35;
-        else if (body.contains("hatchback") || body.contains("crossover")) cd = 0.32;
-        else if (body.contains("sedan") || body.contains("coupe") || body.contains("cabriolet") || body.contains("liftback")) cd = 0.28;
-        else cd = 0.30; // Default
-
-        double widthM = evData.getWidthMm() / 1000.0;
-        double heightM = evData.getHeightMm() / 1000.0;
-
-        return cd * (0.8 * widthM * heightM);
+     * Modello condiviso del tipo, null se il veicolo non e' monitorato.
+     */
+    TractiveTypeModel type() {
+        return type;
     }
 
     // ------------------------
     // Calcolo consumo energia per link
     // ------------------------
-    private double calcModel(Link link, double travelTime, double linkEnterTime, EvModel evData){
-        // ----------------------------
-        // PARAMETRI FISICI
-        // ----------------------------
-        double massKg = calculateMassEstimate(evData);
-        double cr     = calculateCrEstimate();
-        double cda    = calculateCdaEstimate(evData);
+    private double calcModel(Link link, double travelTime) {
+        double totalEnergy = type.energy(link, travelTime);
+
+        if (log.isDebugEnabled()) {
+            log.debug("EV {} link {} → {} J (v={} m/s)",
+                    evData.getVehicleId(),
+                    link.getId(),
+                    totalEnergy,
+                    link.getLength() / travelTime);
+        }
+        return totalEnergy;
+    }
 
+    /**
+     * Fisica del modello di trazione, pura e senza allocazioni.
+     *
+     * @param physics    coefficienti precompilati del veicolo
+     * @param length     lunghezza del link (m)
+     * @param travelTime tempo di percorrenza (s)
+     * @param freespeed  velocità di flusso libero del link (m/s)
+     * @param sinA       seno della pendenza
+     * @param cosA       coseno della pendenza
+     * @return energia in Joule (negativa in rigenerazione)
+     */
+    static double calcTractiveEnergy(
+        VehiclePhysics physics,
+        double length,
+        double travelTime,
+        double freespeed,
+        double sinA,
+        double cosA
+    ) {
         // ----------------------------
         // CINEMATICA
         // ----------------------------
-        double length = link.getLength();
         double avgSpeed = length / travelTime;
 
         // Velocità effettiva per l’aerodinamica
         double effectiveSpeed = Math.max(avgSpeed, 8.0); // ~30 km/h
 
-        double slopeRad = getSlopeAngleRadians(link);
-        double sinA = Math.sin(slopeRad);
-        double cosA = Math.cos(slopeRad);
-
         // ----------------------------
         // FORZE
         // ----------------------------
-        double fRolling = massKg * GRAVITY * cr * cosA;
+        double fRolling = physics.rollingForceCoeff() * cosA;
 
-        double fAero = 0.5 * AIR_DENSITY * cda * effectiveSpeed * effectiveSpeed;
+        double fAero = physics.aeroForceCoeff() * effectiveSpeed * effectiveSpeed;
 
         // Aerodinamica fortemente ridotta in urbano
         if (avgSpeed < 8.3) { // < 30 km/h
             fAero *= 0.3;
         }
 
-        double fSlope = massKg * GRAVITY * sinA;
+        double fSlope = physics.massGravity() * sinA;
         double fTractive = fRolling + fAero + fSlope;
 
         // ----------------------------
@@ -166,7 +160,7 @@ public class TractiveDriveEnergyConsumption implements DriveEnergyConsumption {
         // ----------------------------
         // STOP & GO ESPLICITO (TRAFFICO)
         // ----------------------------
-        double freeFlowTime = length / link.getFreespeed();
+        double freeFlowTime = length / freespeed;
         double congestionFactor = travelTime / freeFlowTime;
 
         // Limitiamo l’effetto per evitare esplosioni
@@ -185,28 +179,23 @@ public class TractiveDriveEnergyConsumption implements DriveEnergyConsumption {
             totalEnergy = Math.max(regenEnergy, -maxRegenEnergy);
         }
 
-        log.debug("EV {} link {} → {:.1f} J (v={:.1f} m/s, cong={:.2f})",
-                electricVehicle.getId(),
-                link.getId(),
-                totalEnergy,
-                avgSpeed,
-                congestionFactor);
-
         return totalEnergy;
     }
 
     @Override
     public double calcEnergyConsumption(Link link, double travelTime, double linkEnterTime) {
-        Double energyJoules = 0.0;
-        // Recupero dati EV dal fleet manager
-        EvModel evData = fleetManager.getVehicle(electricVehicle.getId());
-        if (evData == null) {
-            log.warn("Veicolo {} non trovato, consumo impostato a 0", electricVehicle.getId());
-        }else if(evData.getState().equals(EvModel.State.MOVING)){
-            energyJoules = calcModel(link, travelTime, linkEnterTime, evData);
-            // Aggiornamento distanza percorsa dal veicolo
-            evData.addDistanceTraveled(link.getLength());
+        if (evData == null || type == null) {
+            // Già segnalato dalla factory alla creazione
+            return 0.0;
+        }
+        if (evData.getState() != EvModel.State.MOVING) {
+            return 0.0;
         }
+        double energyJoules = calcModel(link, travelTime);
+        // Aggiornamento distanza percorsa dal veicolo
+        evData.addDistanceTraveled(link.getLength());
+        // La batteria cambia: il veicolo verrà campionato al prossimo updateSoc
+        evData.markBatteryChanged();
         return energyJoules;
     }
 }
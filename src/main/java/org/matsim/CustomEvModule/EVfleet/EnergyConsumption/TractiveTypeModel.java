@@ -0,0 +1,73 @@
+package org.matsim.CustomEvModule.EVfleet.EnergyConsumption;
+
+import org.matsim.api.core.v01.network.Link;
+
+/**
+ * Parte condivisa del modello di trazione per un tipo di veicolo (flyweight).
+ *
+ * Tutti i veicoli con gli stessi coefficienti VehiclePhysics usano la stessa istanza:
+ * contiene solo dati immutabili (coefficienti, pendenze, cache e indice del tipo).
+ * Lo stato del singolo veicolo (stato, distanza, batteria cambiata) resta negli array
+ * densi di EvFleetStore, raggiunti tramite l'EvModel del veicolo.
+ */
+public final class TractiveTypeModel {
+
+    private final VehiclePhysics physics;
+    private final LinkSlopeTable slopeTable;
+    // Cache opzionale dell'energia per link (null = fisica ad ogni link)
+    private final LinkEnergyCache cache;
+    private final int typeIndex;
+
+    /**
+     * @param physics    coefficienti precompilati del tipo di veicolo
+     * @param slopeTable pendenze della rete precalcolate, condivise tra tutti i tipi
+     * @param cache      cache dell'energia per link condivisa dalla flotta, null se disattiva
+     * @param typeIndex  indice del tipo nella cache
+     */
+    public TractiveTypeModel(VehiclePhysics physics, LinkSlopeTable slopeTable, LinkEnergyCache cache, int typeIndex) {
+        this.physics = physics;
+        this.slopeTable = slopeTable;
+        this.cache = cache;
+        this.typeIndex = typeIndex;
+    }
+
+    public TractiveTypeModel(VehiclePhysics physics, LinkSlopeTable slopeTable) {
+        this(physics, slopeTable, null, -1);
+    }
+
+    /**
+     * Energia (J) per percorrere il link nel tempo dato, negativa in rigenerazione.
+     */
+    public double energy(Link link, double travelTime) {
+        long key = cache != null ? cache.key(typeIndex, link.getId().index(), travelTime) : -1;
+        if (key < 0) {
+            return physics(link, travelTime);
+        }
+        double energy = cache.get(key);
+        if (Double.isNaN(energy)) {
+            // Miss: fisica sul tempo rappresentativo del bucket, uguale per tutti i veicoli del tipo
+            energy = physics(link, cache.representativeTime(key));
+            cache.put(key, energy);
+        }
+        return energy;
+    }
+
+    private double physics(Link link, double travelTime) {
+        return TractiveDriveEnergyConsumption.calcTractiveEnergy(
+            physics,
+            link.getLength(),
+            travelTime,
+            link.getFreespeed(),
+            slopeTable.sin(link),
+            slopeTable.cos(link)
+        );
+    }
+
+    public VehiclePhysics getPhysics() {
+        return physics;
+    }
+
+    public int getTypeIndex() {
+        return typeIndex;
+    }
+}
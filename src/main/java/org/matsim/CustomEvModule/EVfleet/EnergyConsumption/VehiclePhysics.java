@@ -0,0 +1,93 @@
+package org.matsim.CustomEvModule.EVfleet.EnergyConsumption;
+
+import org.matsim.CustomEvModule.EVfleet.EvModel;
+
+/**
+ * Coefficienti fisici di un veicolo, precompilati una sola volta alla creazione
+ * del modello di consumo (EvConsumptionModelFactory.create).
+ *
+ * Contiene solo primitive: il percorso per-link del modello di trazione non
+ * esegue piu' lookup, confronti tra stringhe o allocazioni.
+ *
+ * I prodotti sono precalcolati nello stesso ordine di valutazione del modello
+ * originale, quindi l'energia risultante e' identica bit a bit.
+ *
+ * @param massKg            massa stimata (kg)
+ * @param cr                coefficiente di resistenza al rotolamento
+ * @param cda               prodotto Cd*A (m^2)
+ * @param massGravity       massKg * g
+ * @param rollingForceCoeff massKg * g * Cr (da moltiplicare per cos(pendenza))
+ * @param aeroForceCoeff    0.5 * rho * Cd*A (da moltiplicare per v^2)
+ */
+public record VehiclePhysics(
+        double massKg,
+        double cr,
+        double cda,
+        double massGravity,
+        double rollingForceCoeff,
+        double aeroForceCoeff
+) {
+
+    private static final double BASE_MASS_KG       = 1300.0;
+    private static final double BATTERY_KG_PER_KWH = 5.0;
+
+    /**
+     * Costruisce i coefficienti a partire dai dati statici del veicolo.
+     */
+    public static VehiclePhysics of(EvModel evData) {
+        double massKg = calculateMassEstimate(evData);
+        double cr     = calculateCrEstimate();
+        double cda    = calculateCdaEstimate(evData);
+
+        double massGravity = massKg * TractiveDriveEnergyConsumption.GRAVITY;
+        return new VehiclePhysics(
+            massKg,
+            cr,
+            cda,
+            massGravity,
+            massGravity * cr,
+            0.5 * TractiveDriveEnergyConsumption.AIR_DENSITY * cda
+        );
+    }
+
+    /**
+     * Massa stimata del veicolo.
+     */
+    static double calculateMassEstimate(EvModel evData) {
+        double mass = BASE_MASS_KG +
+                evData.getNominalCapacityKwh() * BATTERY_KG_PER_KWH;
+
+        if (evData.getSegment().equalsIgnoreCase("SUV")) {
+            mass += 200.0;
+        } else if (evData.getSegment().equalsIgnoreCase("Hatchback")) {
+            mass -= 100.0;
+        }
+        return mass;
+    }
+
+    /**
+     * Stima il coefficiente di resistenza al rotolamento Cr -> assumo 0.01 perchè ci metti dei pneumatici belli su un auto nuova
+     */
+    static double calculateCrEstimate() {
+        return 0.010;
+    }
+
+    /**
+    * Stima il prodotto Cd*A (coefficiente aerodinamico * area frontale) in m^2
+    * basato sul tipo di carrozzeria e dimensioni del veicolo
+    */
+    static double calculateCdaEstimate(EvModel evData) {
+        double cd;
+        String body = evData.getCarBodyType().toLowerCase();
+
+        if (body.contains("suv") || body.contains("van") || body.contains("wagon") || body.contains("estate")) cd = 0.35;
+        else if (body.contains("hatchback") || body.contains("crossover")) cd = 0.32;
+        else if (body.contains("sedan") || body.contains("coupe") || body.contains("cabriolet") || body.contains("liftback")) cd = 0.28;
+        else cd = 0.30; // Default
+
+        double widthM = evData.getWidthMm() / 1000.0;
+        double heightM = evData.getHeightMm() / 1000.0;
+
+        return cd * (0.8 * widthM * heightM);
+    }
+}
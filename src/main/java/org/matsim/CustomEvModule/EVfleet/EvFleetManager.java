@@ -2,14 +2,20 @@ package org.matsim.CustomEvModule.EVfleet;
 
 import org.matsim.ServerEvSetup.ConfigRun.ConfigRun;
 import org.matsim.CustomEvModule.EVfleet.factory.EvVehicleFactory;
+import org.matsim.CustomEvModule.EVfleet.strategy.fleet.EvCatalog;
 import org.matsim.CustomEvModule.EVfleet.strategy.fleet.EvFleetStrategy;
+import org.matsim.CustomEvModule.EVfleet.strategy.fleet.SocDistribution;
 import org.matsim.CustomEvModule.EVfleet.strategy.plan.PlanGenerationStrategy;
+import org.matsim.CustomEvModule.Hub.ChargingHub;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.contrib.ev.fleet.ElectricFleet;
+import org.matsim.contrib.ev.fleet.ElectricVehicle;
 import org.matsim.vehicles.Vehicle;
 
 import javax.inject.Inject;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 
 import org.apache.logging.log4j.LogManager;
@@ -19,13 +25,32 @@ public class EvFleetManager{
 
     private static final Logger log = LogManager.getLogger(EvFleetManager.class);
 
-    private final Map<Id<Vehicle>, EvModel> fleet = new HashMap<>();
+    // Tipi di colonnina compatibili, condivisi da tutti i tipi di veicolo
+    private static final Set<String> CHARGER_TYPES        = Set.of("DC", "AC", "CCS");
+    private static final Set<String> LEGACY_CHARGER_TYPES = Set.of("default", "a", "b");
+
+    public static final long DEFAULT_SEED = 4711L;
+
+    /*
+    *   Store denso della flotta: slot per veicolo, chiave = Id MATSim (_car)
+    */
+    private final EvFleetStore store = new EvFleetStore(1024);
+
+    /*
+    *   ElectricVehicle della QSim corrente, legati una volta per slot al mobsim init
+    */
+    private ElectricFleet boundFleet;
+    private ElectricVehicle[] boundVehicles = new ElectricVehicle[0];
     /*
     *   Strategie per la generazione del fleet e dei piani
     */
     private EvFleetStrategy fleetStrategy;
     private PlanGenerationStrategy planStrategy;
     private EvVehicleFactory vehicleFactory;
+    /*
+    *   Seed radice della flotta: campionamento dei modelli e piani (RNG per chunk)
+    */
+    private long seed = DEFAULT_SEED;
 
     @Inject
     public EvFleetManager() {}
@@ -45,6 +70,14 @@ public class EvFleetManager{
         this.vehicleFactory = factory;
     }
 
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
     // ----------------------------------------------------
     // PUBLIC API
     // ----------------------------------------------------
@@ -67,27 +100,10 @@ public class EvFleetManager{
             throw new IllegalStateException("PlanGenerationStrategy not set");
 
         log.info("[EvFleetManager] Registering {} pre-generated EV models", evModels.size());
-        
-        // 1. Registra modelli nel manager
-        evModels.forEach(model -> 
-            fleet.put(
-                Id.create(model.getVehicleId().toString() + "_car", Vehicle.class), 
-                model
-            )
-        );
-        
-        // 2. Genera veicoli MATSim nello Scenario
-        evModels.forEach(model ->
-            vehicleFactory.createMatsimVehicle(
-                model,
-                scenario.getVehicles(), 
-                Set.of("DC", "AC", "CCS")
-            )
-        );
-        
-        // 3. Genera piani tramite strategia
-        evModels.forEach(
-            model -> planStrategy.generatePlanForVehicle(model.getVehicleId(), scenario)
+
+        // Store, veicoli MATSim e piani: pipeline parallela a chunk, deterministica
+        FleetRegistrationPipeline.register(
+            evModels, scenario, store, vehicleFactory, planStrategy, CHARGER_TYPES, seed
         );
     }
 
@@ -101,12 +117,7 @@ public class EvFleetManager{
 
         log.info("[EvFleetManager] Registering {} pre-generated EV models (without scenario setup)", evModels.size());
         
-        evModels.forEach(model -> 
-            fleet.put(
-                Id.create(model.getVehicleId().toString() + "_car", Vehicle.class), 
-                model
-            )
-        );
+        evModels.forEach(this::addToStore);
     }
 
     public void generateFleet(Scenario scenario, ConfigRun config){
@@ -125,71 +136,148 @@ public class EvFleetManager{
             config.getCsvResourceEv(), 
             config.getNumeroVeicoli(),
             config.getSocMedio(), 
-            config.getSocStdDev()
-        );
-        // 2. Registra modelli nel manager
-        EVmodels.forEach(model -> 
-            fleet.put(
-                Id.create(model.getVehicleId().toString() + "_car", Vehicle.class), 
-                model
-            )
+            config.getSocStdDev(),
+            seed
         );
-        // 3. Genera veicoli MATSim nello Scenario
-        EVmodels.forEach(model ->
-            vehicleFactory.createMatsimVehicle(
-                model,
-                scenario.getVehicles(), 
-                Set.of("default", "a", "b") //tipi di caricatore 
-            )
+        // 2. Store, veicoli MATSim e piani: pipeline parallela a chunk, deterministica
+        FleetRegistrationPipeline.register(
+            EVmodels, scenario, store, vehicleFactory, planStrategy, LEGACY_CHARGER_TYPES, seed
         );
-        // 4. Genera piani tramite strategia
-        EVmodels.forEach(
-            model -> planStrategy.generatePlanForVehicle(model.getVehicleId(), scenario)
+    }
+
+    /**
+     * Converte in EV una quota (evShare) degli automobilisti della popolazione già caricata,
+     * in alternativa a generateFleet: campionamento stratificato, modelli dal catalogo CSV
+     * e sosta di ricarica vicino agli hub nel piano selezionato. Le persone restano le
+     * stesse: l'Id veicolo del modello è l'Id della persona.
+     *
+     * @param hubs hub già registrati, per le soste di ricarica
+     * @param soc  distribuzione del SoC iniziale
+     */
+    public void convertPopulation(Scenario scenario, ConfigRun config, Collection<ChargingHub> hubs, SocDistribution soc) {
+        if (config.getEvShare() == null)
+            throw new IllegalStateException("evShare not set");
+
+        if (vehicleFactory == null)
+            throw new IllegalStateException("EvVehicleFactory not set");
+
+        EvCatalog catalog;
+        try {
+            catalog = EvCatalog.load(config.getCsvResourceEv());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Errore caricamento catalogo EV", e);
+        }
+
+        log.info("[EvFleetManager] Conversione in EV di una quota {} degli automobilisti", config.getEvShare());
+        PopulationEvConverter.convert(
+            scenario, store, vehicleFactory, catalog, soc, hubs,
+            config.getEvShare(), config.getEvShareStratifyBy(), config.getEvShareHubRadiusM(),
+            LEGACY_CHARGER_TYPES, seed
         );
     }
 
+    private void addToStore(EvModel model) {
+        store.add(Id.create(model.getVehicleId().toString() + "_car", Vehicle.class), model);
+    }
+
     // ----------------------------------------------------
     // SIMULATION UPDATE 
     // ----------------------------------------------------
-    record chargeUpdate(Double soc, Double Charge){}
+    /**
+     * Lega ogni slot della flotta al suo ElectricVehicle (una sola volta per QSim).
+     * Tutti i veicoli vengono segnati come cambiati per il primo campionamento.
+     */
+    public void bindElectricFleet(ElectricFleet electricFleet) {
+        if (electricFleet == null) throw new IllegalArgumentException("ElectricFleet is null");
+        var electricVehicles = electricFleet.getElectricVehicles();
+        ElectricVehicle[] bound = new ElectricVehicle[store.size()];
+        int missing = 0;
+        for (int slot = 0; slot < bound.length; slot++) {
+            bound[slot] = electricVehicles.get(store.qsimId(slot));
+            if (bound[slot] == null) missing++;
+        }
+        this.boundVehicles = bound;
+        this.boundFleet = electricFleet;
+        store.markAllBatteryChanged();
+        log.info("[EvFleetManager] Bound {} EVs to the QSim electric fleet ({} missing)", bound.length - missing, missing);
+    }
 
+    /**
+     * Sincronizza SoC ed energia solo dei veicoli la cui batteria è cambiata
+     * dall'ultimo campionamento (scarica su link o ricarica in corso):
+     * il costo scala con i veicoli attivi, non con la flotta.
+     */
     public void updateSoc(ElectricFleet electricFleet) {
         if (electricFleet == null) throw new IllegalArgumentException("ElectricFleet is null");
-        for (EvModel evModel : fleet.values()) {
-            chargeUpdate up = GetChargeFromFleet(electricFleet, evModel);
-            if(up != null){                                       
-                evModel.updateDynamicState(
-                    up.soc(),
-                    up.Charge()
-                );
+        if (electricFleet != boundFleet) {
+            bindElectricFleet(electricFleet);
+        }
+        ElectricVehicle[] bound = boundVehicles;
+        for (int word = 0, n = store.activityWords(); word < n; word++) {
+            long bits = store.drainActiveWord(word);
+            while (bits != 0) {
+                int slot = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                ElectricVehicle ev = slot < bound.length ? bound[slot] : null;
+                if (ev != null) {
+                    store.updateDynamicState(slot, ev.getBattery().getSoc(), ev.getBattery().getCharge());
+                }
             }
         }
     }
 
-    private chargeUpdate GetChargeFromFleet(
-        ElectricFleet electricFleet, 
-        EvModel evModel
-    ){
-        Id<Vehicle> qsimId = Id.create(evModel.getVehicleId().toString() + "_car", Vehicle.class);
-        var ev = electricFleet.getElectricVehicles().get(qsimId);
-        if (ev == null) return null;
-        return new chargeUpdate(ev.getBattery().getSoc(), ev.getBattery().getCharge());
+    /**
+     * Stato di ricarica del veicolo (da ChargingStart/ChargingEnd).
+     */
+    public void setCharging(Id<Vehicle> vehicleId, boolean charging) {
+        int slot = store.slotOf(vehicleId);
+        if (slot >= 0) {
+            store.setCharging(slot, charging);
+        }
     }
 
-
     // ----------------------------------------------------
     // GETTERS
     // ----------------------------------------------------
+    public EvFleetStore getStore() {
+        return store;
+    }
+
+    /**
+     * Vista della flotta come mappa Id MATSim -> EvModel.
+     * Costruisce una copia: non usare nei percorsi caldi, preferire getStore().
+     */
     public Map<Id<Vehicle>, EvModel> getFleet() {
+        Map<Id<Vehicle>, EvModel> fleet = new LinkedHashMap<>();
+        for (int slot = 0, n = store.size(); slot < n; slot++) {
+            fleet.put(store.qsimId(slot), store.view(slot));
+        }
         return Collections.unmodifiableMap(fleet);
     }
 
+    public Set<Id<Vehicle>> getVehicleIds() {
+        Set<Id<Vehicle>> ids = new HashSet<>();
+        for (int slot = 0, n = store.size(); slot < n; slot++) {
+            ids.add(store.qsimId(slot));
+        }
+        return Collections.unmodifiableSet(ids);
+    }
+
     public List<EvModel> getEvModels() {
-        return new ArrayList<>(fleet.values());
+        List<EvModel> models = new ArrayList<>(store.size());
+        for (int slot = 0, n = store.size(); slot < n; slot++) {
+            models.add(store.view(slot));
+        }
+        return models;
     }
 
     public EvModel getVehicle(Id<Vehicle> vehicleId) {
-        return fleet.get(vehicleId);
+        int slot = store.slotOf(vehicleId);
+        return slot >= 0 ? store.view(slot) : null;
+    }
+
+    public void resetDirty() {
+        store.resetAllDirty();
     }
 
 
@@ -0,0 +1,506 @@
+package org.matsim.CustomEvModule.EVfleet;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.vehicles.Vehicle;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Store denso "struct-of-arrays" dello stato dinamico della flotta EV.
+ *
+ * Ogni veicolo occupa uno slot intero; lo stato dinamico vive in array primitivi
+ * (soc, energia, distanza, coordinate, stato, versione) e i dati statici sono
+ * condivisi tramite EvSpec. EvModel è una vista sottile su (store, slot).
+ *
+ * Il lookup per Id MATSim usa un int[] indicizzato con Id<Vehicle>.index():
+ * nessun hashing né probing di mappe.
+ *
+ * La registrazione (add) avviene in fase di setup, prima della simulazione.
+ *
+ * Pubblicazione verso il thread del publisher (seqlock per slot):
+ * - i writer (handler MATSim, monitor) portano seq[slot] da pari a dispari con CAS,
+ *   scrivono i campi e lo riportano pari con una store-release; nessun lock
+ * - i reader (snapshot) rileggono finché seq è pari e invariato prima e dopo la
+ *   copia: non vedono mai record misti tra valori vecchi e nuovi
+ * - dirty = seq[slot] != publishedSeq[slot]; il publisher conferma la seq che ha
+ *   effettivamente inviato, quindi le modifiche successive restano dirty
+ * - publishedSeq ha un solo writer (il publisher, oppure il setup) ed è letto e
+ *   scritto con acquire/release
+ * - ogni modifica imposta anche il bit dello slot in dirtyWords: nextDirty salta le
+ *   word a zero e il costo segue il numero di slot modificati, non la flotta
+ *
+ * Attività della batteria (per la sincronizzazione del SoC guidata dai cambiamenti):
+ * - batteryChanged: bit impostato dal modello di consumo quando il veicolo scarica,
+ *   consumato (e azzerato) ad ogni campionamento
+ * - charging: bit attivo tra ChargingStart e ChargingEnd
+ */
+public final class EvFleetStore {
+
+    private static final Logger log = LogManager.getLogger(EvFleetStore.class);
+
+    private static final EvModel.State[] STATES = EvModel.State.values();
+    private static final int NO_SLOT = -1;
+
+    // Accesso atomico agli elementi di un long[] (seq e publishedSeq)
+    private static final VarHandle SEQ = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private int size = 0;
+
+    // --- Stato dinamico ---
+    private double[] soc;
+    private double[] energyJ;
+    private double[] lastSoc;
+    private double[] lastEnergyJ;
+    private double[] distanceKm;
+    private double[] coordX;
+    private double[] coordY;
+    private byte[]   state;
+    private String[] linkId;
+
+    // --- Seqlock e pubblicazione ---
+    private long[] seq;
+    private long[] publishedSeq;
+    private AtomicLongArray dirtyWords;
+
+    // --- Attività batteria (bit per slot, scritti da thread diversi) ---
+    private AtomicLongArray batteryChanged;
+    private AtomicLongArray charging;
+
+    // --- Identità ---
+    private EvModel[]     views;
+    private Id<Vehicle>[] qsimIds;
+    private int[] slotByIdIndex = new int[0];
+
+    // Catalogo delle schede tecniche: una sola istanza per scheda distinta, vive con lo store
+    private final Map<EvSpec, EvSpec> specs = new HashMap<>();
+
+    public EvFleetStore(int initialCapacity) {
+        allocate(Math.max(1, initialCapacity));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void allocate(int capacity) {
+        soc         = new double[capacity];
+        energyJ     = new double[capacity];
+        lastSoc     = new double[capacity];
+        lastEnergyJ = new double[capacity];
+        distanceKm  = new double[capacity];
+        coordX      = new double[capacity];
+        coordY      = new double[capacity];
+        state       = new byte[capacity];
+        linkId      = new String[capacity];
+        seq         = new long[capacity];
+        publishedSeq = new long[capacity];
+        dirtyWords  = new AtomicLongArray(words(capacity));
+        batteryChanged = new AtomicLongArray(words(capacity));
+        charging    = new AtomicLongArray(words(capacity));
+        views       = new EvModel[capacity];
+        qsimIds     = new Id[capacity];
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= soc.length) return;
+        int newCapacity = Math.max(capacity, soc.length * 2);
+        soc         = Arrays.copyOf(soc, newCapacity);
+        energyJ     = Arrays.copyOf(energyJ, newCapacity);
+        lastSoc     = Arrays.copyOf(lastSoc, newCapacity);
+        lastEnergyJ = Arrays.copyOf(lastEnergyJ, newCapacity);
+        distanceKm  = Arrays.copyOf(distanceKm, newCapacity);
+        coordX      = Arrays.copyOf(coordX, newCapacity);
+        coordY      = Arrays.copyOf(coordY, newCapacity);
+        state       = Arrays.copyOf(state, newCapacity);
+        linkId      = Arrays.copyOf(linkId, newCapacity);
+        seq         = Arrays.copyOf(seq, newCapacity);
+        publishedSeq = Arrays.copyOf(publishedSeq, newCapacity);
+        dirtyWords  = copyOf(dirtyWords, words(newCapacity));
+        batteryChanged = copyOf(batteryChanged, words(newCapacity));
+        charging    = copyOf(charging, words(newCapacity));
+        views       = Arrays.copyOf(views, newCapacity);
+        qsimIds     = Arrays.copyOf(qsimIds, newCapacity);
+    }
+
+    private static int words(int capacity) {
+        return (capacity + 63) >>> 6;
+    }
+
+    private static AtomicLongArray copyOf(AtomicLongArray src, int length) {
+        AtomicLongArray dst = new AtomicLongArray(length);
+        for (int i = 0, n = Math.min(src.length(), length); i < n; i++) {
+            dst.set(i, src.get(i));
+        }
+        return dst;
+    }
+
+    // ----------------------------------------------------
+    // REGISTRAZIONE
+    // ----------------------------------------------------
+
+    /**
+     * Sposta un EvModel in questo store copiandone lo stato dinamico corrente.
+     * Da questo momento il modello è una vista sullo slot assegnato e la sua EvSpec
+     * è quella canonica del catalogo dello store.
+     * Solo in fase di setup: non è concorrente con writer o reader.
+     *
+     * Id già registrato: vince l'ultimo, che sovrascrive lo slot esistente (come la
+     * mappa per Id che lo store sostituisce); il modello precedente non va più usato.
+     *
+     * @param qsimId Id del veicolo MATSim (con suffisso _car)
+     * @param model  modello da registrare
+     * @return slot assegnato
+     */
+    public int add(Id<Vehicle> qsimId, EvModel model) {
+        int slot = slotOf(qsimId);
+        if (slot != NO_SLOT) {
+            log.warn("[EvFleetStore] Veicolo {} già registrato nello slot {}: sostituito dall'ultimo", qsimId, slot);
+        } else {
+            slot = size++;
+            ensureCapacity(size);
+        }
+
+        EvModel.Detached detached = model.detached();
+        if (detached != null) {
+            soc[slot]         = detached.soc;
+            energyJ[slot]     = detached.energyJ;
+            lastSoc[slot]     = detached.lastSoc;
+            lastEnergyJ[slot] = detached.lastEnergyJ;
+            distanceKm[slot]  = detached.distanceKm;
+            coordX[slot]      = detached.coordX;
+            coordY[slot]      = detached.coordY;
+            state[slot]       = (byte) detached.state.ordinal();
+            linkId[slot]      = detached.linkId;
+            if (detached.dirty) markDirty(slot);
+            else resetDirty(slot);
+        } else {
+            EvFleetStore from = model.store();
+            int src = model.slot();
+            soc[slot]         = from.soc[src];
+            energyJ[slot]     = from.energyJ[src];
+            lastSoc[slot]     = from.lastSoc[src];
+            lastEnergyJ[slot] = from.lastEnergyJ[src];
+            distanceKm[slot]  = from.distanceKm[src];
+            coordX[slot]      = from.coordX[src];
+            coordY[slot]      = from.coordY[src];
+            state[slot]       = from.state[src];
+            linkId[slot]      = from.linkId[src];
+            if (from.isDirty(src)) markDirty(slot);
+            else resetDirty(slot);
+        }
+
+        views[slot] = model;
+        qsimIds[slot] = qsimId;
+        indexId(qsimId, slot);
+
+        model.attach(this, slot, specs.computeIfAbsent(model.getSpec(), spec -> spec));
+        return slot;
+    }
+
+    /**
+     * Numero di schede tecniche distinte tra i veicoli registrati.
+     */
+    public int specCount() {
+        return specs.size();
+    }
+
+    private void indexId(Id<Vehicle> id, int slot) {
+        int idx = id.index();
+        if (idx >= slotByIdIndex.length) {
+            int oldLength = slotByIdIndex.length;
+            slotByIdIndex = Arrays.copyOf(slotByIdIndex, Math.max(idx + 1, oldLength * 2));
+            Arrays.fill(slotByIdIndex, oldLength, slotByIdIndex.length, NO_SLOT);
+        }
+        slotByIdIndex[idx] = slot;
+    }
+
+    // ----------------------------------------------------
+    // LOOKUP
+    // ----------------------------------------------------
+
+    /**
+     * @return slot del veicolo o -1 se non registrato
+     */
+    public int slotOf(Id<Vehicle> qsimId) {
+        if (qsimId == null) return NO_SLOT;
+        int idx = qsimId.index();
+        return idx < slotByIdIndex.length ? slotByIdIndex[idx] : NO_SLOT;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public EvModel view(int slot) {
+        return views[slot];
+    }
+
+    public Id<Vehicle> qsimId(int slot) {
+        return qsimIds[slot];
+    }
+
+    // ----------------------------------------------------
+    // LETTURA
+    // ----------------------------------------------------
+    public double soc(int slot)          { return soc[slot]; }
+    public double energyJ(int slot)      { return energyJ[slot]; }
+    public double lastSoc(int slot)      { return lastSoc[slot]; }
+    public double lastEnergyJ(int slot)  { return lastEnergyJ[slot]; }
+    public double distanceKm(int slot)   { return distanceKm[slot]; }
+    public double coordX(int slot)       { return coordX[slot]; }
+    public double coordY(int slot)       { return coordY[slot]; }
+    public String linkId(int slot)       { return linkId[slot]; }
+    public EvModel.State state(int slot) { return STATES[state[slot]]; }
+
+    // ----------------------------------------------------
+    // SCRITTURA (seqlock; marca lo slot come dirty solo se cambia)
+    // ----------------------------------------------------
+
+    /**
+     * Acquisisce lo slot in scrittura: seq pari -> dispari.
+     * @return seq pari precedente
+     */
+    private long beginWrite(int slot) {
+        while (true) {
+            long s = (long) SEQ.getVolatile(seq, slot);
+            if ((s & 1L) == 0 && SEQ.compareAndSet(seq, slot, s, s + 1)) {
+                // Le scritture dei campi non possono precedere la seq dispari
+                VarHandle.storeStoreFence();
+                return s;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Rilascia lo slot: changed = true pubblica una nuova versione e segna lo slot
+     * nelle dirtyWords, altrimenti ripristina la versione precedente.
+     */
+    private void endWrite(int slot, long s, boolean changed) {
+        SEQ.setRelease(seq, slot, changed ? s + 2 : s);
+        // Il bit va impostato dopo la nuova seq: chi lo azzera poi rilegge seq (clearDirtyBit)
+        if (changed) setDirtyBit(slot);
+    }
+
+    public void updateDynamicState(int slot, double newSoc, double newEnergyJ) {
+        long s = beginWrite(slot);
+        boolean changed = soc[slot] != newSoc || energyJ[slot] != newEnergyJ;
+        if (changed) {
+            // Salvo il vecchio così posso calcolare il delta e quindi l'erogazione
+            lastSoc[slot] = soc[slot];
+            lastEnergyJ[slot] = energyJ[slot];
+            soc[slot] = newSoc;
+            energyJ[slot] = newEnergyJ;
+        }
+        endWrite(slot, s, changed);
+    }
+
+    public void addDistance(int slot, double distanceMeters) {
+        if (distanceMeters == 0.0) return;
+        long s = beginWrite(slot);
+        distanceKm[slot] += distanceMeters / 1000.0;
+        endWrite(slot, s, true);
+    }
+
+    public void setState(int slot, EvModel.State newState) {
+        byte ordinal = (byte) newState.ordinal();
+        long s = beginWrite(slot);
+        boolean changed = state[slot] != ordinal;
+        if (changed) {
+            state[slot] = ordinal;
+        }
+        endWrite(slot, s, changed);
+    }
+
+    public void setLinkId(int slot, String newLinkId) {
+        long s = beginWrite(slot);
+        boolean changed = linkId[slot] == null || !linkId[slot].equals(newLinkId);
+        if (changed) {
+            linkId[slot] = newLinkId;
+        }
+        endWrite(slot, s, changed);
+    }
+
+    public void setCoord(int slot, double x, double y) {
+        long s = beginWrite(slot);
+        boolean changed = coordX[slot] != x || coordY[slot] != y;
+        if (changed) {
+            coordX[slot] = x;
+            coordY[slot] = y;
+        }
+        endWrite(slot, s, changed);
+    }
+
+    // ----------------------------------------------------
+    // SNAPSHOT (lato publisher, senza lock)
+    // ----------------------------------------------------
+
+    /**
+     * Copia coerente dello stato di uno slot.
+     * Ritenta finché nessun writer ha modificato lo slot durante la copia.
+     */
+    public EvSnapshot snapshot(int slot) {
+        while (true) {
+            long before = (long) SEQ.getAcquire(seq, slot);
+            if ((before & 1L) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+
+            double soc         = this.soc[slot];
+            double energyJ     = this.energyJ[slot];
+            double lastSoc     = this.lastSoc[slot];
+            double lastEnergyJ = this.lastEnergyJ[slot];
+            double distanceKm  = this.distanceKm[slot];
+            double coordX      = this.coordX[slot];
+            double coordY      = this.coordY[slot];
+            byte   state       = this.state[slot];
+            String linkId      = this.linkId[slot];
+
+            // Le letture dei campi non possono essere spostate dopo la rilettura di seq
+            VarHandle.loadLoadFence();
+            long after = (long) SEQ.getAcquire(seq, slot);
+            if (before == after) {
+                return new EvSnapshot(
+                        slot, before, views[slot].getVehicleId(),
+                        soc, energyJ, lastSoc, lastEnergyJ, distanceKm,
+                        coordX, coordY, STATES[state], linkId
+                );
+            }
+        }
+    }
+
+    // ----------------------------------------------------
+    // DIRTY (versione scritta != versione pubblicata)
+    // ----------------------------------------------------
+
+    public void markDirty(int slot) {
+        SEQ.setRelease(publishedSeq, slot, ((long) SEQ.getAcquire(seq, slot) & ~1L) - 2);
+        setDirtyBit(slot);
+    }
+
+    public boolean isDirty(int slot) {
+        return ((long) SEQ.getAcquire(seq, slot) & ~1L) != (long) SEQ.getAcquire(publishedSeq, slot);
+    }
+
+    public void resetDirty(int slot) {
+        SEQ.setRelease(publishedSeq, slot, (long) SEQ.getAcquire(seq, slot) & ~1L);
+        clearDirtyBit(slot);
+    }
+
+    public void resetAllDirty() {
+        for (int slot = 0; slot < size; slot++) {
+            resetDirty(slot);
+        }
+    }
+
+    /**
+     * Conferma che la versione dello snapshot è stata pubblicata.
+     * Le modifiche avvenute dopo lo snapshot restano dirty.
+     */
+    public void commitPublished(EvSnapshot snapshot) {
+        int slot = snapshot.slot();
+        SEQ.setRelease(publishedSeq, slot, snapshot.seq());
+        clearDirtyBit(slot);
+    }
+
+    /**
+     * Primo slot dirty a partire da fromSlot (incluso), -1 se nessuno.
+     * Scorre solo le word con bit impostati; i bit rimasti su slot già pubblicati
+     * vengono azzerati qui.
+     * Uso: for (int s = nextDirty(0); s >= 0; s = nextDirty(s + 1))
+     */
+    public int nextDirty(int fromSlot) {
+        if (fromSlot >= size) return NO_SLOT;
+        int word = fromSlot >>> 6;
+        long bits = dirtyWords.get(word) & (-1L << fromSlot);
+        for (int n = words(size); ; ) {
+            while (bits != 0) {
+                int slot = (word << 6) + Long.numberOfTrailingZeros(bits);
+                if (slot >= size) return NO_SLOT;
+                if (isDirty(slot)) return slot;
+                clearDirtyBit(slot);
+                bits &= bits - 1;
+            }
+            if (++word >= n) return NO_SLOT;
+            bits = dirtyWords.get(word);
+        }
+    }
+
+    private void setDirtyBit(int slot) {
+        long bit = 1L << slot;
+        dirtyWords.getAndUpdate(slot >>> 6, w -> w | bit);
+    }
+
+    /**
+     * Azzera il bit dirty e lo reimposta se nel frattempo un writer ha pubblicato una
+     * nuova versione: il writer imposta il bit dopo la seq, quindi nessuna modifica si perde.
+     */
+    private void clearDirtyBit(int slot) {
+        long bit = 1L << slot;
+        dirtyWords.getAndUpdate(slot >>> 6, w -> w & ~bit);
+        if (isDirty(slot)) setDirtyBit(slot);
+    }
+
+    // ----------------------------------------------------
+    // ATTIVITÀ BATTERIA
+    // ----------------------------------------------------
+
+    /**
+     * Segnala che la batteria dello slot è cambiata (scarica su un link).
+     */
+    public void markBatteryChanged(int slot) {
+        long bit = 1L << slot;
+        int word = slot >>> 6;
+        // Evita la scrittura contesa se il bit è già impostato
+        if ((batteryChanged.get(word) & bit) == 0) {
+            batteryChanged.getAndUpdate(word, w -> w | bit);
+        }
+    }
+
+    /**
+     * Segnala tutti gli slot come cambiati (es. al binding di una nuova ElectricFleet).
+     */
+    public void markAllBatteryChanged() {
+        for (int word = 0, n = words(size); word < n; word++) {
+            batteryChanged.set(word, -1L);
+        }
+    }
+
+    public void setCharging(int slot, boolean active) {
+        long bit = 1L << slot;
+        int word = slot >>> 6;
+        if (active) {
+            charging.getAndUpdate(word, w -> w | bit);
+        } else {
+            charging.getAndUpdate(word, w -> w & ~bit);
+            // Un ultimo campionamento dopo la fine della ricarica
+            markBatteryChanged(slot);
+        }
+    }
+
+    public boolean isCharging(int slot) {
+        return (charging.get(slot >>> 6) & (1L << slot)) != 0;
+    }
+
+    /**
+     * Numero di word a 64 bit che coprono gli slot registrati.
+     */
+    public int activityWords() {
+        return words(size);
+    }
+
+    /**
+     * Slot da campionare nella word indicata: cambiati dall'ultimo campionamento
+     * (il bit viene azzerato) oppure in ricarica. Bit oltre size già filtrati.
+     */
+    public long drainActiveWord(int word) {
+        long bits = batteryChanged.getAndSet(word, 0L) | charging.get(word);
+        int remaining = size - (word << 6);
+        return remaining >= 64 ? bits : bits & ((1L << remaining) - 1);
+    }
+}
@@ -6,47 +6,21 @@ import org.matsim.vehicles.Vehicle;
 /**
  * Modello di veicolo elettrico completo, con dati statici e dinamici,
  * aggiornato per supportare "dirty flags" per ottimizzare gli aggiornamenti WebSocket.
+ *
+ * È una vista sottile: i dati statici sono in una EvSpec condivisa dal catalogo
+ * dello store, lo stato dinamico vive negli array primitivi di un EvFleetStore (slot).
+ * Finché non è registrato nella flotta lo stato è in un Detached a campi semplici,
+ * rilasciato alla registrazione.
  */
 public class EvModel {
     // --- Dati statici ---
     private final Id<Vehicle> vehicleId;
-    private final String manufacturer;
-    private final String model;
-    private final double nominalCapacityKwh;
-    private final double consumptionKwhPerKm;
-    private final String batteryType;
-    private final int    numberOfCells;
-    private final double torqueNm;
-    private final double topSpeedKmh;
-    private final double rangeKm;
-    private final double acceleration0To100;
-    private final double fastChargingPowerKwDc;
-    private final String fastChargePort;
-    private final double towingCapacityKg;
-    private final double cargoVolumeL;
-    private final int    seats;
-    private final String drivetrain;
-    private final String segment;
-    private final int lengthMm;
-    private final int widthMm;
-    private final int heightMm;
-    private final String carBodyType;
-
-    // --- Dati dinamici ---
-    private double currentSoc;           
-    private double currentEnergyJoules; 
-    
-    private double lastSoc;
-    private double lastEnergyJoules;
-
-    private double distanceTraveledKm;   
-    private State state;                 
-    private String linkId;        
-    private double coordX;
-    private double coordY;       
-
-    // --- Dirty flag per delta WebSocket ---
-    private boolean dirty = false;
+    private EvSpec spec;
+
+    // --- Dati dinamici (vista su store + slot, oppure detached prima della registrazione) ---
+    private EvFleetStore store;
+    private int slot = -1;
+    private Detached detached;
 
     // Enum interno per lo stato del veicolo
     public enum State {
@@ -83,134 +57,205 @@ public class EvModel {
             String carBodyType
     ) {
         this.vehicleId = vehicleId;
-        this.manufacturer = manufacturer;
-        this.model = model;
-        this.nominalCapacityKwh = nominalCapacityKwh;
-        this.consumptionKwhPerKm = consumptionKwhPerKm;
-        this.batteryType = batteryType;
-        this.numberOfCells = numberOfCells;
-        this.torqueNm = torqueNm;
-        this.topSpeedKmh = topSpeedKmh;
-        this.rangeKm = rangeKm;
-        this.acceleration0To100 = acceleration0To100;
-        this.fastChargingPowerKwDc = fastChargingPowerKwDc;
-        this.fastChargePort = fastChargePort;
-        this.towingCapacityKg = towingCapacityKg;
-        this.cargoVolumeL = cargoVolumeL;
-        this.seats = seats;
-        this.drivetrain = drivetrain;
-        this.segment = segment;
-        this.lengthMm = lengthMm;
-        this.widthMm = widthMm;
-        this.heightMm = heightMm;
-        this.carBodyType = carBodyType;
-
-        // inizializzazione dinamica
-        this.currentSoc = 1.0;
-        this.currentEnergyJoules = nominalCapacityKwh * 3.6e6;
-        this.distanceTraveledKm = 0.0;
-        this.state = State.STOPPED;
-        this.dirty = true; // segnala come modificato inizialmente
-        this.lastSoc = currentSoc;
-        this.lastEnergyJoules = currentEnergyJoules;
+        this.spec = new EvSpec(
+                manufacturer,
+                model,
+                nominalCapacityKwh,
+                consumptionKwhPerKm,
+                batteryType,
+                numberOfCells,
+                torqueNm,
+                topSpeedKmh,
+                rangeKm,
+                acceleration0To100,
+                fastChargingPowerKwDc,
+                fastChargePort,
+                towingCapacityKg,
+                cargoVolumeL,
+                seats,
+                drivetrain,
+                segment,
+                lengthMm,
+                widthMm,
+                heightMm,
+                carBodyType
+        );
+
+        // inizializzazione dinamica (soc pieno, segnalato come modificato)
+        this.detached = new Detached(1.0, nominalCapacityKwh * 3.6e6);
+    }
+
+    /**
+     * Stato dinamico di un modello non ancora registrato: stessi campi di uno slot
+     * dello store, scritti solo dal thread che costruisce il modello.
+     */
+    static final class Detached {
+        double soc;
+        double energyJ;
+        double lastSoc;
+        double lastEnergyJ;
+        double distanceKm;
+        double coordX;
+        double coordY;
+        State state = State.STOPPED;
+        String linkId;
+        boolean dirty = true;
+
+        private Detached(double soc, double energyJ) {
+            this.soc = soc;
+            this.energyJ = energyJ;
+            this.lastSoc = soc;
+            this.lastEnergyJ = energyJ;
+        }
+    }
+
+    // --- Vista sullo store ---
+    void attach(EvFleetStore store, int slot, EvSpec spec) {
+        this.store = store;
+        this.slot = slot;
+        this.spec = spec;
+        this.detached = null;
+    }
+
+    EvFleetStore store() {
+        return store;
+    }
+
+    int slot() {
+        return slot;
+    }
+
+    Detached detached() {
+        return detached;
     }
 
     // --- Aggiornamento dinamico ---
     public void updateDynamicState(double soc, double energyJoules) {
-        if (this.currentSoc != soc || this.currentEnergyJoules != energyJoules) {
-            /*
-            * Salvo il vecchio così posso calcolare il delta e quindi l'erogazione
-            */
-            this.lastSoc = currentSoc;
-            this.lastEnergyJoules = currentEnergyJoules;
-
-            this.currentSoc = soc;
-            this.currentEnergyJoules = energyJoules;
-            this.dirty = true;
+        if (store != null) {
+            store.updateDynamicState(slot, soc, energyJoules);
+        } else if (detached.soc != soc || detached.energyJ != energyJoules) {
+            detached.lastSoc = detached.soc;
+            detached.lastEnergyJ = detached.energyJ;
+            detached.soc = soc;
+            detached.energyJ = energyJoules;
+            detached.dirty = true;
         }
     }
 
     public void addDistanceTraveled(double distanceMeters) {
-        if (distanceMeters != 0.0) {
-            this.distanceTraveledKm += (distanceMeters / 1000.0);
-            this.dirty = true;
+        if (store != null) {
+            store.addDistance(slot, distanceMeters);
+        } else if (distanceMeters != 0.0) {
+            detached.distanceKm += distanceMeters / 1000.0;
+            detached.dirty = true;
         }
     }
 
+    /**
+     * Segnala che la batteria è cambiata: il veicolo verrà campionato al prossimo updateSoc.
+     * Senza store non c'è campionamento, la chiamata non ha effetto.
+     */
+    public void markBatteryChanged() {
+        if (store != null) store.markBatteryChanged(slot);
+    }
+
     public void setState(State state) {
-        if (this.state != state) {
-            this.state = state;
-            this.dirty = true;
+        if (store != null) {
+            store.setState(slot, state);
+        } else if (detached.state != state) {
+            detached.state = state;
+            detached.dirty = true;
         }
     }
 
     public void setLinkId(String linkId) {
-        if (this.linkId == null || !this.linkId.equals(linkId)) {
-            this.linkId = linkId;
-            this.dirty = true;
+        if (store != null) {
+            store.setLinkId(slot, linkId);
+        } else if (detached.linkId == null || !detached.linkId.equals(linkId)) {
+            detached.linkId = linkId;
+            detached.dirty = true;
         }
     }
 
     public void setCoord(double x, double y) {
-        if (this.coordX != x || this.coordY != y) {
-            this.coordX = x;
-            this.coordY = y;
-            this.dirty = true;
+        if (store != null) {
+            store.setCoord(slot, x, y);
+        } else if (detached.coordX != x || detached.coordY != y) {
+            detached.coordX = x;
+            detached.coordY = y;
+            detached.dirty = true;
         }
     }
 
+    /**
+     * Copia coerente dello stato dinamico, sicura da thread diversi da quello di simulazione.
+     * Per un modello non registrato slot e seq valgono -1 e 0.
+     */
+    public EvSnapshot snapshot() {
+        if (store != null) return store.snapshot(slot);
+        Detached d = detached;
+        return new EvSnapshot(
+                -1, 0L, vehicleId,
+                d.soc, d.energyJ, d.lastSoc, d.lastEnergyJ, d.distanceKm,
+                d.coordX, d.coordY, d.state, d.linkId
+        );
+    }
+
     // --- Dirty flag ---
     public boolean isDirty() {
-        return dirty;
+        return store != null ? store.isDirty(slot) : detached.dirty;
     }
 
     public void resetDirty() {
-        this.dirty = false;
+        if (store != null) store.resetDirty(slot);
+        else detached.dirty = false;
     }
 
     // --- Getter ---
     public Id<Vehicle> getVehicleId()           { return vehicleId; }
-    public String getManufacturer()             { return manufacturer; }
-    public String getModel()                    { return model; }
-    public double getNominalCapacityKwh()       { return nominalCapacityKwh; }
-    public double getConsumptionKwhPerKm()      { return consumptionKwhPerKm; }
-    public String getBatteryType()              { return batteryType; }
-    public int getNumberOfCells()               { return numberOfCells; }
-    public double getTorqueNm()                 { return torqueNm; }
-    public double getTopSpeedKmh()              { return topSpeedKmh; }
-    public double getRangeKm()                  { return rangeKm; }
-    public double getAcceleration0To100()       { return acceleration0To100; }
-    public double getFastChargingPowerKwDc()    { return fastChargingPowerKwDc; }
-    public String getFastChargePort()           { return fastChargePort; }
-    public double getTowingCapacityKg()         { return towingCapacityKg; }
-    public double getCargoVolumeL()             { return cargoVolumeL; }
-    public int getSeats()                       { return seats; }
-    public String getDrivetrain()               { return drivetrain; }
-    public String getSegment()                  { return segment; }
-    public int getLengthMm()                    { return lengthMm; }
-    public int getWidthMm()                     { return widthMm; }
-    public int getHeightMm()                    { return heightMm; }
-    public String getCarBodyType()              { return carBodyType; }
-    public double getCurrentSoc()               { return currentSoc; }
-    public double getCurrentEnergyJoules()      { return currentEnergyJoules; }
-    public double getLastSoc()                  { return lastSoc;}
-    public double getLastEnergyJoules()         { return lastEnergyJoules;}
-    public double getDistanceTraveledKm()       { return distanceTraveledKm; }
-    public State getState()                     { return state; }
-    public String getLinkId()                   { return linkId; }
-    public double getCoordX()                   { return coordX; }
-    public double getCoordY()                   { return coordY; }
+    public EvSpec getSpec()                     { return spec; }
+    public String getManufacturer()             { return spec.manufacturer(); }
+    public String getModel()                    { return spec.model(); }
+    public double getNominalCapacityKwh()       { return spec.nominalCapacityKwh(); }
+    public double getConsumptionKwhPerKm()      { return spec.consumptionKwhPerKm(); }
+    public String getBatteryType()              { return spec.batteryType(); }
+    public int getNumberOfCells()               { return spec.numberOfCells(); }
+    public double getTorqueNm()                 { return spec.torqueNm(); }
+    public double getTopSpeedKmh()              { return spec.topSpeedKmh(); }
+    public double getRangeKm()                  { return spec.rangeKm(); }
+    public double getAcceleration0To100()       { return spec.acceleration0To100(); }
+    public double getFastChargingPowerKwDc()    { return spec.fastChargingPowerKwDc(); }
+    public String getFastChargePort()           { return spec.fastChargePort(); }
+    public double getTowingCapacityKg()         { return spec.towingCapacityKg(); }
+    public double getCargoVolumeL()             { return spec.cargoVolumeL(); }
+    public int getSeats()                       { return spec.seats(); }
+    public String getDrivetrain()               { return spec.drivetrain(); }
+    public String getSegment()                  { return spec.segment(); }
+    public int getLengthMm()                    { return spec.lengthMm(); }
+    public int getWidthMm()                     { return spec.widthMm(); }
+    public int getHeightMm()                    { return spec.heightMm(); }
+    public String getCarBodyType()              { return spec.carBodyType(); }
+    public double getCurrentSoc()               { return store != null ? store.soc(slot) : detached.soc; }
+    public double getCurrentEnergyJoules()      { return store != null ? store.energyJ(slot) : detached.energyJ; }
+    public double getLastSoc()                  { return store != null ? store.lastSoc(slot) : detached.lastSoc; }
+    public double getLastEnergyJoules()         { return store != null ? store.lastEnergyJ(slot) : detached.lastEnergyJ; }
+    public double getDistanceTraveledKm()       { return store != null ? store.distanceKm(slot) : detached.distanceKm; }
+    public State getState()                     { return store != null ? store.state(slot) : detached.state; }
+    public String getLinkId()                   { return store != null ? store.linkId(slot) : detached.linkId; }
+    public double getCoordX()                   { return store != null ? store.coordX(slot) : detached.coordX; }
+    public double getCoordY()                   { return store != null ? store.coordY(slot) : detached.coordY; }
 
     // --- Autonomia stimata ---
     public double getEstimatedRemainingRangeKm() {
+        double consumptionKwhPerKm = spec.consumptionKwhPerKm();
         if (consumptionKwhPerKm <= 0) return 0.0;
-        double currentEnergyKwh = currentEnergyJoules / 3.6e6;
+        double currentEnergyKwh = getCurrentEnergyJoules() / 3.6e6;
         return currentEnergyKwh / consumptionKwhPerKm;
     }
 
     // --- Backward compatibility ---
     public boolean isCharging() {
-        return this.state == State.CHARGING;
+        return getState() == State.CHARGING;
     }
 
     @Deprecated
@@ -0,0 +1,26 @@
+package org.matsim.CustomEvModule.EVfleet;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.vehicles.Vehicle;
+
+/**
+ * Copia coerente e immutabile dello stato dinamico di un veicolo,
+ * letta dall'EvFleetStore con il protocollo seqlock.
+ *
+ * @param slot slot del veicolo nello store
+ * @param seq  versione letta (da confermare dopo la pubblicazione)
+ */
+public record EvSnapshot(
+        int slot,
+        long seq,
+        Id<Vehicle> vehicleId,
+        double soc,
+        double energyJoules,
+        double lastSoc,
+        double lastEnergyJoules,
+        double distanceTraveledKm,
+        double coordX,
+        double coordY,
+        EvModel.State state,
+        String linkId
+) {}
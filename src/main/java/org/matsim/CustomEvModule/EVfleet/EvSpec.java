@@ -0,0 +1,32 @@
+package org.matsim.CustomEvModule.EVfleet;
+
+/**
+ * Dati statici (scheda tecnica) di un modello di veicolo elettrico.
+ *
+ * Le istanze sono condivise tramite il catalogo dell'EvFleetStore: alla registrazione
+ * tutti gli EvModel dello stesso modello puntano alla stessa EvSpec invece di copiare
+ * 21 campi per veicolo.
+ */
+public record EvSpec(
+        String manufacturer,
+        String model,
+        double nominalCapacityKwh,
+        double consumptionKwhPerKm,
+        String batteryType,
+        int    numberOfCells,
+        double torqueNm,
+        double topSpeedKmh,
+        double rangeKm,
+        double acceleration0To100,
+        double fastChargingPowerKwDc,
+        String fastChargePort,
+        double towingCapacityKg,
+        double cargoVolumeL,
+        int    seats,
+        String drivetrain,
+        String segment,
+        int    lengthMm,
+        int    widthMm,
+        int    heightMm,
+        String carBodyType
+) {}
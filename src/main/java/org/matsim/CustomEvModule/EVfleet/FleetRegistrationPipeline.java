@@ -0,0 +1,107 @@
+package org.matsim.CustomEvModule.EVfleet;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.CustomEvModule.EVfleet.factory.EvVehicleFactory;
+import org.matsim.CustomEvModule.EVfleet.strategy.plan.PlanGenerationStrategy;
+import org.matsim.CustomEvModule.Utils.SeedTree;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.vehicles.Vehicle;
+import org.matsim.vehicles.VehicleType;
+import org.matsim.vehicles.Vehicles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Registrazione parallela e deterministica di grandi flotte EV nello Scenario.
+ *
+ * Fasi:
+ * 1. sequenziale: Id MATSim (indici stabili), slot nello store, tipi di veicolo,
+ *    preparazione della strategia dei piani
+ * 2. parallela a chunk di dimensione fissa: veicoli MATSim e persone con piano,
+ *    ogni veicolo con un SplittableRandom derivato da (seed, indice nella flotta)
+ * 3. sequenziale: merge in Vehicles e Population nell'ordine della flotta
+ *
+ * Il piano di un veicolo dipende solo dal seed e dalla sua posizione:
+ * il risultato è identico con qualunque parallelismo e dimensione dei chunk.
+ */
+final class FleetRegistrationPipeline {
+
+    private static final Logger log = LogManager.getLogger(FleetRegistrationPipeline.class);
+
+    static final int CHUNK_SIZE = 2048;
+
+    private FleetRegistrationPipeline() {}
+
+    static void register(
+        List<EvModel> models,
+        Scenario scenario,
+        EvFleetStore store,
+        EvVehicleFactory vehicleFactory,
+        PlanGenerationStrategy planStrategy,
+        Set<String> chargerTypes,
+        long seed
+    ) {
+        int n = models.size();
+        long start = System.nanoTime();
+        Vehicles vehicles = scenario.getVehicles();
+
+        // 1. Fase sequenziale: Id, store, tipi
+        @SuppressWarnings("unchecked")
+        Id<Vehicle>[] qsimIds = new Id[n];
+        VehicleType[] types = new VehicleType[n];
+        for (int i = 0; i < n; i++) {
+            EvModel model = models.get(i);
+            qsimIds[i] = Id.create(model.getVehicleId().toString() + "_car", Vehicle.class);
+            Id.createPersonId(model.getVehicleId()); // indice dell'Id persona fissato in ordine
+            store.add(qsimIds[i], model);
+            types[i] = vehicleFactory.getOrCreateVehicleType(model, vehicles, chargerTypes);
+        }
+
+        List<Id<Vehicle>> vehicleIds = new ArrayList<>(n);
+        for (EvModel model : models) {
+            vehicleIds.add(model.getVehicleId());
+        }
+        planStrategy.prepare(vehicleIds, scenario);
+
+        // 2. Fase parallela: costruzione pura di veicoli e persone
+        Vehicle[] builtVehicles = new Vehicle[n];
+        Person[] builtPersons = new Person[n];
+        int chunks = (n + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            int from = chunk * CHUNK_SIZE;
+            int to = Math.min(n, from + CHUNK_SIZE);
+            for (int i = from; i < to; i++) {
+                EvModel model = models.get(i);
+                builtVehicles[i] = vehicleFactory.buildVehicle(qsimIds[i], types[i], model);
+                SplittableRandom rng = new SplittableRandom(vehicleSeed(seed, i));
+                builtPersons[i] = planStrategy.createPersonForVehicle(model.getVehicleId(), scenario, rng);
+            }
+        });
+
+        // 3. Merge deterministico nell'ordine della flotta
+        Population population = scenario.getPopulation();
+        for (int i = 0; i < n; i++) {
+            vehicles.addVehicle(builtVehicles[i]);
+            population.addPerson(builtPersons[i]);
+        }
+
+        log.info("[EvFleetManager] Registered {} EVs in {} chunks in {} ms",
+                n, chunks, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Seed del veicolo: mescolamento SplitMix64 di (seed, indice).
+     */
+    static long vehicleSeed(long seed, int index) {
+        return SeedTree.child(seed, index);
+    }
+}
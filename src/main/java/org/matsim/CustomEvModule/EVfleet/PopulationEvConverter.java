@@ -0,0 +1,420 @@
+package org.matsim.CustomEvModule.EVfleet;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.CustomEvModule.EVfleet.factory.EvVehicleFactory;
+import org.matsim.CustomEvModule.EVfleet.strategy.fleet.AliasTable;
+import org.matsim.CustomEvModule.EVfleet.strategy.fleet.EvCatalog;
+import org.matsim.CustomEvModule.EVfleet.strategy.fleet.FleetSampler;
+import org.matsim.CustomEvModule.EVfleet.strategy.fleet.SocDistribution;
+import org.matsim.CustomEvModule.Hub.ChargerSlotIndex;
+import org.matsim.CustomEvModule.Hub.ChargingHub;
+import org.matsim.CustomEvModule.Hub.HubSpatialIndex;
+import org.matsim.CustomEvModule.Utils.SeedTree;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.core.population.PersonUtils;
+import org.matsim.core.router.TripRouter;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.vehicles.Vehicle;
+import org.matsim.vehicles.VehicleType;
+import org.matsim.vehicles.VehicleUtils;
+import org.matsim.vehicles.Vehicles;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Conversione in EV di una quota degli automobilisti della popolazione caricata,
+ * alternativa alla flotta sintetica di EvFleetManager.generateFleet.
+ *
+ * Fasi:
+ * 1. parallela a chunk: idoneità (piano selezionato con un leg auto, sottopopolazione
+ *    "person" o assente) e chiave di strato di ogni persona
+ * 2. campionamento stratificato: quota round(share · idonei) ripartita tra gli strati col
+ *    metodo dei resti maggiori, estrazione senza ripetizione per strato (Fisher-Yates
+ *    parziale, RNG derivato da (seed, strato))
+ * 3. modelli dal catalogo e SoC iniziale con FleetSampler, Id veicolo = Id persona;
+ *    modelli equiprobabili come nella flotta sintetica (CsvFleetGenerationStrategy),
+ *    la strategia dei veicoli sceglie solo la forma della distribuzione del SoC
+ * 4. sequenziale: Id MATSim, slot nello store, tipi di veicolo
+ * 5. parallela a chunk: veicoli MATSim e sosta di ricarica nel piano selezionato
+ *    (ogni chunk modifica solo le proprie persone)
+ * 6. sequenziale: merge dei veicoli nell'ordine della popolazione
+ *
+ * Strati: attributo della persona stratifyBy; valori numerici (es. reddito) divisi in
+ * QUANTILE_STRATA classi di quantile, gli altri per valore. HOME_CELL usa la cella di
+ * STRATUM_CELL_M metri della prima attività, come approssimazione del quartiere.
+ * Le persone senza attributo formano uno strato a sé.
+ *
+ * L'Id MATSim del veicolo è personId_car, la convenzione dei veicoli auto dello scenario:
+ * un veicolo già presente con lo stesso Id viene sostituito dall'EV.
+ */
+final class PopulationEvConverter {
+
+    private static final Logger log = LogManager.getLogger(PopulationEvConverter.class);
+
+    static final String HOME_CELL = "home_cell";
+    static final String CHARGING_ACTIVITY = "car charging";
+
+    static final int CHUNK_SIZE = 2048;
+    static final int QUANTILE_STRATA = 10;
+    static final double STRATUM_CELL_M = 2_000.0;
+    static final double CHARGE_DURATION_S = 3600.0;
+
+    // Ramo dell'albero dei seed riservato alla scelta delle persone
+    private static final long SELECTION_STREAM = 0x45565348L;
+
+    // Strato delle persone senza attributo: distinto da qualunque valore
+    private static final Object MISSING = new Object();
+
+    private PopulationEvConverter() {}
+
+    /**
+     * @param share       quota degli automobilisti da convertire, in (0, 1]
+     * @param stratifyBy  attributo della persona per gli strati, HOME_CELL se null
+     * @param hubRadiusM  distanza massima tra destinazione e link dell'hub per la sosta di ricarica
+     * @return modelli EV delle persone convertite, nell'ordine della popolazione
+     */
+    static List<EvModel> convert(
+        Scenario scenario,
+        EvFleetStore store,
+        EvVehicleFactory vehicleFactory,
+        EvCatalog catalog,
+        SocDistribution soc,
+        Collection<ChargingHub> hubs,
+        double share,
+        String stratifyBy,
+        double hubRadiusM,
+        Set<String> chargerTypes,
+        long seed
+    ) {
+        long start = System.nanoTime();
+        Network network = scenario.getNetwork();
+        Person[] persons = scenario.getPopulation().getPersons().values().toArray(new Person[0]);
+        String attribute = stratifyBy == null || stratifyBy.isBlank() ? HOME_CELL : stratifyBy;
+
+        // 1. Idoneità e chiave di strato (null = non idonea)
+        Object[] strata = new Object[persons.length];
+        forEachChunk(persons.length, i -> {
+            if (isCarUser(persons[i])) {
+                strata[i] = stratumKey(persons[i], attribute, network);
+            }
+        });
+        quantizeNumeric(strata);
+
+        // 2. Campionamento stratificato
+        int[] selected = select(strata, share, SeedTree.child(seed, SELECTION_STREAM));
+        int n = selected.length;
+
+        // 3. Modelli e SoC: Id creati in sequenza, indici MATSim stabili
+        List<Id<Vehicle>> vehicleIds = new ArrayList<>(n);
+        for (int i : selected) {
+            vehicleIds.add(Id.createVehicleId(persons[i].getId().toString()));
+        }
+        List<EvModel> models = n == 0
+            ? new ArrayList<>()
+            : FleetSampler.sample(catalog, AliasTable.uniform(catalog.size()), soc, vehicleIds, seed);
+
+        // 4. Fase sequenziale: Id, store, tipi
+        Vehicles vehicles = scenario.getVehicles();
+        @SuppressWarnings("unchecked")
+        Id<Vehicle>[] qsimIds = new Id[n];
+        VehicleType[] types = new VehicleType[n];
+        for (int k = 0; k < n; k++) {
+            EvModel model = models.get(k);
+            qsimIds[k] = Id.create(model.getVehicleId().toString() + "_car", Vehicle.class);
+            store.add(qsimIds[k], model);
+            types[k] = vehicleFactory.getOrCreateVehicleType(model, vehicles, chargerTypes);
+        }
+
+        // 5. Fase parallela: veicoli, sosta di ricarica, veicolo auto della persona
+        HubSpatialIndex hubIndex = hubIndex(hubs, network);
+        PopulationFactory factory = scenario.getPopulation().getFactory();
+        Vehicle[] built = new Vehicle[n];
+        boolean[] withStop = new boolean[n];
+        forEachChunk(n, k -> {
+            Person person = persons[selected[k]];
+            built[k] = vehicleFactory.buildVehicle(qsimIds[k], types[k], models.get(k));
+            withStop[k] = insertChargingStop(person.getSelectedPlan(), hubIndex, hubRadiusM, network, factory);
+            // Le alternative non selezionate non hanno la sosta: restano fuori dal replanning
+            PersonUtils.removeUnselectedPlans(person);
+            assignCar(person, qsimIds[k]);
+        });
+
+        // 6. Merge deterministico nell'ordine della popolazione
+        int stops = 0;
+        for (int k = 0; k < n; k++) {
+            if (vehicles.getVehicles().containsKey(qsimIds[k])) {
+                vehicles.removeVehicle(qsimIds[k]);
+            }
+            vehicles.addVehicle(built[k]);
+            if (withStop[k]) stops++;
+        }
+
+        log.info("[PopulationEvConverter] {} automobilisti su {} convertiti in EV ({} strati per '{}', {} con sosta di ricarica) in {} ms",
+                n, countEligible(strata), countStrata(strata), attribute, stops, (System.nanoTime() - start) / 1_000_000);
+        return models;
+    }
+
+    /**
+     * Indice spaziale degli hub (HubSpatialIndex sulle sole unità, senza infrastruttura):
+     * la posizione dell'hub è il nodo di arrivo del suo link, come in HubManager.
+     */
+    static HubSpatialIndex hubIndex(Collection<ChargingHub> hubs, Network network) {
+        HubSpatialIndex index = new HubSpatialIndex(ChargerSlotIndex.build(hubs, null), network);
+        if (hubs.isEmpty()) {
+            log.warn("[PopulationEvConverter] Nessun hub sulla rete: i piani convertiti non avranno soste di ricarica");
+        }
+        return index;
+    }
+
+    /**
+     * Persona idonea: sottopopolazione "person" (o assente) e almeno un leg auto nel piano selezionato.
+     */
+    static boolean isCarUser(Person person) {
+        Object subpopulation = person.getAttributes().getAttribute("subpopulation");
+        if (subpopulation != null && !"person".equals(subpopulation)) return false;
+        Plan plan = person.getSelectedPlan();
+        if (plan == null) return false;
+        for (Leg leg : TripStructureUtils.getLegs(plan)) {
+            if (TransportMode.car.equals(leg.getMode())) return true;
+        }
+        return false;
+    }
+
+    private static Object stratumKey(Person person, String attribute, Network network) {
+        if (HOME_CELL.equals(attribute)) {
+            List<Activity> activities = TripStructureUtils.getActivities(person.getSelectedPlan(), TripStructureUtils.StageActivityHandling.ExcludeStageActivities);
+            Coord home = activities.isEmpty() ? null : coordOf(activities.get(0), network);
+            if (home == null) return MISSING;
+            long cx = (long) Math.floor(home.getX() / STRATUM_CELL_M);
+            long cy = (long) Math.floor(home.getY() / STRATUM_CELL_M);
+            return (cx << 32) ^ (cy & 0xFFFFFFFFL);
+        }
+        Object value = person.getAttributes().getAttribute(attribute);
+        if (value == null) return MISSING;
+        return value instanceof Number number ? (Object) number.doubleValue() : value.toString();
+    }
+
+    /**
+     * Sostituisce i valori numerici con la loro classe di quantile (QUANTILE_STRATA classi).
+     * Con HOME_CELL le chiavi sono Long e restano invariate.
+     */
+    static void quantizeNumeric(Object[] strata) {
+        int count = 0;
+        for (Object key : strata) {
+            if (key instanceof Double) count++;
+        }
+        if (count == 0) return;
+
+        double[] values = new double[count];
+        int v = 0;
+        for (Object key : strata) {
+            if (key instanceof Double d) values[v++] = d;
+        }
+        Arrays.sort(values);
+
+        // Soglie superiori delle prime QUANTILE_STRATA - 1 classi
+        double[] bounds = new double[QUANTILE_STRATA - 1];
+        for (int q = 1; q < QUANTILE_STRATA; q++) {
+            bounds[q - 1] = values[(int) ((long) q * count / QUANTILE_STRATA)];
+        }
+        for (int i = 0; i < strata.length; i++) {
+            if (strata[i] instanceof Double d) {
+                int q = 0;
+                while (q < bounds.length && d >= bounds[q]) q++;
+                strata[i] = "q" + q;
+            }
+        }
+    }
+
+    /**
+     * Campionamento stratificato senza ripetizione.
+     *
+     * @param strata chiave di strato per persona, null = non idonea
+     * @return indici delle persone scelte, in ordine crescente
+     */
+    static int[] select(Object[] strata, double share, long seed) {
+        // Strati nell'ordine di prima comparsa, membri in formato CSR
+        Map<Object, Integer> ordinals = new LinkedHashMap<>();
+        int[] stratumOf = new int[strata.length];
+        int eligible = 0;
+        for (int i = 0; i < strata.length; i++) {
+            if (strata[i] == null) {
+                stratumOf[i] = -1;
+                continue;
+            }
+            stratumOf[i] = ordinals.computeIfAbsent(strata[i], key -> ordinals.size());
+            eligible++;
+        }
+        int s = ordinals.size();
+        int[] start = new int[s + 1];
+        for (int o : stratumOf) {
+            if (o >= 0) start[o + 1]++;
+        }
+        for (int k = 0; k < s; k++) {
+            start[k + 1] += start[k];
+        }
+        int[] fill = start.clone();
+        int[] members = new int[eligible];
+        for (int i = 0; i < strata.length; i++) {
+            if (stratumOf[i] >= 0) members[fill[stratumOf[i]]++] = i;
+        }
+
+        // Quote: parte intera per strato, resto ai resti maggiori (a parità, strato precedente)
+        int target = (int) Math.round(share * eligible);
+        int[] quota = new int[s];
+        double[] remainder = new double[s];
+        int assigned = 0;
+        for (int k = 0; k < s; k++) {
+            double exact = share * (start[k + 1] - start[k]);
+            quota[k] = Math.min(start[k + 1] - start[k], (int) Math.floor(exact));
+            remainder[k] = exact - quota[k];
+            assigned += quota[k];
+        }
+        if (assigned < target) {
+            Integer[] order = new Integer[s];
+            for (int k = 0; k < s; k++) order[k] = k;
+            Arrays.sort(order, Comparator.comparingDouble((Integer k) -> -remainder[k]).thenComparingInt(k -> k));
+            for (int r = 0; r < s && assigned < target; r++) {
+                int k = order[r];
+                if (quota[k] < start[k + 1] - start[k]) {
+                    quota[k]++;
+                    assigned++;
+                }
+            }
+        }
+
+        // Estrazione per strato: ogni strato ha il suo RNG e il suo tratto di members
+        boolean[] chosen = new boolean[strata.length];
+        IntStream.range(0, s).parallel().forEach(k -> {
+            SplittableRandom rng = new SplittableRandom(SeedTree.child(seed, k));
+            int from = start[k];
+            int size = start[k + 1] - from;
+            for (int j = 0; j < quota[k]; j++) {
+                int pick = from + j + rng.nextInt(size - j);
+                int tmp = members[from + j];
+                members[from + j] = members[pick];
+                members[pick] = tmp;
+                chosen[members[from + j]] = true;
+            }
+        });
+
+        int[] selected = new int[assigned];
+        int next = 0;
+        for (int i = 0; i < chosen.length; i++) {
+            if (chosen[i]) selected[next++] = i;
+        }
+        return selected;
+    }
+
+    /**
+     * Inserisce una sosta "car charging" sul link dell'hub più vicino alla destinazione
+     * di un viaggio in auto: tra i viaggi in auto sceglie quello con la destinazione più
+     * vicina a un hub (entro radius, a parità il primo del piano) e lo sostituisce con
+     * auto → ricarica → auto. I nuovi leg sono senza percorso: li instrada il PrepareForSim.
+     *
+     * @return false se nessuna destinazione è entro radius da un hub
+     */
+    static boolean insertChargingStop(Plan plan, HubSpatialIndex hubs, double radius, Network network, PopulationFactory factory) {
+        TripStructureUtils.Trip best = null;
+        Id<Link> bestHub = null;
+        double bestDistance = Double.POSITIVE_INFINITY;
+
+        for (TripStructureUtils.Trip trip : TripStructureUtils.getTrips(plan)) {
+            boolean byCar = false;
+            for (Leg leg : trip.getLegsOnly()) {
+                if (TransportMode.car.equals(leg.getMode())) {
+                    byCar = true;
+                    break;
+                }
+            }
+            // I viaggi che terminano già in una sosta di ricarica restano invariati
+            if (!byCar || CHARGING_ACTIVITY.equals(trip.getDestinationActivity().getType())) continue;
+
+            Coord destination = coordOf(trip.getDestinationActivity(), network);
+            if (destination == null) continue;
+            List<Integer> near = hubs.withinRadius(destination.getX(), destination.getY(), radius);
+            if (near.isEmpty()) continue;
+            int hub = near.get(0);
+            double d = hubs.distance(hub, destination.getX(), destination.getY());
+            if (d < bestDistance) {
+                best = trip;
+                bestHub = hubs.slots().hub(hub).getLink();
+                bestDistance = d;
+            }
+        }
+        if (best == null) return false;
+
+        Activity charge = factory.createActivityFromLinkId(CHARGING_ACTIVITY, bestHub);
+        charge.setMaximumDuration(CHARGE_DURATION_S);
+        TripRouter.insertTrip(plan, best.getOriginActivity(), List.of(carLeg(factory), charge, carLeg(factory)), best.getDestinationActivity());
+        return true;
+    }
+
+    private static Leg carLeg(PopulationFactory factory) {
+        Leg leg = factory.createLeg(TransportMode.car);
+        TripStructureUtils.setRoutingMode(leg, TransportMode.car);
+        return leg;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void assignCar(Person person, Id<Vehicle> vehicleId) {
+        Map<String, Id<Vehicle>> mode2Vehicle;
+        try {
+            mode2Vehicle = new HashMap<>(VehicleUtils.getVehicleIds(person));
+        } catch (RuntimeException e) {
+            mode2Vehicle = new HashMap<>();
+        }
+        mode2Vehicle.put(TransportMode.car, vehicleId);
+        VehicleUtils.insertVehicleIdsIntoAttributes(person, mode2Vehicle);
+    }
+
+    private static Coord coordOf(Activity activity, Network network) {
+        if (activity.getCoord() != null) return activity.getCoord();
+        Link link = activity.getLinkId() != null ? network.getLinks().get(activity.getLinkId()) : null;
+        return link != null ? link.getCoord() : null;
+    }
+
+    private static void forEachChunk(int n, IntConsumer body) {
+        int chunks = (n + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            int to = Math.min(n, (chunk + 1) * CHUNK_SIZE);
+            for (int i = chunk * CHUNK_SIZE; i < to; i++) {
+                body.accept(i);
+            }
+        });
+    }
+
+    private static int countEligible(Object[] strata) {
+        int count = 0;
+        for (Object key : strata) {
+            if (key != null) count++;
+        }
+        return count;
+    }
+
+    private static int countStrata(Object[] strata) {
+        return (int) Arrays.stream(strata).filter(key -> key != null).distinct().count();
+    }
+}
@@ -0,0 +1,132 @@
+package org.matsim.CustomEvModule.EVfleet;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.CustomEvModule.EVfleet.strategy.fleet.SocDistribution;
+import org.matsim.CustomEvModule.Utils.SeedTree;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.utils.io.IOUtils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * SoC obiettivo di ricarica per persona, calcolato una volta al setup dello scenario.
+ *
+ * - attributo della persona ATTRIBUTE se presente, altrimenti estratto dalla distribuzione
+ *   (targetSocMean / targetSocStdDev) con RNG derivato da (seed, posizione nella flotta)
+ * - array denso indicizzato con Id<Person>.index(): l'handler di ricarica legge un double
+ * - esportato in OUTPUT_FILE nella cartella di output della run
+ */
+public final class SocTargetTable {
+
+    private static final Logger log = LogManager.getLogger(SocTargetTable.class);
+
+    public static final String ATTRIBUTE = "socTarget";
+    public static final String OUTPUT_FILE = "ev_soc_targets.csv";
+
+    private static final long SOC_TARGET_STREAM = 0x534F4354L;
+
+    private final double[] targets;         // NaN = persona senza obiettivo
+    private final List<Id<Person>> persons;
+    private final double defaultTarget;
+
+    private SocTargetTable(double[] targets, List<Id<Person>> persons, double defaultTarget) {
+        this.targets = targets;
+        this.persons = persons;
+        this.defaultTarget = defaultTarget;
+    }
+
+    /**
+     * @param population    popolazione con le persone della flotta già registrate
+     * @param drivers       persone della flotta, nell'ordine della flotta
+     * @param distribution  distribuzione dei target per le persone senza attributo
+     * @param seed          seed della flotta
+     * @param defaultTarget target per le persone fuori tabella
+     */
+    public static SocTargetTable build(Population population, List<Id<Person>> drivers,
+                                       SocDistribution distribution, long seed, double defaultTarget) {
+        int maxIndex = -1;
+        for (Id<Person> id : drivers) {
+            maxIndex = Math.max(maxIndex, id.index());
+        }
+        double[] targets = new double[maxIndex + 1];
+        Arrays.fill(targets, Double.NaN);
+
+        long streamSeed = SeedTree.child(seed, SOC_TARGET_STREAM);
+        int fromAttribute = 0;
+        for (int i = 0; i < drivers.size(); i++) {
+            Id<Person> id = drivers.get(i);
+            Person person = population.getPersons().get(id);
+            Double attribute = person != null ? readAttribute(person) : null;
+            if (attribute != null) {
+                targets[id.index()] = attribute;
+                fromAttribute++;
+            } else {
+                // Estrazione indipendente dall'ordine di costruzione dell'array
+                targets[id.index()] = distribution.sample(new SplittableRandom(SeedTree.child(streamSeed, i)));
+            }
+        }
+
+        log.info("[SocTargetTable] SoC target per {} persone ({} da attributo '{}')", drivers.size(), fromAttribute, ATTRIBUTE);
+        return new SocTargetTable(targets, List.copyOf(drivers), defaultTarget);
+    }
+
+    private static Double readAttribute(Person person) {
+        Object value = person.getAttributes().getAttribute(ATTRIBUTE);
+        if (value instanceof Number n) {
+            return clamp(n.doubleValue());
+        }
+        if (value instanceof String s && !s.isBlank()) {
+            try {
+                return clamp(Double.parseDouble(s.trim()));
+            } catch (NumberFormatException e) {
+                log.warn("[SocTargetTable] Attributo {} non numerico per {}: {}", ATTRIBUTE, person.getId(), s);
+            }
+        }
+        return null;
+    }
+
+    private static double clamp(double soc) {
+        return Math.max(0.0, Math.min(1.0, soc));
+    }
+
+    /**
+     * SoC obiettivo della persona, defaultTarget se non in tabella.
+     */
+    public double get(Id<Person> personId) {
+        int index = personId.index();
+        if (index >= targets.length) return defaultTarget;
+        double target = targets[index];
+        return Double.isNaN(target) ? defaultTarget : target;
+    }
+
+    public int size() {
+        return persons.size();
+    }
+
+    /**
+     * Scrive person_id;soc_target per le persone della flotta.
+     */
+    public void writeCsv(String path) {
+        try (BufferedWriter writer = IOUtils.getBufferedWriter(path)) {
+            writer.write("person_id;soc_target");
+            writer.newLine();
+            for (Id<Person> id : persons) {
+                writer.write(id.toString());
+                writer.write(';');
+                writer.write(Double.toString(get(id)));
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Errore scrittura SoC target " + path, e);
+        }
+        log.info("[SocTargetTable] SoC target esportati in {}", path);
+    }
+}
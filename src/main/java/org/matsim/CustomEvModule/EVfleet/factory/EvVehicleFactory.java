@@ -13,6 +13,20 @@ public class EvVehicleFactory {
         EvModel model, 
         Vehicles vehicles,  
         Set<String> chargerTypes
+    ) {
+        VehicleType type = getOrCreateVehicleType(model, vehicles, chargerTypes);
+        Id<Vehicle> vId = Id.create(model.getVehicleId().toString() + "_car", Vehicle.class);
+        vehicles.addVehicle(buildVehicle(vId, type, model));
+    }
+
+    /**
+     * Tipo di veicolo del modello, creato e registrato al primo uso.
+     * Modifica Vehicles: da chiamare in modo sequenziale.
+     */
+    public VehicleType getOrCreateVehicleType(
+        EvModel model,
+        Vehicles vehicles,
+        Set<String> chargerTypes
     ) {
         Id<VehicleType> typeId = Id.create(model.getModel(), VehicleType.class);
         VehicleType type = vehicles.getVehicleTypes().get(typeId);
@@ -20,12 +34,17 @@ public class EvVehicleFactory {
             type = createVehicleType(typeId, model, chargerTypes);
             vehicles.addVehicleType(type);
         }
+        return type;
+    }
 
-        Id<Vehicle> vId = Id.create(model.getVehicleId().toString() + "_car", Vehicle.class);
+    /**
+     * Costruisce il veicolo MATSim senza registrarlo: nessuno stato condiviso,
+     * può essere chiamato in parallelo.
+     */
+    public Vehicle buildVehicle(Id<Vehicle> vId, VehicleType type, EvModel model) {
         Vehicle vehicle = VehicleUtils.createVehicle(vId, type);
-
         vehicle.getAttributes().putAttribute(ElectricFleetUtils.INITIAL_SOC, model.getCurrentSoc());
-        vehicles.addVehicle(vehicle);
+        return vehicle;
     }
 
     private VehicleType createVehicleType(
@@ -0,0 +1,101 @@
+package org.matsim.CustomEvModule.EVfleet.strategy.fleet;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Campionamento discreto pesato in O(1) con il metodo alias di Vose.
+ *
+ * Costruzione O(n); ogni estrazione usa un indice uniforme e un confronto
+ * con la probabilità della colonna. Immutabile, condivisibile tra thread.
+ */
+public final class AliasTable {
+
+    private final double[] prob;
+    private final int[] alias;
+
+    private AliasTable(double[] prob, int[] alias) {
+        this.prob = prob;
+        this.alias = alias;
+    }
+
+    /**
+     * Tabella con pesi uguali per n elementi.
+     */
+    public static AliasTable uniform(int n) {
+        double[] weights = new double[n];
+        Arrays.fill(weights, 1.0);
+        return of(weights);
+    }
+
+    /**
+     * @param weights pesi non negativi, non tutti nulli (non normalizzati)
+     */
+    public static AliasTable of(double[] weights) {
+        int n = weights.length;
+        if (n == 0) {
+            throw new IllegalArgumentException("AliasTable richiede almeno un peso");
+        }
+
+        double sum = 0.0;
+        for (double w : weights) {
+            if (!(w >= 0.0) || Double.isInfinite(w)) {
+                throw new IllegalArgumentException("Peso non valido: " + w);
+            }
+            sum += w;
+        }
+        if (sum <= 0.0) {
+            throw new IllegalArgumentException("La somma dei pesi deve essere > 0");
+        }
+
+        double[] prob = new double[n];
+        int[] alias = new int[n];
+        double[] scaled = new double[n];
+
+        // Pile di indici "piccoli" (< 1) e "grandi" (>= 1) su array primitivi
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int ns = 0;
+        int nl = 0;
+
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / sum;
+            if (scaled[i] < 1.0) small[ns++] = i;
+            else large[nl++] = i;
+        }
+
+        while (ns > 0 && nl > 0) {
+            int s = small[--ns];
+            int l = large[--nl];
+            prob[s] = scaled[s];
+            alias[s] = l;
+            scaled[l] = (scaled[l] + scaled[s]) - 1.0;
+            if (scaled[l] < 1.0) small[ns++] = l;
+            else large[nl++] = l;
+        }
+        // Residui numerici: colonne piene
+        while (nl > 0) {
+            int l = large[--nl];
+            prob[l] = 1.0;
+            alias[l] = l;
+        }
+        while (ns > 0) {
+            int s = small[--ns];
+            prob[s] = 1.0;
+            alias[s] = s;
+        }
+        return new AliasTable(prob, alias);
+    }
+
+    /**
+     * Indice estratto secondo i pesi.
+     */
+    public int sample(SplittableRandom rng) {
+        int column = rng.nextInt(prob.length);
+        return rng.nextDouble() < prob[column] ? column : alias[column];
+    }
+
+    public int size() {
+        return prob.length;
+    }
+}
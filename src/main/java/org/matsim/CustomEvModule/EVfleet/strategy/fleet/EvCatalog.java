@@ -0,0 +1,346 @@
+package org.matsim.CustomEvModule.EVfleet.strategy.fleet;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.CustomEvModule.EVfleet.EvCsvEntry;
+import org.springframework.core.io.Resource;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Catalogo immutabile dei modelli EV letto da ev-dataset.csv.
+ *
+ * - parsing una sola volta per checksum (SHA-256) del contenuto della risorsa,
+ *   poi condiviso in memoria tra tutte le richieste
+ * - parsing dei numeri senza regex
+ * - persistenza opzionale in un file binario compatto letto con memory mapping,
+ *   così un server riavviato non riesegue il parsing del CSV.
+ *   Directory da -Dev.catalog.cacheDir=...; se assente la cache è solo in memoria.
+ */
+public final class EvCatalog {
+
+    private static final Logger log = LogManager.getLogger(EvCatalog.class);
+
+    public static final String CACHE_DIR_PROPERTY = "ev.catalog.cacheDir";
+
+    // Formato binario: MAGIC, FORMAT_VERSION, checksum, count, record
+    private static final int MAGIC = 0x45564331; // "EVC1"
+    static final int FORMAT_VERSION = 1;
+
+    private static final ConcurrentHashMap<String, EvCatalog> CACHE = new ConcurrentHashMap<>();
+
+    private final String checksum;
+    private final List<EvCsvEntry> entries;
+
+    private EvCatalog(String checksum, List<EvCsvEntry> entries) {
+        this.checksum = checksum;
+        this.entries = List.copyOf(entries);
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public List<EvCsvEntry> getEntries() {
+        return entries;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    // ================================================================
+    // ================= CARICAMENTO =================================
+    // ================================================================
+
+    /**
+     * Catalogo della risorsa: dalla cache in memoria, dal file binario o dal CSV.
+     */
+    public static EvCatalog load(Resource csvResource) throws IOException {
+        byte[] content;
+        try (InputStream in = csvResource.getInputStream()) {
+            content = in.readAllBytes();
+        }
+        String checksum = sha256(content);
+
+        EvCatalog cached = CACHE.get(checksum);
+        if (cached != null) {
+            return cached;
+        }
+        // computeIfAbsent: richieste concorrenti sulla stessa risorsa eseguono un solo parsing
+        try {
+            return CACHE.computeIfAbsent(checksum, key -> loadUncached(key, content));
+        } catch (UncheckedCatalogException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static EvCatalog loadUncached(String checksum, byte[] content) {
+        try {
+            Path binary = binaryPath(checksum);
+            if (binary != null && Files.isRegularFile(binary)) {
+                EvCatalog catalog = readBinary(binary, checksum);
+                if (catalog != null) {
+                    log.info("[EvCatalog] Catalogo {} caricato da {} ({} modelli)", shortChecksum(checksum), binary, catalog.size());
+                    return catalog;
+                }
+            }
+
+            EvCatalog catalog = new EvCatalog(checksum, parseCsv(content));
+            log.info("[EvCatalog] Catalogo {} letto dal CSV ({} modelli)", shortChecksum(checksum), catalog.size());
+
+            if (binary != null) {
+                writeBinary(binary, catalog);
+            }
+            return catalog;
+        } catch (IOException e) {
+            throw new UncheckedCatalogException(e);
+        }
+    }
+
+    private static Path binaryPath(String checksum) {
+        String dir = System.getProperty(CACHE_DIR_PROPERTY);
+        if (dir == null || dir.isBlank()) return null;
+        return Paths.get(dir, "ev-catalog-" + checksum + ".bin");
+    }
+
+    private static String shortChecksum(String checksum) {
+        return checksum.substring(0, 12);
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 non disponibile", e);
+        }
+    }
+
+    /** IOException trasportata fuori da computeIfAbsent */
+    private static final class UncheckedCatalogException extends RuntimeException {
+        UncheckedCatalogException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+
+    // ================================================================
+    // ================= PARSER CSV ================================
+    // ================================================================
+
+    static List<EvCsvEntry> parseCsv(byte[] content) throws IOException {
+        List<EvCsvEntry> entries = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8))) {
+            reader.readLine(); // salta intestazione
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) continue;
+                EvCsvEntry entry = parseCsvLine(line);
+                if (entry != null) entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    private static EvCsvEntry parseCsvLine(String line) {
+        String[] t = line.split(",", -1);
+
+        if (t.length < 21) {
+            log.warn("[EvCatalog] Riga CSV malformata, ignorata: {}", line);
+            return null;
+        }
+
+        try {
+            return new EvCsvEntry(
+                    t[0].trim(), t[1].trim(), parseDouble(t[2]), parseDouble(t[3]),
+                    t[4].trim(), parseInt(t[5]), parseDouble(t[6]), parseDouble(t[7]),
+                    parseDouble(t[8]), parseDouble(t[9]), parseDouble(t[10]), t[11].trim(),
+                    parseDouble(t[12]), parseDouble(t[13]), parseInt(t[14]), t[15].trim(),
+                    t[16].trim(), parseInt(t[17]), parseInt(t[18]), parseInt(t[19]), t[20].trim()
+            );
+        } catch (Exception ex) {
+            log.warn("[EvCatalog] Errore parsing riga CSV: {}", line, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Tiene solo cifre (e il punto se ammesso), come il precedente replaceAll("[^0-9.]", "").
+     */
+    private static String keepDigits(String s, boolean allowDot) {
+        StringBuilder sb = null;
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            char ch = s.charAt(i);
+            boolean keep = (ch >= '0' && ch <= '9') || (allowDot && ch == '.');
+            if (!keep && sb == null) {
+                sb = new StringBuilder(n);
+                sb.append(s, 0, i);
+            } else if (keep && sb != null) {
+                sb.append(ch);
+            }
+        }
+        return sb == null ? s : sb.toString();
+    }
+
+    static double parseDouble(String s) {
+        if (s == null) return 0.0;
+        String cleaned = keepDigits(s, true);
+        if (cleaned.isEmpty()) return 0.0;
+        try {
+            return Double.parseDouble(cleaned);
+        } catch (NumberFormatException e) {
+            log.warn("[EvCatalog] Impossibile parsare in Double: {} (tentativo pulito: {})", s, cleaned);
+            return 0.0;
+        }
+    }
+
+    static int parseInt(String s) {
+        if (s == null) return 0;
+        String cleaned = keepDigits(s, false);
+        if (cleaned.isEmpty()) return 0;
+        try {
+            return Integer.parseInt(cleaned);
+        } catch (NumberFormatException e) {
+            log.warn("[EvCatalog] Impossibile parsare in Integer: {} (tentativo pulito: {})", s, cleaned);
+            return 0;
+        }
+    }
+
+    // ================================================================
+    // ================= FORMATO BINARIO =============================
+    // ================================================================
+
+    static void writeBinary(Path file, EvCatalog catalog) {
+        try {
+            Files.createDirectories(file.getParent());
+            ByteBuffer buf = ByteBuffer.allocate(estimateSize(catalog));
+            buf.putInt(MAGIC);
+            buf.putInt(FORMAT_VERSION);
+            putString(buf, catalog.checksum);
+            buf.putInt(catalog.entries.size());
+            for (EvCsvEntry e : catalog.entries) {
+                putString(buf, e.brand());
+                putString(buf, e.model());
+                buf.putDouble(e.topSpeedKmh());
+                buf.putDouble(e.batteryCapacityKWh());
+                putString(buf, e.batteryType());
+                buf.putInt(e.numberOfCells());
+                buf.putDouble(e.torqueNm());
+                buf.putDouble(e.efficiencyWhPerKm());
+                buf.putDouble(e.rangeKm());
+                buf.putDouble(e.acceleration0To100());
+                buf.putDouble(e.fastChargingPowerKwDc());
+                putString(buf, e.fastChargePort());
+                buf.putDouble(e.towingCapacityKg());
+                buf.putDouble(e.cargoVolumeL());
+                buf.putInt(e.seats());
+                putString(buf, e.drivetrain());
+                putString(buf, e.segment());
+                buf.putInt(e.lengthMm());
+                buf.putInt(e.widthMm());
+                buf.putInt(e.heightMm());
+                putString(buf, e.carBodyType());
+            }
+            buf.flip();
+
+            // Scrittura atomica: file temporaneo + rename
+            Path tmp = Files.createTempFile(file.getParent(), "ev-catalog-", ".tmp");
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buf.hasRemaining()) ch.write(buf);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("[EvCatalog] Catalogo binario salvato in {}", file);
+        } catch (IOException | RuntimeException e) {
+            // La cache su disco è un'ottimizzazione: in caso di errore si prosegue
+            log.warn("[EvCatalog] Impossibile salvare il catalogo binario {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * @return catalogo o null se il file non è valido (formato o checksum diversi)
+     */
+    static EvCatalog readBinary(Path file, String expectedChecksum) {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (buf.getInt() != MAGIC || buf.getInt() != FORMAT_VERSION) {
+                return null;
+            }
+            if (!expectedChecksum.equals(getString(buf))) {
+                return null;
+            }
+            int count = buf.getInt();
+            List<EvCsvEntry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                entries.add(new EvCsvEntry(
+                        getString(buf), getString(buf), buf.getDouble(), buf.getDouble(),
+                        getString(buf), buf.getInt(), buf.getDouble(), buf.getDouble(),
+                        buf.getDouble(), buf.getDouble(), buf.getDouble(), getString(buf),
+                        buf.getDouble(), buf.getDouble(), buf.getInt(), getString(buf),
+                        getString(buf), buf.getInt(), buf.getInt(), buf.getInt(), getString(buf)
+                ));
+            }
+            return new EvCatalog(expectedChecksum, entries);
+        } catch (IOException | RuntimeException e) {
+            log.warn("[EvCatalog] Catalogo binario non leggibile {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    private static int estimateSize(EvCatalog catalog) {
+        int size = 16 + 2 + catalog.checksum.length();
+        for (EvCsvEntry e : catalog.entries) {
+            size += 10 * 8 + 5 * 4;
+            size += strSize(e.brand()) + strSize(e.model()) + strSize(e.batteryType())
+                  + strSize(e.fastChargePort()) + strSize(e.drivetrain()) + strSize(e.segment())
+                  + strSize(e.carBodyType());
+        }
+        return size;
+    }
+
+    private static int strSize(String s) {
+        return 2 + s.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static void putString(ByteBuffer buf, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        buf.putShort((short) bytes.length);
+        buf.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buf) {
+        int len = buf.getShort() & 0xFFFF;
+        byte[] bytes = new byte[len];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
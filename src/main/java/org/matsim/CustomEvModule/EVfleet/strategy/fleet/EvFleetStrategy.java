@@ -7,10 +7,14 @@ import java.util.List;
 
 public interface EvFleetStrategy {
 
+    /**
+     * @param seed seed del campionamento: a parità di seed la flotta generata è identica
+     */
     List<EvModel> generateFleet(
                             Resource csvPath, 
                             int n_veic, 
                             double socMean, 
-                            double socStdDev
+                            double socStdDev,
+                            long seed
     );
 }
@@ -0,0 +1,126 @@
+package org.matsim.CustomEvModule.EVfleet.strategy.fleet;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.CustomEvModule.EVfleet.EvCsvEntry;
+import org.matsim.CustomEvModule.EVfleet.EvModel;
+import org.matsim.CustomEvModule.Utils.SeedTree;
+import org.matsim.api.core.v01.Id;
+import org.matsim.vehicles.Vehicle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Motore di campionamento della flotta: modello dal catalogo (tabella alias sui pesi)
+ * e SoC iniziale dalla distribuzione scelta.
+ *
+ * La flotta è divisa in chunk di dimensione fissa; il chunk k usa un SplittableRandom
+ * con seed SeedTree.child(seed di campionamento, k). Il risultato dipende solo dal seed,
+ * non dal numero di thread.
+ */
+public final class FleetSampler {
+
+    private static final Logger log = LogManager.getLogger(FleetSampler.class);
+
+    static final int CHUNK_SIZE = 4096;
+
+    // Ramo dell'albero dei seed riservato al campionamento (distinto dalla registrazione)
+    private static final long SAMPLING_STREAM = 0x53414D504CL;
+
+    private FleetSampler() {}
+
+    /**
+     * Campiona count veicoli con modelli equiprobabili.
+     */
+    public static List<EvModel> sample(EvCatalog catalog, SocDistribution soc, int count, long seed) {
+        return sample(catalog, AliasTable.uniform(catalog.size()), soc, count, seed);
+    }
+
+    /**
+     * @param catalog     catalogo dei modelli
+     * @param modelTable  tabella alias sugli indici del catalogo
+     * @param soc         distribuzione del SoC iniziale
+     * @param count       numero di veicoli (Id EV_0 ... EV_{count-1})
+     * @param seed        seed radice
+     */
+    public static List<EvModel> sample(EvCatalog catalog, AliasTable modelTable, SocDistribution soc, int count, long seed) {
+        // Id creati in sequenza: indici MATSim stabili
+        List<Id<Vehicle>> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(Id.createVehicleId("EV_" + i));
+        }
+        return sample(catalog, modelTable, soc, ids, seed);
+    }
+
+    /**
+     * Campiona un veicolo per ciascun Id dato (es. persone convertite in EV).
+     * Il modello del veicolo i dipende solo dal seed e dalla posizione i nella lista.
+     *
+     * @param ids Id dei veicoli, già creati dal chiamante in ordine stabile
+     */
+    public static List<EvModel> sample(EvCatalog catalog, AliasTable modelTable, SocDistribution soc, List<Id<Vehicle>> ids, long seed) {
+        if (catalog.isEmpty())
+            throw new IllegalStateException("CSV EV non caricato!");
+        if (modelTable.size() != catalog.size())
+            throw new IllegalArgumentException("La tabella alias non corrisponde al catalogo");
+
+        long start = System.nanoTime();
+        List<EvCsvEntry> entries = catalog.getEntries();
+        int count = ids.size();
+
+        EvModel[] models = new EvModel[count];
+        long samplingSeed = SeedTree.child(seed, SAMPLING_STREAM);
+        int chunks = (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            SplittableRandom rng = new SplittableRandom(SeedTree.child(samplingSeed, chunk));
+            int from = chunk * CHUNK_SIZE;
+            int to = Math.min(count, from + CHUNK_SIZE);
+            for (int i = from; i < to; i++) {
+                EvCsvEntry entry = entries.get(modelTable.sample(rng));
+                models[i] = toEvModel(ids.get(i), entry, soc.sample(rng));
+            }
+        });
+
+        log.info("[FleetSampler] Sampled {} EVs in {} chunks in {} ms",
+                count, chunks, (System.nanoTime() - start) / 1_000_000);
+        return new ArrayList<>(Arrays.asList(models));
+    }
+
+    static EvModel toEvModel(Id<Vehicle> vehicleId, EvCsvEntry entry, double soc) {
+        EvModel evModel = new EvModel(
+                vehicleId,
+                entry.brand(),
+                entry.model(),
+                entry.batteryCapacityKWh(),
+                entry.efficiencyWhPerKm() / 1000.0,
+                entry.batteryType(),
+                entry.numberOfCells(),
+                entry.torqueNm(),
+                entry.topSpeedKmh(),
+                entry.rangeKm(),
+                entry.acceleration0To100(),
+                entry.fastChargingPowerKwDc(),
+                entry.fastChargePort(),
+                entry.towingCapacityKg(),
+                entry.cargoVolumeL(),
+                entry.seats(),
+                entry.drivetrain(),
+                entry.segment(),
+                entry.lengthMm(),
+                entry.widthMm(),
+                entry.heightMm(),
+                entry.carBodyType()
+        );
+
+        evModel.updateDynamicState(
+                soc,
+                evModel.getNominalCapacityKwh() * 3.6e6 * soc
+        );
+        return evModel;
+    }
+}
@@ -0,0 +1,94 @@
+package org.matsim.CustomEvModule.EVfleet.strategy.fleet;
+
+import org.apache.commons.statistics.distribution.TruncatedNormalDistribution;
+
+import java.util.SplittableRandom;
+
+/**
+ * Distribuzione del SoC iniziale dei veicoli generati, sempre in [0, 1].
+ *
+ * Ogni estrazione consuma un numero fisso di valori dall'RNG: con lo stesso
+ * seed la sequenza dei SoC è identica.
+ */
+@FunctionalInterface
+public interface SocDistribution {
+
+    /**
+     * Forma della distribuzione parametrizzata da media e deviazione standard.
+     */
+    enum Shape {
+        NORMAL,     // normale troncata su [0, 1]
+        UNIFORM     // uniforme con gli stessi momenti
+    }
+
+    double sample(SplittableRandom rng);
+
+    static SocDistribution fromMoments(Shape shape, double mean, double stdDev) {
+        return switch (shape) {
+            case NORMAL  -> truncatedNormal(mean, stdDev);
+            case UNIFORM -> uniformFromMoments(mean, stdDev);
+        };
+    }
+
+    /**
+     * Valore costante (deviazione standard nulla).
+     */
+    static SocDistribution constant(double soc) {
+        double value = clamp(soc);
+        return rng -> value;
+    }
+
+    /**
+     * Normale(mean, stdDev) troncata su [0, 1], per inversione della CDF.
+     * Sostituisce il vecchio nextGaussian con clamp, che accumulava massa su 0 e 1.
+     */
+    static SocDistribution truncatedNormal(double mean, double stdDev) {
+        if (stdDev <= 0.0) {
+            return constant(mean);
+        }
+        TruncatedNormalDistribution dist = TruncatedNormalDistribution.of(mean, stdDev, 0.0, 1.0);
+        return rng -> clamp(dist.inverseCumulativeProbability(rng.nextDouble()));
+    }
+
+    /**
+     * Uniforme su [lower, upper] ∩ [0, 1].
+     */
+    static SocDistribution uniform(double lower, double upper) {
+        double lo = clamp(Math.min(lower, upper));
+        double hi = clamp(Math.max(lower, upper));
+        if (hi == lo) {
+            return constant(lo);
+        }
+        return rng -> lo + rng.nextDouble() * (hi - lo);
+    }
+
+    /**
+     * Uniforme con media e deviazione standard date: semiampiezza stdDev·√3.
+     */
+    static SocDistribution uniformFromMoments(double mean, double stdDev) {
+        double halfWidth = stdDev * Math.sqrt(3.0);
+        return uniform(mean - halfWidth, mean + halfWidth);
+    }
+
+    /**
+     * Distribuzione empirica: ricampionamento pesato dei valori osservati (tabella alias).
+     *
+     * @param values  SoC osservati, saturati in [0, 1]
+     * @param weights pesi dei valori, null per pesi uguali
+     */
+    static SocDistribution empirical(double[] values, double[] weights) {
+        if (weights != null && weights.length != values.length) {
+            throw new IllegalArgumentException("values e weights devono avere la stessa lunghezza");
+        }
+        double[] socs = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            socs[i] = clamp(values[i]);
+        }
+        AliasTable table = weights != null ? AliasTable.of(weights) : AliasTable.uniform(values.length);
+        return rng -> socs[table.sample(rng)];
+    }
+
+    private static double clamp(double soc) {
+        return Math.max(0.0, Math.min(1.0, soc));
+    }
+}
@@ -0,0 +1,237 @@
+package org.matsim.CustomEvModule.EVfleet.strategy.plan;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Indice denso dei link percorribili in auto, costruito una volta per rete.
+ *
+ * - estrazione uniforme di un link in O(1)
+ * - griglia regolare opzionale (celle in formato CSR) per estrarre un link a distanza
+ *   compresa in [minDist, maxDist] da un punto senza scorrere la rete
+ *
+ * Immutabile dopo la costruzione: condivisibile tra i thread della generazione piani.
+ */
+public final class CarLinkIndex {
+
+    private static final Logger log = LogManager.getLogger(CarLinkIndex.class);
+
+    // Tentativi di estrazione casuale nella corona prima della scansione esatta delle celle
+    private static final int MAX_RING_ATTEMPTS = 64;
+
+    private final Id<Link>[] linkIds;
+    private final BitSet byIdIndex;     // Id.index() dei link auto
+    private final double[] x;
+    private final double[] y;
+
+    // Griglia: null se non costruita
+    private final double cellSize;
+    private final double minX;
+    private final double minY;
+    private final int cols;
+    private final int rows;
+    private final int[] cellStart;  // cols*rows + 1 offset
+    private final int[] cellLinks;  // indici dei link ordinati per cella
+
+    @SuppressWarnings("unchecked")
+    private CarLinkIndex(List<Link> links, double cellSize) {
+        int n = links.size();
+        this.linkIds = new Id[n];
+        this.x = new double[n];
+        this.y = new double[n];
+        this.byIdIndex = new BitSet();
+
+        double mnX = Double.POSITIVE_INFINITY, mnY = Double.POSITIVE_INFINITY;
+        double mxX = Double.NEGATIVE_INFINITY, mxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            Link link = links.get(i);
+            Coord c = link.getCoord();
+            linkIds[i] = link.getId();
+            byIdIndex.set(link.getId().index());
+            x[i] = c.getX();
+            y[i] = c.getY();
+            mnX = Math.min(mnX, x[i]);
+            mnY = Math.min(mnY, y[i]);
+            mxX = Math.max(mxX, x[i]);
+            mxY = Math.max(mxY, y[i]);
+        }
+
+        if (cellSize > 0 && n > 0) {
+            this.cellSize = cellSize;
+            this.minX = mnX;
+            this.minY = mnY;
+            this.cols = (int) ((mxX - mnX) / cellSize) + 1;
+            this.rows = (int) ((mxY - mnY) / cellSize) + 1;
+
+            // Conteggio per cella, prefix sum, riempimento
+            int cells = cols * rows;
+            int[] start = new int[cells + 1];
+            int[] cellOf = new int[n];
+            for (int i = 0; i < n; i++) {
+                cellOf[i] = cell(x[i], y[i]);
+                start[cellOf[i] + 1]++;
+            }
+            for (int c = 0; c < cells; c++) {
+                start[c + 1] += start[c];
+            }
+            int[] fill = start.clone();
+            int[] members = new int[n];
+            for (int i = 0; i < n; i++) {
+                members[fill[cellOf[i]]++] = i;
+            }
+            this.cellStart = start;
+            this.cellLinks = members;
+        } else {
+            this.cellSize = 0;
+            this.minX = 0;
+            this.minY = 0;
+            this.cols = 0;
+            this.rows = 0;
+            this.cellStart = null;
+            this.cellLinks = null;
+        }
+    }
+
+    /**
+     * @param network  rete MATSim
+     * @param cellSize lato della cella della griglia in metri, <= 0 per nessuna griglia
+     */
+    public static CarLinkIndex build(Network network, double cellSize) {
+        List<Link> carLinks = new ArrayList<>();
+        for (Link link : network.getLinks().values()) {
+            if (link.getAllowedModes().contains(TransportMode.car)) {
+                carLinks.add(link);
+            }
+        }
+        if (carLinks.isEmpty()) {
+            throw new IllegalStateException("La rete non contiene link percorribili in auto");
+        }
+        CarLinkIndex index = new CarLinkIndex(carLinks, cellSize);
+        log.info("[CarLinkIndex] {} link auto indicizzati, griglia {}x{}", index.size(), index.cols, index.rows);
+        return index;
+    }
+
+    private int cell(double px, double py) {
+        int cx = (int) ((px - minX) / cellSize);
+        int cy = (int) ((py - minY) / cellSize);
+        return cy * cols + cx;
+    }
+
+    public int size() {
+        return linkIds.length;
+    }
+
+    public boolean hasGrid() {
+        return cellStart != null;
+    }
+
+    /**
+     * true se il link esiste ed è percorribile in auto.
+     */
+    public boolean contains(Id<Link> linkId) {
+        return linkId != null && byIdIndex.get(linkId.index());
+    }
+
+    public Id<Link> linkId(int i) {
+        return linkIds[i];
+    }
+
+    public double x(int i) {
+        return x[i];
+    }
+
+    public double y(int i) {
+        return y[i];
+    }
+
+    /**
+     * Indice di un link estratto uniformemente.
+     */
+    public int random(SplittableRandom rng) {
+        return rng.nextInt(linkIds.length);
+    }
+
+    /**
+     * Indice di un link a distanza in [minDist, maxDist] dal punto (px, py).
+     *
+     * Con la griglia: punto casuale nel quadrato di lato 2·maxDist, link casuale della
+     * cella che lo contiene, accettato se nella corona. Dopo MAX_RING_ATTEMPTS tentativi
+     * scandisce le celle non vuote che intersecano la corona (senza griglia: tutti i link)
+     * ed estrae uniformemente tra i link nella corona.
+     *
+     * @return indice del link, -1 se nessun link auto cade nella corona
+     */
+    public int randomWithin(double px, double py, double minDist, double maxDist, SplittableRandom rng) {
+        double min2 = minDist * minDist;
+        double max2 = maxDist * maxDist;
+        if (hasGrid()) {
+            for (int attempt = 0; attempt < MAX_RING_ATTEMPTS; attempt++) {
+                double qx = px + (rng.nextDouble() * 2.0 - 1.0) * maxDist;
+                double qy = py + (rng.nextDouble() * 2.0 - 1.0) * maxDist;
+                int cx = (int) ((qx - minX) / cellSize);
+                int cy = (int) ((qy - minY) / cellSize);
+                if (qx < minX || qy < minY || cx >= cols || cy >= rows) continue;
+
+                int c = cy * cols + cx;
+                int from = cellStart[c];
+                int count = cellStart[c + 1] - from;
+                if (count == 0) continue;
+
+                int candidate = cellLinks[from + rng.nextInt(count)];
+                double dx = x[candidate] - px;
+                double dy = y[candidate] - py;
+                double d2 = dx * dx + dy * dy;
+                if (d2 >= min2 && d2 <= max2) {
+                    return candidate;
+                }
+            }
+        }
+        return scanRing(px, py, min2, max2, maxDist, rng);
+    }
+
+    /**
+     * Estrazione uniforme (reservoir sampling) tra i link nella corona, scorrendo
+     * solo le celle nel quadrato di lato 2·maxDist, o tutti i link senza griglia.
+     */
+    private int scanRing(double px, double py, double min2, double max2, double maxDist, SplittableRandom rng) {
+        int chosen = -1;
+        int seen = 0;
+        if (!hasGrid()) {
+            for (int i = 0; i < linkIds.length; i++) {
+                if (inRing(i, px, py, min2, max2) && rng.nextInt(++seen) == 0) chosen = i;
+            }
+            return chosen;
+        }
+        int cx0 = Math.max(0, (int) Math.floor((px - maxDist - minX) / cellSize));
+        int cy0 = Math.max(0, (int) Math.floor((py - maxDist - minY) / cellSize));
+        int cx1 = Math.min(cols - 1, (int) Math.floor((px + maxDist - minX) / cellSize));
+        int cy1 = Math.min(rows - 1, (int) Math.floor((py + maxDist - minY) / cellSize));
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                int c = cy * cols + cx;
+                for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+                    int i = cellLinks[k];
+                    if (inRing(i, px, py, min2, max2) && rng.nextInt(++seen) == 0) chosen = i;
+                }
+            }
+        }
+        return chosen;
+    }
+
+    private boolean inRing(int i, double px, double py, double min2, double max2) {
+        double dx = x[i] - px;
+        double dy = y[i] - py;
+        double d2 = dx * dx + dy * dy;
+        return d2 >= min2 && d2 <= max2;
+    }
+}
@@ -0,0 +1,317 @@
+package org.matsim.CustomEvModule.EVfleet.strategy.plan;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.*;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.core.utils.misc.Time;
+import org.matsim.vehicles.Vehicle;
+import org.matsim.vehicles.VehicleUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * Piani letti da un CSV (anche .csv.gz) di catene di attività giornaliere per veicolo.
+ *
+ * Formato: intestazione con le colonne vehicle_id, activity, link_id, end_time, max_duration
+ * (separatore ',' o ';'), una riga per attività nell'ordine della giornata. I tempi sono
+ * in secondi o hh:mm:ss, vuoti se assenti. Tra due attività consecutive viene inserita una leg car.
+ *
+ * Il file viene letto in streaming a blocchi di CHUNK_LINES righe, parsate in parallelo:
+ * restano in memoria solo le attività dei veicoli della flotta, in array primitivi compatti.
+ * Una riga non valida (link inesistente o non percorribile in auto, tempo non leggibile)
+ * invalida l'intera catena del suo veicolo: togliere una sola attività cambierebbe la
+ * giornata. I veicoli con catene non valide o senza righe nel file ricevono il piano
+ * della strategia di fallback.
+ */
+public class CsvPlanGenerationStrategy implements PlanGenerationStrategy {
+
+    private static final Logger log = LogManager.getLogger(CsvPlanGenerationStrategy.class);
+
+    static final int CHUNK_LINES = 16_384;
+
+    private static final String COL_VEHICLE  = "vehicle_id";
+    private static final String COL_ACTIVITY = "activity";
+    private static final String COL_LINK     = "link_id";
+    private static final String COL_END      = "end_time";
+    private static final String COL_DURATION = "max_duration";
+
+    private final String planCsvPath;
+    private final CarLinkIndex carLinks;
+    private final PlanGenerationStrategy fallback;
+
+    // Posizione nella flotta per vehicleId (impostata in prepare)
+    private Map<String, Integer> fleetPosition = Map.of();
+
+    // Catene: liste concatenate su array primitivi, testa/coda per posizione nella flotta
+    private int[] head = new int[0];
+    private int[] tail = new int[0];
+    private int[] next = new int[0];
+    private boolean[] invalid = new boolean[0];
+    private int[] linkIndex = new int[0];
+    private String[] activityType = new String[0];
+    private double[] endTime = new double[0];
+    private double[] maxDuration = new double[0];
+    private int activities = 0;
+
+    /**
+     * @param planCsvPath percorso o URL del CSV dei piani (.gz gestito da IOUtils)
+     * @param carLinks    indice dei link auto per la validazione
+     * @param fallback    strategia per i veicoli senza piano nel file
+     */
+    public CsvPlanGenerationStrategy(String planCsvPath, CarLinkIndex carLinks, PlanGenerationStrategy fallback) {
+        this.planCsvPath = Objects.requireNonNull(planCsvPath, "planCsvPath");
+        this.carLinks = carLinks;
+        this.fallback = fallback;
+    }
+
+    // ================================================================
+    // ================= LETTURA STREAMING ===========================
+    // ================================================================
+
+    @Override
+    public void prepare(List<Id<Vehicle>> vehicleIds, Scenario scenario) {
+        int n = vehicleIds.size();
+        Map<String, Integer> position = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) {
+            position.put(vehicleIds.get(i).toString(), i);
+        }
+        this.fleetPosition = position;
+        this.head = new int[n];
+        this.tail = new int[n];
+        this.invalid = new boolean[n];
+        Arrays.fill(head, -1);
+        Arrays.fill(tail, -1);
+        this.activities = 0;
+        ensureCapacity(Math.max(16, n * 4));
+
+        long start = System.nanoTime();
+        long[] counters = new long[3]; // righe lette, scartate, di veicoli fuori flotta
+
+        try (BufferedReader reader = IOUtils.getBufferedReader(planCsvPath)) {
+            String header = reader.readLine();
+            if (header == null) {
+                throw new IllegalStateException("CSV dei piani vuoto: " + planCsvPath);
+            }
+            char separator = header.indexOf(';') >= 0 ? ';' : ',';
+            int[] columns = resolveColumns(split(header, separator));
+
+            ConcurrentHashMap<String, String> types = new ConcurrentHashMap<>();
+            String[] lines = new String[CHUNK_LINES];
+            Row[] rows = new Row[CHUNK_LINES];
+            int count;
+            while ((count = readChunk(reader, lines)) > 0) {
+                int chunkSize = count;
+                IntStream.range(0, chunkSize).parallel()
+                        .forEach(i -> rows[i] = parseRow(lines[i], separator, columns, types));
+
+                // Merge sequenziale: l'ordine delle attività resta quello del file
+                for (int i = 0; i < chunkSize; i++) {
+                    Row row = rows[i];
+                    counters[0]++;
+                    if (row == null) {
+                        counters[1]++;
+                    } else if (row == Row.OUTSIDE_FLEET) {
+                        counters[2]++;
+                    } else if (row.linkIndex < 0) {
+                        counters[1]++;
+                        invalid[row.position] = true;
+                    } else {
+                        append(row);
+                    }
+                    rows[i] = null;
+                    lines[i] = null;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Errore lettura CSV dei piani " + planCsvPath, e);
+        }
+
+        // Catene con almeno una riga non valida: il veicolo passa interamente al fallback
+        int invalidVehicles = 0;
+        for (int i = 0; i < n; i++) {
+            if (invalid[i]) {
+                head[i] = -1;
+                tail[i] = -1;
+                invalidVehicles++;
+            }
+        }
+        int withPlan = 0;
+        for (int h : head) {
+            if (h >= 0) withPlan++;
+        }
+        log.info("[CsvPlanGenerationStrategy] {} righe lette ({} scartate, {} fuori flotta), {} attività per {}/{} veicoli in {} ms",
+                counters[0], counters[1], counters[2], activities, withPlan, n, (System.nanoTime() - start) / 1_000_000);
+        if (invalidVehicles > 0) {
+            log.warn("[CsvPlanGenerationStrategy] {} veicoli con righe non valide nel CSV: uso la strategia di fallback per l'intera catena",
+                    invalidVehicles);
+        }
+        if (withPlan + invalidVehicles < n) {
+            log.warn("[CsvPlanGenerationStrategy] {} veicoli senza piano nel CSV: uso la strategia di fallback",
+                    n - withPlan - invalidVehicles);
+        }
+
+        fallback.prepare(vehicleIds, scenario);
+    }
+
+    private static int readChunk(BufferedReader reader, String[] lines) throws IOException {
+        int count = 0;
+        String line;
+        while (count < lines.length && (line = reader.readLine()) != null) {
+            if (!line.isBlank()) {
+                lines[count++] = line;
+            }
+        }
+        return count;
+    }
+
+    private static int[] resolveColumns(String[] header) {
+        String[] names = {COL_VEHICLE, COL_ACTIVITY, COL_LINK, COL_END, COL_DURATION};
+        int[] columns = new int[names.length];
+        for (int c = 0; c < names.length; c++) {
+            columns[c] = -1;
+            for (int h = 0; h < header.length; h++) {
+                if (header[h].trim().equalsIgnoreCase(names[c])) {
+                    columns[c] = h;
+                    break;
+                }
+            }
+        }
+        if (columns[0] < 0 || columns[1] < 0 || columns[2] < 0) {
+            throw new IllegalStateException("CSV dei piani: colonne obbligatorie "
+                    + COL_VEHICLE + ", " + COL_ACTIVITY + ", " + COL_LINK);
+        }
+        return columns;
+    }
+
+    /**
+     * Riga parsata; null se non attribuibile a un veicolo, OUTSIDE_FLEET se di un veicolo
+     * non nella flotta, Row.invalid(pos) se del veicolo pos ma non valida.
+     */
+    private Row parseRow(String line, char separator, int[] columns, ConcurrentHashMap<String, String> types) {
+        String[] t = split(line, separator);
+        if (t.length <= columns[0]) {
+            return null;
+        }
+        Integer pos = fleetPosition.get(t[columns[0]].trim());
+        if (pos == null) {
+            return Row.OUTSIDE_FLEET;
+        }
+        if (t.length <= Math.max(columns[1], columns[2])) {
+            return Row.invalid(pos);
+        }
+
+        // Id.get non crea Id per link sconosciuti
+        Id<Link> link = Id.get(t[columns[2]].trim(), Link.class);
+        if (!carLinks.contains(link)) {
+            return Row.invalid(pos);
+        }
+
+        try {
+            String type = types.computeIfAbsent(t[columns[1]].trim(), k -> k);
+            double end = time(t, columns[3]);
+            double duration = time(t, columns[4]);
+            return new Row(pos, link.index(), type, end, duration);
+        } catch (IllegalArgumentException e) {
+            return Row.invalid(pos);
+        }
+    }
+
+    private static double time(String[] t, int column) {
+        if (column < 0 || column >= t.length) return Double.NaN;
+        String value = t[column].trim();
+        return value.isEmpty() ? Double.NaN : Time.parseTime(value);
+    }
+
+    /** split su un carattere, senza regex */
+    private static String[] split(String line, char separator) {
+        List<String> fields = new ArrayList<>(8);
+        int from = 0;
+        int idx;
+        while ((idx = line.indexOf(separator, from)) >= 0) {
+            fields.add(line.substring(from, idx));
+            from = idx + 1;
+        }
+        fields.add(line.substring(from));
+        return fields.toArray(new String[0]);
+    }
+
+    private void append(Row row) {
+        ensureCapacity(activities + 1);
+        int a = activities++;
+        linkIndex[a] = row.linkIndex;
+        activityType[a] = row.type;
+        endTime[a] = row.endTime;
+        maxDuration[a] = row.maxDuration;
+        next[a] = -1;
+
+        if (head[row.position] < 0) {
+            head[row.position] = a;
+        } else {
+            next[tail[row.position]] = a;
+        }
+        tail[row.position] = a;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= next.length) return;
+        int newCapacity = Math.max(capacity, next.length * 2);
+        next = Arrays.copyOf(next, newCapacity);
+        linkIndex = Arrays.copyOf(linkIndex, newCapacity);
+        activityType = Arrays.copyOf(activityType, newCapacity);
+        endTime = Arrays.copyOf(endTime, newCapacity);
+        maxDuration = Arrays.copyOf(maxDuration, newCapacity);
+    }
+
+    private record Row(int position, int linkIndex, String type, double endTime, double maxDuration) {
+        static final Row OUTSIDE_FLEET = new Row(-1, -1, null, Double.NaN, Double.NaN);
+
+        /** Riga non valida del veicolo in posizione pos: linkIndex -1 */
+        static Row invalid(int pos) {
+            return new Row(pos, -1, null, Double.NaN, Double.NaN);
+        }
+    }
+
+    // ================================================================
+    // ================= COSTRUZIONE PIANI ===========================
+    // ================================================================
+
+    @Override
+    public Person createPersonForVehicle(Id<Vehicle> vehicleId, Scenario scenario, SplittableRandom rng) {
+        Integer pos = fleetPosition.get(vehicleId.toString());
+        if (pos == null || head[pos] < 0) {
+            return fallback.createPersonForVehicle(vehicleId, scenario, rng);
+        }
+
+        PopulationFactory factory = scenario.getPopulation().getFactory();
+
+        Person p = factory.createPerson(Id.createPersonId(vehicleId));
+        p.getAttributes().putAttribute("subpopulation", "person");
+
+        Map<String, Id<Vehicle>> modeMap = new HashMap<>();
+        modeMap.put("car", vehicleId);
+        VehicleUtils.insertVehicleIdsIntoPersonAttributes(p, modeMap);
+
+        Plan plan = factory.createPlan();
+        for (int a = head[pos]; a >= 0; a = next[a]) {
+            if (a != head[pos]) {
+                plan.addLeg(factory.createLeg("car"));
+            }
+            Activity act = factory.createActivityFromLinkId(activityType[a], Id.get(linkIndex[a], Link.class));
+            if (!Double.isNaN(endTime[a])) act.setEndTime(endTime[a]);
+            if (!Double.isNaN(maxDuration[a])) act.setMaximumDuration(maxDuration[a]);
+            plan.addActivity(act);
+        }
+
+        p.addPlan(plan);
+        return p;
+    }
+}
@@ -2,8 +2,35 @@ package org.matsim.CustomEvModule.EVfleet.strategy.plan;
 
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Person;
 import org.matsim.vehicles.Vehicle;
 
+import java.util.List;
+import java.util.SplittableRandom;
+
 public interface PlanGenerationStrategy {
-    void generatePlanForVehicle(Id<Vehicle> vehicleId, Scenario scenario);
+
+    /**
+     * Chiamato una volta, in sequenza, prima della costruzione parallela dei piani.
+     * Permette di caricare solo i dati dei veicoli della flotta.
+     *
+     * @param vehicleIds Id dei veicoli EV nell'ordine della flotta
+     * @param scenario   scenario (solo lettura)
+     */
+    default void prepare(List<Id<Vehicle>> vehicleIds, Scenario scenario) {}
+
+    /**
+     * Crea la persona (con piano) che guida il veicolo, senza aggiungerla alla popolazione.
+     * Non deve modificare lo Scenario: può essere chiamato in parallelo.
+     *
+     * @param vehicleId Id del veicolo EV
+     * @param scenario  scenario (solo lettura: rete, factory della popolazione)
+     * @param rng       generatore dedicato, per risultati riproducibili
+     */
+    Person createPersonForVehicle(Id<Vehicle> vehicleId, Scenario scenario, SplittableRandom rng);
+
+    default void generatePlanForVehicle(Id<Vehicle> vehicleId, Scenario scenario) {
+        Person person = createPersonForVehicle(vehicleId, scenario, new SplittableRandom(vehicleId.toString().hashCode()));
+        scenario.getPopulation().addPerson(person);
+    }
 }
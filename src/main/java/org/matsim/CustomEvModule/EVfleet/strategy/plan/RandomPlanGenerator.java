@@ -0,0 +1,130 @@
+package org.matsim.CustomEvModule.EVfleet.strategy.plan;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.CustomEvModule.Hub.ChargerSlotIndex;
+import org.matsim.CustomEvModule.Hub.ChargingHub;
+import org.matsim.CustomEvModule.Hub.HubSpatialIndex;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.*;
+import org.matsim.vehicles.Vehicle;
+import org.matsim.vehicles.VehicleUtils;
+
+import java.util.*;
+
+/**
+ * Piani casuali home → work → ricarica → home.
+ *
+ * - home: link auto uniforme dall'indice
+ * - work: link a distanza di pendolarismo [MIN_COMMUTE_M, MAX_COMMUTE_M] dalla casa (griglia);
+ *   se nessun link cade nella corona si estrae un'altra casa, al limite work = home
+ * - ricarica: link di un ChargingHub estratto tra gli HUB_CHOICES hub più vicini al lavoro
+ *   (HubSpatialIndex, posizione dell'hub al nodo di arrivo del suo link)
+ *
+ * Tutto lo stato è precalcolato e immutabile: il generatore è chiamato in parallelo dalla
+ * pipeline di registrazione, con un RNG per veicolo.
+ */
+public class RandomPlanGenerator implements PlanGenerationStrategy {
+
+    private static final Logger log = LogManager.getLogger(RandomPlanGenerator.class);
+
+    public static final double GRID_CELL_M   = 1_000.0;
+    public static final double MIN_COMMUTE_M = 1_000.0;
+    public static final double MAX_COMMUTE_M = 20_000.0;
+
+    // Hub più vicini al lavoro tra cui estrarre la ricarica
+    private static final int HUB_CHOICES = 4;
+
+    // Case estratte prima di rinunciare a un lavoro nella corona di pendolarismo
+    private static final int HOME_DRAWS = 8;
+
+    private final CarLinkIndex carLinks;
+    private final HubSpatialIndex hubs;
+
+    /**
+     * @param hubs indice spaziale degli hub, interrogato in sola lettura da più thread
+     */
+    public RandomPlanGenerator(CarLinkIndex carLinks, HubSpatialIndex hubs) {
+        this.carLinks = carLinks;
+        this.hubs = hubs;
+
+        if (hubs.slots().hubCount() == 0) {
+            log.warn("[RandomPlanGenerator] Nessun hub registrato: i piani non avranno attività di ricarica");
+        }
+    }
+
+    public RandomPlanGenerator(CarLinkIndex carLinks, Collection<ChargingHub> hubs, Network network) {
+        // Hub ordinati per id nel ChargerSlotIndex: la scelta non dipende dall'ordine della mappa
+        this(carLinks, new HubSpatialIndex(ChargerSlotIndex.build(hubs, null), network));
+    }
+
+    public static RandomPlanGenerator build(Scenario scenario, Collection<ChargingHub> hubs) {
+        Network network = scenario.getNetwork();
+        return new RandomPlanGenerator(CarLinkIndex.build(network, GRID_CELL_M), hubs, network);
+    }
+
+    @Override
+    public Person createPersonForVehicle(Id<Vehicle> vehicleId, Scenario scenario, SplittableRandom rng) {
+
+        PopulationFactory factory = scenario.getPopulation().getFactory();
+
+        Person p = factory.createPerson(Id.createPersonId(vehicleId));
+        p.getAttributes().putAttribute("subpopulation", "person");
+
+        Map<String, Id<Vehicle>> modeMap = new HashMap<>();
+        modeMap.put("car", vehicleId);
+        VehicleUtils.insertVehicleIdsIntoPersonAttributes(p, modeMap);
+
+        int home = -1;
+        int work = -1;
+        for (int draw = 0; draw < HOME_DRAWS && work < 0; draw++) {
+            home = carLinks.random(rng);
+            work = carLinks.randomWithin(carLinks.x(home), carLinks.y(home), MIN_COMMUTE_M, MAX_COMMUTE_M, rng);
+        }
+        if (work < 0) {
+            log.warn("[RandomPlanGenerator] Nessun link auto a {}-{} m dalla casa di {}: lavoro sul link di casa",
+                    MIN_COMMUTE_M, MAX_COMMUTE_M, vehicleId);
+            work = home;
+        }
+
+        Plan plan = factory.createPlan();
+
+        Activity homeStart = factory.createActivityFromLinkId("home", carLinks.linkId(home));
+        homeStart.setEndTime(6 * 3600 + rng.nextInt(3 * 3600));
+        plan.addActivity(homeStart);
+
+        plan.addLeg(factory.createLeg("car"));
+
+        Activity workAct = factory.createActivityFromLinkId("work", carLinks.linkId(work));
+        workAct.setMaximumDuration(7 * 3600 + rng.nextInt(2 * 3600));
+        plan.addActivity(workAct);
+
+        plan.addLeg(factory.createLeg("car"));
+
+        int hub = pickHub(carLinks.x(work), carLinks.y(work), rng);
+        if (hub >= 0) {
+            Activity charge = factory.createActivityFromLinkId("car charging", hubs.slots().hub(hub).getLink());
+            charge.setMaximumDuration(3 * 3600);
+            plan.addActivity(charge);
+
+            plan.addLeg(factory.createLeg("car"));
+        }
+
+        Activity homeEnd = factory.createActivityFromLinkId("home", carLinks.linkId(home));
+        plan.addActivity(homeEnd);
+
+        p.addPlan(plan);
+        return p;
+    }
+
+    /**
+     * Hub estratto uniformemente tra gli HUB_CHOICES più vicini al punto, -1 se nessun hub è sulla rete.
+     */
+    private int pickHub(double px, double py, SplittableRandom rng) {
+        List<Integer> nearest = hubs.nearest(px, py, HUB_CHOICES, Double.POSITIVE_INFINITY);
+        return nearest.isEmpty() ? -1 : nearest.get(rng.nextInt(nearest.size()));
+    }
+}
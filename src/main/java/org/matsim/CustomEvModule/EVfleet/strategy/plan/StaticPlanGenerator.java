@@ -8,12 +8,15 @@ import org.matsim.vehicles.Vehicle;
 import org.matsim.vehicles.VehicleUtils;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class StaticPlanGenerator implements PlanGenerationStrategy {
 
+    private static final Id<Link> HOME_LINK     = Id.createLinkId("169704581#1");
+    private static final Id<Link> WORK_LINK     = Id.createLinkId("831372993#0");
+    private static final Id<Link> CHARGING_LINK = Id.createLinkId("4372494");
+
     @Override
-    public void generatePlanForVehicle(Id<Vehicle> vehicleId, Scenario scenario) {
+    public Person createPersonForVehicle(Id<Vehicle> vehicleId, Scenario scenario, SplittableRandom rng) {
 
         PopulationFactory factory = scenario.getPopulation().getFactory();
 
@@ -26,13 +29,9 @@ public class StaticPlanGenerator implements PlanGenerationStrategy {
 
         Plan plan = factory.createPlan();
 
-        //Link[] links = pickTwoRandomCarLinks(scenario);
-        //Link homeLink = links[0];
-        //Link workLink = links[1];
-
-        Id<Link> homeLink = Id.createLinkId("169704581#1");
-        Id<Link> workLink = Id.createLinkId("831372993#0");
-        Id<Link> chargingLink = Id.createLinkId("4372494");
+        Id<Link> homeLink = HOME_LINK;
+        Id<Link> workLink = WORK_LINK;
+        Id<Link> chargingLink = CHARGING_LINK;
 
         Activity home = factory.createActivityFromLinkId("home", homeLink);
         home.setEndTime(0 * 3600);
@@ -56,19 +55,6 @@ public class StaticPlanGenerator implements PlanGenerationStrategy {
         plan.addActivity(home2);
 
         p.addPlan(plan);
-        scenario.getPopulation().addPerson(p);
-    }
-
-    private Link[] pickTwoRandomCarLinks(Scenario scenario) {
-        Network network = scenario.getNetwork();
-        List<Link> carLinks = network.getLinks()
-                                    .values()
-                                    .stream()
-                                    .filter(link -> link.getAllowedModes().contains("car"))
-                                    .collect(Collectors.toList());
-
-        Link home = carLinks.get(0);
-        Link work = carLinks.get(Math.min(50, carLinks.size() - 1));
-        return new Link[]{home, work};
+        return p;
     }
 }
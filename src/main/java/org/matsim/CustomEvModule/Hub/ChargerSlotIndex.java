@@ -0,0 +1,302 @@
+package org.matsim.CustomEvModule.Hub;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.contrib.ev.infrastructure.Charger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Indice delle colonnine per link, costruito una volta per infrastruttura.
+ *
+ * - slot contigui per link (CSR su Id<Link>.index()): lookup O(colonnine sul link)
+ * - tipi di plug internati in bit di una maschera long (max 64 tipi)
+ * - riferimenti diretti a ChargerUnit e Charger, senza passare da mappe
+ * - slot contigui anche per hub (gli hub di uno stesso link sono consecutivi)
+ *
+ * Le query non allocano: lo stato libero/attivo è letto dalla ChargerUnit.
+ */
+public final class ChargerSlotIndex {
+
+    private final Map<String, Integer> plugBits;
+    private final int[] linkStart;      // slot del link i in [linkStart[i], linkStart[i+1])
+    private final ChargerUnit[] units;
+    private final Charger[] chargers;
+    private final String[] hubIds;
+    private final long[] plugMasks;
+    private final int[] slotHubs;       // ordinale dell'hub di ogni slot
+
+    // Hub in ordine di id: slot dell'hub h in [hubStart[h], hubEnd[h])
+    private final ChargingHub[] hubs;
+    private final Map<String, Integer> hubOrdinal;
+    private final int[] hubStart;
+    private final int[] hubEnd;
+
+    private ChargerSlotIndex(Map<String, Integer> plugBits, int[] linkStart, ChargerUnit[] units,
+                             Charger[] chargers, String[] hubIds, long[] plugMasks, int[] slotHubs,
+                             ChargingHub[] hubs, int[] hubStart, int[] hubEnd) {
+        this.plugBits = plugBits;
+        this.linkStart = linkStart;
+        this.units = units;
+        this.chargers = chargers;
+        this.hubIds = hubIds;
+        this.plugMasks = plugMasks;
+        this.slotHubs = slotHubs;
+        this.hubs = hubs;
+        this.hubStart = hubStart;
+        this.hubEnd = hubEnd;
+        this.hubOrdinal = new HashMap<>(hubs.length * 2);
+        for (int h = 0; h < hubs.length; h++) {
+            hubOrdinal.put(hubs[h].getId(), h);
+        }
+    }
+
+    /**
+     * @param hubs     hub registrati
+     * @param resolver Charger MATSim per id; le colonnine senza Charger vengono escluse.
+     *                 null per un indice delle sole unità (test e benchmark)
+     */
+    public static ChargerSlotIndex build(Collection<ChargingHub> hubs, Function<Id<Charger>, Charger> resolver) {
+        // Ordine stabile: hub per id, colonnine per id
+        List<ChargingHub> sortedHubs = new ArrayList<>(hubs);
+        sortedHubs.sort(Comparator.comparing(ChargingHub::getId));
+
+        Map<String, Integer> plugBits = new HashMap<>();
+        List<Entry> slots = new ArrayList<>();
+        int maxLink = -1;
+
+        for (int h = 0; h < sortedHubs.size(); h++) {
+            ChargingHub hub = sortedHubs.get(h);
+            int link = hub.getLink().index();
+            List<ChargerUnit> hubUnits = new ArrayList<>(hub.getChargerUnits());
+            hubUnits.sort(Comparator.comparing(u -> u.getChargerId().toString()));
+
+            for (ChargerUnit unit : hubUnits) {
+                Charger charger = null;
+                if (resolver != null) {
+                    charger = resolver.apply(unit.getChargerId());
+                    if (charger == null) continue;
+                }
+                long mask = 0L;
+                for (String plug : unit.getPlugs()) {
+                    mask |= 1L << internPlug(plugBits, plug);
+                }
+                slots.add(new Entry(link, h, unit, charger, hub.getId(), mask));
+                maxLink = Math.max(maxLink, link);
+            }
+        }
+
+        // Counting sort per link (stabile: mantiene l'ordine hub/colonnina)
+        int n = slots.size();
+        int[] linkStart = new int[maxLink + 2];
+        for (Entry e : slots) {
+            linkStart[e.link() + 1]++;
+        }
+        for (int i = 0; i + 1 < linkStart.length; i++) {
+            linkStart[i + 1] += linkStart[i];
+        }
+
+        int[] fill = linkStart.clone();
+        ChargerUnit[] units = new ChargerUnit[n];
+        Charger[] chargers = new Charger[n];
+        String[] hubIds = new String[n];
+        long[] plugMasks = new long[n];
+        int[] slotHubs = new int[n];
+        int[] hubStart = new int[sortedHubs.size()];
+        int[] hubEnd = new int[sortedHubs.size()];
+        for (Entry e : slots) {
+            int slot = fill[e.link()]++;
+            if (hubEnd[e.hub()] == 0) hubStart[e.hub()] = slot;
+            hubEnd[e.hub()] = slot + 1;
+            units[slot] = e.unit();
+            chargers[slot] = e.charger();
+            hubIds[slot] = e.hubId();
+            plugMasks[slot] = e.plugMask();
+            slotHubs[slot] = e.hub();
+        }
+
+        return new ChargerSlotIndex(plugBits, linkStart, units, chargers, hubIds, plugMasks, slotHubs,
+                sortedHubs.toArray(new ChargingHub[0]), hubStart, hubEnd);
+    }
+
+    private record Entry(int link, int hub, ChargerUnit unit, Charger charger, String hubId, long plugMask) {}
+
+    private static int internPlug(Map<String, Integer> plugBits, String plug) {
+        Integer bit = plugBits.get(plug);
+        if (bit == null) {
+            if (plugBits.size() == Long.SIZE) {
+                throw new IllegalStateException("Più di 64 tipi di plug: " + plug);
+            }
+            bit = plugBits.size();
+            plugBits.put(plug, bit);
+        }
+        return bit;
+    }
+
+    // ================================================================
+    // ================= QUERY =======================================
+    // ================================================================
+
+    /**
+     * Maschera dei tipi richiesti; i tipi che nessuna colonnina offre vengono ignorati.
+     */
+    public long maskOf(List<String> types) {
+        long mask = 0L;
+        for (int i = 0; i < types.size(); i++) {
+            Integer bit = plugBits.get(types.get(i));
+            if (bit != null) mask |= 1L << bit;
+        }
+        return mask;
+    }
+
+    private int from(int link) {
+        return link + 1 < linkStart.length ? linkStart[link] : 0;
+    }
+
+    private int to(int link) {
+        return link + 1 < linkStart.length ? linkStart[link + 1] : 0;
+    }
+
+    private boolean isFreeCompatible(int slot, long mask) {
+        ChargerUnit unit = units[slot];
+        return (plugMasks[slot] & mask) != 0 && unit.isActive() && !unit.isOccupied();
+    }
+
+    /**
+     * Slot libero, attivo e compatibile scelto uniformemente sul link (reservoir sampling),
+     * -1 se non ce ne sono.
+     */
+    public int pickFreeCompatible(Id<Link> linkId, long mask, Random rng) {
+        int link = linkId.index();
+        int chosen = -1;
+        int seen = 0;
+        for (int s = from(link), end = to(link); s < end; s++) {
+            if (isFreeCompatible(s, mask) && rng.nextInt(++seen) == 0) {
+                chosen = s;
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * Scrive in out gli slot liberi, attivi e compatibili del link.
+     *
+     * @return numero di slot scritti (al massimo out.length)
+     */
+    public int collectFreeCompatible(Id<Link> linkId, long mask, int[] out) {
+        int link = linkId.index();
+        int count = 0;
+        for (int s = from(link), end = to(link); s < end && count < out.length; s++) {
+            if (isFreeCompatible(s, mask)) {
+                out[count++] = s;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Slot libero, attivo e compatibile dell'hub scelto uniformemente, -1 se non ce ne sono.
+     */
+    public int pickFreeCompatibleInHub(int hub, long mask, Random rng) {
+        int chosen = -1;
+        int seen = 0;
+        for (int s = hubStart[hub], end = hubEnd[hub]; s < end; s++) {
+            if (isFreeCompatible(s, mask) && rng.nextInt(++seen) == 0) {
+                chosen = s;
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * true se l'hub ha almeno una colonnina libera, attiva e compatibile.
+     */
+    public boolean hasFreeCompatible(int hub, long mask) {
+        for (int s = hubStart[hub], end = hubEnd[hub]; s < end; s++) {
+            if (isFreeCompatible(s, mask)) return true;
+        }
+        return false;
+    }
+
+    /** Primo slot del link */
+    public int firstSlot(Id<Link> linkId) {
+        return from(linkId.index());
+    }
+
+    /** Slot successivo all'ultimo del link */
+    public int endSlot(Id<Link> linkId) {
+        return to(linkId.index());
+    }
+
+    /**
+     * Numero di colonnine indicizzate sul link.
+     */
+    public int slotCount(Id<Link> linkId) {
+        int link = linkId.index();
+        return to(link) - from(link);
+    }
+
+    public int size() {
+        return units.length;
+    }
+
+    public Charger charger(int slot) {
+        return chargers[slot];
+    }
+
+    public ChargerUnit unit(int slot) {
+        return units[slot];
+    }
+
+    public String hubId(int slot) {
+        return hubIds[slot];
+    }
+
+    /** Maschera dei tipi di plug della colonnina */
+    public long plugMask(int slot) {
+        return plugMasks[slot];
+    }
+
+    /** Numero di tipi di plug distinti (bit usati nelle maschere) */
+    public int plugTypeCount() {
+        return plugBits.size();
+    }
+
+    /** Ordinale dell'hub della colonnina */
+    public int hubOf(int slot) {
+        return slotHubs[slot];
+    }
+
+    /** Primo slot dell'hub */
+    public int hubFirstSlot(int hub) {
+        return hubStart[hub];
+    }
+
+    /** Slot successivo all'ultimo dell'hub */
+    public int hubEndSlot(int hub) {
+        return hubEnd[hub];
+    }
+
+    public int hubCount() {
+        return hubs.length;
+    }
+
+    public ChargingHub hub(int hub) {
+        return hubs[hub];
+    }
+
+    /**
+     * Ordinale dell'hub, -1 se non indicizzato.
+     */
+    public int hubOrdinal(String hubId) {
+        Integer h = hubOrdinal.get(hubId);
+        return h != null ? h : -1;
+    }
+}
@@ -1,7 +1,9 @@
 package org.matsim.CustomEvModule.Hub;
 
+import org.matsim.CustomEvModule.EVfleet.EvModel;
 import org.matsim.api.core.v01.Id;
 import org.matsim.contrib.ev.infrastructure.Charger;
+import org.matsim.vehicles.Vehicle;
 
 import java.util.Collections;
 import java.util.Set;
@@ -11,8 +13,13 @@ import java.util.Set;
  * Traccia:
  * - Energia cumulativa totale erogata
  * - Energia attualmente in erogazione (durante un timestep)
- * - L'EV che occupa il charger (se presente)
+ * - L'EV che occupa il charger (se presente), come Id e come riferimento diretto
+ *   al suo EvModel: il campionamento per timestep non passa da lookup per stringa
  * - I plug disponibili
+ *
+ * Stato vivo lato simulazione: le modifiche passano dal ChargingHub, che le serializza
+ * e ne pubblica lo snapshot. Occupazione e attivazione sono volatili perché lette
+ * dall'indice delle colonnine senza passare dal monitor dell'hub.
  */
 public class ChargerUnit {
 
@@ -21,9 +28,10 @@ public class ChargerUnit {
     
     private double cumulativeEnergyDelivered = 0.0;
     private double currentEnergyDelivering = 0.0;
-    private String occupyingEvId = null;
+    private volatile Id<Vehicle> occupyingVehicleId = null;
+    private volatile EvModel occupyingEv = null;        // null se l'EV non è nella flotta
 
-    private boolean active = true;
+    private volatile boolean active = true;
 
     /**
      * Costruisce una unità charger
@@ -33,7 +41,7 @@ public class ChargerUnit {
      */
     public ChargerUnit(Id<Charger> chargerId, Set<String> plugs) {
         this.chargerId = chargerId;
-        this.plugs = plugs != null ? plugs : Set.of();
+        this.plugs = plugs != null ? Collections.unmodifiableSet(plugs) : Set.of();
     }
 
     /**
@@ -52,7 +60,7 @@ public class ChargerUnit {
     }
 
     public Set<String> getPlugs() {
-        return Collections.unmodifiableSet(plugs);
+        return plugs;
     }
 
     public double getCumulativeEnergyDelivered() {
@@ -64,11 +72,24 @@ public class ChargerUnit {
     }
 
     public String getOccupyingEvId() {
-        return occupyingEvId;
+        Id<Vehicle> id = occupyingVehicleId;
+        return id != null ? id.toString() : null;
+    }
+
+    public Id<Vehicle> getOccupyingVehicleId() {
+        return occupyingVehicleId;
+    }
+
+    /**
+     * Modello della flotta dell'EV che occupa la colonnina, null se libera
+     * o se l'EV non appartiene alla flotta
+     */
+    public EvModel getOccupyingEv() {
+        return occupyingEv;
     }
 
     public boolean isOccupied() {
-        return occupyingEvId != null;
+        return occupyingVehicleId != null;
     }
 
     public boolean isActive() {
@@ -80,24 +101,27 @@ public class ChargerUnit {
     /**
      * Assegna un EV alla colonnina (occupazione)
      * 
-     * @param evId ID dell'EV che occupa la colonnina
+     * @param vehicleId ID dell'EV che occupa la colonnina
+     * @param ev Modello della flotta dell'EV, null se non presente
      * @throws IllegalStateException se la colonnina è già occupata
      */
-    public synchronized void setOccupyingEv(String evId) {
+    void setOccupyingEv(Id<Vehicle> vehicleId, EvModel ev) {
         if (!active) {
             throw new IllegalStateException("Charger disattivato: " + chargerId);
         }
-        if (occupyingEvId != null && !occupyingEvId.equals(evId)) {
-            throw new IllegalStateException("Charger già occupato da: " + occupyingEvId);
+        if (occupyingVehicleId != null && !occupyingVehicleId.equals(vehicleId)) {
+            throw new IllegalStateException("Charger già occupato da: " + occupyingVehicleId);
         }
-        this.occupyingEvId = evId;
+        this.occupyingEv = ev;
+        this.occupyingVehicleId = vehicleId;
     }
 
     /**
      * Libera la colonnina (rimozione dell'EV)
      */
-    public synchronized void releaseOccupyingEv() {
-        this.occupyingEvId = null;
+    void releaseOccupyingEv() {
+        this.occupyingVehicleId = null;
+        this.occupyingEv = null;
     }
 
     /**
@@ -106,7 +130,7 @@ public class ChargerUnit {
      * 
      * @param energy Energia erogata in questo timestep
      */
-    public synchronized void setCurrentEnergyDelivering(double energy) {
+    void setCurrentEnergyDelivering(double energy) {
         if (!active) {
             this.currentEnergyDelivering = 0.0;
             return;
@@ -117,7 +141,7 @@ public class ChargerUnit {
     /**
      * Resetta l'energia in erogazione (da chiamare all'inizio di ogni timestep)
      */
-    public synchronized void resetCurrentEnergyDelivering() {
+    void resetCurrentEnergyDelivering() {
         this.currentEnergyDelivering = 0.0;
     }
 
@@ -127,16 +151,16 @@ public class ChargerUnit {
      * 
      * @param energy Energia da aggiungere alla cumulativa
      */
-    public synchronized void addCumulativeEnergyDelivered(double energy) {
+    void addCumulativeEnergyDelivered(double energy) {
         this.cumulativeEnergyDelivered += energy;
     }
 
-    public synchronized void setActive(boolean active) {
-        this.active = active;
-        // Se viene disattivato mentre è occupato → eccezione 
-        if (!active && occupyingEvId != null) {
+    void setActive(boolean active) {
+        // Se viene disattivato mentre è occupato → eccezione, senza modificare lo stato
+        if (!active && occupyingVehicleId != null) {
            throw new IllegalStateException("Charger disattivato disattivato mentre è occupato: " + chargerId);
         }
+        this.active = active;
         resetCurrentEnergyDelivering();
     }
 
@@ -147,7 +171,7 @@ public class ChargerUnit {
             "ChargerUnit{id=%s, occupied=%b, ev=%s, cumEnergy=%.2f, currEnergy=%.2f}",
             chargerId,
             isOccupied(),
-            occupyingEvId,
+            occupyingVehicleId,
             cumulativeEnergyDelivered,
             currentEnergyDelivering
         );
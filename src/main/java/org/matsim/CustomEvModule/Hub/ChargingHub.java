@@ -1,40 +1,65 @@
 package org.matsim.CustomEvModule.Hub;
 
+import org.matsim.CustomEvModule.EVfleet.EvModel;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
-import org.matsim.api.core.v01.network.Network;
 import org.matsim.contrib.ev.infrastructure.Charger;
+import org.matsim.vehicles.Vehicle;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+/**
+ * Hub di ricarica: insieme di colonnine (ChargerUnit) su un link.
+ *
+ * - le scritture (lato simulazione, più il cambio di stato da HTTP) sono serializzate
+ *   sul monitor dell'hub e pubblicano un nuovo HubSnapshot immutabile; gli stati delle
+ *   colonnine sono una lista persistente che copia solo il blocco della colonnina modificata
+ * - le letture (publisher, thread HTTP) sono una lettura volatile dello snapshot:
+ *   nessun lock, nessuna copia
+ * - le ChargerUnit vive restano nel package (lato simulazione): i reader esterni
+ *   non vedono mai i loro campi non volatili
+ * - occupazione ed energia totale sono contatori incrementali
+ * - dirty = versione corrente diversa dall'ultima pubblicata
+ */
 public class ChargingHub {
 
     private final String hubId;
     private final Id<Link> linkId;
-    private double coordX;
-    private double coordY;    
+    private final double coordX;
+    private final double coordY;
 
     /**
-     * Mappa charger ID -> ChargerUnit
-     * Contiene tutte le unità di ricarica dell'hub con i loro stati
+     * Colonnine dell'hub nell'ordine di registrazione, con posizione per charger ID.
+     * Sostituito (mai modificato) quando si aggiungono o rimuovono colonnine.
      */
-    private final Map<Id<Charger>, ChargerUnit> chargerUnits = new HashMap<>();
+    private record Layout(ChargerUnit[] units, List<ChargerUnit> unitList,
+                          Map<Id<Charger>, Integer> position, Set<Id<Charger>> ids) {
+        static final Layout EMPTY = new Layout(new ChargerUnit[0], List.of(), Map.of(), Set.of());
+    }
+
+    private volatile Layout layout = Layout.EMPTY;
+    private volatile HubSnapshot snapshot;
+    private volatile long publishedVersion = 0L;
 
+    // Stato lato scrittura (guardato dal monitor dell'hub)
+    private HubSnapshot.StateList states = HubSnapshot.StateList.EMPTY;
+    private int occupancy = 0;
     private double totalCumulativeEnergy = 0.0;
-    private boolean dirty = true;
+    private long version = 0L;
 
     public ChargingHub(String hubId, Id<Link> linkId, double coordX, double coordY) {
         this.hubId = hubId;
         this.linkId = linkId;
         this.coordX = coordX;
         this.coordY = coordY;
+        publish();
     }
 
     public String getId() {
@@ -49,6 +74,40 @@ public class ChargingHub {
         return coordY;
     }
 
+    // -------------------- PUBBLICAZIONE --------------------
+
+    private void publish() {
+        Layout l = layout;
+        snapshot = new HubSnapshot(hubId, coordX, coordY, ++version, occupancy, totalCumulativeEnergy,
+                states, l.position(), l.ids());
+    }
+
+    /** Ripubblica lo stato della sola colonnina in posizione pos */
+    private void publish(int pos) {
+        states = states.with(pos, HubSnapshot.ChargerState.of(layout.units()[pos]));
+        publish();
+    }
+
+    private void rebuildLayout(ChargerUnit[] units) {
+        Map<Id<Charger>, Integer> position = new HashMap<>(units.length * 2);
+        Set<Id<Charger>> ids = new LinkedHashSet<>();
+        HubSnapshot.ChargerState[] next = new HubSnapshot.ChargerState[units.length];
+        for (int i = 0; i < units.length; i++) {
+            position.put(units[i].getChargerId(), i);
+            ids.add(units[i].getChargerId());
+            next[i] = HubSnapshot.ChargerState.of(units[i]);
+        }
+        layout = new Layout(units, Collections.unmodifiableList(Arrays.asList(units)),
+                Collections.unmodifiableMap(position), Collections.unmodifiableSet(ids));
+        states = HubSnapshot.StateList.of(next);
+        publish();
+    }
+
+    private int positionOf(Id<Charger> chargerId) {
+        Integer pos = layout.position().get(chargerId);
+        return pos != null ? pos : -1;
+    }
+
     // -------------------- MUTATOR METHODS --------------------
 
     /**
@@ -58,9 +117,7 @@ public class ChargingHub {
      * @param plugs Set di tipologie di plug disponibili
      */
     public synchronized void addCharger(Id<Charger> chargerId, Set<String> plugs) {
-        ChargerUnit unit = new ChargerUnit(chargerId, plugs);
-        chargerUnits.put(chargerId, unit);
-        dirty = true;
+        putUnit(new ChargerUnit(chargerId, plugs));
     }
 
     /**
@@ -69,9 +126,21 @@ public class ChargingHub {
      * @param chargerId ID della colonnina
      */
     public synchronized void addCharger(Id<Charger> chargerId) {
-        ChargerUnit unit = new ChargerUnit(chargerId);
-        chargerUnits.put(chargerId, unit);
-        dirty = true;
+        putUnit(new ChargerUnit(chargerId));
+    }
+
+    private void putUnit(ChargerUnit unit) {
+        ChargerUnit[] units = layout.units();
+        int pos = positionOf(unit.getChargerId());
+        if (pos >= 0) {
+            removeFromCounters(units[pos]);
+            units = units.clone();
+            units[pos] = unit;
+        } else {
+            units = Arrays.copyOf(units, units.length + 1);
+            units[units.length - 1] = unit;
+        }
+        rebuildLayout(units);
     }
 
     /**
@@ -80,26 +149,50 @@ public class ChargingHub {
      * @param chargerId ID della colonnina da rimuovere
      */
     public synchronized void removeCharger(Id<Charger> chargerId) {
-        ChargerUnit unit = chargerUnits.remove(chargerId);
-        if (unit != null) {
-            totalCumulativeEnergy -= unit.getCumulativeEnergyDelivered();
-        }
-        dirty = true;
+        int pos = positionOf(chargerId);
+        if (pos < 0) return;
+        ChargerUnit[] units = layout.units();
+        removeFromCounters(units[pos]);
+        ChargerUnit[] next = new ChargerUnit[units.length - 1];
+        System.arraycopy(units, 0, next, 0, pos);
+        System.arraycopy(units, pos + 1, next, pos, units.length - pos - 1);
+        rebuildLayout(next);
+    }
+
+    private void removeFromCounters(ChargerUnit unit) {
+        totalCumulativeEnergy -= unit.getCumulativeEnergyDelivered();
+        if (unit.isOccupied()) occupancy--;
     }
 
     /**
      * Segna una colonnina come occupata da un EV (inizio ricarica)
      * 
      * @param chargerId ID della colonnina
-     * @param evId ID dell'EV che inizia la ricarica
+     * @param vehicleId ID dell'EV che inizia la ricarica
+     * @param ev Modello della flotta dell'EV, null se non presente
+     * @return La ChargerUnit occupata
      */
-    public synchronized void incrementOccupancy(Id<Charger> chargerId, String evId) {
-        ChargerUnit unit = chargerUnits.get(chargerId);
-        if (unit == null) {
+    public synchronized ChargerUnit incrementOccupancy(Id<Charger> chargerId, Id<Vehicle> vehicleId, EvModel ev) {
+        int pos = positionOf(chargerId);
+        if (pos < 0) {
             throw new IllegalArgumentException("Charger non appartiene all'hub: " + chargerId);
         }
-        unit.setOccupyingEv(evId);
-        dirty = true;
+        ChargerUnit unit = layout.units()[pos];
+        boolean wasOccupied = unit.isOccupied();
+        unit.setOccupyingEv(vehicleId, ev);
+        if (!wasOccupied) occupancy++;
+        publish(pos);
+        return unit;
+    }
+
+    /**
+     * Segna una colonnina come occupata da un EV fuori dalla flotta (inizio ricarica)
+     * 
+     * @param chargerId ID della colonnina
+     * @param evId ID dell'EV che inizia la ricarica
+     */
+    public void incrementOccupancy(Id<Charger> chargerId, String evId) {
+        incrementOccupancy(chargerId, Id.createVehicleId(evId), null);
     }
 
     /**
@@ -109,13 +202,35 @@ public class ChargingHub {
      * @param energy Energia erogata durante la ricarica
      */
     public synchronized void decrementOccupancy(Id<Charger> chargerId, double energy) {
-        ChargerUnit unit = chargerUnits.get(chargerId);
-        if (unit != null) {
-            unit.releaseOccupyingEv();
-            unit.addCumulativeEnergyDelivered(energy);
-            totalCumulativeEnergy += energy;
-            dirty = true;
-        }
+        int pos = positionOf(chargerId);
+        if (pos < 0) return;
+        release(pos, energy);
+    }
+
+    /**
+     * Libera la colonnina solo se è occupata dal veicolo indicato (fine ricarica di quel veicolo):
+     * un evento di fine ricarica arrivato dopo la riassegnazione non libera il nuovo occupante.
+     *
+     * @param chargerId ID della colonnina
+     * @param vehicleId ID dell'EV che termina la ricarica
+     * @param energy Energia erogata durante la ricarica
+     * @return true se la colonnina è stata liberata
+     */
+    public synchronized boolean decrementOccupancy(Id<Charger> chargerId, Id<Vehicle> vehicleId, double energy) {
+        int pos = positionOf(chargerId);
+        if (pos < 0) return false;
+        if (!vehicleId.equals(layout.units()[pos].getOccupyingVehicleId())) return false;
+        release(pos, energy);
+        return true;
+    }
+
+    private void release(int pos, double energy) {
+        ChargerUnit unit = layout.units()[pos];
+        if (unit.isOccupied()) occupancy--;
+        unit.releaseOccupyingEv();
+        unit.addCumulativeEnergyDelivered(energy);
+        totalCumulativeEnergy += energy;
+        publish(pos);
     }
 
     /**
@@ -126,10 +241,13 @@ public class ChargingHub {
      * @param energy Energia erogata in questo timestep
      */
     public synchronized void updateChargerEnergyDelivering(Id<Charger> chargerId, double energy) {
-        ChargerUnit unit = chargerUnits.get(chargerId);
-        if (unit != null) {
-            unit.setCurrentEnergyDelivering(energy);
-            dirty = true;
+        int pos = positionOf(chargerId);
+        if (pos < 0) return;
+        ChargerUnit unit = layout.units()[pos];
+        double before = unit.getCurrentEnergyDelivering();
+        unit.setCurrentEnergyDelivering(energy);
+        if (unit.getCurrentEnergyDelivering() != before) {
+            publish(pos);
         }
     }
 
@@ -138,45 +256,71 @@ public class ChargingHub {
      * Deve essere chiamato all'inizio di ogni timestep.
      */
     public synchronized void resetCurrentEnergyDelivering() {
-        chargerUnits.values().forEach(ChargerUnit::resetCurrentEnergyDelivering);
+        ChargerUnit[] units = layout.units();
+        boolean changed = false;
+        for (int i = 0; i < units.length; i++) {
+            if (units[i].getCurrentEnergyDelivering() != 0.0) {
+                units[i].resetCurrentEnergyDelivering();
+                states = states.with(i, HubSnapshot.ChargerState.of(units[i]));
+                changed = true;
+            }
+        }
+        if (changed) {
+            publish();
+        }
     }
 
     public synchronized void setChargerActive(Id<Charger> chargerId, boolean active) {
-        ChargerUnit unit = getChargerUnit(chargerId);
-        if (unit == null) {
+        int pos = positionOf(chargerId);
+        if (pos < 0) {
             throw new IllegalArgumentException("Charger non presente nell'hub: " + chargerId);
         }
-        unit.setActive(active);
-        dirty = true;
+        layout.units()[pos].setActive(active);
+        publish(pos);
     }
 
     //attiva disattiva intero hub
     public synchronized void setAllChargersActive(boolean active) {
-        chargerUnits.values().forEach(unit -> unit.setActive(active));
-        dirty = true;
+        ChargerUnit[] units = layout.units();
+        try {
+            for (int i = 0; i < units.length; i++) {
+                units[i].setActive(active);
+                states = states.with(i, HubSnapshot.ChargerState.of(units[i]));
+            }
+        } finally {
+            publish();
+        }
     }
 
-    // -------------------- ACCESSOR METHODS --------------------
+    // -------------------- ACCESSOR METHODS (senza lock) --------------------
+
+    /**
+     * Stato corrente dell'hub, immutabile e versionato.
+     */
+    public HubSnapshot snapshot() {
+        return snapshot;
+    }
 
     /**
-     * Ottieni una ChargerUnit specifica
+     * Ottieni una ChargerUnit specifica (stato vivo, solo lato simulazione)
      * 
      * @param chargerId ID della colonnina
      * @return La ChargerUnit o null se non presente
      */
-    public synchronized ChargerUnit getChargerUnit(Id<Charger> chargerId) {
-        return chargerUnits.get(chargerId);
+    ChargerUnit getChargerUnit(Id<Charger> chargerId) {
+        Layout l = layout;
+        Integer pos = l.position().get(chargerId);
+        return pos != null ? l.units()[pos] : null;
     }
 
     /**
-     * Ritorna tutte le ChargerUnit dell'hub
+     * Ritorna tutte le ChargerUnit dell'hub (stato vivo, solo lato simulazione).
+     * I reader esterni usano snapshot().
      * 
-     * @return Lista immutabile di ChargerUnit
+     * @return Lista immutabile di ChargerUnit, condivisa finché le colonnine non cambiano
      */
-    public synchronized List<ChargerUnit> getChargerUnits() {
-        return Collections.unmodifiableList(
-            new java.util.ArrayList<>(chargerUnits.values())
-        );
+    List<ChargerUnit> getChargerUnits() {
+        return layout.unitList();
     }
 
     /**
@@ -184,8 +328,8 @@ public class ChargingHub {
      * 
      * @return Set immutabile degli ID
      */
-    public synchronized Set<Id<Charger>> getChargersId() {
-        return Collections.unmodifiableSet(new HashSet<>(chargerUnits.keySet()));
+    public Set<Id<Charger>> getChargersId() {
+        return layout.ids();
     }
 
     /**
@@ -193,11 +337,11 @@ public class ChargingHub {
      * 
      * @return Lista immutabile di ChargerUnit
      */
-    public synchronized Set<Id<Charger>> getActiveChargersId() {
-        return   getChargerUnits().stream()
-                .filter(ChargerUnit::isActive)
-                .map(ChargerUnit::getChargerId)
-                .collect(Collectors.toSet());
+    public Set<Id<Charger>> getActiveChargersId() {
+        return snapshot().chargers().stream()
+                .filter(HubSnapshot.ChargerState::active)
+                .map(HubSnapshot.ChargerState::chargerId)
+                .collect(Collectors.toUnmodifiableSet());
     }
 
     /**
@@ -206,8 +350,8 @@ public class ChargingHub {
      * @param chargerId ID della colonnina
      * @return Set di plug o Set vuoto se non presente
      */
-    public synchronized Set<String> getPlugs(Id<Charger> chargerId) {
-        ChargerUnit unit = chargerUnits.get(chargerId);
+    public Set<String> getPlugs(Id<Charger> chargerId) {
+        ChargerUnit unit = getChargerUnit(chargerId);
         return unit != null ? unit.getPlugs() : Set.of();
     }
 
@@ -216,11 +360,11 @@ public class ChargingHub {
      * 
      * @return Set immutabile degli ID occupati
      */
-    public synchronized Set<Id<Charger>> getOccupiedChargers() {
-        return chargerUnits.values().stream()
-            .filter(ChargerUnit::isOccupied)
-            .map(ChargerUnit::getChargerId)
-            .collect(Collectors.toSet());
+    public Set<Id<Charger>> getOccupiedChargers() {
+        return snapshot().chargers().stream()
+            .filter(HubSnapshot.ChargerState::occupied)
+            .map(HubSnapshot.ChargerState::chargerId)
+            .collect(Collectors.toUnmodifiableSet());
     }
 
     /**
@@ -228,12 +372,12 @@ public class ChargingHub {
      * 
      * @return Mappa immutabile
      */
-    public synchronized Map<Id<Charger>, String> getOccupiedChargersWithEv() {
-        return chargerUnits.values().stream()
-            .filter(ChargerUnit::isOccupied)
+    public Map<Id<Charger>, String> getOccupiedChargersWithEv() {
+        return snapshot().chargers().stream()
+            .filter(HubSnapshot.ChargerState::occupied)
             .collect(Collectors.toUnmodifiableMap(
-                ChargerUnit::getChargerId,
-                ChargerUnit::getOccupyingEvId
+                HubSnapshot.ChargerState::chargerId,
+                HubSnapshot.ChargerState::occupyingEvId
             ));
     }
 
@@ -242,10 +386,8 @@ public class ChargingHub {
      * 
      * @return Numero di occupancy
      */
-    public synchronized int getOccupancy() {
-        return (int) chargerUnits.values().stream()
-            .filter(ChargerUnit::isOccupied)
-            .count();
+    public int getOccupancy() {
+        return snapshot().occupancy();
     }
 
     /**
@@ -253,8 +395,8 @@ public class ChargingHub {
      * 
      * @return Energia totale in Joule
      */
-    public synchronized double getTotalEnergy() {
-        return totalCumulativeEnergy;
+    public double getTotalEnergy() {
+        return snapshot().totalEnergy();
     }
 
     /**
@@ -263,8 +405,8 @@ public class ChargingHub {
      * @param chargerId ID della colonnina
      * @return true se presente, false altrimenti
      */
-    public synchronized boolean containsCharger(Id<Charger> chargerId) {
-        return chargerUnits.containsKey(chargerId);
+    public boolean containsCharger(Id<Charger> chargerId) {
+        return layout.position().containsKey(chargerId);
     }
 
     /**
@@ -273,9 +415,9 @@ public class ChargingHub {
      * @param chargerId ID della colonnina
      * @return Energia cumulativa in Joule
      */
-    public synchronized double getChargerEnergy(Id<Charger> chargerId) {
-        ChargerUnit unit = chargerUnits.get(chargerId);
-        return unit != null ? unit.getCumulativeEnergyDelivered() : 0.0;
+    public double getChargerEnergy(Id<Charger> chargerId) {
+        HubSnapshot.ChargerState state = snapshot().charger(chargerId);
+        return state != null ? state.cumulativeEnergy() : 0.0;
     }
 
     /**
@@ -284,9 +426,9 @@ public class ChargingHub {
      * @param chargerId ID della colonnina
      * @return Energia in erogazione in Joule
      */
-    public synchronized double getChargerCurrentEnergyDelivering(Id<Charger> chargerId) {
-        ChargerUnit unit = chargerUnits.get(chargerId);
-        return unit != null ? unit.getCurrentEnergyDelivering() : 0.0;
+    public double getChargerCurrentEnergyDelivering(Id<Charger> chargerId) {
+        HubSnapshot.ChargerState state = snapshot().charger(chargerId);
+        return state != null ? state.currentEnergy() : 0.0;
     }
 
     /**
@@ -294,7 +436,7 @@ public class ChargingHub {
      * 
      * @return ID del link
      */
-    public synchronized Id<Link> getLink() {
+    public Id<Link> getLink() {
         return this.linkId;
     }
 
@@ -304,18 +446,26 @@ public class ChargingHub {
      * @param chargerId ID della colonnina
      * @return ID dell'EV o null se libera
      */
-    public synchronized String getEvOccupyingCharger(Id<Charger> chargerId) {
-        ChargerUnit unit = chargerUnits.get(chargerId);
-        return unit != null ? unit.getOccupyingEvId() : null;
+    public String getEvOccupyingCharger(Id<Charger> chargerId) {
+        HubSnapshot.ChargerState state = snapshot().charger(chargerId);
+        return state != null ? state.occupyingEvId() : null;
     }
 
     // -------------------- Dirty flag --------------------
 
-    public synchronized boolean isDirty() {
-        return dirty;
+    public boolean isDirty() {
+        return snapshot.version() != publishedVersion;
+    }
+
+    public void resetDirty() {
+        publishedVersion = snapshot.version();
     }
 
-    public synchronized void resetDirty() {
-        dirty = false;
+    /**
+     * Conferma che la versione dello snapshot è stata pubblicata.
+     * Le modifiche successive allo snapshot restano dirty.
+     */
+    public void commitPublished(HubSnapshot published) {
+        publishedVersion = published.version();
     }
 }
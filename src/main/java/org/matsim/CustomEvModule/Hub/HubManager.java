@@ -1,6 +1,8 @@
 package org.matsim.CustomEvModule.Hub;
 
+import org.matsim.CustomEvModule.EVfleet.EvModel;
 import org.matsim.CustomEvModule.Utils.CoordinateConverter;
+import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
@@ -10,6 +12,7 @@ import org.matsim.contrib.ev.infrastructure.ChargingInfrastructureSpecification;
 import org.matsim.contrib.ev.infrastructure.ImmutableChargerSpecification;
 import org.matsim.utils.objectattributes.attributable.Attributes;
 import org.matsim.utils.objectattributes.attributable.AttributesImpl;
+import org.matsim.vehicles.Vehicle;
 import org.springboot.service.generationService.DTO.ChargerSpecDto;
 import org.springboot.service.generationService.DTO.HubSpecDto;
 import org.springframework.core.io.Resource;
@@ -18,6 +21,7 @@ import com.google.common.collect.ImmutableList;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
@@ -33,6 +37,20 @@ public class HubManager {
 
     private Map<String, ChargingHub> hubs = new HashMap<>();
     private final Map<Id<Charger>, String> charger2hub = new HashMap<>();
+    // Colonnine occupate da EV della flotta: il campionamento per timestep visita solo queste
+    private final OccupiedChargers occupied = new OccupiedChargers();
+    // Colonnine con energia in erogazione non nulla: le sole da azzerare al passo successivo
+    private final OccupiedChargers delivering = new OccupiedChargers();
+
+    /*
+    *   Indice colonnine per link dell'infrastruttura corrente (ricostruito per ogni QSim)
+    */
+    private volatile ChargerSlotIndex slotIndex;
+    private volatile ChargingInfrastructure slotIndexInfrastructure;
+    private volatile HubSpatialIndex spatialIndex;
+
+    // Serie di potenza per hub e colonnina (null finché non abilitate)
+    private volatile HubPowerSeries powerSeries;
 
     public HubManager(Network network, ChargingInfrastructureSpecification infraSpec) {
         this.infraSpec = infraSpec;
@@ -42,17 +60,42 @@ public class HubManager {
 
     /**
      * Restituisce una lista di charger libero e compatibile con i tipi richiesti su uno specifico link.
+     * Legge solo gli slot del link dall'indice, senza scorrere tutta l'infrastruttura.
      * @param linkId link su cui cercare charger
      * @param compatibleTypes tipi di charger compatibili con il veicolo
      * @return Optional<Id<Charger>> disponibile
      */
     public List<Charger> getAvailableChargerForLink(Id<Link> linkId, ImmutableList<String> compatibleTypes, ChargingInfrastructure chargingInfrastructure) {
-        return chargingInfrastructure.getChargers().values().stream()
-                .filter(c -> c.getLink().getId().equals(linkId))
-                .filter(c -> compatibleTypes.contains(
-                    c.getSpecification().getChargerType()
-                ))
-                .toList();
+        ChargerSlotIndex index = getChargerSlotIndex(chargingInfrastructure);
+        List<Charger> chargers = new ArrayList<>(index.slotCount(linkId));
+        for (int s = index.firstSlot(linkId), end = index.endSlot(linkId); s < end; s++) {
+            Charger charger = index.charger(s);
+            if (compatibleTypes.contains(charger.getSpecification().getChargerType())) {
+                chargers.add(charger);
+            }
+        }
+        return chargers;
+    }
+
+    /**
+     * Slot (in getChargerSlotIndex) di una colonnina libera e compatibile nell'hub più vicino
+     * al link entro radius metri, per quando l'hub locale è pieno.
+     * @return slot trovato, -1 se nessun hub vicino ha posto
+     */
+    public int findNearbyFreeCompatibleSlot(
+        Id<Link> linkId,
+        long plugMask,
+        ChargingInfrastructure chargingInfrastructure,
+        double radius,
+        Random rng
+    ) {
+        Link link = network.getLinks().get(linkId);
+        if (link == null) return -1;
+
+        HubSpatialIndex spatial = getHubSpatialIndex(chargingInfrastructure);
+        Coord c = link.getToNode().getCoord();
+        int hub = spatial.nearestWithFreePlug(c.getX(), c.getY(), plugMask, radius);
+        return hub < 0 ? -1 : spatial.slots().pickFreeCompatibleInHub(hub, plugMask, rng);
     }
 
     /**
@@ -142,6 +185,7 @@ public class HubManager {
                 hubId, hubSpec.getChargers().size(), hubChargerTypes);
         }
 
+        invalidateSlotIndex();
         log.info("[HubManager] Successfully registered all hub specifications with mixed charger types support");
     }
 
@@ -167,6 +211,7 @@ public class HubManager {
             charger2hub.put(chId, hubId);
         });
 
+        invalidateSlotIndex();
         log.debug("[HubManager] Charging hubs registered successfully.");
     }
 
@@ -185,6 +230,7 @@ public class HubManager {
             charger2hub.put(chId, hubId);
         });
 
+        invalidateSlotIndex();
         log.debug("[HubManager] Hub e colonnine create e registrate.");
     }
 
@@ -203,24 +249,80 @@ public class HubManager {
         return charger2hub.get(chargerId);
     }
 
-    public void incrementOccupancy(Id<Charger> chargerId, String evId) {
+    /**
+     * Occupa la colonnina con l'EV e la aggiunge all'insieme delle colonnine occupate.
+     *
+     * @param ev Modello della flotta dell'EV, null se non presente (la colonnina
+     *           risulta occupata ma non viene campionata)
+     */
+    public void incrementOccupancy(Id<Charger> chargerId, Id<Vehicle> vehicleId, EvModel ev) {
         ChargingHub hub = getHub(getHubIdForCharger(chargerId));
         if (hub != null) {
-            hub.incrementOccupancy(chargerId, evId);
+            ChargerUnit unit = hub.incrementOccupancy(chargerId, vehicleId, ev);
+            if (ev != null) occupied.add(hub, unit);
         }
     }
 
-    public void decrementOccupancy(Id<Charger> chargerId, double energy) {
+    /**
+     * Libera la colonnina solo se occupata dal veicolo, e la toglie dall'insieme delle occupate.
+     */
+    public void decrementOccupancy(Id<Charger> chargerId, Id<Vehicle> vehicleId, double energy) {
         ChargingHub hub = getHub(getHubIdForCharger(chargerId));
-        if(hub != null){
-            hub.decrementOccupancy(chargerId, energy);
+        if (hub != null && hub.decrementOccupancy(chargerId, vehicleId, energy)) {
+            occupied.remove(chargerId);
         }
     }
 
+    /**
+     * Visita le sole colonnine occupate da un EV della flotta, con il loro hub.
+     * L'azione non deve occupare o liberare colonnine.
+     */
+    public void forEachOccupiedCharger(BiConsumer<ChargingHub, ChargerUnit> action) {
+        occupied.forEach(action);
+    }
+
+    public int getOccupiedChargerCount() {
+        return occupied.size();
+    }
+
+    /**
+     * Energia in erogazione della colonnina nello step corrente; con energia non nulla
+     * la colonnina sarà azzerata da resetCurrentEnergyDelivering.
+     */
+    public void updateChargerEnergyDelivering(ChargingHub hub, ChargerUnit unit, double energy) {
+        hub.updateChargerEnergyDelivering(unit.getChargerId(), energy);
+        if (energy != 0.0) delivering.add(hub, unit);
+    }
+
+    /**
+     * Azzera l'energia in erogazione delle sole colonnine che hanno erogato nello
+     * step precedente: il costo scala con le colonnine attive, non con l'infrastruttura.
+     */
+    public void resetCurrentEnergyDelivering() {
+        delivering.forEach((hub, unit) -> hub.updateChargerEnergyDelivering(unit.getChargerId(), 0.0));
+        delivering.clear();
+    }
+
     public Collection<ChargingHub> getAllHubs() {
         return Collections.unmodifiableCollection(hubs.values());
     }
 
+    /**
+     * Alloca le serie di potenza di tutti gli hub e colonnine registrati.
+     * Da chiamare dopo la registrazione degli hub.
+     *
+     * @param resolutionS durata di un intervallo in secondi
+     * @param horizonS    durata della finestra conservata in secondi
+     */
+    public void enablePowerSeries(double resolutionS, double horizonS) {
+        this.powerSeries = new HubPowerSeries(hubs.values(), resolutionS, horizonS);
+    }
+
+    /** Serie di potenza, null se non abilitate */
+    public HubPowerSeries getPowerSeries() {
+        return powerSeries;
+    }
+
     /* =================================
     *  Chargers API
      ================================ */
@@ -272,10 +374,58 @@ public class HubManager {
         ImmutableList<String> compatibleTypes,
         ChargingInfrastructure chargingInfrastructure
     ){
-        return getAllCompatibleChargersOnLink(linkId, compatibleTypes).stream()
-                .map(id -> chargingInfrastructure.getChargers().get(id))
-                .filter(Objects::nonNull)
-                .toList();               
+        ChargerSlotIndex index = getChargerSlotIndex(chargingInfrastructure);
+        int[] slots = new int[index.slotCount(linkId)];
+        int count = index.collectFreeCompatible(linkId, index.maskOf(compatibleTypes), slots);
+
+        List<Charger> chargers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            chargers.add(index.charger(slots[i]));
+        }
+        return chargers;
+    }
+
+    /**
+     * Indice per link delle colonnine dell'infrastruttura, con riferimenti diretti ai Charger.
+     * Costruito alla prima richiesta per ogni ChargingInfrastructure (una per QSim).
+     */
+    public ChargerSlotIndex getChargerSlotIndex(ChargingInfrastructure chargingInfrastructure) {
+        ChargerSlotIndex index = slotIndex;
+        if (index != null && slotIndexInfrastructure == chargingInfrastructure) {
+            return index;
+        }
+        synchronized (this) {
+            if (slotIndex == null || slotIndexInfrastructure != chargingInfrastructure) {
+                slotIndex = ChargerSlotIndex.build(hubs.values(), id -> chargingInfrastructure.getChargers().get(id));
+                slotIndexInfrastructure = chargingInfrastructure;
+                log.info("[HubManager] Indice colonnine costruito: {} slot", slotIndex.size());
+            }
+            return slotIndex;
+        }
+    }
+
+    /**
+     * Indice spaziale degli hub costruito sullo stesso ChargerSlotIndex dell'infrastruttura.
+     */
+    public HubSpatialIndex getHubSpatialIndex(ChargingInfrastructure chargingInfrastructure) {
+        ChargerSlotIndex index = getChargerSlotIndex(chargingInfrastructure);
+        HubSpatialIndex spatial = spatialIndex;
+        if (spatial != null && spatial.slots() == index) {
+            return spatial;
+        }
+        synchronized (this) {
+            if (spatialIndex == null || spatialIndex.slots() != index) {
+                spatialIndex = new HubSpatialIndex(index, network);
+                log.info("[HubManager] Indice spaziale hub costruito: {} hub", index.hubCount());
+            }
+            return spatialIndex;
+        }
+    }
+
+    private synchronized void invalidateSlotIndex() {
+        slotIndex = null;
+        slotIndexInfrastructure = null;
+        spatialIndex = null;
     }
 
     //Attiva disattiva una colonnina 
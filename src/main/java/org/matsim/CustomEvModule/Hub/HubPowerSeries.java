@@ -0,0 +1,98 @@
+package org.matsim.CustomEvModule.Hub;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.contrib.ev.infrastructure.Charger;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Serie di potenza (PowerRingBuffer) di ogni hub e di ogni colonnina, allocate una volta
+ * alla configurazione: la serie dell'hub è la somma delle sue colonnine.
+ *
+ * Le mappe non cambiano dopo la costruzione e sono lette senza lock dai thread HTTP.
+ * Ogni step scrive solo nelle serie delle colonnine che erogano: le altre condividono
+ * l'orologio della simulazione e azzerano gli intervalli mancanti alla lettura.
+ */
+public final class HubPowerSeries {
+
+    private static final Logger log = LogManager.getLogger(HubPowerSeries.class);
+
+    private final double resolutionS;
+    private final int capacity;
+    private final Map<String, PowerRingBuffer> hubs = new HashMap<>();
+    private final Map<Id<Charger>, PowerRingBuffer> chargers = new HashMap<>();
+    // Istante dell'ultimo step monitorato, NaN prima del primo
+    private volatile double now = Double.NaN;
+
+    /**
+     * @param resolutionS durata di un intervallo in secondi
+     * @param horizonS    durata della finestra conservata in secondi
+     */
+    public HubPowerSeries(Collection<ChargingHub> chargingHubs, double resolutionS, double horizonS) {
+        this.resolutionS = resolutionS;
+        this.capacity = (int) Math.ceil(horizonS / resolutionS);
+        for (ChargingHub hub : chargingHubs) {
+            hubs.put(hub.getId(), new PowerRingBuffer(resolutionS, capacity, this::now));
+            for (Id<Charger> chargerId : hub.getChargersId()) {
+                chargers.put(chargerId, new PowerRingBuffer(resolutionS, capacity, this::now));
+            }
+        }
+        log.info("[HubPowerSeries] Serie di potenza per {} hub e {} colonnine ({} intervalli da {} s)",
+                hubs.size(), chargers.size(), capacity, resolutionS);
+    }
+
+    public double resolutionS() {
+        return resolutionS;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Registra l'energia (kWh) erogata da una colonnina tra fromTime e toTime,
+     * sia nella serie della colonnina che in quella del suo hub.
+     */
+    public void record(String hubId, Id<Charger> chargerId, double fromTime, double toTime, double energyKWh) {
+        PowerRingBuffer charger = chargers.get(chargerId);
+        if (charger != null) charger.add(fromTime, toTime, energyKWh);
+        PowerRingBuffer hub = hubs.get(hubId);
+        if (hub != null) hub.add(fromTime, toTime, energyKWh);
+    }
+
+    /**
+     * Sposta l'orologio delle serie a time: O(1), le finestre si allineano alla lettura
+     * e gli intervalli senza erogazione risultano a potenza zero.
+     */
+    public void advanceTo(double time) {
+        now = time;
+    }
+
+    /**
+     * Svuota tutte le serie e riporta l'orologio a prima del primo step.
+     * O(hub + colonnine), una volta per iterazione.
+     */
+    public void reset() {
+        now = Double.NaN;
+        hubs.values().forEach(PowerRingBuffer::reset);
+        chargers.values().forEach(PowerRingBuffer::reset);
+    }
+
+    private double now() {
+        return now;
+    }
+
+    /** Serie dell'hub, null se sconosciuto */
+    public PowerRingBuffer hub(String hubId) {
+        return hubs.get(hubId);
+    }
+
+    /** Serie della colonnina, null se sconosciuta */
+    public PowerRingBuffer charger(Id<Charger> chargerId) {
+        return chargers.get(chargerId);
+    }
+}
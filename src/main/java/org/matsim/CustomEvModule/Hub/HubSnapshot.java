@@ -0,0 +1,165 @@
+package org.matsim.CustomEvModule.Hub;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.contrib.ev.infrastructure.Charger;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * Stato immutabile e versionato di un ChargingHub, pubblicato dal lato simulazione
+ * ad ogni modifica. I reader (publisher, thread HTTP) lo leggono senza lock né copie.
+ *
+ * Occupazione ed energia totale sono contatori mantenuti dall'hub, non ricalcolati.
+ * Gli stati delle colonnine sono una StateList persistente: una nuova versione copia
+ * solo il blocco della colonnina modificata.
+ */
+public final class HubSnapshot {
+
+    /**
+     * Stato di una colonnina nella versione dello snapshot.
+     */
+    public record ChargerState(
+            Id<Charger> chargerId,
+            boolean active,
+            String occupyingEvId,
+            double cumulativeEnergy,
+            double currentEnergy
+    ) {
+        public boolean occupied() {
+            return occupyingEvId != null;
+        }
+
+        static ChargerState of(ChargerUnit unit) {
+            return new ChargerState(
+                    unit.getChargerId(),
+                    unit.isActive(),
+                    unit.getOccupyingEvId(),
+                    unit.getCumulativeEnergyDelivered(),
+                    unit.getCurrentEnergyDelivering()
+            );
+        }
+    }
+
+    /**
+     * Lista immutabile di stati a blocchi di CHUNK: with(pos, state) condivide con la
+     * versione precedente tutti i blocchi tranne quello di pos.
+     */
+    static final class StateList extends AbstractList<ChargerState> implements RandomAccess {
+
+        private static final int CHUNK = 16;
+
+        static final StateList EMPTY = new StateList(new ChargerState[0][], 0);
+
+        private final ChargerState[][] chunks;
+        private final int size;
+
+        private StateList(ChargerState[][] chunks, int size) {
+            this.chunks = chunks;
+            this.size = size;
+        }
+
+        static StateList of(ChargerState[] states) {
+            int n = states.length;
+            ChargerState[][] chunks = new ChargerState[(n + CHUNK - 1) / CHUNK][];
+            for (int c = 0; c < chunks.length; c++) {
+                chunks[c] = Arrays.copyOfRange(states, c * CHUNK, Math.min(n, (c + 1) * CHUNK));
+            }
+            return new StateList(chunks, n);
+        }
+
+        /** Nuova versione con lo stato in posizione pos sostituito */
+        StateList with(int pos, ChargerState state) {
+            ChargerState[][] next = chunks.clone();
+            int c = pos / CHUNK;
+            next[c] = next[c].clone();
+            next[c][pos % CHUNK] = state;
+            return new StateList(next, size);
+        }
+
+        @Override
+        public ChargerState get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return chunks[index / CHUNK][index % CHUNK];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    private final String hubId;
+    private final double coordX;
+    private final double coordY;
+    private final long version;
+    private final int occupancy;
+    private final double totalEnergy;
+    private final List<ChargerState> chargers;
+    // Condivisi tra le versioni: cambiano solo aggiungendo o rimuovendo colonnine
+    private final Map<Id<Charger>, Integer> position;
+    private final Set<Id<Charger>> chargerIds;
+
+    HubSnapshot(String hubId, double coordX, double coordY, long version, int occupancy, double totalEnergy,
+                List<ChargerState> chargers, Map<Id<Charger>, Integer> position, Set<Id<Charger>> chargerIds) {
+        this.hubId = hubId;
+        this.coordX = coordX;
+        this.coordY = coordY;
+        this.version = version;
+        this.occupancy = occupancy;
+        this.totalEnergy = totalEnergy;
+        this.chargers = chargers;
+        this.position = position;
+        this.chargerIds = chargerIds;
+    }
+
+    public String hubId() {
+        return hubId;
+    }
+
+    public double coordX() {
+        return coordX;
+    }
+
+    public double coordY() {
+        return coordY;
+    }
+
+    /** Versione crescente: cambia ad ogni modifica effettiva dell'hub */
+    public long version() {
+        return version;
+    }
+
+    /** Colonnine occupate */
+    public int occupancy() {
+        return occupancy;
+    }
+
+    /** Energia cumulativa erogata dall'hub in Joule */
+    public double totalEnergy() {
+        return totalEnergy;
+    }
+
+    /** Colonnine nell'ordine di registrazione */
+    public List<ChargerState> chargers() {
+        return chargers;
+    }
+
+    public Set<Id<Charger>> chargerIds() {
+        return chargerIds;
+    }
+
+    /**
+     * Stato di una colonnina, null se non appartiene all'hub.
+     */
+    public ChargerState charger(Id<Charger> chargerId) {
+        Integer pos = position.get(chargerId);
+        return pos != null ? chargers.get(pos) : null;
+    }
+}
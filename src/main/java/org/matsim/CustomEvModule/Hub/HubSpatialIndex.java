@@ -0,0 +1,133 @@
+package org.matsim.CustomEvModule.Hub;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Indice spaziale (STRtree) degli hub di un ChargerSlotIndex, nel CRS della rete.
+ *
+ * La posizione dell'hub è il nodo di arrivo del suo link, come in HubManager
+ * (le coordinate salvate nel ChargingHub sono lat/lon per il frontend).
+ * Gli elementi dell'albero sono gli ordinali degli hub nel ChargerSlotIndex.
+ */
+public final class HubSpatialIndex {
+
+    // Raggio iniziale della ricerca kNN ad anelli crescenti
+    private static final double INITIAL_RADIUS_M = 250.0;
+
+    private final ChargerSlotIndex slots;
+    private final STRtree tree = new STRtree();
+    private final double[] x;
+    private final double[] y;
+    private final Envelope bounds = new Envelope();
+    private final double maxExtent;
+
+    public HubSpatialIndex(ChargerSlotIndex slots, Network network) {
+        this.slots = slots;
+        int n = slots.hubCount();
+        this.x = new double[n];
+        this.y = new double[n];
+
+        for (int h = 0; h < n; h++) {
+            Link link = network.getLinks().get(slots.hub(h).getLink());
+            if (link == null) {
+                x[h] = Double.NaN;
+                y[h] = Double.NaN;
+                continue;
+            }
+            Coord c = link.getToNode().getCoord();
+            x[h] = c.getX();
+            y[h] = c.getY();
+            tree.insert(new Envelope(x[h], x[h], y[h], y[h]), h);
+            bounds.expandToInclude(x[h], y[h]);
+        }
+        tree.build();
+        this.maxExtent = bounds.isNull() ? 0.0 : Math.hypot(bounds.getWidth(), bounds.getHeight());
+    }
+
+    public ChargerSlotIndex slots() {
+        return slots;
+    }
+
+    public double x(int hub) {
+        return x[hub];
+    }
+
+    public double y(int hub) {
+        return y[hub];
+    }
+
+    public double distance(int hub, double px, double py) {
+        return Math.hypot(x[hub] - px, y[hub] - py);
+    }
+
+    /**
+     * Ordinali degli hub entro radius metri dal punto, ordinati per distanza.
+     */
+    public List<Integer> withinRadius(double px, double py, double radius) {
+        @SuppressWarnings("unchecked")
+        List<Integer> candidates = tree.query(new Envelope(px - radius, px + radius, py - radius, py + radius));
+        List<Integer> result = new ArrayList<>(candidates.size());
+        double r2 = radius * radius;
+        for (Integer h : candidates) {
+            double dx = x[h] - px;
+            double dy = y[h] - py;
+            if (dx * dx + dy * dy <= r2) result.add(h);
+        }
+        result.sort(Comparator.comparingDouble(h -> distance(h, px, py)));
+        return result;
+    }
+
+    /**
+     * I k hub più vicini al punto entro maxRadius metri, liberi o no.
+     */
+    public List<Integer> nearest(double px, double py, int k, double maxRadius) {
+        return nearest(px, py, k, maxRadius, h -> true);
+    }
+
+    /**
+     * I k hub più vicini al punto con almeno una colonnina libera e compatibile,
+     * entro maxRadius metri.
+     */
+    public List<Integer> nearestWithFreePlug(double px, double py, int k, long mask, double maxRadius) {
+        return nearest(px, py, k, maxRadius, h -> slots.hasFreeCompatible(h, mask));
+    }
+
+    /**
+     * Ricerca ad anelli con raggio raddoppiato ad ogni passo, fino alla distanza oltre
+     * la quale non c'è alcun hub (distanza dal bounding box degli hub più la sua diagonale):
+     * anche da punti lontani dagli hub si arriva a maxRadius.
+     */
+    private List<Integer> nearest(double px, double py, int k, double maxRadius, IntPredicate accept) {
+        double toBounds = bounds.isNull() ? 0.0 : bounds.distance(new Envelope(px, px, py, py));
+        double limit = Math.min(maxRadius, toBounds + maxExtent);
+        double radius = Math.min(INITIAL_RADIUS_M, limit);
+        while (true) {
+            List<Integer> found = new ArrayList<>(k);
+            for (int h : withinRadius(px, py, radius)) {
+                if (accept.test(h)) {
+                    found.add(h);
+                    if (found.size() == k) return found;
+                }
+            }
+            if (radius >= limit) return found;
+            radius = Math.min(radius * 2.0, limit);
+        }
+    }
+
+    /**
+     * Hub più vicino con una colonnina libera e compatibile, -1 se nessuno entro maxRadius.
+     */
+    public int nearestWithFreePlug(double px, double py, long mask, double maxRadius) {
+        List<Integer> found = nearestWithFreePlug(px, py, 1, mask, maxRadius);
+        return found.isEmpty() ? -1 : found.get(0);
+    }
+}
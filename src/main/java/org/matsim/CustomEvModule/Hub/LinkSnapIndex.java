@@ -0,0 +1,100 @@
+package org.matsim.CustomEvModule.Hub;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Indice spaziale (STRtree) dei link auto della rete, per agganciare punti al link più vicino.
+ *
+ * - gli elementi dell'albero sono ordinali di link; le geometrie (segmento from → to)
+ *   sono in array paralleli
+ * - la distanza è quella punto-segmento, nel CRS della rete (metri)
+ * - costruito una volta: dopo build le query sono in sola lettura e thread-safe
+ */
+public final class LinkSnapIndex {
+
+    private static final Logger log = LogManager.getLogger(LinkSnapIndex.class);
+
+    /**
+     * Link agganciato e distanza del punto dal suo segmento.
+     */
+    public record Snap(Link link, double distance) {}
+
+    private final STRtree tree = new STRtree();
+    private final Link[] links;
+    private final double[] fromX;
+    private final double[] fromY;
+    private final double[] toX;
+    private final double[] toY;
+
+    public LinkSnapIndex(Network network) {
+        List<Link> carLinks = new ArrayList<>();
+        for (Link link : network.getLinks().values()) {
+            if (link.getAllowedModes().contains(TransportMode.car)) {
+                carLinks.add(link);
+            }
+        }
+
+        int n = carLinks.size();
+        this.links = carLinks.toArray(new Link[0]);
+        this.fromX = new double[n];
+        this.fromY = new double[n];
+        this.toX = new double[n];
+        this.toY = new double[n];
+
+        for (int i = 0; i < n; i++) {
+            Coord from = links[i].getFromNode().getCoord();
+            Coord to = links[i].getToNode().getCoord();
+            fromX[i] = from.getX();
+            fromY[i] = from.getY();
+            toX[i] = to.getX();
+            toY[i] = to.getY();
+            tree.insert(new Envelope(fromX[i], toX[i], fromY[i], toY[i]), i);
+        }
+        tree.build();
+        log.info("[LinkSnapIndex] Indicizzati {} link auto su {}", n, network.getLinks().size());
+    }
+
+    public int size() {
+        return links.length;
+    }
+
+    /**
+     * Link auto più vicino al punto entro maxDistance metri.
+     * A parità di distanza vince il link con ordinale minore (risultato deterministico).
+     *
+     * @return link e distanza, null se nessun link entro maxDistance
+     */
+    public Snap snap(double x, double y, double maxDistance) {
+        @SuppressWarnings("unchecked")
+        List<Integer> candidates = tree.query(new Envelope(x - maxDistance, x + maxDistance, y - maxDistance, y + maxDistance));
+        int best = -1;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for (int i : candidates) {
+            double d = segmentDistance(i, x, y);
+            if (d < bestDistance || (d == bestDistance && i < best)) {
+                best = i;
+                bestDistance = d;
+            }
+        }
+        return best >= 0 && bestDistance <= maxDistance ? new Snap(links[best], bestDistance) : null;
+    }
+
+    private double segmentDistance(int i, double px, double py) {
+        double dx = toX[i] - fromX[i];
+        double dy = toY[i] - fromY[i];
+        double len2 = dx * dx + dy * dy;
+        double t = len2 == 0.0 ? 0.0 : ((px - fromX[i]) * dx + (py - fromY[i]) * dy) / len2;
+        t = Math.max(0.0, Math.min(1.0, t));
+        return Math.hypot(px - (fromX[i] + t * dx), py - (fromY[i] + t * dy));
+    }
+}
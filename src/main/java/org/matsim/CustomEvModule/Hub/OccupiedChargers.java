@@ -0,0 +1,84 @@
+package org.matsim.CustomEvModule.Hub;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.contrib.ev.infrastructure.Charger;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * Insieme denso di colonnine con il loro hub: le colonnine occupate e quelle che hanno
+ * erogato nello step precedente (HubManager).
+ *
+ * - array densi con rimozione per scambio con l'ultimo: l'iterazione costa O(occupate)
+ * - posizione per indice di Id<Charger> (posizione + 1, 0 = assente): inserimento e
+ *   rimozione O(1) senza hashing
+ *
+ * Aggiornato dagli eventi di inizio/fine ricarica e letto dal monitor dei timestep:
+ * accessi sincronizzati sull'insieme. forEach tiene il lock durante la visita, quindi
+ * l'azione non deve tornare a modificare l'insieme.
+ */
+final class OccupiedChargers {
+
+    private ChargingHub[] hubs = new ChargingHub[16];
+    private ChargerUnit[] units = new ChargerUnit[16];
+    private int[] position = new int[0];
+    private int size = 0;
+
+    synchronized void add(ChargingHub hub, ChargerUnit unit) {
+        int idx = unit.getChargerId().index();
+        if (idx >= position.length) {
+            position = Arrays.copyOf(position, Math.max(idx + 1, position.length * 2));
+        }
+        if (position[idx] != 0) {
+            // Già presente: aggiorna solo l'hub
+            hubs[position[idx] - 1] = hub;
+            return;
+        }
+        if (size == units.length) {
+            hubs = Arrays.copyOf(hubs, size * 2);
+            units = Arrays.copyOf(units, size * 2);
+        }
+        hubs[size] = hub;
+        units[size] = unit;
+        position[idx] = ++size;
+    }
+
+    synchronized void remove(Id<Charger> chargerId) {
+        int idx = chargerId.index();
+        if (idx >= position.length || position[idx] == 0) return;
+        int pos = position[idx] - 1;
+        position[idx] = 0;
+
+        int last = --size;
+        if (pos != last) {
+            hubs[pos] = hubs[last];
+            units[pos] = units[last];
+            position[units[pos].getChargerId().index()] = pos + 1;
+        }
+        hubs[last] = null;
+        units[last] = null;
+    }
+
+    synchronized void forEach(BiConsumer<ChargingHub, ChargerUnit> action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(hubs[i], units[i]);
+        }
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Svuota l'insieme in O(size): azzera solo le posizioni dei membri.
+     */
+    synchronized void clear() {
+        for (int i = 0; i < size; i++) {
+            position[units[i].getChargerId().index()] = 0;
+        }
+        Arrays.fill(hubs, 0, size, null);
+        Arrays.fill(units, 0, size, null);
+        size = 0;
+    }
+}
@@ -0,0 +1,210 @@
+package org.matsim.CustomEvModule.Hub;
+
+import java.util.Arrays;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Serie temporale della potenza di una colonnina o di un hub su una finestra scorrevole.
+ *
+ * - buffer circolare preallocato di float (energia in kWh per intervallo), nessuna
+ *   allocazione in scrittura: la memoria è capacity * 4 byte per serie
+ * - l'intervallo i copre [i * resolution, (i + 1) * resolution) secondi di simulazione
+ * - l'energia di uno step viene ripartita sugli intervalli che lo step attraversa
+ * - le query leggono solo la finestra in memoria (al più capacity valori)
+ * - gli intervalli senza erogazione sono azzerati in modo pigro, alla prima scrittura
+ *   o lettura successiva: con un orologio (clock) le letture estendono la finestra fino
+ *   all'istante corrente, senza scritture periodiche su ogni serie
+ *
+ * Scritto dal thread della simulazione, letto dai thread HTTP: accessi sincronizzati
+ * sul buffer, sezioni critiche di O(capacity) nel caso peggiore.
+ */
+public final class PowerRingBuffer {
+
+    /**
+     * Potenza media per intervallo, dal più vecchio al più recente.
+     */
+    public record LoadCurve(double startTime, double resolutionS, double[] powerKw) {}
+
+    /**
+     * Statistiche della potenza nella finestra [fromTime, toTime).
+     * percentileKw[i] corrisponde al percentile richiesto i-esimo.
+     */
+    public record LoadStats(
+            double fromTime,
+            double toTime,
+            double peakTime,
+            double peakKw,
+            double meanKw,
+            double energyKWh,
+            double[] percentileKw
+    ) {}
+
+    private final double resolutionS;
+    private final float[] energyKWh;
+    private final DoubleSupplier clock;
+    private long newest = -1;           // indice assoluto dell'ultimo intervallo scritto
+
+    public PowerRingBuffer(double resolutionS, int capacity) {
+        this(resolutionS, capacity, null);
+    }
+
+    /**
+     * @param clock istante di simulazione corrente (NaN prima del primo step), null se
+     *              la finestra termina all'ultimo intervallo scritto
+     */
+    public PowerRingBuffer(double resolutionS, int capacity, DoubleSupplier clock) {
+        if (resolutionS <= 0) throw new IllegalArgumentException("resolutionS must be > 0");
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be > 0");
+        this.resolutionS = resolutionS;
+        this.energyKWh = new float[capacity];
+        this.clock = clock;
+    }
+
+    public double resolutionS() {
+        return resolutionS;
+    }
+
+    public int capacity() {
+        return energyKWh.length;
+    }
+
+    // ================================================================
+    // ================= SCRITTURA ===================================
+    // ================================================================
+
+    /**
+     * Registra l'energia erogata tra fromTime e toTime, ripartita in proporzione
+     * sugli intervalli attraversati. Con fromTime >= toTime l'energia va tutta
+     * nell'intervallo di toTime.
+     */
+    public synchronized void add(double fromTime, double toTime, double energyKWh) {
+        if (energyKWh == 0.0) {
+            advanceTo(interval(Math.max(fromTime, toTime)));
+            return;
+        }
+        if (!(toTime > fromTime)) {
+            addToInterval(interval(toTime), energyKWh);
+            return;
+        }
+        double perSecond = energyKWh / (toTime - fromTime);
+        long first = interval(fromTime);
+        long last = interval(Math.nextDown(toTime));
+        for (long i = first; i <= last; i++) {
+            double start = Math.max(fromTime, i * resolutionS);
+            double end = Math.min(toTime, (i + 1) * resolutionS);
+            addToInterval(i, perSecond * (end - start));
+        }
+    }
+
+    /**
+     * Svuota la finestra: da chiamare all'inizio di ogni iterazione, quando il tempo
+     * di simulazione riparte da zero e gli intervalli precedenti non sono più validi.
+     */
+    public synchronized void reset() {
+        Arrays.fill(energyKWh, 0f);
+        newest = -1;
+    }
+
+    private long interval(double time) {
+        return (long) Math.floor(Math.max(0.0, time) / resolutionS);
+    }
+
+    private void addToInterval(long interval, double energy) {
+        advanceTo(interval);
+        if (interval <= newest - energyKWh.length) return;      // fuori dalla finestra
+        energyKWh[slot(interval)] += (float) energy;
+    }
+
+    private void advanceTo(long interval) {
+        if (interval <= newest) return;
+        // Azzera gli intervalli che rientrano nella finestra (al più capacity)
+        long from = Math.max(newest + 1, interval - energyKWh.length + 1);
+        for (long i = from; i <= interval; i++) {
+            energyKWh[slot(i)] = 0f;
+        }
+        newest = interval;
+    }
+
+    private int slot(long interval) {
+        return (int) (interval % energyKWh.length);
+    }
+
+    /** Porta la finestra all'istante del clock: intervalli non scritti = potenza zero */
+    private void catchUp() {
+        if (clock == null) return;
+        double now = clock.getAsDouble();
+        if (now >= 0.0) advanceTo(interval(now));
+    }
+
+    // ================================================================
+    // ================= QUERY =======================================
+    // ================================================================
+
+    /**
+     * Curva di carico tra fromTime e toTime, ritagliata sulla finestra in memoria.
+     * Estremi null = inizio/fine della finestra.
+     */
+    public synchronized LoadCurve curve(Double fromTime, Double toTime) {
+        catchUp();
+        long[] range = range(fromTime, toTime);
+        if (range == null) return new LoadCurve(0.0, resolutionS, new double[0]);
+        double[] power = new double[(int) (range[1] - range[0] + 1)];
+        for (int k = 0; k < power.length; k++) {
+            power[k] = toKw(energyKWh[slot(range[0] + k)]);
+        }
+        return new LoadCurve(range[0] * resolutionS, resolutionS, power);
+    }
+
+    /**
+     * Picco, media, energia e percentili (0-100, nearest-rank) della potenza tra fromTime e toTime.
+     */
+    public synchronized LoadStats stats(Double fromTime, Double toTime, double... percentiles) {
+        catchUp();
+        long[] range = range(fromTime, toTime);
+        if (range == null) {
+            return new LoadStats(0.0, 0.0, 0.0, 0.0, 0.0, 0.0, new double[percentiles.length]);
+        }
+        int n = (int) (range[1] - range[0] + 1);
+        double[] power = new double[n];
+        double energy = 0.0;
+        int peak = 0;
+        for (int k = 0; k < n; k++) {
+            float e = energyKWh[slot(range[0] + k)];
+            energy += e;
+            power[k] = toKw(e);
+            if (power[k] > power[peak]) peak = k;
+        }
+        double peakKw = power[peak];
+
+        Arrays.sort(power);
+        double[] values = new double[percentiles.length];
+        for (int p = 0; p < percentiles.length; p++) {
+            double q = Math.max(0.0, Math.min(100.0, percentiles[p]));
+            int rank = (int) Math.ceil(q / 100.0 * n);
+            values[p] = power[Math.max(0, rank - 1)];
+        }
+
+        return new LoadStats(
+                range[0] * resolutionS,
+                (range[1] + 1) * resolutionS,
+                (range[0] + peak) * resolutionS,
+                peakKw,
+                toKw(energy / n),
+                energy,
+                values
+        );
+    }
+
+    /** Intervalli [primo, ultimo] della richiesta dentro la finestra, null se vuota */
+    private long[] range(Double fromTime, Double toTime) {
+        if (newest < 0) return null;
+        long oldest = Math.max(0, newest - energyKWh.length + 1);
+        long first = fromTime != null ? Math.max(oldest, interval(fromTime)) : oldest;
+        long last = toTime != null ? Math.min(newest, interval(Math.nextDown(toTime))) : newest;
+        return first <= last ? new long[] { first, last } : null;
+    }
+
+    private double toKw(double energyKWh) {
+        return energyKWh * 3600.0 / resolutionS;
+    }
+}
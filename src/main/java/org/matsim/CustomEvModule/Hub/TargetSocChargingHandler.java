@@ -1,8 +1,7 @@
 package org.matsim.CustomEvModule.Hub;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.BitSet;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -14,8 +13,8 @@ import org.matsim.api.core.v01.events.handler.ActivityEndEventHandler;
 import org.matsim.api.core.v01.events.handler.ActivityStartEventHandler;
 import org.matsim.api.core.v01.events.handler.PersonLeavesVehicleEventHandler;
 import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.population.Person;
-import org.matsim.contrib.ev.charging.ChargeUpToMaxSocStrategy;
 import org.matsim.contrib.ev.charging.ChargingEndEvent;
 import org.matsim.contrib.ev.charging.ChargingEndEventHandler;
 import org.matsim.contrib.ev.charging.ChargingStrategy;
@@ -25,6 +24,10 @@ import org.matsim.contrib.ev.infrastructure.Charger;
 import org.matsim.contrib.ev.infrastructure.ChargingInfrastructure;
 import org.matsim.core.events.MobsimScopeEventHandler;
 import org.matsim.core.gbl.MatsimRandom;
+import org.matsim.CustomEvModule.EVfleet.SocTargetTable;
+import org.matsim.CustomEvModule.EVfleet.Charging.AnalyticChargingEngine;
+import org.matsim.CustomEvModule.Hub.selection.ChargerSelectionPolicy;
+import org.matsim.CustomEvModule.Hub.selection.ChargerSelectionState;
 import org.matsim.vehicles.Vehicle;
 
 import com.google.inject.Inject;
@@ -40,26 +43,75 @@ public class TargetSocChargingHandler
     ChargingInfrastructure chargingInfrastructure;
     ChargingStrategy.Factory strategyFactory;
 
-    private final Map<Id<Person>, Id<Vehicle>> lastVehicleUsed = new HashMap<>();
-    private final Map<Id<Vehicle>, Id<Charger>> vehiclesAtChargers = new HashMap<>();
+    /*
+    *   Veicoli elettrici della QSim per indice di Id<Vehicle>: gli eventi dei veicoli
+    *   non elettrici vengono scartati con un test sul bitset, senza inserimenti in mappe
+    */
+    private final BitSet evVehicles = new BitSet();
+    /*
+    *   Ultimo veicolo elettrico lasciato da ogni persona: indice di Id<Person> ->
+    *   indice di Id<Vehicle> + 1 (0 = nessuno)
+    */
+    private int[] lastEvByPerson;
     private final HubManager hubManager;
+    private final ChargerSelectionPolicy selectionPolicy;
+    private final Network network;
+    private final SocTargetTable socTargets;
+    // Ricarica a eventi: fine sessione calcolata al collegamento
+    private final AnalyticChargingEngine chargingEngine;
+
+    // Colonnine libere, carichi e code della QSim (costruito al primo arrivo)
+    private ChargerSelectionState selectionState;
 
     @Inject
 	TargetSocChargingHandler(
         ChargingInfrastructure chargingInfrastructure, 
         ElectricFleet electricFleet, 
         ChargingStrategy.Factory strategyFactory,
-        HubManager hubManager
+        HubManager hubManager,
+        ChargerSelectionPolicy selectionPolicy,
+        Network network,
+        SocTargetTable socTargets,
+        AnalyticChargingEngine chargingEngine
     ) {
 		this.chargingInfrastructure = chargingInfrastructure;
 		this.electricFleet          = electricFleet;
 		this.strategyFactory        = strategyFactory;
 		this.hubManager             = hubManager;
+		this.selectionPolicy        = selectionPolicy;
+		this.network                = network;
+		this.socTargets             = socTargets;
+		this.chargingEngine         = chargingEngine;
+
+		for (Id<Vehicle> id : electricFleet.getElectricVehicles().keySet()) {
+			evVehicles.set(id.index());
+		}
+		this.lastEvByPerson = new int[Id.getNumberOfIds(Person.class)];
 	}
 
+    private ChargerSelectionState selectionState() {
+        if (selectionState == null) {
+            selectionState = new ChargerSelectionState(hubManager.getHubSpatialIndex(chargingInfrastructure), network);
+        }
+        return selectionState;
+    }
+
     @Override
     public void handleEvent(PersonLeavesVehicleEvent e) {
-        lastVehicleUsed.put(e.getPersonId(), e.getVehicleId());
+        int vehicle = e.getVehicleId().index();
+        if (!evVehicles.get(vehicle)) return;
+
+        int person = e.getPersonId().index();
+        if (person >= lastEvByPerson.length) {
+            lastEvByPerson = Arrays.copyOf(lastEvByPerson, Math.max(person + 1, lastEvByPerson.length * 2));
+        }
+        lastEvByPerson[person] = vehicle + 1;
+    }
+
+    private Id<Vehicle> lastEv(Id<Person> personId) {
+        int person = personId.index();
+        if (person >= lastEvByPerson.length || lastEvByPerson[person] == 0) return null;
+        return Id.get(lastEvByPerson[person] - 1, Vehicle.class);
     }
 
     @Override
@@ -69,58 +121,74 @@ public class TargetSocChargingHandler
         Id<Link> eventLink = e.getLinkId();
         if(eventLink == null) return;
 
-        Id<Vehicle> vId     = lastVehicleUsed.get(e.getPersonId());
+        Id<Vehicle> vId     = lastEv(e.getPersonId());
         if (vId == null) return;
 
         ElectricVehicle ev  = electricFleet.getElectricVehicles().get(vId);
         if (ev == null) return;
 
-        double socTarget = readSocTarget(e.getPersonId());
-
-        List<Charger> compatibleChargers = hubManager.getAllCompatibleChargerObjectsOnLink(eventLink, ev.getChargerTypes(), chargingInfrastructure);
-
-        if (compatibleChargers.isEmpty()) {
+        double socTarget = socTargets.get(e.getPersonId());
+
+        // Colonnina scelta dalla politica configurata (strutture per hub, senza scansioni)
+        ChargerSelectionState state = selectionState();
+        long mask = state.slots().maskOf(ev.getChargerTypes());
+        int slot = selectionPolicy.select(state, eventLink, mask, MatsimRandom.getRandom());
+
+        if (slot == ChargerSelectionPolicy.NO_SLOT) {
+            int hub = selectionPolicy.queueHub(state, eventLink, mask);
+            if (hub >= 0) {
+                state.enqueue(hub, new ChargerSelectionState.Waiting(vId, ev, mask, socTarget));
+                log.info("[TargetSocChargingHandler] Veicolo {} in coda all'hub {} ({} in attesa)",
+                    vId, state.slots().hub(hub).getId(), state.waitingCount(hub));
+                return;
+            }
             log.info("[TargetSocChargingHandler] Veicolo {} Nessun charger compatibile sul link {}", vId, e.getLinkId());
             return;
         }
 
-        // Strategia: scegli charger (random)
-        Charger selected = compatibleChargers.get(
-            MatsimRandom.getRandom().nextInt(compatibleChargers.size())
-        );
+        plug(vId, ev, slot, socTarget, e.getTime());
+    }
 
-        ChargingStrategy strategy = new ChargeUpToMaxSocStrategy(
-            selected.getSpecification(),
-            ev,
-            socTarget
-        );
+    private void plug(Id<Vehicle> vId, ElectricVehicle ev, int slot, double socTarget, double time) {
+        ChargerSelectionState state = selectionState();
+        Charger selected = state.slots().charger(slot);
 
-        selected.getLogic().addVehicle(ev, strategy, e.getTime());
-        log.info("[TargetSocChargingHandler] Veicolo {} assegnato a charger {} (hub {})", vId, selected.getId(), hubManager.getHubIdForCharger(selected.getId()));
+        state.assign(vId, slot);
+        chargingEngine.plug(ev, selected.getSpecification(), socTarget, time);
+        log.info("[TargetSocChargingHandler] Veicolo {} assegnato a charger {} (hub {})", vId, selected.getId(), state.slots().hubId(slot));
+    }
+
+    /*
+    *   Colonnina liberata: passa al primo veicolo compatibile in coda all'hub
+    */
+    private void onReleased(int slot, double time) {
+        if (slot < 0) return;
+        ChargerSelectionState.Waiting next = selectionState().pollWaiting(slot);
+        if (next != null) {
+            plug(next.vehicleId(), next.ev(), slot, next.socTarget(), time);
+        }
     }
 
     @Override
     public void handleEvent(ActivityEndEvent e) {
         if (!e.getActType().endsWith("car charging")) return;
 
-        Id<Vehicle> vId = lastVehicleUsed.get(e.getPersonId());
-        Id<Charger> cId = vehiclesAtChargers.remove(vId);
+        Id<Vehicle> vId = lastEv(e.getPersonId());
+        if (vId == null || selectionState == null) return;
+        if (selectionState.cancelWaiting(vId)) return;
 
-        if (cId != null) {
-            Charger c = chargingInfrastructure.getChargers().get(cId);
-            c.getLogic().removeVehicle(electricFleet.getElectricVehicles().get(vId), e.getTime());
+        // Ancora collegato (ricarica non terminata): scollega e libera la colonnina
+        int slot = selectionState.release(vId);
+        if (slot >= 0) {
+            chargingEngine.unplug(electricFleet.getElectricVehicles().get(vId), e.getTime());
+            onReleased(slot, e.getTime());
         }
     }
 
     @Override
     public void handleEvent(ChargingEndEvent e) {
-        vehiclesAtChargers.remove(e.getVehicleId());
-    }
-
-    private double readSocTarget(Id<Person> personId) {
-        // esempio: attributo della persona
-        return 0.99; // 80%
+        if (selectionState != null) {
+            onReleased(selectionState.release(e.getVehicleId()), e.getTime());
+        }
     }
-
-
 }
@@ -0,0 +1,35 @@
+package org.matsim.CustomEvModule.Hub.selection;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+
+import java.util.Random;
+
+/**
+ * Politica di scelta della colonnina all'arrivo di un veicolo ad un'attività di ricarica.
+ *
+ * Le politiche sono senza stato: lo stato (colonnine libere, carichi, code) è nel
+ * ChargerSelectionState della QSim, che TargetSocChargingHandler aggiorna ad ogni
+ * assegnazione e rilascio.
+ */
+public interface ChargerSelectionPolicy {
+
+    int NO_SLOT = -1;
+
+    /**
+     * @param state    stato delle colonnine della QSim
+     * @param linkId   link dell'attività di ricarica
+     * @param plugMask tipi di plug del veicolo (ChargerSlotIndex.maskOf)
+     * @param rng      generatore della simulazione
+     * @return slot scelto nel ChargerSlotIndex, NO_SLOT se nessuna colonnina adatta
+     */
+    int select(ChargerSelectionState state, Id<Link> linkId, long plugMask, Random rng);
+
+    /**
+     * Hub presso cui mettere in coda il veicolo quando select non trova colonnine.
+     * @return ordinale dell'hub, -1 per rinunciare alla ricarica (default)
+     */
+    default int queueHub(ChargerSelectionState state, Id<Link> linkId, long plugMask) {
+        return -1;
+    }
+}
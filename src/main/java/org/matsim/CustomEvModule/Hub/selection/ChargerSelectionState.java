@@ -0,0 +1,507 @@
+package org.matsim.CustomEvModule.Hub.selection;
+
+import org.matsim.CustomEvModule.Hub.ChargerSlotIndex;
+import org.matsim.CustomEvModule.Hub.ChargerUnit;
+import org.matsim.CustomEvModule.Hub.HubSpatialIndex;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.contrib.ev.fleet.ElectricVehicle;
+import org.matsim.contrib.ev.infrastructure.Charger;
+import org.matsim.vehicles.Vehicle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Stato della scelta delle colonnine per una QSim, condiviso dalle ChargerSelectionPolicy.
+ *
+ * Strutture precalcolate per hub:
+ * - colonnine libere per (hub, tipo di plug) in un TreeSet ordinato per potenza decrescente:
+ *   la migliore colonnina libera compatibile costa O(log n) per tipo richiesto; le colonnine
+ *   disattivate od occupate fuori dalla scelta vengono parcheggiate al primo incontro e
+ *   ricontrollate quando cambia la versione dell'hub
+ * - aree (link, raggio, ordine): hub entro il raggio con almeno una colonnina libera per tipo
+ *   di plug, in un TreeSet ordinato per la chiave della politica (carico, punteggio) e poi
+ *   per distanza; aggiornate ad ogni assegnazione e rilascio, lette in O(log n)
+ * - carico (colonnine assegnate / totali) e maschera dei plug offerti
+ * - code FIFO di veicoli in attesa, con rimozione O(1) a fine attività
+ *
+ * Le assegnazioni sono registrate qui al momento della scelta (prima del ChargingStartEvent),
+ * quindi arrivi simultanei non possono ricevere la stessa colonnina.
+ * Usato solo dal thread degli eventi della simulazione.
+ */
+public final class ChargerSelectionState {
+
+    /**
+     * Veicolo in coda ad un hub in attesa di una colonnina compatibile.
+     */
+    public record Waiting(Id<Vehicle> vehicleId, ElectricVehicle ev, long plugMask, double socTarget) {}
+
+    /**
+     * Chiave di ordinamento di un hub in un'area, minore = migliore.
+     * Deve dipendere solo dallo stato dell'hub (carico, colonnine libere) e dalla distanza.
+     */
+    @FunctionalInterface
+    public interface HubOrder {
+        /**
+         * @param slot      colonnina libera più potente dell'hub per il tipo di plug
+         * @param distanceM distanza tra il link dell'area e l'hub
+         */
+        double key(ChargerSelectionState state, int hub, int slot, double distanceM);
+    }
+
+    private record AreaKey(int link, double radius, HubOrder order) {}
+
+    private final ChargerSlotIndex slots;
+    private final HubSpatialIndex spatial;
+    private final Network network;
+
+    private final int plugTypes;
+    private final double[] powerKw;
+    private final boolean[] assignedSlot;
+    private final TreeSet<Integer>[] free;      // indice hub * plugTypes + bit
+    private final int[] load;
+    private final int[] capacity;
+    private final long[] hubPlugs;
+
+    // Colonnine libere ma non utilizzabili (disattivate/occupate), con la versione dell'hub al parcheggio
+    private final List<Integer>[] parked;
+    private final long[] parkedVersion;
+    private final List<Integer> parkedHubs = new ArrayList<>();
+    private final boolean[] inParkedHubs;
+
+    // Aree per chiave e aree che contengono ogni hub
+    private final Map<AreaKey, Area> areas = new HashMap<>();
+    private final List<Area>[] areasOfHub;
+
+    // Colonnina assegnata per indice di Id<Vehicle>: slot + 1 (0 = nessuna)
+    private int[] slotByVehicle;
+    private final LinkedHashMap<Id<Vehicle>, Waiting>[] waiting;
+    private final Map<Id<Vehicle>, Integer> waitingHub = new HashMap<>();
+
+    @SuppressWarnings("unchecked")
+    public ChargerSelectionState(HubSpatialIndex spatial, Network network) {
+        this.spatial = spatial;
+        this.slots = spatial.slots();
+        this.network = network;
+
+        int n = slots.size();
+        int hubs = slots.hubCount();
+        this.plugTypes = Math.max(1, slots.plugTypeCount());
+        this.powerKw = new double[n];
+        this.assignedSlot = new boolean[n];
+        this.load = new int[hubs];
+        this.capacity = new int[hubs];
+        this.hubPlugs = new long[hubs];
+        this.free = new TreeSet[hubs * plugTypes];
+        this.waiting = new LinkedHashMap[hubs];
+        this.parked = new List[hubs];
+        this.parkedVersion = new long[hubs];
+        this.inParkedHubs = new boolean[hubs];
+        this.areasOfHub = new List[hubs];
+        this.slotByVehicle = new int[Id.getNumberOfIds(Vehicle.class)];
+
+        for (int s = 0; s < n; s++) {
+            Charger charger = slots.charger(s);
+            powerKw[s] = charger != null ? charger.getPlugPower() / 1000.0 : 0.0;
+        }
+
+        // Potenza decrescente, poi slot: ordine totale e deterministico
+        Comparator<Integer> byPower = Comparator.<Integer>comparingDouble(s -> -powerKw[s])
+                .thenComparingInt(s -> s);
+        for (int i = 0; i < free.length; i++) {
+            free[i] = new TreeSet<>(byPower);
+        }
+        for (int s = 0; s < n; s++) {
+            int h = slots.hubOf(s);
+            capacity[h]++;
+            hubPlugs[h] |= slots.plugMask(s);
+            addFree(s);
+        }
+    }
+
+    // ================================================================
+    // ================= QUERY =======================================
+    // ================================================================
+
+    public ChargerSlotIndex slots() {
+        return slots;
+    }
+
+    /**
+     * true se la colonnina è libera (non assegnata né occupata), attiva e offre un plug della maschera.
+     */
+    public boolean isFree(int slot, long mask) {
+        ChargerUnit unit = slots.unit(slot);
+        return !assignedSlot[slot] && (slots.plugMask(slot) & mask) != 0
+                && unit.isActive() && !unit.isOccupied();
+    }
+
+    /**
+     * Colonnina libera e compatibile di potenza massima nell'hub, -1 se nessuna.
+     * O(log n) ammortizzato per tipo richiesto.
+     */
+    public int bestFree(int hub, long mask) {
+        int best = -1;
+        for (long m = mask & hubPlugs[hub]; m != 0; m &= m - 1) {
+            int s = topFree(hub, Long.numberOfTrailingZeros(m));
+            if (s >= 0 && (best < 0 || powerKw[s] > powerKw[best])) best = s;
+        }
+        return best;
+    }
+
+    /**
+     * Colonnina libera più potente dell'hub per il tipo di plug, -1 se nessuna.
+     * Le colonnine non utilizzabili in testa vengono parcheggiate: ognuna costa una
+     * volta per cambio di stato, non ad ogni scelta.
+     */
+    private int topFree(int hub, int bit) {
+        unpark(hub);
+        TreeSet<Integer> set = free[hub * plugTypes + bit];
+        boolean changed = false;
+        int top = -1;
+        while (!set.isEmpty()) {
+            int s = set.first();
+            if (isFree(s, 1L << bit)) {
+                top = s;
+                break;
+            }
+            park(hub, s);
+            changed = true;
+        }
+        if (changed) hubChanged(hub);
+        return top;
+    }
+
+    private void park(int hub, int slot) {
+        removeFree(slot);
+        if (parked[hub] == null) parked[hub] = new ArrayList<>(2);
+        parked[hub].add(slot);
+        parkedVersion[hub] = slots.hub(hub).snapshot().version();
+        if (!inParkedHubs[hub]) {
+            inParkedHubs[hub] = true;
+            parkedHubs.add(hub);
+        }
+    }
+
+    /**
+     * Ricontrolla gli hub con colonnine parcheggiate: un hub rimasto senza colonnine
+     * libere esce dalle aree e non verrebbe più validato dalle letture.
+     */
+    private void refreshParked() {
+        for (int i = parkedHubs.size() - 1; i >= 0; i--) {
+            int hub = parkedHubs.get(i);
+            unpark(hub);
+            if (parked[hub].isEmpty()) {
+                inParkedHubs[hub] = false;
+                parkedHubs.set(i, parkedHubs.get(parkedHubs.size() - 1));
+                parkedHubs.remove(parkedHubs.size() - 1);
+            }
+        }
+    }
+
+    /** Rimette tra le libere le colonnine parcheggiate tornate utilizzabili */
+    private void unpark(int hub) {
+        List<Integer> list = parked[hub];
+        if (list == null || list.isEmpty()) return;
+        long version = slots.hub(hub).snapshot().version();
+        if (version == parkedVersion[hub]) return;
+        parkedVersion[hub] = version;
+        boolean changed = false;
+        for (Iterator<Integer> it = list.iterator(); it.hasNext(); ) {
+            int s = it.next();
+            if (assignedSlot[s]) {
+                it.remove();        // torna libera al rilascio
+            } else if (slots.unit(s).isActive() && !slots.unit(s).isOccupied()) {
+                it.remove();
+                addFree(s);
+                changed = true;
+            }
+        }
+        if (changed) hubChanged(hub);
+    }
+
+    /**
+     * Hub migliore per l'ordine dato entro radius metri dal link, con una colonnina libera
+     * compatibile; -1 se nessuno. A parità di chiave vince il più vicino.
+     * La prima richiesta per (link, raggio, ordine) costruisce l'area, le successive costano
+     * O(log n) per tipo di plug richiesto.
+     */
+    public int bestHubNear(Id<Link> linkId, double radius, HubOrder order, long mask) {
+        Area area = area(linkId, radius, order);
+        if (area == null) return -1;
+        refreshParked();
+        int best = -1;
+        for (long m = mask; m != 0; m &= m - 1) {
+            int bit = Long.numberOfTrailingZeros(m);
+            if (bit >= plugTypes) break;
+            TreeSet<Integer> set = area.byBit[bit];
+            while (!set.isEmpty()) {
+                int i = set.first();
+                // La validazione può parcheggiare colonnine e riordinare l'area: si rilegge la testa
+                if (topFree(area.hubs[i], bit) < 0 || set.isEmpty() || set.first() != i) continue;
+                if (best < 0 || area.compare(i, bit, best) < 0) best = area.encode(i, bit);
+                break;
+            }
+        }
+        return best < 0 ? -1 : area.hubs[area.local(best)];
+    }
+
+    private Area area(Id<Link> linkId, double radius, HubOrder order) {
+        Link link = network.getLinks().get(linkId);
+        if (link == null) return null;
+        AreaKey key = new AreaKey(linkId.index(), radius, order);
+        Area area = areas.get(key);
+        if (area == null) {
+            area = new Area(link, radius, order);
+            areas.put(key, area);
+        }
+        return area;
+    }
+
+    /** Riposiziona l'hub in tutte le aree che lo contengono */
+    private void hubChanged(int hub) {
+        List<Area> list = areasOfHub[hub];
+        if (list == null) return;
+        for (Area area : list) {
+            area.update(hub);
+        }
+    }
+
+    /**
+     * Hub entro un raggio da un link, per tipo di plug ordinati per (chiave, distanza, hub).
+     * Contiene solo gli hub con almeno una colonnina libera del tipo; la chiave è salvata
+     * per poter rimuovere l'hub prima di ricalcolarla.
+     */
+    private final class Area {
+
+        final HubOrder order;
+        final int[] hubs;
+        final double[] distance;
+        final Map<Integer, Integer> localOf;
+        final double[] keys;                // (locale, bit) -> chiave, NaN se fuori dall'insieme
+        final TreeSet<Integer>[] byBit;
+
+        @SuppressWarnings("unchecked")
+        Area(Link link, double radius, HubOrder order) {
+            this.order = order;
+            Coord c = link.getToNode().getCoord();
+            List<Integer> near = spatial.withinRadius(c.getX(), c.getY(), radius);
+            this.hubs = new int[near.size()];
+            this.distance = new double[near.size()];
+            this.localOf = new HashMap<>(near.size() * 2);
+            for (int i = 0; i < hubs.length; i++) {
+                hubs[i] = near.get(i);
+                distance[i] = spatial.distance(hubs[i], c.getX(), c.getY());
+                localOf.put(hubs[i], i);
+            }
+            this.keys = new double[hubs.length * plugTypes];
+            Arrays.fill(keys, Double.NaN);
+            this.byBit = new TreeSet[plugTypes];
+            for (int bit = 0; bit < plugTypes; bit++) {
+                int b = bit;
+                byBit[bit] = new TreeSet<>((x, y) -> compare(x, b, encode(y, b)));
+            }
+            for (int i = 0; i < hubs.length; i++) {
+                if (areasOfHub[hubs[i]] == null) areasOfHub[hubs[i]] = new ArrayList<>(2);
+                areasOfHub[hubs[i]].add(this);
+                update(hubs[i]);
+            }
+        }
+
+        int encode(int local, int bit) {
+            return local * plugTypes + bit;
+        }
+
+        int local(int code) {
+            return code / plugTypes;
+        }
+
+        /** Confronto tra (local, bit) e l'elemento codificato other */
+        int compare(int local, int bit, int other) {
+            int o = local(other);
+            int c = Double.compare(keys[encode(local, bit)], keys[other]);
+            if (c != 0) return c;
+            c = Double.compare(distance[local], distance[o]);
+            return c != 0 ? c : Integer.compare(hubs[local], hubs[o]);
+        }
+
+        void update(int hub) {
+            int i = localOf.get(hub);
+            for (long m = hubPlugs[hub]; m != 0; m &= m - 1) {
+                int bit = Long.numberOfTrailingZeros(m);
+                int code = encode(i, bit);
+                if (!Double.isNaN(keys[code])) {
+                    byBit[bit].remove(i);
+                    keys[code] = Double.NaN;
+                }
+                TreeSet<Integer> candidates = free[hub * plugTypes + bit];
+                if (!candidates.isEmpty()) {
+                    keys[code] = order.key(ChargerSelectionState.this, hub, candidates.first(), distance[i]);
+                    byBit[bit].add(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Colonnina libera e compatibile dell'hub scelta uniformemente, -1 se nessuna.
+     */
+    public int randomFree(int hub, long mask, Random rng) {
+        int chosen = -1;
+        int seen = 0;
+        for (int s = slots.hubFirstSlot(hub), end = slots.hubEndSlot(hub); s < end; s++) {
+            if (isFree(s, mask) && rng.nextInt(++seen) == 0) chosen = s;
+        }
+        return chosen;
+    }
+
+    /** true se l'hub offre almeno un plug della maschera, libero o no */
+    public boolean offers(int hub, long mask) {
+        return (hubPlugs[hub] & mask) != 0;
+    }
+
+    /** Hub con colonnine sul link (gli slot di uno stesso hub sono contigui) */
+    public List<Integer> hubsOnLink(Id<Link> linkId) {
+        List<Integer> hubs = new ArrayList<>(2);
+        int last = -1;
+        for (int s = slots.firstSlot(linkId), end = slots.endSlot(linkId); s < end; s++) {
+            int h = slots.hubOf(s);
+            if (h != last) {
+                hubs.add(h);
+                last = h;
+            }
+        }
+        return hubs;
+    }
+
+    /** Hub entro radius metri dal link, in ordine di distanza (STRtree) */
+    public List<Integer> hubsNear(Id<Link> linkId, double radius) {
+        Link link = network.getLinks().get(linkId);
+        if (link == null) return List.of();
+        Coord c = link.getToNode().getCoord();
+        return spatial.withinRadius(c.getX(), c.getY(), radius);
+    }
+
+    /** Distanza in metri tra il link e l'hub */
+    public double distance(int hub, Id<Link> linkId) {
+        Link link = network.getLinks().get(linkId);
+        if (link == null) return Double.POSITIVE_INFINITY;
+        Coord c = link.getToNode().getCoord();
+        return spatial.distance(hub, c.getX(), c.getY());
+    }
+
+    public double powerKw(int slot) {
+        return powerKw[slot];
+    }
+
+    /** Frazione di colonnine dell'hub assegnate */
+    public double loadRatio(int hub) {
+        return capacity[hub] == 0 ? 1.0 : (double) load[hub] / capacity[hub];
+    }
+
+    public int waitingCount(int hub) {
+        return waiting[hub] == null ? 0 : waiting[hub].size();
+    }
+
+    // ================================================================
+    // ================= ASSEGNAZIONI ================================
+    // ================================================================
+
+    /**
+     * Registra l'assegnazione della colonnina al veicolo.
+     */
+    public void assign(Id<Vehicle> vehicleId, int slot) {
+        int v = vehicleId.index();
+        if (v >= slotByVehicle.length) {
+            slotByVehicle = Arrays.copyOf(slotByVehicle, Math.max(v + 1, slotByVehicle.length * 2));
+        }
+        if (slotByVehicle[v] != 0) unassign(slotByVehicle[v] - 1);
+        slotByVehicle[v] = slot + 1;
+        assignedSlot[slot] = true;
+        load[slots.hubOf(slot)]++;
+        removeFree(slot);
+        hubChanged(slots.hubOf(slot));
+    }
+
+    /**
+     * Libera la colonnina assegnata al veicolo.
+     * @return slot liberato, -1 se il veicolo non aveva colonnine
+     */
+    public int release(Id<Vehicle> vehicleId) {
+        int v = vehicleId.index();
+        if (v >= slotByVehicle.length || slotByVehicle[v] == 0) return -1;
+        int slot = slotByVehicle[v] - 1;
+        slotByVehicle[v] = 0;
+        unassign(slot);
+        return slot;
+    }
+
+    private void unassign(int slot) {
+        assignedSlot[slot] = false;
+        load[slots.hubOf(slot)]--;
+        addFree(slot);
+        hubChanged(slots.hubOf(slot));
+    }
+
+    private void addFree(int slot) {
+        for (long m = slots.plugMask(slot); m != 0; m &= m - 1) {
+            free[slots.hubOf(slot) * plugTypes + Long.numberOfTrailingZeros(m)].add(slot);
+        }
+    }
+
+    private void removeFree(int slot) {
+        for (long m = slots.plugMask(slot); m != 0; m &= m - 1) {
+            free[slots.hubOf(slot) * plugTypes + Long.numberOfTrailingZeros(m)].remove(slot);
+        }
+    }
+
+    // ================================================================
+    // ================= CODE ========================================
+    // ================================================================
+
+    public void enqueue(int hub, Waiting w) {
+        if (waiting[hub] == null) waiting[hub] = new LinkedHashMap<>();
+        waiting[hub].put(w.vehicleId(), w);
+        waitingHub.put(w.vehicleId(), hub);
+    }
+
+    /**
+     * Rimuove il veicolo dalla coda (fine attività prima della ricarica).
+     * @return true se era in coda
+     */
+    public boolean cancelWaiting(Id<Vehicle> vehicleId) {
+        Integer hub = waitingHub.remove(vehicleId);
+        if (hub == null) return false;
+        waiting[hub].remove(vehicleId);
+        return true;
+    }
+
+    /**
+     * Primo veicolo in coda all'hub compatibile con la colonnina, rimosso dalla coda; null se nessuno.
+     */
+    public Waiting pollWaiting(int slot) {
+        LinkedHashMap<Id<Vehicle>, Waiting> queue = waiting[slots.hubOf(slot)];
+        if (queue == null) return null;
+        long slotMask = slots.plugMask(slot);
+        for (Iterator<Waiting> it = queue.values().iterator(); it.hasNext(); ) {
+            Waiting w = it.next();
+            if ((w.plugMask() & slotMask) != 0) {
+                it.remove();
+                waitingHub.remove(w.vehicleId());
+                return w;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,42 @@
+package org.matsim.CustomEvModule.Hub.selection;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+
+import java.util.Random;
+
+/**
+ * Colonnina libera di potenza massima tra gli hub del link;
+ * se il link è pieno, la più potente dell'hub libero più vicino entro il raggio.
+ */
+public class HighestPowerSelectionPolicy implements ChargerSelectionPolicy {
+
+    private final double radius;
+
+    public HighestPowerSelectionPolicy(double radius) {
+        this.radius = radius;
+    }
+
+    @Override
+    public int select(ChargerSelectionState state, Id<Link> linkId, long plugMask, Random rng) {
+        int best = bestOnLink(state, linkId, plugMask);
+        if (best != NO_SLOT || radius <= 0) return best;
+
+        for (int h : state.hubsNear(linkId, radius)) {
+            int slot = state.bestFree(h, plugMask);
+            if (slot != NO_SLOT) return slot;
+        }
+        return NO_SLOT;
+    }
+
+    static int bestOnLink(ChargerSelectionState state, Id<Link> linkId, long plugMask) {
+        int best = NO_SLOT;
+        for (int h : state.hubsOnLink(linkId)) {
+            int slot = state.bestFree(h, plugMask);
+            if (slot != NO_SLOT && (best == NO_SLOT || state.powerKw(slot) > state.powerKw(best))) {
+                best = slot;
+            }
+        }
+        return best;
+    }
+}
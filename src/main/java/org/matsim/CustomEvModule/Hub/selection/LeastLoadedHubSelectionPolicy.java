@@ -0,0 +1,29 @@
+package org.matsim.CustomEvModule.Hub.selection;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+
+import java.util.Random;
+
+/**
+ * Hub meno carico (colonnine assegnate / totali) entro il raggio, a parità di carico il più vicino;
+ * nell'hub scelto la colonnina libera più potente.
+ */
+public class LeastLoadedHubSelectionPolicy implements ChargerSelectionPolicy {
+
+    private final double radius;
+
+    // Stessa istanza per tutte le scelte: identifica le aree ordinate per carico nello stato
+    private final ChargerSelectionState.HubOrder byLoad = (state, hub, slot, distanceM) -> state.loadRatio(hub);
+
+    public LeastLoadedHubSelectionPolicy(double radius) {
+        this.radius = radius;
+    }
+
+    @Override
+    public int select(ChargerSelectionState state, Id<Link> linkId, long plugMask, Random rng) {
+        // A parità di carico l'area ordina per distanza
+        int hub = state.bestHubNear(linkId, radius, byLoad, plugMask);
+        return hub < 0 ? NO_SLOT : state.bestFree(hub, plugMask);
+    }
+}
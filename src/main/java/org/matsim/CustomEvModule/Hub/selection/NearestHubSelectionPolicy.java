@@ -0,0 +1,33 @@
+package org.matsim.CustomEvModule.Hub.selection;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+
+import java.util.Random;
+
+/**
+ * Hub entro il raggio con il miglior compromesso tra potenza e distanza a piedi:
+ * punteggio = kW della colonnina libera migliore - walkPenaltyKwPerKm * km dal link.
+ * Con penalità alta sceglie l'hub libero più vicino.
+ */
+public class NearestHubSelectionPolicy implements ChargerSelectionPolicy {
+
+    private final double radius;
+    private final double walkPenaltyKwPerKm;
+
+    // Punteggio cambiato di segno: l'area tiene in testa la chiave minore
+    private final ChargerSelectionState.HubOrder byScore;
+
+    public NearestHubSelectionPolicy(double radius, double walkPenaltyKwPerKm) {
+        this.radius = radius;
+        this.walkPenaltyKwPerKm = walkPenaltyKwPerKm;
+        this.byScore = (state, hub, slot, distanceM) ->
+                -(state.powerKw(slot) - this.walkPenaltyKwPerKm * distanceM / 1000.0);
+    }
+
+    @Override
+    public int select(ChargerSelectionState state, Id<Link> linkId, long plugMask, Random rng) {
+        int hub = state.bestHubNear(linkId, radius, byScore, plugMask);
+        return hub < 0 ? NO_SLOT : state.bestFree(hub, plugMask);
+    }
+}
@@ -0,0 +1,29 @@
+package org.matsim.CustomEvModule.Hub.selection;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+
+import java.util.Random;
+
+/**
+ * Colonnina libera più potente sul link; se il link è pieno il veicolo resta in coda
+ * all'hub del link con la coda più corta e viene collegato alla prima colonnina
+ * compatibile che si libera.
+ */
+public class QueueAtHubSelectionPolicy implements ChargerSelectionPolicy {
+
+    @Override
+    public int select(ChargerSelectionState state, Id<Link> linkId, long plugMask, Random rng) {
+        return HighestPowerSelectionPolicy.bestOnLink(state, linkId, plugMask);
+    }
+
+    @Override
+    public int queueHub(ChargerSelectionState state, Id<Link> linkId, long plugMask) {
+        int best = -1;
+        for (int h : state.hubsOnLink(linkId)) {
+            if (!state.offers(h, plugMask)) continue;
+            if (best < 0 || state.waitingCount(h) < state.waitingCount(best)) best = h;
+        }
+        return best;
+    }
+}
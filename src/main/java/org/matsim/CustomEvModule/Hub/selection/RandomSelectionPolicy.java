@@ -0,0 +1,38 @@
+package org.matsim.CustomEvModule.Hub.selection;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Colonnina libera scelta a caso tra quelle del link; se il link è pieno,
+ * colonnina a caso nell'hub libero più vicino entro il raggio.
+ */
+public class RandomSelectionPolicy implements ChargerSelectionPolicy {
+
+    private final double radius;
+
+    public RandomSelectionPolicy(double radius) {
+        this.radius = radius;
+    }
+
+    @Override
+    public int select(ChargerSelectionState state, Id<Link> linkId, long plugMask, Random rng) {
+        // Reservoir sampling sugli slot del link
+        int chosen = NO_SLOT;
+        int seen = 0;
+        for (int s = state.slots().firstSlot(linkId), end = state.slots().endSlot(linkId); s < end; s++) {
+            if (state.isFree(s, plugMask) && rng.nextInt(++seen) == 0) chosen = s;
+        }
+        if (chosen != NO_SLOT) return chosen;
+
+        List<Integer> near = state.hubsNear(linkId, radius);
+        for (int h : near) {
+            int slot = state.randomFree(h, plugMask, rng);
+            if (slot != NO_SLOT) return slot;
+        }
+        return NO_SLOT;
+    }
+}
@@ -44,7 +44,7 @@ public class HubChargingMonitor implements ChargingStartEventHandler, ChargingEn
      */
     @Override
     public void handleEvent(ChargingEndEvent event) {
-        simulationBridgeInterface.handleChargingEnd(event.getChargerId(), event.getCharge());
+        simulationBridgeInterface.handleChargingEnd(event.getChargerId(), event.getVehicleId(), event.getCharge());
         logChargingEnd(event);
     }
 
@@ -3,6 +3,7 @@ package org.matsim.CustomEvModule.Monitoring;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.matsim.ServerEvSetup.SimulationInterface.SimulationBridgeInterface;
+import org.matsim.CustomEvModule.EVfleet.Charging.AnalyticChargingEngine;
 import org.matsim.contrib.ev.fleet.ElectricFleet;
 import org.matsim.core.mobsim.framework.events.MobsimBeforeSimStepEvent;
 import org.matsim.core.mobsim.framework.events.MobsimInitializedEvent;
@@ -17,15 +18,18 @@ public class TimeStepSocMonitor implements MobsimBeforeSimStepListener, MobsimIn
     private static final Logger log = LogManager.getLogger(TimeStepSocMonitor.class);
 
     private final SimulationBridgeInterface simulationBridgeInterface;
+    private final AnalyticChargingEngine chargingEngine;
     private final double stepSize;
     private double lastUpdate = 0.0;
     private QSim qSim;
 
     public TimeStepSocMonitor(
         SimulationBridgeInterface simulationBridgeInterface,
+        AnalyticChargingEngine chargingEngine,
         @Named("timeStepMonitorStep") double stepSize
     ) {
         this.simulationBridgeInterface = simulationBridgeInterface;
+        this.chargingEngine = chargingEngine;
         this.stepSize       = stepSize;
     }
 
@@ -35,6 +39,11 @@ public class TimeStepSocMonitor implements MobsimBeforeSimStepListener, MobsimIn
         if (event.getQueueSimulation() instanceof QSim) {
             this.qSim = (QSim) event.getQueueSimulation();
             log.info("[TimeStepMonitor] QSim associato al monitor.");
+            // Lega una volta sola ogni EV al suo ElectricVehicle della QSim
+            ElectricFleet electricFleet = getElectricFleetFromQSim();
+            if (electricFleet != null) {
+                simulationBridgeInterface.bindElectricFleet(electricFleet);
+            }
         }
     }
 
@@ -44,8 +53,9 @@ public class TimeStepSocMonitor implements MobsimBeforeSimStepListener, MobsimIn
         double simTime = event.getSimulationTime();        
         if (qSim == null) return;
         if (simTime - lastUpdate >= stepSize) {
+            double stepStart = lastUpdate;
             lastUpdate = simTime;
-            updateCharging(simTime);
+            updateCharging(stepStart, simTime);
             // Imposta il timestep reale della simulazione nel bridge per il server
             simulationBridgeInterface.setCurrentSimTime(simTime);
         }
@@ -54,16 +64,19 @@ public class TimeStepSocMonitor implements MobsimBeforeSimStepListener, MobsimIn
     /**
      * Aggiorna lo SoC e l'energia in erogazione delle colonnine
      * 
+     * @param stepStart Tempo di simulazione dell'aggiornamento precedente
      * @param simTime Tempo di simulazione attuale
      */
-    public void updateCharging(double simTime){
+    public void updateCharging(double stepStart, double simTime){
         try {
             // Resetta l'energia in erogazione da tutte le colonnine all'inizio del timestep
             simulationBridgeInterface.resetChargersCurrentEnergy();
+            // SoC dei veicoli in ricarica calcolato ora (il motore non lo aggiorna a passi)
+            chargingEngine.materialize(simTime);
             // Aggiorna SoC dell'auto attraverso il bridge
             simulationBridgeInterface.updateEvFleetSoC(getElectricFleetFromQSim());
             // Aggiorna l'energia che le colonnine stanno erogando in questo timestep
-            simulationBridgeInterface.updateChargersEnergyDelivering();
+            simulationBridgeInterface.updateChargersEnergyDelivering(stepStart, simTime);
         } catch (Exception e) {
             log.error("[TimeStepMonitor] Errore aggiornamento stato veicoli: {}", e.getMessage());
         }
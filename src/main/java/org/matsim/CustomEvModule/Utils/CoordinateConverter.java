@@ -9,6 +9,7 @@ import org.locationtech.jts.geom.Coordinate;
 public class CoordinateConverter {
 
     private static MathTransform transform;
+    private static MathTransform inverse;
 
     static {
         try {
@@ -16,6 +17,7 @@ public class CoordinateConverter {
             CoordinateReferenceSystem sourceCRS = CRS.decode("EPSG:25832"); // metri
             CoordinateReferenceSystem targetCRS = CRS.decode("EPSG:4326");  // lat/lon WGS84
             transform = CRS.findMathTransform(sourceCRS, targetCRS, true);
+            inverse = transform.inverse();
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -40,4 +42,19 @@ public class CoordinateConverter {
             return new double[]{0, 0};
         }
     }
+
+    /**
+     * Converte in blocco punti lat/lon WGS84 in x/y della rete MATSim, in place.
+     * Stesso ordine degli assi di toLatLon: coords = [lat0, lon0, lat1, lon1, ...].
+     *
+     * @param coords Coppie lat/lon, sovrascritte con le coppie x/y
+     * @param count Numero di punti da convertire
+     */
+    public static void toNetworkInPlace(double[] coords, int count) {
+        try {
+            inverse.transform(coords, 0, coords, 0, count);
+        } catch (Exception e) {
+            throw new IllegalStateException("Errore conversione EPSG:4326 -> EPSG:25832", e);
+        }
+    }
 }
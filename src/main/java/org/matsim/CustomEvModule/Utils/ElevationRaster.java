@@ -0,0 +1,245 @@
+package org.matsim.CustomEvModule.Utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.core.utils.geometry.CoordinateTransformation;
+import org.matsim.core.utils.geometry.transformations.TransformationFactory;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.plugins.tiff.TIFFDirectory;
+import javax.imageio.plugins.tiff.TIFFField;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.Raster;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Modello digitale del terreno (DEM) letto da un GeoTIFF locale a banda singola.
+ *
+ * Usa il plugin TIFF del JDK e i tag GeoTIFF ModelPixelScale / ModelTiepoint
+ * per la georeferenziazione (raster non ruotato). Il CRS del raster è letto dalla
+ * GeoKeyDirectory (codice EPSG proiettato o geografico): con withNetworkCrs le
+ * coordinate di rete vengono riproiettate nel CRS del raster prima della lettura.
+ * Senza codice EPSG si assume il CRS della rete.
+ *
+ * Le quote vengono copiate in un float[] denso; la lettura usa interpolazione bilineare.
+ */
+public class ElevationRaster {
+
+    // Tag GeoTIFF
+    private static final int TAG_MODEL_PIXEL_SCALE = 33550;
+    private static final int TAG_MODEL_TIEPOINT    = 33922;
+    private static final int TAG_GEO_KEY_DIRECTORY = 34735;
+    private static final int TAG_GDAL_NODATA       = 42113;
+
+    // GeoKey con il codice EPSG del CRS
+    private static final int KEY_GEOGRAPHIC_TYPE   = 2048;
+    private static final int KEY_PROJECTED_CS_TYPE = 3072;
+    private static final int USER_DEFINED          = 32767;
+
+    private static final Logger log = LogManager.getLogger(ElevationRaster.class);
+
+    private final int width;
+    private final int height;
+    private final float[] elevation;
+
+    // Trasformazione pixel -> coordinate di rete
+    private final double originX;
+    private final double originY;
+    private final double pixelSizeX;
+    private final double pixelSizeY;
+
+    private final double noData;
+
+    // CRS del raster ("EPSG:xxxx"), null se non dichiarato
+    private final String crs;
+    // Coordinate di rete -> CRS del raster, null se coincidono
+    private final CoordinateTransformation networkToRaster;
+
+    ElevationRaster(int width, int height, float[] elevation,
+                    double originX, double originY,
+                    double pixelSizeX, double pixelSizeY,
+                    double noData, String crs) {
+        this(width, height, elevation, originX, originY, pixelSizeX, pixelSizeY, noData, crs, null);
+    }
+
+    private ElevationRaster(int width, int height, float[] elevation,
+                            double originX, double originY,
+                            double pixelSizeX, double pixelSizeY,
+                            double noData, String crs, CoordinateTransformation networkToRaster) {
+        this.width = width;
+        this.height = height;
+        this.elevation = elevation;
+        this.originX = originX;
+        this.originY = originY;
+        this.pixelSizeX = pixelSizeX;
+        this.pixelSizeY = pixelSizeY;
+        this.noData = noData;
+        this.crs = crs;
+        this.networkToRaster = networkToRaster;
+    }
+
+    /**
+     * Stesso raster, interrogato con coordinate nel CRS della rete.
+     * Le quote sono condivise, nessuna copia.
+     *
+     * @param networkCrs CRS della rete (es. EPSG:25832)
+     */
+    public ElevationRaster withNetworkCrs(String networkCrs) {
+        if (crs == null || networkCrs == null || crs.equalsIgnoreCase(networkCrs)) {
+            if (crs == null) {
+                log.warn("[ElevationRaster] CRS del raster non dichiarato: assunto quello della rete ({})", networkCrs);
+            }
+            return new ElevationRaster(width, height, elevation, originX, originY, pixelSizeX, pixelSizeY, noData, crs, null);
+        }
+        log.info("[ElevationRaster] Riproiezione delle letture {} -> {}", networkCrs, crs);
+        return new ElevationRaster(width, height, elevation, originX, originY, pixelSizeX, pixelSizeY, noData, crs,
+                TransformationFactory.getCoordinateTransformation(networkCrs, crs));
+    }
+
+    /**
+     * Carica un GeoTIFF locale.
+     *
+     * @param path percorso del file .tif
+     * @return raster delle quote
+     * @throws IOException se il file non è leggibile o non è georeferenziato
+     */
+    public static ElevationRaster load(String path) throws IOException {
+        File file = new File(path);
+        if (!file.isFile()) {
+            throw new IOException("Raster altimetrico non trovato: " + path);
+        }
+
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("tiff");
+            if (!readers.hasNext()) {
+                throw new IOException("Nessun ImageReader TIFF disponibile");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, false);
+
+                IIOMetadata metadata = reader.getImageMetadata(0);
+                TIFFDirectory dir = TIFFDirectory.createFromMetadata(metadata);
+
+                TIFFField scale = dir.getTIFFField(TAG_MODEL_PIXEL_SCALE);
+                TIFFField tie = dir.getTIFFField(TAG_MODEL_TIEPOINT);
+                if (scale == null || tie == null) {
+                    throw new IOException("GeoTIFF senza ModelPixelScale/ModelTiepoint: " + path);
+                }
+
+                // Tiepoint: (i, j, k, X, Y, Z) -> il pixel (i, j) corrisponde a (X, Y)
+                double pixelSizeX = scale.getAsDouble(0);
+                double pixelSizeY = scale.getAsDouble(1);
+                double originX = tie.getAsDouble(3) - tie.getAsDouble(0) * pixelSizeX;
+                double originY = tie.getAsDouble(4) + tie.getAsDouble(1) * pixelSizeY;
+
+                double noData = Double.NaN;
+                TIFFField noDataField = dir.getTIFFField(TAG_GDAL_NODATA);
+                if (noDataField != null) {
+                    try {
+                        noData = Double.parseDouble(noDataField.getAsString(0).trim());
+                    } catch (NumberFormatException e) {
+                        // nodata non numerico: ignorato
+                    }
+                }
+
+                TIFFField geoKeys = dir.getTIFFField(TAG_GEO_KEY_DIRECTORY);
+                String crs = geoKeys != null ? crsFromGeoKeys(geoKeys.getAsInts()) : null;
+
+                Raster raster = reader.readRaster(0, null);
+                int width = raster.getWidth();
+                int height = raster.getHeight();
+                float[] elevation = raster.getSamples(0, 0, width, height, 0, new float[width * height]);
+
+                return new ElevationRaster(width, height, elevation, originX, originY, pixelSizeX, pixelSizeY, noData, crs);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Codice EPSG dalla GeoKeyDirectory: header di 4 valori, poi voci
+     * (KeyID, TIFFTagLocation, Count, Value) con il valore in linea se la location è 0.
+     * Il CRS proiettato ha la precedenza su quello geografico.
+     *
+     * @return "EPSG:xxxx" o null se assente o definito dall'utente
+     */
+    static String crsFromGeoKeys(int[] keys) {
+        if (keys == null || keys.length < 4) return null;
+        int projected = 0;
+        int geographic = 0;
+        int count = keys[3];
+        for (int k = 0; k < count && 4 * k + 7 < keys.length; k++) {
+            int base = 4 + 4 * k;
+            if (keys[base + 1] != 0) continue;      // valore in un altro tag
+            if (keys[base] == KEY_PROJECTED_CS_TYPE) projected = keys[base + 3];
+            else if (keys[base] == KEY_GEOGRAPHIC_TYPE) geographic = keys[base + 3];
+        }
+        int code = projected > 0 && projected != USER_DEFINED ? projected
+                : geographic > 0 && geographic != USER_DEFINED ? geographic : 0;
+        return code > 0 ? "EPSG:" + code : null;
+    }
+
+    /**
+     * Quota (m) nel punto di rete (x, y), interpolata bilinearmente.
+     * Con un CRS di rete diverso (withNetworkCrs) il punto viene prima riproiettato.
+     *
+     * @return quota o NaN se fuori dal raster o su celle nodata
+     */
+    public double elevationAt(double x, double y) {
+        if (networkToRaster != null) {
+            Coord c = networkToRaster.transform(new Coord(x, y));
+            x = c.getX();
+            y = c.getY();
+        }
+        // Centro pixel -> coordinate continue
+        double px = (x - originX) / pixelSizeX - 0.5;
+        double py = (originY - y) / pixelSizeY - 0.5;
+
+        if (px < 0 || py < 0 || px > width - 1 || py > height - 1) {
+            return Double.NaN;
+        }
+
+        int x0 = (int) px;
+        int y0 = (int) py;
+        int x1 = Math.min(x0 + 1, width - 1);
+        int y1 = Math.min(y0 + 1, height - 1);
+        double fx = px - x0;
+        double fy = py - y0;
+
+        double z00 = sample(x0, y0);
+        double z10 = sample(x1, y0);
+        double z01 = sample(x0, y1);
+        double z11 = sample(x1, y1);
+        if (Double.isNaN(z00) || Double.isNaN(z10) || Double.isNaN(z01) || Double.isNaN(z11)) {
+            return Double.NaN;
+        }
+
+        double top = z00 + (z10 - z00) * fx;
+        double bottom = z01 + (z11 - z01) * fx;
+        return top + (bottom - top) * fy;
+    }
+
+    private double sample(int x, int y) {
+        double z = elevation[y * width + x];
+        return z == noData ? Double.NaN : z;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public String getCrs() {
+        return crs;
+    }
+}
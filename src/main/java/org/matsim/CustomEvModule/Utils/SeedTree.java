@@ -0,0 +1,45 @@
+package org.matsim.CustomEvModule.Utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.security.SecureRandom;
+
+/**
+ * Albero di seed per generatori SplittableRandom: ogni nodo (flusso, chunk)
+ * riceve un seed derivato dal padre con il mescolamento SplitMix64.
+ *
+ * I figli dipendono solo da (seed padre, indice), non dall'ordine di esecuzione
+ * né dal numero di thread: chunk campionati in parallelo restano riproducibili.
+ */
+public final class SeedTree {
+
+    private static final Logger log = LogManager.getLogger(SeedTree.class);
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private SeedTree() {}
+
+    /**
+     * Seed del figlio di indice index.
+     */
+    public static long child(long seed, long index) {
+        long z = seed + (index + 1) * GOLDEN_GAMMA;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Seed esplicito se presente, altrimenti casuale. Il seed scelto viene loggato
+     * così da poter ripetere la run.
+     */
+    public static long resolve(Long seed, String owner) {
+        if (seed != null) {
+            return seed;
+        }
+        long random = new SecureRandom().nextLong();
+        log.info("[{}] Nessun seed configurato, uso seed casuale {}", owner, random);
+        return random;
+    }
+}
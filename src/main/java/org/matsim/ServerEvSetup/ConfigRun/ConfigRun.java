@@ -4,13 +4,16 @@ import org.springframework.core.io.Resource;
 
 public class ConfigRun {
 
+    // Limite di intervalli per serie di potenza (4 byte l'uno, per hub e per colonnina)
+    public static final int MAX_POWER_SERIES_INTERVALS = 100_000;
+
     /*
     * Alcune strategie non sono implementate ma per ora sono placeholder 
     */
     public enum VehicleGenerationStrategyEnum {
-        UNIFORM,
-        NORMAL,
-        FROM_CSV
+        UNIFORM,    // modelli dal CSV, SoC uniforme con media/dev. std date
+        NORMAL,     // modelli dal CSV, SoC normale troncata su [0,1]
+        FROM_CSV    // come NORMAL
     }
 
     public enum PlanGenerationStrategyEnum {
@@ -19,6 +22,19 @@ public class ConfigRun {
         FROM_CSV
     }
 
+    public enum ConsumptionModelEnum {
+        TRACTIVE,   // fisica valutata ad ogni link
+        TABULATED   // griglie precalcolate velocità × congestione × pendenza
+    }
+
+    public enum ChargerSelectionPolicyEnum {
+        RANDOM,         // colonnina a caso sul link, poi hub libero più vicino
+        HIGHEST_POWER,  // colonnina più potente sul link, poi hub libero più vicino
+        LEAST_LOADED,   // hub meno carico entro il raggio
+        NEAREST_WALK,   // compromesso potenza / distanza a piedi entro il raggio
+        QUEUE_AT_HUB    // colonnina più potente sul link, altrimenti coda all'hub
+    }
+
     public enum HubGenerationStrategyEnum {
         FIXED,
         RANDOM,
@@ -39,6 +55,32 @@ public class ConfigRun {
     private final String  configPath;
     private final boolean debugLink;
     private final boolean realTime;
+    private final String  elevationRasterPath;
+    private final String  planCsvPath;
+
+    /* =======================
+       Modello di consumo
+       ======================= */
+    private final ConsumptionModelEnum consumptionModel;
+    private final Integer gridSpeedBins;
+    private final Integer gridCongestionBins;
+    private final Integer gridSlopeBins;
+    private final boolean energyCache;
+    private final Integer energyCacheSize;
+    private final Double  energyCacheMaxError;
+
+    /* =======================
+       Scelta colonnina
+       ======================= */
+    private final ChargerSelectionPolicyEnum chargerSelection;
+    private final Double selectionRadiusM;
+    private final Double walkPenaltyKwPerKm;
+
+    /* =======================
+       Serie di potenza hub
+       ======================= */
+    private final Double powerSeriesResolutionS;
+    private final Double powerSeriesHorizonH;
 
     /* =======================
        Setup ws
@@ -54,6 +96,14 @@ public class ConfigRun {
     private final Double socStdDev;
     private final Double targetSocMean;
     private final Double targetSocStdDev;
+    private final Long fleetSeed;
+
+    /* =======================
+       Conversione della popolazione
+       ======================= */
+    private final Double evShare;
+    private final String evShareStratifyBy;
+    private final Double evShareHubRadiusM;
 
     /* =======================
        Strategie di generazione
@@ -71,12 +121,34 @@ public class ConfigRun {
         this.configPath = builder.configPath;
         this.debugLink = builder.debugLink;
         this.realTime = builder.realTime;
+        this.elevationRasterPath = builder.elevationRasterPath;
+        this.planCsvPath = builder.planCsvPath;
+
+        this.consumptionModel = builder.consumptionModel;
+        this.gridSpeedBins = builder.gridSpeedBins;
+        this.gridCongestionBins = builder.gridCongestionBins;
+        this.gridSlopeBins = builder.gridSlopeBins;
+        this.energyCache = builder.energyCache;
+        this.energyCacheSize = builder.energyCacheSize;
+        this.energyCacheMaxError = builder.energyCacheMaxError;
+
+        this.chargerSelection = builder.chargerSelection;
+        this.selectionRadiusM = builder.selectionRadiusM;
+        this.walkPenaltyKwPerKm = builder.walkPenaltyKwPerKm;
+
+        this.powerSeriesResolutionS = builder.powerSeriesResolutionS;
+        this.powerSeriesHorizonH = builder.powerSeriesHorizonH;
 
         this.numeroVeicoli = builder.numeroVeicoli;
         this.socMedio = builder.socMedio;
         this.socStdDev = builder.socStdDev;
         this.targetSocMean = builder.targetSocMean;
         this.targetSocStdDev = builder.targetSocStdDev;
+        this.fleetSeed = builder.fleetSeed;
+
+        this.evShare = builder.evShare;
+        this.evShareStratifyBy = builder.evShareStratifyBy;
+        this.evShareHubRadiusM = builder.evShareHubRadiusM;
 
         this.vehicleStrategy = builder.vehicleStrategy;
         this.planStrategy = builder.planStrategy;
@@ -122,6 +194,23 @@ public class ConfigRun {
         return targetSocStdDev;
     }
 
+    public Long getFleetSeed() {
+        return fleetSeed;
+    }
+
+    /** Quota degli automobilisti convertiti in EV, null = flotta sintetica */
+    public Double getEvShare() {
+        return evShare;
+    }
+
+    public String getEvShareStratifyBy() {
+        return evShareStratifyBy;
+    }
+
+    public double getEvShareHubRadiusM() {
+        return evShareHubRadiusM;
+    }
+
     public Resource getCsvResourceHub() {
         return csvResourceHub;
     }
@@ -158,6 +247,62 @@ public class ConfigRun {
         return realTime;
     }
 
+    public String getElevationRasterPath() {
+        return elevationRasterPath;
+    }
+
+    public String getPlanCsvPath() {
+        return planCsvPath;
+    }
+
+    public ConsumptionModelEnum getConsumptionModel() {
+        return consumptionModel;
+    }
+
+    public Integer getGridSpeedBins() {
+        return gridSpeedBins;
+    }
+
+    public Integer getGridCongestionBins() {
+        return gridCongestionBins;
+    }
+
+    public Integer getGridSlopeBins() {
+        return gridSlopeBins;
+    }
+
+    public boolean isEnergyCache() {
+        return energyCache;
+    }
+
+    public int getEnergyCacheSize() {
+        return energyCacheSize;
+    }
+
+    public double getEnergyCacheMaxError() {
+        return energyCacheMaxError;
+    }
+
+    public ChargerSelectionPolicyEnum getChargerSelection() {
+        return chargerSelection;
+    }
+
+    public double getSelectionRadiusM() {
+        return selectionRadiusM;
+    }
+
+    public double getWalkPenaltyKwPerKm() {
+        return walkPenaltyKwPerKm;
+    }
+
+    public double getPowerSeriesResolutionS() {
+        return powerSeriesResolutionS;
+    }
+
+    public double getPowerSeriesHorizonH() {
+        return powerSeriesHorizonH;
+    }
+
     /* =======================
        Builder
        ======================= */
@@ -171,12 +316,34 @@ public class ConfigRun {
         private boolean realTime = false;
         private Double sampleSizeStatic;
         private Double stepSize;
+        private String elevationRasterPath;
+        private String planCsvPath;
+
+        private ConsumptionModelEnum consumptionModel = ConsumptionModelEnum.TRACTIVE;
+        private Integer gridSpeedBins;
+        private Integer gridCongestionBins;
+        private Integer gridSlopeBins;
+        private boolean energyCache = false;
+        private Integer energyCacheSize = 1 << 20;
+        private Double energyCacheMaxError = 0.01;
+
+        private ChargerSelectionPolicyEnum chargerSelection = ChargerSelectionPolicyEnum.RANDOM;
+        private Double selectionRadiusM = 1000.0;
+        private Double walkPenaltyKwPerKm = 50.0;
+
+        private Double powerSeriesResolutionS = 60.0;
+        private Double powerSeriesHorizonH = 36.0;
 
         private Integer numeroVeicoli;
         private Double socMedio;
         private Double socStdDev;
         private Double targetSocMean;
         private Double targetSocStdDev;
+        private Long fleetSeed;
+
+        private Double evShare;
+        private String evShareStratifyBy;
+        private Double evShareHubRadiusM = 2000.0;
 
         private VehicleGenerationStrategyEnum vehicleStrategy;
         private PlanGenerationStrategyEnum planStrategy;
@@ -240,6 +407,26 @@ public class ConfigRun {
             return this;
         }
 
+        public Builder fleetSeed(Long fleetSeed) {
+            this.fleetSeed = fleetSeed;
+            return this;
+        }
+
+        public Builder evShare(Double evShare) {
+            this.evShare = evShare;
+            return this;
+        }
+
+        public Builder evShareStratifyBy(String evShareStratifyBy) {
+            this.evShareStratifyBy = evShareStratifyBy;
+            return this;
+        }
+
+        public Builder evShareHubRadiusM(Double evShareHubRadiusM) {
+            this.evShareHubRadiusM = evShareHubRadiusM;
+            return this;
+        }
+
         public Builder vehicleStrategy(VehicleGenerationStrategyEnum strategy) {
             this.vehicleStrategy = strategy;
             return this;
@@ -270,6 +457,76 @@ public class ConfigRun {
             return this;
         }
 
+        public Builder elevationRasterPath(String elevationRasterPath){
+            this.elevationRasterPath = elevationRasterPath;
+            return this;
+        }
+
+        public Builder planCsvPath(String planCsvPath){
+            this.planCsvPath = planCsvPath;
+            return this;
+        }
+
+        public Builder consumptionModel(ConsumptionModelEnum consumptionModel){
+            this.consumptionModel = consumptionModel;
+            return this;
+        }
+
+        public Builder gridSpeedBins(Integer gridSpeedBins){
+            this.gridSpeedBins = gridSpeedBins;
+            return this;
+        }
+
+        public Builder gridCongestionBins(Integer gridCongestionBins){
+            this.gridCongestionBins = gridCongestionBins;
+            return this;
+        }
+
+        public Builder gridSlopeBins(Integer gridSlopeBins){
+            this.gridSlopeBins = gridSlopeBins;
+            return this;
+        }
+
+        public Builder energyCache(boolean energyCache){
+            this.energyCache = energyCache;
+            return this;
+        }
+
+        public Builder energyCacheSize(Integer energyCacheSize){
+            this.energyCacheSize = energyCacheSize;
+            return this;
+        }
+
+        public Builder energyCacheMaxError(Double energyCacheMaxError){
+            this.energyCacheMaxError = energyCacheMaxError;
+            return this;
+        }
+
+        public Builder chargerSelection(ChargerSelectionPolicyEnum chargerSelection){
+            this.chargerSelection = chargerSelection;
+            return this;
+        }
+
+        public Builder selectionRadiusM(Double selectionRadiusM){
+            this.selectionRadiusM = selectionRadiusM;
+            return this;
+        }
+
+        public Builder walkPenaltyKwPerKm(Double walkPenaltyKwPerKm){
+            this.walkPenaltyKwPerKm = walkPenaltyKwPerKm;
+            return this;
+        }
+
+        public Builder powerSeriesResolutionS(Double powerSeriesResolutionS){
+            this.powerSeriesResolutionS = powerSeriesResolutionS;
+            return this;
+        }
+
+        public Builder powerSeriesHorizonH(Double powerSeriesHorizonH){
+            this.powerSeriesHorizonH = powerSeriesHorizonH;
+            return this;
+        }
+
         public ConfigRun build() {
 
             /* ===== Validazioni base ===== */
@@ -277,10 +534,19 @@ public class ConfigRun {
                 throw new IllegalStateException("Config path must be set");
             }
 
-            if (numeroVeicoli == null || numeroVeicoli <= 0) {
+            // Con la conversione della popolazione il numero di EV deriva da evShare
+            if (evShare == null && (numeroVeicoli == null || numeroVeicoli <= 0)) {
                 throw new IllegalStateException("Numero veicoli must be > 0");
             }
 
+            if (evShare != null && (evShare <= 0 || evShare > 1)) {
+                throw new IllegalStateException("evShare must be in (0, 1]");
+            }
+
+            if (evShareHubRadiusM == null || evShareHubRadiusM < 0) {
+                throw new IllegalStateException("evShareHubRadiusM must be >= 0");
+            }
+
             validateSoc("socMedio", socMedio);
             validateSoc("targetSocMean", targetSocMean);
 
@@ -301,9 +567,54 @@ public class ConfigRun {
                 throw new IllegalStateException("PlanGenerationStrategy must be set");
             }
 
+            if (consumptionModel == null) {
+                consumptionModel = ConsumptionModelEnum.TRACTIVE;
+            }
+
+            if (chargerSelection == null) {
+                chargerSelection = ChargerSelectionPolicyEnum.RANDOM;
+            }
+
+            if (selectionRadiusM == null || selectionRadiusM < 0) {
+                throw new IllegalStateException("selectionRadiusM must be >= 0");
+            }
+
+            if (walkPenaltyKwPerKm == null || walkPenaltyKwPerKm < 0) {
+                throw new IllegalStateException("walkPenaltyKwPerKm must be >= 0");
+            }
+
+            if (powerSeriesResolutionS == null || powerSeriesResolutionS <= 0) {
+                throw new IllegalStateException("powerSeriesResolutionS must be > 0");
+            }
+
+            if (powerSeriesHorizonH == null || powerSeriesHorizonH <= 0) {
+                throw new IllegalStateException("powerSeriesHorizonH must be > 0");
+            }
+
+            if (powerSeriesHorizonH * 3600.0 / powerSeriesResolutionS > MAX_POWER_SERIES_INTERVALS) {
+                throw new IllegalStateException("powerSeriesHorizonH / powerSeriesResolutionS exceeds " + MAX_POWER_SERIES_INTERVALS + " intervals");
+            }
+
+            validateBins("gridSpeedBins", gridSpeedBins);
+            validateBins("gridCongestionBins", gridCongestionBins);
+            validateBins("gridSlopeBins", gridSlopeBins);
+
+            if (energyCacheSize == null || energyCacheSize < 1 || energyCacheSize > (1 << 30)) {
+                throw new IllegalStateException("energyCacheSize must be in [1, 2^30]");
+            }
+
+            if (energyCacheMaxError == null || energyCacheMaxError <= 0 || energyCacheMaxError > 0.5) {
+                throw new IllegalStateException("energyCacheMaxError must be in (0, 0.5]");
+            }
+
             /* ===== Validazione risorse in base alla strategia ===== */
-            if (vehicleStrategy == VehicleGenerationStrategyEnum.FROM_CSV && csvResourceEv == null) {
-                throw new IllegalStateException("csvResourceEv required for FROM_CSV vehicle strategy");
+            // Tutte le strategie campionano i modelli dal catalogo CSV
+            if (csvResourceEv == null) {
+                throw new IllegalStateException("csvResourceEv required for " + vehicleStrategy + " vehicle strategy");
+            }
+
+            if (planStrategy == PlanGenerationStrategyEnum.FROM_CSV && (planCsvPath == null || planCsvPath.isBlank())) {
+                throw new IllegalStateException("planCsvPath required for FROM_CSV plan strategy");
             }
 
             if (hubStrategy == HubGenerationStrategyEnum.FROM_CSV && csvResourceHub == null) {
@@ -313,6 +624,12 @@ public class ConfigRun {
             return new ConfigRun(this);
         }
 
+        private void validateBins(String field, Integer value) {
+            if (value != null && value < 2) {
+                throw new IllegalStateException(field + " must be >= 2");
+            }
+        }
+
         private void validateSoc(String field, Double value) {
             if (value == null || value < 0.0 || value > 1.0) {
                 throw new IllegalStateException(field + " must be in range [0,1]");
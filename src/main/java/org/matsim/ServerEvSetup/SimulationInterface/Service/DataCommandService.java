@@ -2,8 +2,10 @@ package org.matsim.ServerEvSetup.SimulationInterface.Service;
 
 import org.matsim.CustomEvModule.EVfleet.EvFleetManager;
 import org.matsim.CustomEvModule.EVfleet.EvModel;
-import org.matsim.CustomEvModule.Hub.ChargingHub;
+import org.matsim.CustomEvModule.EVfleet.EvSnapshot;
 import org.matsim.CustomEvModule.Hub.HubManager;
+import org.matsim.CustomEvModule.Hub.HubPowerSeries;
+import org.matsim.CustomEvModule.Hub.PowerRingBuffer;
 import org.matsim.api.core.v01.Id;
 import org.matsim.contrib.ev.fleet.ElectricFleet;
 import org.matsim.contrib.ev.infrastructure.Charger;
@@ -28,6 +30,12 @@ public class DataCommandService {
         }
     }
 
+    public void bindElectricFleet(ElectricFleet fleet) {
+        if (fleet != null) {
+            evFleetManager.bindElectricFleet(fleet);
+        }
+    }
+
     public void updateEvState(Id<Vehicle> vehicleId, EvModel.State state) {
         EvModel model = evFleetManager.getVehicle(vehicleId);
         if (model != null) {
@@ -40,7 +48,7 @@ public class DataCommandService {
     }
 
     public void resetDirty() {
-        evFleetManager.getFleet().values().forEach(EvModel::resetDirty);
+        evFleetManager.resetDirty();
     }
 
     public void updateEvPosition(Id<Vehicle> vehicleId, double x, double y) {
@@ -53,43 +61,56 @@ public class DataCommandService {
     /*
     *  Hub interface
     */
-    public void handleChargingStart(Id<Charger> chargerId, String vehicleId) {
+    public void handleChargingStart(Id<Charger> chargerId, Id<Vehicle> vehicleId) {
+        // Il veicolo viene campionato ad ogni step finché è in ricarica
+        evFleetManager.setCharging(vehicleId, true);
         try {
-            hubManager.incrementOccupancy(chargerId, vehicleId);
+            // La colonnina tiene il riferimento diretto al modello dell'EV
+            hubManager.incrementOccupancy(chargerId, vehicleId, evFleetManager.getVehicle(vehicleId));
         } catch (Exception ignored) {}
     }
 
-    public void handleChargingEnd(Id<Charger> chargerId, double energy) {
+    public void handleChargingEnd(Id<Charger> chargerId, Id<Vehicle> vehicleId, double energy) {
+        evFleetManager.setCharging(vehicleId, false);
         try {
-            String hubId = hubManager.getHubIdForCharger(chargerId);
-            ChargingHub hub = hubManager.getHub(hubId);
-            if (hub != null) {
-                hub.decrementOccupancy(chargerId, energy);
-            }
+            hubManager.decrementOccupancy(chargerId, vehicleId, energy);
         } catch (Exception ignored) {}
     }
 
     public void resetCurrentEnergy() {
-        hubManager.getAllHubs()
-                  .forEach(ChargingHub::resetCurrentEnergyDelivering);
+        // Solo le colonnine che hanno erogato nello step precedente
+        hubManager.resetCurrentEnergyDelivering();
+    }
+
+    public void updateEnergyDelivering(double stepStart, double simTime) {
+        HubPowerSeries series = hubManager.getPowerSeries();
+        if (series != null) {
+            // O(1): le serie senza erogazione si azzerano alla lettura
+            series.advanceTo(simTime);
+        }
+        // Solo le colonnine occupate, con il modello dell'EV già risolto all'inizio ricarica
+        hubManager.forEachOccupiedCharger((hub, charger) -> {
+            EvModel ev = charger.getOccupyingEv();
+            if (ev == null) return;
+            // energia corrente e precedente lette in modo coerente
+            EvSnapshot snap = ev.snapshot();
+            double deltaEnergy = snap.energyJoules() - snap.lastEnergyJoules();
+            double energyKWh = (deltaEnergy/3.6e6) * 1.11;
+            hubManager.updateChargerEnergyDelivering(hub, charger, energyKWh);
+            if (series != null) {
+                series.record(hub.getId(), charger.getChargerId(), stepStart, simTime, energyKWh);
+            }
+        });
+    }
+
+    public PowerRingBuffer getHubPowerSeries(String hubId) {
+        HubPowerSeries series = hubManager.getPowerSeries();
+        return series != null ? series.hub(hubId) : null;
     }
 
-    public void updateEnergyDelivering() {
-        hubManager.getAllHubs().forEach(hub ->
-            hub.getChargerUnits().forEach(charger -> {
-                String evId = charger.getOccupyingEvId();
-                if (evId != null) {
-                    EvModel ev = getVehicle(evId);
-                    if (ev != null) {
-                        //double deltaSoc = ev.getCurrentSoc() - ev.getLastSoc();
-                        double deltaEnergy = ev.getCurrentEnergyJoules() - ev.getLastEnergyJoules();
-                        charger.setCurrentEnergyDelivering(
-                                (deltaEnergy/3.6e6) * 1.11
-                        );
-                    }
-                }
-            })
-        );
+    public PowerRingBuffer getChargerPowerSeries(Id<Charger> chargerId) {
+        HubPowerSeries series = hubManager.getPowerSeries();
+        return series != null ? series.charger(chargerId) : null;
     }
 
     public void updateChargerState(Id<Charger> chargerId, boolean active){
@@ -6,10 +6,11 @@ import java.util.List;
 import java.util.Map;
 
 import org.matsim.CustomEvModule.EVfleet.EvFleetManager;
-import org.matsim.CustomEvModule.EVfleet.EvModel;
-import org.matsim.CustomEvModule.Hub.ChargerUnit;
+import org.matsim.CustomEvModule.EVfleet.EvFleetStore;
+import org.matsim.CustomEvModule.EVfleet.EvSnapshot;
 import org.matsim.CustomEvModule.Hub.ChargingHub;
 import org.matsim.CustomEvModule.Hub.HubManager;
+import org.matsim.CustomEvModule.Hub.HubSnapshot;
 import org.springboot.DTO.out.WebSocketDTO.payload.ChargerStatus;
 import org.springboot.DTO.out.WebSocketDTO.payload.HubStatusPayload;
 import org.springboot.DTO.out.WebSocketDTO.payload.TimeStepPayload;
@@ -20,6 +21,11 @@ public class TimeStepStatusService {
     private final HubManager hubManager;
     private final EvFleetManager evFleetManager;
 
+    // Snapshot dell'ultimo payload: le loro versioni vengono confermate in resetDirty
+    private List<EvSnapshot> lastCollected = List.of();
+    private List<ChargingHub> lastHubs = List.of();
+    private List<HubSnapshot> lastHubSnapshots = List.of();
+
     public TimeStepStatusService(
         HubManager hubManager,
         EvFleetManager evFleetManager
@@ -30,16 +36,9 @@ public class TimeStepStatusService {
 
     public TimeStepPayload buildPayload(boolean fullSnapshot) {
 
-        List<VehicleStatus> vehicles = evFleetManager.getFleet()
-                .values()
-                .stream()
-                .filter(v -> fullSnapshot || v.isDirty())
-                .map(this::mapVehicle)
-                .toList();
+        List<VehicleStatus> vehicles = collectVehicles(fullSnapshot);
 
-        List<HubStatusPayload> hubs = hubManager.getAllHubs()
-                .stream()
-                .filter(h -> fullSnapshot || h.isDirty())
+        List<HubStatusPayload> hubs = collectHubs(fullSnapshot).stream()
                 .map(this::mapHub)
                 .toList();
 
@@ -50,52 +49,96 @@ public class TimeStepStatusService {
         return new TimeStepPayload(null, vehicles, hubs);
     }
 
+    /*
+    *   Scansione diretta dello store: in delta solo gli slot modificati.
+    *   Ogni veicolo è letto come snapshot coerente (seqlock), senza lock lato simulazione.
+    */
+    private List<VehicleStatus> collectVehicles(boolean fullSnapshot) {
+        EvFleetStore store = evFleetManager.getStore();
+        List<EvSnapshot> snapshots = new ArrayList<>();
+        if (fullSnapshot) {
+            for (int slot = 0, n = store.size(); slot < n; slot++) {
+                snapshots.add(store.snapshot(slot));
+            }
+        } else {
+            for (int slot = store.nextDirty(0); slot >= 0; slot = store.nextDirty(slot + 1)) {
+                snapshots.add(store.snapshot(slot));
+            }
+        }
+        lastCollected = snapshots;
+        return snapshots.stream().map(this::mapVehicle).toList();
+    }
+
+    /*
+    *   Snapshot immutabili degli hub, letti senza lock: in delta solo quelli modificati.
+    */
+    private List<HubSnapshot> collectHubs(boolean fullSnapshot) {
+        List<ChargingHub> hubs = new ArrayList<>();
+        List<HubSnapshot> snapshots = new ArrayList<>();
+        for (ChargingHub hub : hubManager.getAllHubs()) {
+            if (fullSnapshot || hub.isDirty()) {
+                hubs.add(hub);
+                snapshots.add(hub.snapshot());
+            }
+        }
+        lastHubs = hubs;
+        lastHubSnapshots = snapshots;
+        return snapshots;
+    }
+
     /*  ================================================
     *   MAPPERS
         ================================================ */
-    private VehicleStatus mapVehicle(EvModel v) {
+    private VehicleStatus mapVehicle(EvSnapshot v) {
         return new VehicleStatus(
-                v.getVehicleId().toString(),
-                v.getCurrentSoc(),
-                v.getDistanceTraveledKm(),
-                new ArrayList<>(List.of(v.getCoordX(), v.getCoordY())),
-                v.getCurrentEnergyJoules(),
-                v.getState() != null ? v.getState().toString() : "NULL"
+                v.vehicleId().toString(),
+                v.soc(),
+                v.distanceTraveledKm(),
+                new ArrayList<>(List.of(v.coordX(), v.coordY())),
+                v.energyJoules(),
+                v.state() != null ? v.state().toString() : "NULL"
         );
     }
 
-    private ChargerStatus mapCharger(ChargerUnit  cu){
+    private ChargerStatus mapCharger(HubSnapshot.ChargerState cs){
         return new ChargerStatus(
-                    cu.getChargerId().toString(),
-                    cu.getOccupyingEvId() != null,
-                    cu.isActive(),
-                    cu.getCumulativeEnergyDelivered(),
-                    cu.getCurrentEnergyDelivering(),
-                    cu.getOccupyingEvId()
+                    cs.chargerId().toString(),
+                    cs.occupied(),
+                    cs.active(),
+                    cs.cumulativeEnergy(),
+                    cs.currentEnergy(),
+                    cs.occupyingEvId()
                 );
     }
 
-    private HubStatusPayload mapHub(ChargingHub hub) {
+    private HubStatusPayload mapHub(HubSnapshot hub) {
         Map<String, ChargerStatus> chargers = new HashMap<>();
 
-        hub.getChargerUnits().forEach(cu -> {
+        hub.chargers().forEach(cs -> {
             chargers.put(
-                cu.getChargerId().toString(),
-                mapCharger(cu)
+                cs.chargerId().toString(),
+                mapCharger(cs)
             );
         });
 
         return new HubStatusPayload(
-                hub.getId(),
-                hub.getTotalEnergy(),
-                hub.getOccupancy(),
+                hub.hubId(),
+                hub.totalEnergy(),
+                hub.occupancy(),
                 chargers,         
-                new ArrayList<>(List.of(hub.getCoordX(), hub.getCoordY()))
+                new ArrayList<>(List.of(hub.coordX(), hub.coordY()))
         );
     }
 
     public void resetDirty() {
-        evFleetManager.getFleet().values().forEach(EvModel::resetDirty);
-        hubManager.resetDirtyFlags();
+        // Conferma solo le versioni inviate: le modifiche successive restano dirty
+        EvFleetStore store = evFleetManager.getStore();
+        lastCollected.forEach(store::commitPublished);
+        lastCollected = List.of();
+        for (int i = 0; i < lastHubs.size(); i++) {
+            lastHubs.get(i).commitPublished(lastHubSnapshots.get(i));
+        }
+        lastHubs = List.of();
+        lastHubSnapshots = List.of();
     }
 }
@@ -9,6 +9,7 @@ import org.springboot.DTO.out.WebSocketDTO.payload.TimeStepPayload;
 import org.matsim.CustomEvModule.EVfleet.EvFleetManager;
 import org.matsim.CustomEvModule.EVfleet.EvModel;
 import org.matsim.CustomEvModule.Hub.HubManager;
+import org.matsim.CustomEvModule.Hub.PowerRingBuffer;
 import org.matsim.ServerEvSetup.SimulationInterface.Service.DataCommandService;
 import org.matsim.ServerEvSetup.SimulationInterface.Service.SimulationLifecycleService;
 import org.matsim.ServerEvSetup.SimulationInterface.Service.TimeStepStatusService;
@@ -86,6 +87,16 @@ public class SimulationBridgeInterface implements IterationStartsListener {
         dataCommands.updateFleetSoc(electricFleet);
     }
 
+    /**
+     * Bind every EV of the fleet to its ElectricVehicle of the current QSim.
+     * Called by TimeStepSocMonitor at mobsim initialization.
+     *
+     * @param electricFleet The electric fleet of the QSim
+     */
+    public void bindElectricFleet(org.matsim.contrib.ev.fleet.ElectricFleet electricFleet) {
+        dataCommands.bindElectricFleet(electricFleet);
+    }
+
     /**
      * Update the state of a single EV vehicle.
      * Called by VehicleStatusMonitor instead of accessing evFleetManager directly.
@@ -120,7 +131,7 @@ public class SimulationBridgeInterface implements IterationStartsListener {
         Id<Vehicle> vehicleId,
         double simTime
     ) {
-       dataCommands.handleChargingStart(chargerId, vehicleId.toString());
+       dataCommands.handleChargingStart(chargerId, vehicleId);
     }
 
     /**
@@ -128,13 +139,15 @@ public class SimulationBridgeInterface implements IterationStartsListener {
      * Called by HubChargingMonitor instead of accessing hubManager directly.
      * 
      * @param chargerId The charger ID where charging ends
+     * @param vehicleId The vehicle ID that ends charging
      * @param energy The energy charged
      */
     public void handleChargingEnd(
         Id<Charger> chargerId,
+        Id<Vehicle> vehicleId,
         double energy
     ) {
-        dataCommands.handleChargingEnd(chargerId, energy);
+        dataCommands.handleChargingEnd(chargerId, vehicleId, energy);
     }
 
     /**
@@ -148,12 +161,35 @@ public class SimulationBridgeInterface implements IterationStartsListener {
     /**
      * Aggiorna l'energia che le colonnine stanno erogando in questo timestep.
      * Legge lo stato della flotta EV dalla simulazione e calcola quanta energia
-     * ogni colonnina sta erogando.
+     * ogni colonnina sta erogando, registrandola nelle serie di potenza.
      * 
-     * @param electricFleet La flotta EV da cui leggere i dati
+     * @param stepStart Inizio del timestep (tempo di simulazione)
+     * @param simTime Fine del timestep (tempo di simulazione)
+     */
+    public void updateChargersEnergyDelivering(double stepStart, double simTime) {
+        dataCommands.updateEnergyDelivering(stepStart, simTime);
+    }
+
+    /**
+     * Serie di potenza di un hub, null se hub sconosciuto o serie non abilitate.
+     */
+    public PowerRingBuffer getHubPowerSeries(String hubId) {
+        return dataCommands.getHubPowerSeries(hubId);
+    }
+
+    /**
+     * Serie di potenza di una colonnina, null se colonnina sconosciuta o serie non abilitate
+     * (il controller risponde 404).
+     * L'id arriva dalla richiesta HTTP: Id.get non registra nel pool globale gli id sconosciuti.
      */
-    public void updateChargersEnergyDelivering() {
-        dataCommands.updateEnergyDelivering();
+    public PowerRingBuffer getChargerPowerSeries(String chargerId) {
+        Id<Charger> id;
+        try {
+            id = Id.get(chargerId, Charger.class);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return id == null ? null : dataCommands.getChargerPowerSeries(id);
     }
 
     public void updateEvPosition(Id<Vehicle> vehicleId, double x, double y) {
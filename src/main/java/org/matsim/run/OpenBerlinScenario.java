@@ -108,7 +108,8 @@ public class OpenBerlinScenario extends MATSimApplication {
             );
         }
 
-        if (evModels == null || evModels.isEmpty()) {
+        // Con evShare la flotta nasce dalla popolazione caricata: nessun modello dal server
+        if (configRun.getEvShare() == null && (evModels == null || evModels.isEmpty())) {
             throw new IllegalArgumentException("evModels cannot be null or empty");
         }
 
@@ -147,6 +148,7 @@ public class OpenBerlinScenario extends MATSimApplication {
             context.getEvFleetManager(),
             context.getInfraSpec(),
             scenario.getNetwork(),
+            context.getSocTargets(),
             configRun
         );
 
@@ -231,7 +233,9 @@ public class OpenBerlinScenario extends MATSimApplication {
         evConfig.chargersFile = "fake_chargers.xml"; // Placeholder
         //UrbanEVConfigGroup urbanEVConfig = ConfigUtils.addOrGetModule(config, UrbanEVConfigGroup.class);
         //urbanEVConfig.setCriticalSOC(0.9);
-        evConfig.chargeTimeStep = 5; //Timestep di avanzamneto SoC durante la ricarica
+        // Le ricariche sono gestite da AnalyticChargingEngine (fine sessione a evento):
+        // il passo MATSim scorre solo ChargingLogic vuote, non serve che sia fine
+        evConfig.chargeTimeStep = 300;
         // Register EV charging activities
         config.scoring().addActivityParams(
             new ActivityParams("car charging")
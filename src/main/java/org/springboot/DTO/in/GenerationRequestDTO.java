@@ -37,4 +37,7 @@ public class GenerationRequestDTO {
 
     @DecimalMin("0.0") @DecimalMax("1.0")
     Double socStdDev = 0.05;
+
+    // Seed del campionamento: stessa richiesta e stesso seed => stessa flotta (null = casuale)
+    Long seed;
 }
@@ -0,0 +1,30 @@
+package org.springboot.DTO.in;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Positive;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO per l'import massivo degli hub da un registro CSV di stazioni lat/lon.
+ *
+ * Contiene:
+ * - csvPath: CSV locale del registro (colonne lat/lon obbligatorie)
+ * - configPath: config MATSim da cui leggere la rete per l'aggancio
+ * - maxSnapDistanceM: distanza massima tra stazione e link auto
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HubImportRequestDTO {
+
+    @NotBlank(message = "Il percorso del CSV del registro è obbligatorio")
+    private String csvPath;
+
+    @NotBlank(message = "Il path della configurazione è obbligatorio")
+    private String configPath = "input/v%s/berlin-v%s.config.xml";
+
+    @Positive
+    private Double maxSnapDistanceM = 250.0;
+}
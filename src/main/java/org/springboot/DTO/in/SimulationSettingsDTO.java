@@ -4,6 +4,8 @@ import jakarta.validation.constraints.*;
 import lombok.Data;
 import org.matsim.ServerEvSetup.ConfigRun.ConfigRun.VehicleGenerationStrategyEnum;
 import org.matsim.ServerEvSetup.ConfigRun.ConfigRun.PlanGenerationStrategyEnum;
+import org.matsim.ServerEvSetup.ConfigRun.ConfigRun.ConsumptionModelEnum;
+import org.matsim.ServerEvSetup.ConfigRun.ConfigRun.ChargerSelectionPolicyEnum;
 
 @Data
 public class SimulationSettingsDTO {
@@ -20,6 +22,9 @@ public class SimulationSettingsDTO {
     private VehicleGenerationStrategyEnum vehicleStrategy = VehicleGenerationStrategyEnum.FROM_CSV;
     private PlanGenerationStrategyEnum planStrategy = PlanGenerationStrategyEnum.STATIC;
 
+    // CSV (o .csv.gz) delle catene di attività per veicolo, richiesto da planStrategy FROM_CSV
+    private String planCsvPath;
+
     @DecimalMin(value = "0.0", inclusive = true)
     @DecimalMax(value = "1.0", inclusive = true)
     private Double sampleSizeStatic = 0.001;
@@ -40,6 +45,16 @@ public class SimulationSettingsDTO {
     @PositiveOrZero
     private Double targetSocStdDev = 0.05;
 
+    // Seed della flotta (campionamento e piani); null = seed di default
+    private Long fleetSeed;
+
+    // Conversione di una quota degli automobilisti della popolazione in EV (null = flotta sintetica):
+    // attributo della persona per gli strati (null = cella della prima attività) e raggio hub (m)
+    @DecimalMin(value = "0.0", inclusive = false) @DecimalMax("1.0")
+    private Double evShare;
+    private String evShareStratifyBy;
+    @PositiveOrZero private Double evShareHubRadiusM = 2000.0;
+
     private Boolean debugLink = false;
     
     @Positive(message = "Lo stepSize deve essere maggiore di zero")
@@ -51,4 +66,31 @@ public class SimulationSettingsDTO {
     private boolean publisherDirty = false; // default snapshot full
 
     private Boolean RealTime = false;
+
+    // GeoTIFF locale delle quote (CRS della rete), opzionale
+    private String elevationRasterPath;
+
+    // Modello di consumo: TRACTIVE (analitico) o TABULATED (griglie precalcolate)
+    private ConsumptionModelEnum consumptionModel = ConsumptionModelEnum.TRACTIVE;
+
+    // Risoluzione delle griglie TABULATED (null = default)
+    @Min(2) private Integer gridSpeedBins;
+    @Min(2) private Integer gridCongestionBins;
+    @Min(2) private Integer gridSlopeBins;
+
+    // Cache dell'energia per link (solo TRACTIVE): slot e errore relativo massimo di quantizzazione
+    private Boolean energyCache = false;
+    @Positive private Integer energyCacheSize = 1 << 20;
+    @DecimalMin(value = "0.0", inclusive = false) @DecimalMax("0.5")
+    private Double energyCacheMaxError = 0.01;
+
+    // Scelta della colonnina all'arrivo: politica, raggio di ricerca degli hub vicini (m)
+    // e penalità della distanza a piedi per NEAREST_WALK (kW equivalenti per km)
+    private ChargerSelectionPolicyEnum chargerSelection = ChargerSelectionPolicyEnum.RANDOM;
+    @PositiveOrZero private Double selectionRadiusM = 1000.0;
+    @PositiveOrZero private Double walkPenaltyKwPerKm = 50.0;
+
+    // Serie di potenza di hub e colonnine: durata dell'intervallo (s) e finestra conservata (h)
+    @Positive private Double powerSeriesResolutionS = 60.0;
+    @Positive private Double powerSeriesHorizonH = 36.0;
 }
\ No newline at end of file
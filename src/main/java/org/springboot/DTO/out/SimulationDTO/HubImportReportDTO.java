@@ -0,0 +1,36 @@
+package org.springboot.DTO.out.SimulationDTO;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Esito dell'import massivo degli hub.
+ *
+ * Campi:
+ * - rowsRead: righe dati lette (esclusa l'intestazione)
+ * - stationsImported: stazioni agganciate ad un link
+ * - hubsCreated: hub generati (stazioni sullo stesso link aggregate)
+ * - rejectedCount: righe scartate in totale
+ * - rejected: prime righe scartate, con numero di riga e motivo
+ * - elapsedMs: durata dell'import
+ */
+@Data
+@AllArgsConstructor
+public class HubImportReportDTO {
+
+    @Data
+    @AllArgsConstructor
+    public static class RejectedRowDTO {
+        private int line;
+        private String reason;
+    }
+
+    private int rowsRead;
+    private int stationsImported;
+    private int hubsCreated;
+    private int rejectedCount;
+    private List<RejectedRowDTO> rejected;
+    private long elapsedMs;
+}
@@ -0,0 +1,23 @@
+package org.springboot.DTO.out.SimulationDTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Curva di carico di un hub o di una colonnina.
+ *
+ * Campi:
+ * - id: ID dell'hub o della colonnina
+ * - startTime: inizio del primo intervallo (secondi di simulazione)
+ * - resolutionS: durata di un intervallo in secondi
+ * - powerKw: potenza media per intervallo in kW, dal più vecchio al più recente
+ */
+@Data
+@AllArgsConstructor
+public class PowerCurveDTO {
+
+    private String id;
+    private double startTime;
+    private double resolutionS;
+    private double[] powerKw;
+}
@@ -0,0 +1,31 @@
+package org.springboot.DTO.out.SimulationDTO;
+
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Statistiche della potenza di un hub o di una colonnina in una finestra temporale.
+ *
+ * Campi:
+ * - id: ID dell'hub o della colonnina
+ * - fromTime / toTime: finestra effettiva (secondi di simulazione)
+ * - peakTime / peakKw: inizio e potenza dell'intervallo di picco
+ * - meanKw: potenza media nella finestra
+ * - energyKWh: energia erogata nella finestra
+ * - percentilesKw: potenza per percentile richiesto (es. "95" -> kW)
+ */
+@Data
+@AllArgsConstructor
+public class PowerStatsDTO {
+
+    private String id;
+    private double fromTime;
+    private double toTime;
+    private double peakTime;
+    private double peakKw;
+    private double meanKw;
+    private double energyKWh;
+    private Map<String, Double> percentilesKw;
+}
@@ -0,0 +1,42 @@
+package org.springboot.DTO.out.SimulationDTO.mapper;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.matsim.CustomEvModule.Hub.PowerRingBuffer;
+import org.springboot.DTO.out.SimulationDTO.PowerCurveDTO;
+import org.springboot.DTO.out.SimulationDTO.PowerStatsDTO;
+
+/**
+ * Mapper per convertire le query su PowerRingBuffer nei DTO di output per API REST.
+ */
+public class PowerSeriesMapper {
+
+    public static PowerCurveDTO toCurveDTO(String id, PowerRingBuffer.LoadCurve curve) {
+        return new PowerCurveDTO(id, curve.startTime(), curve.resolutionS(), curve.powerKw());
+    }
+
+    public static PowerStatsDTO toStatsDTO(String id, double[] percentiles, PowerRingBuffer.LoadStats stats) {
+        Map<String, Double> byPercentile = new LinkedHashMap<>();
+        for (int i = 0; i < percentiles.length; i++) {
+            byPercentile.put(format(percentiles[i]), stats.percentileKw()[i]);
+        }
+        return new PowerStatsDTO(
+            id,
+            stats.fromTime(),
+            stats.toTime(),
+            stats.peakTime(),
+            stats.peakKw(),
+            stats.meanKw(),
+            stats.energyKWh(),
+            byPercentile
+        );
+    }
+
+    // 95.0 -> "95", 99.9 -> "99.9"
+    private static String format(double percentile) {
+        return percentile == Math.rint(percentile)
+                ? Long.toString((long) percentile)
+                : Double.toString(percentile);
+    }
+}
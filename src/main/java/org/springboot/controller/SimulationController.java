@@ -1,11 +1,15 @@
 package org.springboot.controller;
 
 import org.springboot.DTO.in.GenerationRequestDTO;
+import org.springboot.DTO.in.HubImportRequestDTO;
 import org.springboot.DTO.in.SimulationSettingsDTO;
 import org.springboot.DTO.out.SimulationResponseDTO;
 import org.springboot.DTO.out.SimulationDTO.ChargerStateDTO;
 import org.springboot.DTO.out.SimulationDTO.EvFleetDto;
+import org.springboot.DTO.out.SimulationDTO.HubImportReportDTO;
 import org.springboot.DTO.out.SimulationDTO.HubListDTO;
+import org.springboot.DTO.out.SimulationDTO.PowerCurveDTO;
+import org.springboot.DTO.out.SimulationDTO.PowerStatsDTO;
 import org.springboot.service.MatsimService;
 import org.springboot.service.result.ChargerStateUpdateResult;
 import org.springboot.service.result.GenerationResult;
@@ -16,9 +20,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import io.swagger.v3.oas.annotations.Operation;
@@ -30,6 +36,8 @@ import jakarta.validation.Valid;
 @RequestMapping("/api")
 public class SimulationController {
 
+    private static final String DEFAULT_PERCENTILES = "50,90,95,99";
+
     private final MatsimService matsimService;
 
     @Autowired
@@ -155,7 +163,8 @@ public class SimulationController {
             finalRequest.getCsvResourceEv(),
             finalRequest.getNumeroVeicoli(),
             finalRequest.getSocMedio(),
-            finalRequest.getSocStdDev()
+            finalRequest.getSocStdDev(),
+            finalRequest.getSeed()
         );
         
         switch (result) {
@@ -218,6 +227,44 @@ public class SimulationController {
         }
     }
 
+    /**
+     * Importa gli hub da un registro CSV locale di stazioni lat/lon.
+     * Ogni stazione viene agganciata al link auto più vicino; le stazioni sullo
+     * stesso link formano un hub. Gli hub importati sostituiscono quelli generati.
+     */
+    @Operation(summary = "Importa gli hub da un registro CSV di stazioni di ricarica")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Hub importati, con righe scartate"),
+        @ApiResponse(responseCode = "400", description = "Registro non valido o nessuna stazione agganciata"),
+        @ApiResponse(responseCode = "404", description = "File del registro non trovato"),
+        @ApiResponse(responseCode = "500", description = "Errore nell'import")
+    })
+    @PostMapping("/hub/import")
+    public ResponseEntity<SimulationResponseDTO<HubImportReportDTO>> importHubs(@Valid @RequestBody HubImportRequestDTO request) {
+        GenerationResult result = matsimService.importHubs(
+            request.getCsvPath(),
+            request.getConfigPath(),
+            request.getMaxSnapDistanceM()
+        );
+        switch (result) {
+            case SUCCESS:
+                return buildResponse(HttpStatus.OK, result.getMessage(), matsimService.getLastHubImport(), null);
+            case INVALID_REQUEST:
+                // Le righe scartate restano nella risposta per la diagnosi
+                SimulationResponseDTO<HubImportReportDTO> invalid = SimulationResponseDTO.error(
+                    result.getMessage(), "Registro non valido o nessuna stazione agganciata"
+                );
+                invalid.setData(matsimService.getLastHubImport());
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(invalid);
+            case FILE_NOT_FOUND:
+                return buildResponse(HttpStatus.NOT_FOUND, result.getMessage());
+            case ERROR:
+                return buildResponse(HttpStatus.INTERNAL_SERVER_ERROR, result.getMessage());
+            default:
+                return buildResponse(HttpStatus.INTERNAL_SERVER_ERROR, "Stato sconosciuto");
+        }
+    }
+
     /**
      * Recupera i modelli degli hub già generati lato server.
      * Non richiede che la simulazione sia in esecuzione.
@@ -265,4 +312,110 @@ public class SimulationController {
         }
     }
 
-}
\ No newline at end of file
+    // --- Serie di potenza (curve di carico dalla memoria della simulazione) ---
+    @Operation(summary = "Curva di carico di un hub durante la simulazione")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Potenza media per intervallo"),
+        @ApiResponse(responseCode = "404", description = "Hub sconosciuto"),
+        @ApiResponse(responseCode = "503", description = "Simulazione non in esecuzione")
+    })
+    @GetMapping("/hub/{hubId}/power")
+    public ResponseEntity<SimulationResponseDTO<PowerCurveDTO>> getHubPowerCurve(
+        @PathVariable String hubId,
+        @RequestParam(required = false) Double from,
+        @RequestParam(required = false) Double to
+    ) {
+        if (!matsimService.isSimulationRunning()) {
+            return buildResponse(HttpStatus.SERVICE_UNAVAILABLE, "Simulazione non in esecuzione");
+        }
+        PowerCurveDTO curve = matsimService.getHubPowerCurve(hubId, from, to);
+        if (curve == null) {
+            return buildResponse(HttpStatus.NOT_FOUND, "Hub sconosciuto: " + hubId);
+        }
+        return buildResponse(HttpStatus.OK, "OK", curve, null);
+    }
+
+    @Operation(summary = "Picco, media e percentili della potenza di un hub")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Statistiche della potenza"),
+        @ApiResponse(responseCode = "400", description = "Percentili fuori da [0, 100]"),
+        @ApiResponse(responseCode = "404", description = "Hub sconosciuto"),
+        @ApiResponse(responseCode = "503", description = "Simulazione non in esecuzione")
+    })
+    @GetMapping("/hub/{hubId}/power/stats")
+    public ResponseEntity<SimulationResponseDTO<PowerStatsDTO>> getHubPowerStats(
+        @PathVariable String hubId,
+        @RequestParam(required = false) Double from,
+        @RequestParam(required = false) Double to,
+        @RequestParam(defaultValue = DEFAULT_PERCENTILES) double[] percentiles
+    ) {
+        if (!validPercentiles(percentiles)) {
+            return buildResponse(HttpStatus.BAD_REQUEST, "Percentili fuori da [0, 100]");
+        }
+        if (!matsimService.isSimulationRunning()) {
+            return buildResponse(HttpStatus.SERVICE_UNAVAILABLE, "Simulazione non in esecuzione");
+        }
+        PowerStatsDTO stats = matsimService.getHubPowerStats(hubId, from, to, percentiles);
+        if (stats == null) {
+            return buildResponse(HttpStatus.NOT_FOUND, "Hub sconosciuto: " + hubId);
+        }
+        return buildResponse(HttpStatus.OK, "OK", stats, null);
+    }
+
+    @Operation(summary = "Curva di carico di una colonnina durante la simulazione")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Potenza media per intervallo"),
+        @ApiResponse(responseCode = "404", description = "Colonnina sconosciuta"),
+        @ApiResponse(responseCode = "503", description = "Simulazione non in esecuzione")
+    })
+    @GetMapping("/charger/{chargerId}/power")
+    public ResponseEntity<SimulationResponseDTO<PowerCurveDTO>> getChargerPowerCurve(
+        @PathVariable String chargerId,
+        @RequestParam(required = false) Double from,
+        @RequestParam(required = false) Double to
+    ) {
+        if (!matsimService.isSimulationRunning()) {
+            return buildResponse(HttpStatus.SERVICE_UNAVAILABLE, "Simulazione non in esecuzione");
+        }
+        PowerCurveDTO curve = matsimService.getChargerPowerCurve(chargerId, from, to);
+        if (curve == null) {
+            return buildResponse(HttpStatus.NOT_FOUND, "Colonnina sconosciuta: " + chargerId);
+        }
+        return buildResponse(HttpStatus.OK, "OK", curve, null);
+    }
+
+    @Operation(summary = "Picco, media e percentili della potenza di una colonnina")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Statistiche della potenza"),
+        @ApiResponse(responseCode = "400", description = "Percentili fuori da [0, 100]"),
+        @ApiResponse(responseCode = "404", description = "Colonnina sconosciuta"),
+        @ApiResponse(responseCode = "503", description = "Simulazione non in esecuzione")
+    })
+    @GetMapping("/charger/{chargerId}/power/stats")
+    public ResponseEntity<SimulationResponseDTO<PowerStatsDTO>> getChargerPowerStats(
+        @PathVariable String chargerId,
+        @RequestParam(required = false) Double from,
+        @RequestParam(required = false) Double to,
+        @RequestParam(defaultValue = DEFAULT_PERCENTILES) double[] percentiles
+    ) {
+        if (!validPercentiles(percentiles)) {
+            return buildResponse(HttpStatus.BAD_REQUEST, "Percentili fuori da [0, 100]");
+        }
+        if (!matsimService.isSimulationRunning()) {
+            return buildResponse(HttpStatus.SERVICE_UNAVAILABLE, "Simulazione non in esecuzione");
+        }
+        PowerStatsDTO stats = matsimService.getChargerPowerStats(chargerId, from, to, percentiles);
+        if (stats == null) {
+            return buildResponse(HttpStatus.NOT_FOUND, "Colonnina sconosciuta: " + chargerId);
+        }
+        return buildResponse(HttpStatus.OK, "OK", stats, null);
+    }
+
+    private static boolean validPercentiles(double[] percentiles) {
+        for (double p : percentiles) {
+            if (!(p >= 0.0 && p <= 100.0)) return false;
+        }
+        return true;
+    }
+
+}
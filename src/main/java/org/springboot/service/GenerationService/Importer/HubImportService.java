@@ -0,0 +1,57 @@
+package org.springboot.service.generationService.Importer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.CustomEvModule.Hub.LinkSnapIndex;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.network.io.MatsimNetworkReader;
+import org.matsim.run.OpenBerlinScenario;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Path;
+
+/**
+ * Import del registro delle stazioni di ricarica con aggancio ai link della rete.
+ *
+ * La rete è quella della config della run; il suo LinkSnapIndex è costruito alla prima
+ * richiesta e riusato finché la rete non cambia, così gli import successivi costano
+ * solo parsing, riproiezione e aggancio.
+ */
+@Service
+public class HubImportService {
+
+    private static final Logger log = LogManager.getLogger(HubImportService.class);
+
+    private URL indexedNetwork;
+    private LinkSnapIndex snapIndex;
+
+    /**
+     * @param csvPath Percorso del CSV locale del registro
+     * @param configPath Config MATSim da cui leggere la rete (segnaposto %s = versione)
+     * @param maxSnapDistance Distanza massima (m) tra stazione e link
+     */
+    public HubRegisterImporter.ImportReport importRegister(String csvPath, String configPath, double maxSnapDistance) throws IOException {
+        LinkSnapIndex index = snapIndex(configPath);
+        return new HubRegisterImporter(index).importCsv(Path.of(csvPath), maxSnapDistance);
+    }
+
+    private synchronized LinkSnapIndex snapIndex(String configPath) {
+        Config config = ConfigUtils.loadConfig(
+            String.format(configPath, OpenBerlinScenario.VERSION, OpenBerlinScenario.VERSION)
+        );
+        URL networkUrl = config.network().getInputFileURL(config.getContext());
+        if (snapIndex == null || !networkUrl.equals(indexedNetwork)) {
+            log.info("[HubImportService] Costruzione indice dei link da {}", networkUrl);
+            Network network = NetworkUtils.createNetwork();
+            new MatsimNetworkReader(network).readURL(networkUrl);
+            snapIndex = new LinkSnapIndex(network);
+            indexedNetwork = networkUrl;
+        }
+        return snapIndex;
+    }
+}
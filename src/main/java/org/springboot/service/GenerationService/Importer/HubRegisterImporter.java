@@ -0,0 +1,360 @@
+package org.springboot.service.generationService.Importer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.CustomEvModule.Hub.LinkSnapIndex;
+import org.matsim.CustomEvModule.Utils.CoordinateConverter;
+import org.springboot.service.generationService.DTO.ChargerSpecDto;
+import org.springboot.service.generationService.DTO.HubSpecDto;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Import massivo di stazioni di ricarica da un registro CSV di punti lat/lon
+ * (es. registro pubblico delle colonnine), con aggancio al link auto più vicino.
+ *
+ * - lettura in streaming a blocchi di CHUNK_ROWS righe, elaborati in parallelo su un
+ *   pool dedicato; al più MAX_IN_FLIGHT_CHUNKS blocchi in attesa, oltre si aggrega il
+ *   più vecchio prima di leggere ancora (memoria limitata anche su registri grandi)
+ * - parsing senza regex, con campi tra virgolette e virgola decimale
+ * - conversione EPSG:4326 → EPSG:25832 in blocco (una chiamata per blocco)
+ * - aggancio con LinkSnapIndex entro maxSnapDistance metri
+ * - stazioni sullo stesso link aggregate in un unico HubSpecDto, nell'ordine del file
+ *
+ * Colonne riconosciute dall'intestazione (maiuscole/minuscole indifferenti):
+ *   lat | latitude | breitengrad                  (obbligatoria)
+ *   lon | lng | longitude | längengrad            (obbligatoria)
+ *   power | power_kw | nennleistung ladeeinrichtung [kw]
+ *   type | charger_type | art der ladeeinrichtung
+ *   plugs | plug_count | anzahl ladepunkte
+ * Separatore (';', ',' o tab) dedotto dall'intestazione; le righe prima dell'intestazione
+ * (note introduttive del registro) vengono saltate.
+ *
+ * Le righe non valide o non agganciabili sono riportate con numero di riga e motivo.
+ */
+public class HubRegisterImporter {
+
+    private static final Logger log = LogManager.getLogger(HubRegisterImporter.class);
+
+    public static final double DEFAULT_MAX_SNAP_DISTANCE_M = 250.0;
+    public static final String HUB_PREFIX = "imp_";
+
+    private static final int CHUNK_ROWS = 4096;
+    private static final int PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private static final int MAX_IN_FLIGHT_CHUNKS = 2 * PARALLELISM;
+    private static final int MAX_HEADER_SEARCH_LINES = 50;
+    private static final double DEFAULT_POWER_KW = 11.0;
+    private static final double FAST_CHARGE_KW = 50.0;
+
+    /**
+     * Riga scartata: numero di riga nel file (1-based) e motivo.
+     */
+    public record RejectedRow(int line, String reason) {}
+
+    /**
+     * Esito dell'import.
+     */
+    public record ImportReport(
+            List<HubSpecDto> hubs,
+            int rowsRead,
+            int stationsImported,
+            List<RejectedRow> rejected,
+            long elapsedMs
+    ) {}
+
+    private record Station(int line, String linkId, String chargerType, double powerKw, int plugCount) {}
+
+    private record ChunkResult(List<Station> stations, List<RejectedRow> rejected) {}
+
+    private record Columns(char delimiter, int lat, int lon, int power, int type, int plugs) {}
+
+    private final LinkSnapIndex snapIndex;
+
+    public HubRegisterImporter(LinkSnapIndex snapIndex) {
+        this.snapIndex = snapIndex;
+    }
+
+    /**
+     * Importa il registro CSV e aggrega le stazioni agganciate in HubSpecDto.
+     *
+     * @param csv Percorso del CSV locale
+     * @param maxSnapDistance Distanza massima (m) tra stazione e link
+     * @return Hub generati e righe scartate
+     * @throws IOException Se il file non può essere letto
+     * @throws IllegalArgumentException Se l'intestazione non ha colonne lat/lon
+     */
+    public ImportReport importCsv(Path csv, double maxSnapDistance) throws IOException {
+        long start = System.nanoTime();
+        Aggregation aggregation = new Aggregation();
+        Deque<Future<ChunkResult>> pending = new ArrayDeque<>();
+        int rowsRead = 0;
+
+        ExecutorService executor = Executors.newFixedThreadPool(PARALLELISM);
+        try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+            int lineNumber = 0;
+            Columns columns = null;
+            String line;
+            while (columns == null && (line = reader.readLine()) != null) {
+                lineNumber++;
+                columns = parseHeader(line);
+                if (columns == null && lineNumber >= MAX_HEADER_SEARCH_LINES) break;
+            }
+            if (columns == null) {
+                throw new IllegalArgumentException("Intestazione con colonne lat/lon non trovata in " + csv);
+            }
+
+            final Columns cols = columns;
+            List<String> block = new ArrayList<>(CHUNK_ROWS);
+            int blockFirstLine = lineNumber + 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                rowsRead++;
+                block.add(line);
+                if (block.size() == CHUNK_ROWS) {
+                    // Coda piena: aggrega il blocco più vecchio prima di leggerne altri
+                    if (pending.size() >= MAX_IN_FLIGHT_CHUNKS) {
+                        aggregation.add(join(pending.poll()));
+                    }
+                    pending.add(submit(executor, block, blockFirstLine, cols, maxSnapDistance));
+                    block = new ArrayList<>(CHUNK_ROWS);
+                    blockFirstLine = lineNumber + 1;
+                }
+            }
+            if (!block.isEmpty()) {
+                pending.add(submit(executor, block, blockFirstLine, cols, maxSnapDistance));
+            }
+
+            // Aggregazione nell'ordine dei blocchi: risultato deterministico
+            while (!pending.isEmpty()) {
+                aggregation.add(join(pending.poll()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        log.info("[HubRegisterImporter] {} righe, {} stazioni in {} hub, {} scartate in {} ms",
+                rowsRead, aggregation.imported, aggregation.hubs.size(), aggregation.rejected.size(), elapsedMs);
+        return new ImportReport(new ArrayList<>(aggregation.hubs.values()), rowsRead, aggregation.imported,
+                aggregation.rejected, elapsedMs);
+    }
+
+    /**
+     * Stazioni dei blocchi già completati, aggregate per link nell'ordine del file.
+     */
+    private static final class Aggregation {
+        final Map<String, HubSpecDto> hubs = new LinkedHashMap<>();
+        final List<RejectedRow> rejected = new ArrayList<>();
+        int imported = 0;
+
+        void add(ChunkResult chunk) {
+            rejected.addAll(chunk.rejected());
+            for (Station s : chunk.stations()) {
+                HubSpecDto hub = hubs.computeIfAbsent(s.linkId(), id -> new HubSpecDto(HUB_PREFIX + id, id));
+                String chargerId = hub.getHubId() + "_col" + (hub.getChargers().size() + 1);
+                hub.addCharger(new ChargerSpecDto(chargerId, s.linkId(), s.chargerType(), s.powerKw(), s.plugCount()));
+                imported++;
+            }
+        }
+    }
+
+    private Future<ChunkResult> submit(
+            ExecutorService executor, List<String> lines, int firstLine, Columns cols, double maxSnapDistance
+    ) {
+        return executor.submit(() -> processChunk(lines, firstLine, cols, maxSnapDistance));
+    }
+
+    private static ChunkResult join(Future<ChunkResult> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import del registro hub interrotto", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new IOException("Errore nell'import del registro hub", e.getCause());
+        }
+    }
+
+    // ================================================================
+    // ================= BLOCCO ======================================
+    // ================================================================
+
+    private ChunkResult processChunk(List<String> lines, int firstLine, Columns cols, double maxSnapDistance) {
+        int n = lines.size();
+        double[] coords = new double[2 * n];
+        int[] lineOf = new int[n];
+        String[] types = new String[n];
+        double[] power = new double[n];
+        int[] plugs = new int[n];
+        List<RejectedRow> rejected = new ArrayList<>();
+        List<String> fields = new ArrayList<>(16);
+
+        // 1. Parsing
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            String line = lines.get(i);
+            int lineNumber = firstLine + i;
+            if (line.isBlank()) continue;
+            try {
+                split(line, cols.delimiter(), fields);
+                double lat = parseNumber(field(fields, cols.lat()), cols.delimiter());
+                double lon = parseNumber(field(fields, cols.lon()), cols.delimiter());
+                if (!(lat >= -90 && lat <= 90 && lon >= -180 && lon <= 180)) {
+                    throw new IllegalArgumentException("coordinate fuori scala: " + lat + ", " + lon);
+                }
+                String powerField = field(fields, cols.power());
+                double kw = powerField.isEmpty() ? DEFAULT_POWER_KW : parseNumber(powerField, cols.delimiter());
+                if (!(kw > 0)) {
+                    throw new IllegalArgumentException("potenza non positiva: " + powerField);
+                }
+                String plugField = field(fields, cols.plugs());
+                int plugCount = plugField.isEmpty() ? 1 : (int) parseNumber(plugField, cols.delimiter());
+                if (plugCount < 1) {
+                    throw new IllegalArgumentException("numero di punti di ricarica non valido: " + plugField);
+                }
+
+                coords[2 * count] = lat;
+                coords[2 * count + 1] = lon;
+                lineOf[count] = lineNumber;
+                types[count] = chargerType(field(fields, cols.type()), kw);
+                power[count] = kw;
+                plugs[count] = plugCount;
+                count++;
+            } catch (RuntimeException e) {
+                rejected.add(new RejectedRow(lineNumber, e.getMessage()));
+            }
+        }
+
+        // 2. Riproiezione in blocco (lat/lon → x/y della rete)
+        CoordinateConverter.toNetworkInPlace(coords, count);
+
+        // 3. Aggancio al link auto più vicino
+        List<Station> stations = new ArrayList<>(count);
+        for (int k = 0; k < count; k++) {
+            LinkSnapIndex.Snap snap = snapIndex.snap(coords[2 * k], coords[2 * k + 1], maxSnapDistance);
+            if (snap == null) {
+                rejected.add(new RejectedRow(lineOf[k],
+                        String.format(Locale.ROOT, "nessun link auto entro %.0f m", maxSnapDistance)));
+                continue;
+            }
+            stations.add(new Station(lineOf[k], snap.link().getId().toString(), types[k], power[k], plugs[k]));
+        }
+
+        // Scarti in ordine di riga (parsing e aggancio sono passate separate)
+        rejected.sort((a, b) -> Integer.compare(a.line(), b.line()));
+        return new ChunkResult(stations, rejected);
+    }
+
+    // ================================================================
+    // ================= PARSING =====================================
+    // ================================================================
+
+    /** Intestazione con colonne lat/lon, null se la riga non lo è */
+    private static Columns parseHeader(String line) {
+        if (line == null || line.isBlank()) return null;
+        String header = line.startsWith("\uFEFF") ? line.substring(1) : line;
+        char delimiter = detectDelimiter(header);
+
+        List<String> names = new ArrayList<>();
+        split(header, delimiter, names);
+        int lat = -1, lon = -1, power = -1, type = -1, plugs = -1;
+        for (int i = 0; i < names.size(); i++) {
+            String name = names.get(i).trim().toLowerCase(Locale.ROOT);
+            switch (name) {
+                case "lat", "latitude", "breitengrad" -> lat = i;
+                case "lon", "lng", "longitude", "längengrad", "laengengrad" -> lon = i;
+                case "power", "power_kw", "powerkw", "nennleistung ladeeinrichtung [kw]" -> power = i;
+                case "type", "charger_type", "art der ladeeinrichtung" -> type = i;
+                case "plugs", "plug_count", "anzahl ladepunkte" -> plugs = i;
+                default -> { }
+            }
+        }
+        return lat >= 0 && lon >= 0 ? new Columns(delimiter, lat, lon, power, type, plugs) : null;
+    }
+
+    private static char detectDelimiter(String header) {
+        int semicolons = 0, commas = 0, tabs = 0;
+        for (int i = 0; i < header.length(); i++) {
+            switch (header.charAt(i)) {
+                case ';' -> semicolons++;
+                case ',' -> commas++;
+                case '\t' -> tabs++;
+                default -> { }
+            }
+        }
+        if (semicolons >= commas && semicolons >= tabs) return semicolons > 0 ? ';' : ',';
+        return tabs > commas ? '\t' : ',';
+    }
+
+    /** Divide la riga sul separatore, rispettando i campi tra virgolette ("" = virgoletta) */
+    private static void split(String line, char delimiter, List<String> out) {
+        out.clear();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == delimiter) {
+                out.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        out.add(field.toString());
+    }
+
+    private static String field(List<String> fields, int index) {
+        return index >= 0 && index < fields.size() ? fields.get(index).trim() : "";
+    }
+
+    private static double parseNumber(String value, char delimiter) {
+        if (value.isEmpty()) throw new IllegalArgumentException("valore numerico mancante");
+        // Con separatore diverso dalla virgola la virgola è il separatore decimale
+        String normalized = delimiter != ',' ? value.replace(',', '.') : value;
+        try {
+            return Double.parseDouble(normalized);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("valore numerico non valido: " + value);
+        }
+    }
+
+    /**
+     * Tipo di colonnina (AC / CCS) dal campo del registro, dedotto dalla potenza se assente
+     * o non riconosciuto.
+     */
+    static String chargerType(String value, double powerKw) {
+        String v = value.toUpperCase(Locale.ROOT);
+        if (v.contains("CCS") || v.contains("DC") || v.contains("SCHNELL")) return "CCS";
+        if (v.equals("AC") || v.contains("TYP 2") || v.contains("TYPE 2") || v.contains("NORMAL")) return "AC";
+        return powerKw >= FAST_CHARGE_KW ? "CCS" : "AC";
+    }
+}
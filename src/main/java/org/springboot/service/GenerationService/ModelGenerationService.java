@@ -50,13 +50,15 @@ public class ModelGenerationService {
      * @param numberOfVehicles Numero di veicoli da generare
      * @param socMedio State of Charge medio iniziale
      * @param socStdDev Deviazione standard del SOC
+     * @param seed Seed del campionamento (null = casuale)
      * @return Lista di EvModel generati
      */
     public List<EvModel> generateEvModels(
         Resource csvResource,
         Integer numberOfVehicles,
         Double socMedio,
-        Double socStdDev
+        Double socStdDev,
+        Long seed
     ) {
         log.info("[ModelGenerationService] Generating EV models using strategy: {}", 
             evGenerationStrategy.getStrategyName());
@@ -65,7 +67,8 @@ public class ModelGenerationService {
             csvResource,
             numberOfVehicles,
             socMedio,
-            socStdDev
+            socStdDev,
+            seed
         );
 
         log.info("[ModelGenerationService] Generated {} EV models", models.size());
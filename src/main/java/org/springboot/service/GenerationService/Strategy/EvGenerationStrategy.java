@@ -22,13 +22,15 @@ public interface EvGenerationStrategy {
      * @param numberOfVehicles Numero di veicoli da generare
      * @param socMedio State of Charge medio iniziale
      * @param socStdDev Deviazione standard del SOC
+     * @param seed Seed del campionamento (null = casuale)
      * @return Lista di EvModel generati
      */
     List<EvModel> generateEvModels(
         Resource source,
         Integer numberOfVehicles,
         Double socMedio,
-        Double socStdDev
+        Double socStdDev,
+        Long seed
     );
 
     /**
@@ -2,6 +2,7 @@ package org.springboot.service.generationService.Strategy.Impl;
 
 import org.matsim.CustomEvModule.EVfleet.EvModel;
 import org.matsim.CustomEvModule.EVfleet.strategy.fleet.EvFleetStrategy;
+import org.matsim.CustomEvModule.Utils.SeedTree;
 import org.springboot.service.generationService.Strategy.EvGenerationStrategy;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
@@ -27,7 +28,8 @@ public class CsvEvGenerationStrategy implements EvGenerationStrategy {
         Resource source,
         Integer numberOfVehicles,
         Double socMedio,
-        Double socStdDev
+        Double socStdDev,
+        Long seed
     ) {
         if (source == null) {
             throw new IllegalArgumentException("CSV resource cannot be null");
@@ -37,7 +39,8 @@ public class CsvEvGenerationStrategy implements EvGenerationStrategy {
             source,
             numberOfVehicles,
             socMedio,
-            socStdDev
+            socStdDev,
+            SeedTree.resolve(seed, "CsvEvGenerationStrategy")
         );
     }
 
@@ -1,6 +1,9 @@
 package org.springboot.service;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.function.Function;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.ClassPathResource;
@@ -8,10 +11,16 @@ import org.springframework.stereotype.Service;
 import org.springboot.DTO.in.SimulationSettingsDTO;
 import org.springboot.DTO.out.SimulationDTO.EvFleetDto;
 import org.springboot.DTO.out.SimulationDTO.HubDTO;
+import org.springboot.DTO.out.SimulationDTO.HubImportReportDTO;
 import org.springboot.DTO.out.SimulationDTO.HubListDTO;
+import org.springboot.DTO.out.SimulationDTO.PowerCurveDTO;
+import org.springboot.DTO.out.SimulationDTO.PowerStatsDTO;
 import org.springboot.DTO.out.SimulationDTO.mapper.HubSpecMapper;
+import org.springboot.DTO.out.SimulationDTO.mapper.PowerSeriesMapper;
 import org.springboot.service.generationService.ModelGenerationService;
 import org.springboot.service.generationService.DTO.HubSpecDto;
+import org.springboot.service.generationService.Importer.HubImportService;
+import org.springboot.service.generationService.Importer.HubRegisterImporter;
 import org.springboot.service.result.ChargerStateUpdateResult;
 import org.springboot.service.result.GenerationResult;
 import org.springboot.service.result.SimulationStartResult;
@@ -19,6 +28,7 @@ import org.springboot.service.result.SimulationStopResult;
 import org.springboot.service.simulationState.SimulationState;
 import org.springboot.service.simulationState.SimulationStateListener;
 import org.matsim.CustomEvModule.EVfleet.EvModel;
+import org.matsim.CustomEvModule.Hub.PowerRingBuffer;
 import org.matsim.ServerEvSetup.ConfigRun.ConfigRun;
 import org.matsim.ServerEvSetup.SimulationInterface.SimulationBridgeInterface;
 import org.slf4j.Logger;
@@ -42,9 +52,16 @@ public class MatsimService {
     @Autowired
     private SimulationPublisherService simulationPublisherService;
 
+    @Autowired
+    private HubImportService hubImportService;
+
     // ======= Generation state (server-side models) =======
     private volatile List<EvModel> generatedEvModels = null;
     private volatile List<HubSpecDto> generatedHubSpecs = null;
+    private volatile HubRegisterImporter.ImportReport lastHubImport = null;
+
+    // Righe scartate riportate nella risposta dell'import (il totale è sempre riportato)
+    private static final int MAX_REPORTED_REJECTED = 1000;
 
     // =================================================
     // ======= API Controllo simulazione    ============
@@ -57,10 +74,13 @@ public class MatsimService {
             return SimulationStartResult.ALREADY_RUNNING;
         } 
 
-        if (generatedEvModels == null && generatedHubSpecs == null) {
+        // Con evShare gli EV sono convertiti dalla popolazione: la flotta generata non serve
+        boolean fleetRequired = settings.getEvShare() == null;
+
+        if (fleetRequired && generatedEvModels == null && generatedHubSpecs == null) {
             log.error("[MatsimService] Flotta e hub non generati");
             return SimulationStartResult.FLEET_AND_HUBS_NOT_GENERATED;
-        } else if (generatedEvModels == null) {
+        } else if (fleetRequired && generatedEvModels == null) {
             log.error("[MatsimService] Flotta non generata");
             return SimulationStartResult.FLEET_NOT_GENERATED;
         } else if (generatedHubSpecs == null) {
@@ -86,7 +106,7 @@ public class MatsimService {
                 }
             });
 
-            runnerService.runAsync(generatedEvModels, generatedHubSpecs, config);
+            runnerService.runAsync(fleetRequired ? generatedEvModels : List.of(), generatedHubSpecs, config);
             log.info("[MatsimService] Simulazione avviata con successo");
             return SimulationStartResult.SUCCESS;
         } catch (Exception e) {
@@ -156,6 +176,55 @@ public class MatsimService {
 
     }
 
+    // ===============================
+    // ======= Power series API ======
+    // ===============================
+    /**
+     * Curva di carico di un hub dalla memoria della simulazione in corso.
+     * @return null se simulazione non in esecuzione o hub sconosciuto
+     */
+    public PowerCurveDTO getHubPowerCurve(String hubId, Double fromTime, Double toTime) {
+        return queryPowerSeries(bridge -> bridge.getHubPowerSeries(hubId),
+            series -> PowerSeriesMapper.toCurveDTO(hubId, series.curve(fromTime, toTime)));
+    }
+
+    /**
+     * Picco, media e percentili della potenza di un hub.
+     * @return null se simulazione non in esecuzione o hub sconosciuto
+     */
+    public PowerStatsDTO getHubPowerStats(String hubId, Double fromTime, Double toTime, double[] percentiles) {
+        return queryPowerSeries(bridge -> bridge.getHubPowerSeries(hubId),
+            series -> PowerSeriesMapper.toStatsDTO(hubId, percentiles, series.stats(fromTime, toTime, percentiles)));
+    }
+
+    /**
+     * Curva di carico di una colonnina dalla memoria della simulazione in corso.
+     * @return null se simulazione non in esecuzione o colonnina sconosciuta
+     */
+    public PowerCurveDTO getChargerPowerCurve(String chargerId, Double fromTime, Double toTime) {
+        return queryPowerSeries(bridge -> bridge.getChargerPowerSeries(chargerId),
+            series -> PowerSeriesMapper.toCurveDTO(chargerId, series.curve(fromTime, toTime)));
+    }
+
+    /**
+     * Picco, media e percentili della potenza di una colonnina.
+     * @return null se simulazione non in esecuzione o colonnina sconosciuta
+     */
+    public PowerStatsDTO getChargerPowerStats(String chargerId, Double fromTime, Double toTime, double[] percentiles) {
+        return queryPowerSeries(bridge -> bridge.getChargerPowerSeries(chargerId),
+            series -> PowerSeriesMapper.toStatsDTO(chargerId, percentiles, series.stats(fromTime, toTime, percentiles)));
+    }
+
+    private <T> T queryPowerSeries(
+        Function<SimulationBridgeInterface, PowerRingBuffer> lookup,
+        Function<PowerRingBuffer, T> query
+    ) {
+        return runnerService.mapCurrentSimulationBridge(bridge -> {
+            PowerRingBuffer series = lookup.apply(bridge);
+            return series != null ? query.apply(series) : null;
+        });
+    }
+
     // ===============================
     // ======= Generation API ========
     // ===============================
@@ -167,7 +236,8 @@ public class MatsimService {
         String csvResourceEv, 
         Integer numeroVeicoli, 
         Double socMedio, 
-        Double socStdDev
+        Double socStdDev,
+        Long seed
     ) {
         try {
             log.info("[GenerationAPI] Generating fleet from {}", csvResourceEv);
@@ -175,7 +245,8 @@ public class MatsimService {
                 new ClassPathResource(csvResourceEv),
                 numeroVeicoli,
                 socMedio,
-                socStdDev
+                socStdDev,
+                seed
             );
             log.info("[GenerationAPI] Generated {} EV models", generatedEvModels.size());
             return GenerationResult.SUCCESS;
@@ -203,6 +274,56 @@ public class MatsimService {
         }
     }
 
+    /**
+     * Importa gli hub da un registro CSV di stazioni lat/lon, agganciate ai link auto della rete.
+     * In caso di successo gli hub importati sostituiscono quelli generati.
+     */
+    public GenerationResult importHubs(String csvPath, String configPath, double maxSnapDistanceM) {
+        this.lastHubImport = null;
+        if (!Files.isRegularFile(Path.of(csvPath))) {
+            log.error("[GenerationAPI] Registro hub non trovato: {}", csvPath);
+            return GenerationResult.FILE_NOT_FOUND;
+        }
+        try {
+            log.info("[GenerationAPI] Importing hubs from {}", csvPath);
+            HubRegisterImporter.ImportReport report = hubImportService.importRegister(csvPath, configPath, maxSnapDistanceM);
+            this.lastHubImport = report;
+            if (report.hubs().isEmpty()) {
+                log.warn("[GenerationAPI] Nessuna stazione agganciata ({} righe scartate)", report.rejected().size());
+                return GenerationResult.INVALID_REQUEST;
+            }
+            this.generatedHubSpecs = report.hubs();
+            log.info("[GenerationAPI] Imported {} hubs ({} rows rejected)", report.hubs().size(), report.rejected().size());
+            return GenerationResult.SUCCESS;
+        } catch (IllegalArgumentException e) {
+            log.error("[GenerationAPI] Registro hub non valido: {}", e.getMessage());
+            return GenerationResult.INVALID_REQUEST;
+        } catch (Exception e) {
+            log.error("[GenerationAPI] Errore nell'import degli hub", e);
+            return GenerationResult.ERROR;
+        }
+    }
+
+    /**
+     * Esito dell'ultimo import degli hub, con le prime MAX_REPORTED_REJECTED righe scartate.
+     */
+    public HubImportReportDTO getLastHubImport() {
+        HubRegisterImporter.ImportReport report = lastHubImport;
+        if (report == null) return null;
+        List<HubImportReportDTO.RejectedRowDTO> rejected = report.rejected().stream()
+            .limit(MAX_REPORTED_REJECTED)
+            .map(r -> new HubImportReportDTO.RejectedRowDTO(r.line(), r.reason()))
+            .toList();
+        return new HubImportReportDTO(
+            report.rowsRead(),
+            report.stationsImported(),
+            report.hubs().size(),
+            report.rejected().size(),
+            rejected,
+            report.elapsedMs()
+        );
+    }
+
     /**
      * Recupera i modelli EV generati dal server.
      */
@@ -243,6 +364,7 @@ public class MatsimService {
                 .configPath(settings.getConfigPath())
                 .vehicleStrategy(settings.getVehicleStrategy())
                 .planStrategy(settings.getPlanStrategy())
+                .planCsvPath(settings.getPlanCsvPath())
                 .sampleSizeStatic(settings.getSampleSizeStatic())
                 .stepSize(settings.getStepSize())
                 .numeroVeicoli(settings.getNumeroVeicoli())
@@ -250,8 +372,25 @@ public class MatsimService {
                 .socStdDev(settings.getSocStdDev())
                 .targetSocMean(settings.getTargetSocMean())
                 .targetSocStdDev(settings.getTargetSocStdDev())
+                .fleetSeed(settings.getFleetSeed())
+                .evShare(settings.getEvShare())
+                .evShareStratifyBy(settings.getEvShareStratifyBy())
+                .evShareHubRadiusM(settings.getEvShareHubRadiusM())
                 .debugLink(settings.getDebugLink())
                 .realTime(settings.getRealTime())
+                .elevationRasterPath(settings.getElevationRasterPath())
+                .consumptionModel(settings.getConsumptionModel())
+                .gridSpeedBins(settings.getGridSpeedBins())
+                .gridCongestionBins(settings.getGridCongestionBins())
+                .gridSlopeBins(settings.getGridSlopeBins())
+                .energyCache(Boolean.TRUE.equals(settings.getEnergyCache()))
+                .energyCacheSize(settings.getEnergyCacheSize())
+                .energyCacheMaxError(settings.getEnergyCacheMaxError())
+                .chargerSelection(settings.getChargerSelection())
+                .selectionRadiusM(settings.getSelectionRadiusM())
+                .walkPenaltyKwPerKm(settings.getWalkPenaltyKwPerKm())
+                .powerSeriesResolutionS(settings.getPowerSeriesResolutionS())
+                .powerSeriesHorizonH(settings.getPowerSeriesHorizonH())
                 .publisherDirty(settings.isPublisherDirty())
                 .publisherRateMs(settings.getPublisherRateMs())
                 .build();
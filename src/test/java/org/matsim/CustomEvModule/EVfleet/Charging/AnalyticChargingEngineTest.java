@@ -0,0 +1,192 @@
+package org.matsim.CustomEvModule.EVfleet.Charging;
+
+import org.junit.jupiter.api.Test;
+import org.matsim.CustomEvModule.EVfleet.EvSpec;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.contrib.ev.charging.ChargingEndEvent;
+import org.matsim.contrib.ev.charging.ChargingStartEvent;
+import org.matsim.contrib.ev.fleet.ElectricFleetUtils;
+import org.matsim.contrib.ev.fleet.ElectricVehicle;
+import org.matsim.contrib.ev.fleet.ElectricVehicleSpecificationDefaultImpl;
+import org.matsim.contrib.ev.infrastructure.Charger;
+import org.matsim.contrib.ev.infrastructure.ChargerSpecification;
+import org.matsim.contrib.ev.infrastructure.ImmutableChargerSpecification;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.handler.BasicEventHandler;
+import org.matsim.core.mobsim.framework.events.MobsimAfterSimStepEvent;
+import org.matsim.vehicles.Vehicle;
+import org.matsim.vehicles.VehicleType;
+import org.matsim.vehicles.VehicleUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class AnalyticChargingEngineTest {
+
+	private static final double KWH = 3.6e6;
+
+	/**
+	 * Veicolo da 10 kWh che carica a 10 kW costanti, entro la potenza del plug
+	 * (ChargingPower non a curva).
+	 */
+	private static ElectricVehicle vehicle(String id, double soc) {
+		VehicleType type = VehicleUtils.createVehicleType(Id.create("engine_type", VehicleType.class));
+		VehicleUtils.setHbefaTechnology(type.getEngineInformation(), ElectricFleetUtils.EV_ENGINE_HBEFA_TECHNOLOGY);
+		VehicleUtils.setEnergyCapacity(type.getEngineInformation(), 10.0);
+		type.getEngineInformation().getAttributes().putAttribute(ElectricFleetUtils.CHARGER_TYPES, List.of("default"));
+		Vehicle vehicle = VehicleUtils.createVehicle(Id.createVehicleId(id), type);
+		vehicle.getAttributes().putAttribute(ElectricFleetUtils.INITIAL_SOC, soc);
+		return ElectricFleetUtils.create(new ElectricVehicleSpecificationDefaultImpl(vehicle),
+			ev -> (link, travelTime, linkEnterTime) -> 0.0,
+			ev -> (beginTime, duration, linkId) -> 0.0,
+			ev -> charger -> Math.min(10_000.0, charger.getPlugPower()));
+	}
+
+	private static ChargerSpecification charger() {
+		return ImmutableChargerSpecification.newBuilder()
+			.id(Id.create("engine_charger", Charger.class))
+			.linkId(Id.createLinkId("engine_link"))
+			.chargerType("DC")
+			.plugPower(50_000.0)
+			.plugCount(1)
+			.build();
+	}
+
+	private static EventsManager events(List<Event> sink) {
+		EventsManager events = EventsUtils.createEventsManager();
+		events.addHandler((BasicEventHandler) sink::add);
+		events.initProcessing();
+		return events;
+	}
+
+	@Test
+	void completedSessionEmitsEndEventAndReleasesVehicle() {
+		List<Event> emitted = new ArrayList<>();
+		AnalyticChargingEngine engine = new AnalyticChargingEngine();
+		engine.reset(events(emitted));
+		ElectricVehicle ev = vehicle("engine_full", 0.2);
+
+		// Dal 20% all'80% di 10 kWh a 10 kW: 6 kWh in 2160 s
+		engine.plug(ev, charger(), 0.8, 100.0);
+		assertThat(engine.getPluggedCount()).isEqualTo(1);
+
+		engine.notifyMobsimAfterSimStep(new MobsimAfterSimStepEvent<>(null, 2000.0));
+		assertThat(engine.getPluggedCount()).isEqualTo(1);
+		assertThat(emitted).hasSize(1).first().isInstanceOf(ChargingStartEvent.class);
+
+		engine.notifyMobsimAfterSimStep(new MobsimAfterSimStepEvent<>(null, 2260.0));
+		assertThat(engine.getPluggedCount()).isZero();
+		assertThat(emitted).hasSize(2);
+		ChargingEndEvent end = (ChargingEndEvent) emitted.get(1);
+		assertThat(end.getVehicleId()).isEqualTo(ev.getId());
+		assertThat(end.getChargerId()).isEqualTo(charger().getId());
+		assertThat(ev.getBattery().getSoc()).isCloseTo(0.8, within(1e-9));
+
+		// Sessione già rilasciata: né un nuovo evento né un unplug
+		engine.notifyMobsimAfterSimStep(new MobsimAfterSimStepEvent<>(null, 5000.0));
+		assertThat(engine.unplug(ev, 5000.0)).isFalse();
+		assertThat(emitted).hasSize(2);
+	}
+
+	@Test
+	void unplugBeforeEndWritesPartialCharge() {
+		List<Event> emitted = new ArrayList<>();
+		AnalyticChargingEngine engine = new AnalyticChargingEngine();
+		engine.reset(events(emitted));
+		ElectricVehicle ev = vehicle("engine_partial", 0.2);
+		ElectricVehicle other = vehicle("engine_other", 0.5);
+
+		engine.plug(ev, charger(), 1.0, 0.0);
+		engine.plug(other, charger(), 1.0, 0.0);
+		// 900 s a 10 kW: 2.5 kWh
+		assertThat(engine.unplug(ev, 900.0)).isTrue();
+
+		assertThat(ev.getBattery().getCharge()).isCloseTo(4.5 * KWH, within(1e-3));
+		ChargingEndEvent end = (ChargingEndEvent) emitted.get(emitted.size() - 1);
+		assertThat(end.getVehicleId()).isEqualTo(ev.getId());
+		assertThat(end.getTime()).isEqualTo(900.0);
+
+		// La sessione rimasta continua a essere materializzata
+		assertThat(engine.getPluggedCount()).isEqualTo(1);
+		engine.materialize(360.0);
+		assertThat(other.getBattery().getCharge()).isCloseTo(6.0 * KWH, within(1e-3));
+		assertThat(ev.getBattery().getCharge()).isCloseTo(4.5 * KWH, within(1e-3));
+	}
+
+	@Test
+	void constantPowerSessionEndsInClosedForm() {
+		// 10 kWh, da vuota al 50% a 10 kW: 30 minuti
+		AnalyticChargingEngine.Session session = new AnalyticChargingEngine.Session(
+			null, null, null, false, 22_000.0, 10_000.0, 10 * KWH, 0.0, 0.5, 100.0);
+
+		assertThat(session.endTime).isCloseTo(1900.0, within(1e-6));
+
+		session.advance(1000.0);
+		assertThat(session.charge()).isCloseTo(2.5 * KWH, within(1e-3));
+		// Oltre la fine la carica resta al target
+		session.advance(5000.0);
+		assertThat(session.charge()).isCloseTo(5 * KWH, within(1e-3));
+	}
+
+	@Test
+	void curveSessionMatchesFineStepping() {
+		ChargingCurve curve = ChargingCurve.of(new EvSpec("Test", "Curve", 77.0, 0.17, "Li-ion", 0, 0, 180, 400, 7.0,
+			150.0, "CCS", 0, 400, 5, "RWD", "C", 4500, 1850, 1500, "SUV"));
+		double capacity = 77 * KWH;
+		double plugPower = 100_000.0;
+
+		AnalyticChargingEngine.Session session = new AnalyticChargingEngine.Session(
+			null, null, curve, false, plugPower, 0.0, capacity, 0.1 * capacity, 0.9, 0.0);
+
+		// Riferimento: passi da 1 s come la ChargingLogic MATSim
+		double charge = 0.1 * capacity;
+		double time = 0.0;
+		while (charge < 0.9 * capacity) {
+			charge += Math.min(plugPower, curve.dcPower(charge / capacity));
+			time += 1.0;
+		}
+		assertThat(session.endTime).isCloseTo(time, within(2.0));
+
+		// Avanzamenti successivi coerenti con un unico avanzamento
+		AnalyticChargingEngine.Session direct = new AnalyticChargingEngine.Session(
+			null, null, curve, false, plugPower, 0.0, capacity, 0.1 * capacity, 0.9, 0.0);
+		session.advance(600.0);
+		session.advance(1200.0);
+		direct.advance(1200.0);
+		assertThat(session.charge()).isCloseTo(direct.charge(), within(1e-3));
+	}
+
+	@Test
+	void zeroPowerNeverCompletes() {
+		AnalyticChargingEngine.Session session = new AnalyticChargingEngine.Session(
+			null, null, null, false, 0.0, 0.0, 10 * KWH, 0.0, 1.0, 0.0);
+
+		assertThat(session.endTime).isInfinite();
+	}
+
+	@Test
+	void neverEndingSessionIsMaterializedButNotQueued() {
+		List<Event> emitted = new ArrayList<>();
+		AnalyticChargingEngine engine = new AnalyticChargingEngine();
+		engine.reset(events(emitted));
+		ElectricVehicle ev = vehicle("engine_zero", 0.2);
+		ChargerSpecification dead = ImmutableChargerSpecification.newBuilder()
+			.id(Id.create("engine_dead", Charger.class))
+			.linkId(Id.createLinkId("engine_link"))
+			.chargerType("DC")
+			.plugPower(0.0)
+			.plugCount(1)
+			.build();
+
+		engine.plug(ev, dead, 1.0, 0.0);
+		engine.notifyMobsimAfterSimStep(new MobsimAfterSimStepEvent<>(null, 1e9));
+		assertThat(engine.getPluggedCount()).isEqualTo(1);
+		assertThat(engine.unplug(ev, 1e9)).isTrue();
+		assertThat(ev.getBattery().getSoc()).isCloseTo(0.2, within(1e-9));
+	}
+}
@@ -0,0 +1,53 @@
+package org.matsim.CustomEvModule.EVfleet.Charging;
+
+import org.junit.jupiter.api.Test;
+import org.matsim.CustomEvModule.EVfleet.EvSpec;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ChargingCurveTest {
+
+	private static EvSpec spec(double capacityKwh, double dcKw) {
+		return new EvSpec("Test", "Curve", capacityKwh, 0.17, "Li-ion", 0, 0, 180, 400, 7.0,
+			dcKw, "CCS", 0, 400, 5, "RWD", "C", 4500, 1850, 1500, "SUV");
+	}
+
+	@Test
+	void dcCurveFollowsModelPeakAndTapers() {
+		ChargingCurve curve = ChargingCurve.of(spec(77.0, 150.0));
+
+		// Plateau al picco della scheda tecnica
+		assertThat(curve.dcPower(0.30)).isCloseTo(150_000.0, within(1.0));
+		// Calo tra 50% e 80%, coda lenta oltre
+		assertThat(curve.dcPower(0.65)).isLessThan(curve.dcPower(0.30)).isGreaterThan(curve.dcPower(0.79));
+		assertThat(curve.dcPower(0.95)).isLessThan(150_000.0 * 0.45);
+		// SoC fuori dominio saturato ai bordi
+		assertThat(curve.dcPower(1.2)).isEqualTo(curve.dcPower(0.999));
+		assertThat(curve.dcPower(-0.1)).isEqualTo(curve.dcPower(0.0));
+	}
+
+	@Test
+	void acCurveIsLimitedByOnBoardCharger() {
+		ChargingCurve curve = ChargingCurve.of(spec(77.0, 150.0));
+
+		assertThat(curve.acPower(0.50)).isCloseTo(ChargingCurve.DEFAULT_AC_POWER_KW * 1000.0, within(1.0));
+		assertThat(curve.acPower(0.97)).isLessThan(curve.acPower(0.50));
+	}
+
+	@Test
+	void missingDcPowerFallsBackToOneC() {
+		ChargingCurve curve = ChargingCurve.of(spec(40.0, 0.0));
+
+		assertThat(curve.dcPower(0.30)).isCloseTo(40_000.0, within(1.0));
+	}
+
+	@Test
+	void piecewiseInterpolatesBetweenPoints() {
+		double[] soc = { 0.0, 0.5, 1.0 };
+		double[] fraction = { 1.0, 1.0, 0.0 };
+
+		assertThat(ChargingCurve.piecewise(0.25, soc, fraction)).isCloseTo(1.0, within(1e-12));
+		assertThat(ChargingCurve.piecewise(0.75, soc, fraction)).isCloseTo(0.5, within(1e-12));
+	}
+}
@@ -0,0 +1,121 @@
+package org.matsim.CustomEvModule.EVfleet.EnergyConsumption;
+
+import org.junit.jupiter.api.Test;
+import org.matsim.CustomEvModule.EVfleet.EvModel;
+
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class EnergyLookupGridTest {
+
+	// Discontinuità del modello in velocità: efficienza (8 e 20 m/s), aerodinamica urbana (8.3 m/s)
+	private static final double[] SPEED_STEPS = {8.0, 8.3, 20.0};
+
+	private static final EnergyLookupGrid.Resolution RESOLUTION = EnergyLookupGrid.Resolution.defaults();
+	private static final double DV =
+		(EnergyLookupGrid.MAX_SPEED - EnergyLookupGrid.MIN_SPEED) / (RESOLUTION.speedBins() - 1);
+
+	/** Estremi [lo, hi] della cella di velocità che contiene v */
+	private static double[] speedCell(double v) {
+		int iv = Math.min((int) ((v - EnergyLookupGrid.MIN_SPEED) / DV), RESOLUTION.speedBins() - 2);
+		double lo = EnergyLookupGrid.MIN_SPEED + iv * DV;
+		return new double[] { lo, lo + DV };
+	}
+
+	private static boolean straddlesStep(double v) {
+		double[] cell = speedCell(v);
+		for (double step : SPEED_STEPS) {
+			if (step >= cell[0] && step <= cell[1]) return true;
+		}
+		return false;
+	}
+
+	@Test
+	void gridMatchesAnalyticModelAtNodes() {
+		for (EvModel evData : TractiveDriveEnergyConsumptionTest.models()) {
+			VehiclePhysics physics = VehiclePhysics.of(evData);
+			EnergyLookupGrid grid = EnergyLookupGrid.build(physics, RESOLUTION);
+
+			// Nodo della griglia: nessun errore di interpolazione
+			double v = EnergyLookupGrid.MIN_SPEED + DV * 40;
+			double c = 1.0;            // nodo 10 su 13 bin in [0, 1.2]
+			double s = 0.0;            // nodo centrale
+			assertThat(grid.energyPerMeter(v, c, s))
+				.isCloseTo(EnergyLookupGrid.analyticPerMeter(physics, v, c, s), within(1e-6));
+		}
+	}
+
+	@Test
+	void gridIsTightAwayFromEfficiencySteps() {
+		SplittableRandom rng = new SplittableRandom(7L);
+		for (EvModel evData : TractiveDriveEnergyConsumptionTest.models()) {
+			VehiclePhysics physics = VehiclePhysics.of(evData);
+			EnergyLookupGrid grid = EnergyLookupGrid.build(physics, RESOLUTION);
+
+			int checked = 0;
+			while (checked < 5_000) {
+				double v = EnergyLookupGrid.MIN_SPEED + rng.nextDouble() * (EnergyLookupGrid.MAX_SPEED - EnergyLookupGrid.MIN_SPEED);
+				if (straddlesStep(v)) continue;
+				double c = rng.nextDouble() * EnergyLookupGrid.MAX_CONGESTION;
+				// Salita o piano: nessun passaggio trazione/rigenerazione dentro la cella
+				double s = rng.nextDouble() * EnergyLookupGrid.MAX_SIN_SLOPE;
+
+				double exact = EnergyLookupGrid.analyticPerMeter(physics, v, c, s);
+				double err = Math.abs(grid.energyPerMeter(v, c, s) - exact);
+				assertThat(err / Math.max(Math.abs(exact), 1.0))
+					.as("%s v=%s c=%s s=%s", evData.getVehicleId(), v, c, s)
+					.isLessThan(1e-3);
+				checked++;
+			}
+		}
+	}
+
+	@Test
+	void errorAtEfficiencyStepsIsBoundedByTheJump() {
+		for (EvModel evData : TractiveDriveEnergyConsumptionTest.models()) {
+			VehiclePhysics physics = VehiclePhysics.of(evData);
+			EnergyLookupGrid grid = EnergyLookupGrid.build(physics, RESOLUTION);
+
+			for (double step : SPEED_STEPS) {
+				for (double c : new double[] { 0.5, 1.0, 1.2 }) {
+					for (double s : new double[] { 0.0, 0.05, 0.2 }) {
+						// Il modello salta davvero al gradino
+						double jump = Math.abs(EnergyLookupGrid.analyticPerMeter(physics, Math.nextUp(step), c, s)
+							- EnergyLookupGrid.analyticPerMeter(physics, Math.nextDown(step), c, s));
+						assertThat(jump).isPositive();
+
+						// Nella cella del gradino l'interpolazione sbaglia al più la somma dei salti contenuti
+						double[] cell = speedCell(step);
+						double bound = 0.0;
+						for (double other : SPEED_STEPS) {
+							if (other >= cell[0] && other <= cell[1]) {
+								bound += Math.abs(EnergyLookupGrid.analyticPerMeter(physics, Math.nextUp(other), c, s)
+									- EnergyLookupGrid.analyticPerMeter(physics, Math.nextDown(other), c, s));
+							}
+						}
+						for (int k = 1; k < 20; k++) {
+							double v = cell[0] + (cell[1] - cell[0]) * k / 20.0;
+							double err = Math.abs(grid.energyPerMeter(v, c, s) - EnergyLookupGrid.analyticPerMeter(physics, v, c, s));
+							assertThat(err)
+								.as("%s step=%s v=%s c=%s s=%s", evData.getVehicleId(), step, v, c, s)
+								.isLessThanOrEqualTo(bound * 1.001 + 0.5);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	void inputsOutsideDomainAreClamped() {
+		VehiclePhysics physics = VehiclePhysics.of(TractiveDriveEnergyConsumptionTest.models().get(0));
+		EnergyLookupGrid grid = EnergyLookupGrid.build(physics, new EnergyLookupGrid.Resolution(8, 4, 5));
+
+		assertThat(grid.energyPerMeter(500.0, 10.0, 0.9))
+			.isEqualTo(grid.energyPerMeter(EnergyLookupGrid.MAX_SPEED, EnergyLookupGrid.MAX_CONGESTION, EnergyLookupGrid.MAX_SIN_SLOPE));
+		assertThat(grid.energyPerMeter(-1.0, -1.0, -0.9))
+			.isEqualTo(grid.energyPerMeter(EnergyLookupGrid.MIN_SPEED, EnergyLookupGrid.MIN_CONGESTION, EnergyLookupGrid.MIN_SIN_SLOPE));
+	}
+}
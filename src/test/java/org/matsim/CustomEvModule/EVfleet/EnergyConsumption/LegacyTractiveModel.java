@@ -0,0 +1,111 @@
+package org.matsim.CustomEvModule.EVfleet.EnergyConsumption;
+
+import org.matsim.CustomEvModule.EVfleet.EvModel;
+import org.matsim.api.core.v01.network.Link;
+
+/**
+ * Copia del modello di trazione prima della precompilazione dei coefficienti.
+ * Usata come riferimento nei test e nel benchmark.
+ */
+final class LegacyTractiveModel {
+
+	private static final double GRAVITY = 9.81;
+	private static final double AIR_DENSITY = 1.225;
+	private static final double REGEN_EFFICIENCY = 0.75;
+	private static final double MAX_REGEN_POWER_W = 50_000;
+
+	private LegacyTractiveModel() {
+	}
+
+	static double getSlopeAngleRadians(Link link) {
+		try {
+			Double slope = (Double) link.getAttributes().getAttribute("slope");
+			if (slope != null) {
+				if (Math.abs(slope) > 0.3) {
+					slope = slope / 100.0;
+				}
+				return Math.atan(slope);
+			}
+		} catch (Exception e) {
+			// fallback
+		}
+		return 0.0;
+	}
+
+	static double calculateMassEstimate(EvModel evData) {
+		final double BASE_MASS_KG = 1300.0;
+		final double BATTERY_KG_PER_KWH = 5.0;
+
+		double mass = BASE_MASS_KG +
+			evData.getNominalCapacityKwh() * BATTERY_KG_PER_KWH;
+
+		if (evData.getSegment().equalsIgnoreCase("SUV")) {
+			mass += 200.0;
+		} else if (evData.getSegment().equalsIgnoreCase("Hatchback")) {
+			mass -= 100.0;
+		}
+		return mass;
+	}
+
+	static double calculateCdaEstimate(EvModel evData) {
+		double cd;
+		String body = evData.getCarBodyType().toLowerCase();
+
+		if (body.contains("suv") || body.contains("van") || body.contains("wagon") || body.contains("estate")) cd = 0.35;
+		else if (body.contains("hatchback") || body.contains("crossover")) cd = 0.32;
+		else if (body.contains("sedan") || body.contains("coupe") || body.contains("cabriolet") || body.contains("liftback")) cd = 0.28;
+		else cd = 0.30;
+
+		double widthM = evData.getWidthMm() / 1000.0;
+		double heightM = evData.getHeightMm() / 1000.0;
+
+		return cd * (0.8 * widthM * heightM);
+	}
+
+	static double calcModel(Link link, double travelTime, EvModel evData) {
+		double massKg = calculateMassEstimate(evData);
+		double cr = 0.010;
+		double cda = calculateCdaEstimate(evData);
+
+		double length = link.getLength();
+		double avgSpeed = length / travelTime;
+		double effectiveSpeed = Math.max(avgSpeed, 8.0);
+
+		double slopeRad = getSlopeAngleRadians(link);
+		double sinA = Math.sin(slopeRad);
+		double cosA = Math.cos(slopeRad);
+
+		double fRolling = massKg * GRAVITY * cr * cosA;
+		double fAero = 0.5 * AIR_DENSITY * cda * effectiveSpeed * effectiveSpeed;
+		if (avgSpeed < 8.3) {
+			fAero *= 0.3;
+		}
+		double fSlope = massKg * GRAVITY * sinA;
+		double fTractive = fRolling + fAero + fSlope;
+
+		double efficiency;
+		if (avgSpeed < 8.0) {
+			efficiency = 0.75;
+		} else if (avgSpeed < 20.0) {
+			efficiency = 0.85;
+		} else {
+			efficiency = 0.80;
+		}
+
+		double workJoules = fTractive * length;
+		double freeFlowTime = length / link.getFreespeed();
+		double congestionFactor = travelTime / freeFlowTime;
+		double stopGoFactor = Math.min(1.2, congestionFactor);
+		workJoules *= stopGoFactor;
+
+		double totalEnergy;
+		if (workJoules >= 0) {
+			totalEnergy = workJoules / efficiency;
+		} else {
+			double regenEnergy = workJoules * REGEN_EFFICIENCY;
+			double maxRegenEnergy = MAX_REGEN_POWER_W * travelTime;
+			totalEnergy = Math.max(regenEnergy, -maxRegenEnergy);
+		}
+		return totalEnergy;
+	}
+}
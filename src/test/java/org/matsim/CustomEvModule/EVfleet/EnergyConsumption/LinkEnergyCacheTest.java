@@ -0,0 +1,61 @@
+package org.matsim.CustomEvModule.EVfleet.EnergyConsumption;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LinkEnergyCacheTest {
+
+	@Test
+	void repeatedTraversalsHitTheCache() {
+		LinkEnergyCache cache = new LinkEnergyCache(1000, 0.01);
+		assertThat(cache.capacity()).isEqualTo(1024);
+
+		long key = cache.key(3, 12345, 42.0);
+		assertThat(cache.get(key)).isNaN();
+		cache.put(key, 1.5e5);
+
+		// Tempo leggermente diverso, stesso bucket
+		assertThat(cache.key(3, 12345, 42.1)).isEqualTo(key);
+		assertThat(cache.get(cache.key(3, 12345, 42.1))).isEqualTo(1.5e5);
+		// Altro tipo di veicolo o altro link: chiave diversa
+		assertThat(cache.key(4, 12345, 42.0)).isNotEqualTo(key);
+		assertThat(cache.key(3, 12346, 42.0)).isNotEqualTo(key);
+
+		LinkEnergyCache.Stats stats = cache.stats();
+		assertThat(stats.hits()).isEqualTo(1);
+		assertThat(stats.misses()).isEqualTo(1);
+		assertThat(stats.hitRate()).isEqualTo(0.5);
+	}
+
+	@Test
+	void keysOutsideLayoutAreBypassed() {
+		LinkEnergyCache cache = new LinkEnergyCache(16, 0.01);
+
+		assertThat(cache.key(1 << LinkEnergyCache.TYPE_BITS, 0, 10.0)).isEqualTo(-1);
+		assertThat(cache.key(0, 1 << LinkEnergyCache.LINK_BITS, 10.0)).isEqualTo(-1);
+		assertThat(cache.key(0, 0, 0.0)).isEqualTo(-1);
+		assertThat(cache.key(0, 0, Double.NaN)).isEqualTo(-1);
+		assertThat(cache.stats().bypassed()).isEqualTo(4);
+	}
+
+	@Test
+	void quantizationStaysWithinErrorBudgetAwayFromEfficiencySteps() {
+		double maxError = 0.02;
+		LinkEnergyCache cache = new LinkEnergyCache(16, maxError);
+		VehiclePhysics physics = VehiclePhysics.of(TractiveDriveEnergyConsumptionTest.models().get(0));
+		double length = 500.0;
+		double freespeed = 13.9;
+
+		// Velocità tra 10 e 18 m/s: nessun salto di efficienza nel mezzo
+		for (double v = 10.0; v <= 18.0; v += 0.05) {
+			double travelTime = length / v;
+			double representative = cache.representativeTime(cache.key(0, 0, travelTime));
+			assertThat(Math.abs(representative / travelTime - 1.0)).isLessThanOrEqualTo(maxError / 2 + 1e-9);
+
+			double exact = TractiveDriveEnergyConsumption.calcTractiveEnergy(physics, length, travelTime, freespeed, 0.0, 1.0);
+			double quantized = TractiveDriveEnergyConsumption.calcTractiveEnergy(physics, length, representative, freespeed, 0.0, 1.0);
+			assertThat(Math.abs(quantized / exact - 1.0)).isLessThanOrEqualTo(maxError * 1.01);
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package org.matsim.CustomEvModule.EVfleet.EnergyConsumption;
+
+import org.matsim.CustomEvModule.EVfleet.EvModel;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.vehicles.Vehicle;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Costo per-link del modello di trazione: calcolo dei coefficienti ad ogni chiamata
+ * con lookup nella flotta (legacy) contro coefficienti precompilati per veicolo.
+ * <p>
+ * Esecuzione: {@code main} dal classpath di test.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TractiveConsumptionBenchmark {
+
+	private Link[] links;
+	private Id<Vehicle>[] vehicleIds;
+	private Map<Id<Vehicle>, EvModel> fleet;
+	private TractiveDriveEnergyConsumption[] precompiled;
+
+	@SuppressWarnings("unchecked")
+	@Setup
+	public void setup() {
+		List<Link> l = TractiveDriveEnergyConsumptionTest.links();
+		links = l.toArray(new Link[0]);
+
+		List<EvModel> models = TractiveDriveEnergyConsumptionTest.models();
+		vehicleIds = new Id[models.size()];
+		precompiled = new TractiveDriveEnergyConsumption[models.size()];
+		fleet = new HashMap<>();
+
+		for (int i = 0; i < models.size(); i++) {
+			EvModel evData = models.get(i);
+			evData.setState(EvModel.State.MOVING);
+			vehicleIds[i] = Id.createVehicleId(evData.getVehicleId() + "_car");
+			fleet.put(vehicleIds[i], evData);
+			precompiled[i] = new TractiveDriveEnergyConsumption(evData, VehiclePhysics.of(evData));
+		}
+	}
+
+	@Benchmark
+	public void legacyPerLink(Blackhole bh) {
+		for (int v = 0; v < vehicleIds.length; v++) {
+			for (Link link : links) {
+				EvModel evData = fleet.get(vehicleIds[v]);
+				bh.consume(LegacyTractiveModel.calcModel(link, 30.0, evData));
+			}
+		}
+	}
+
+	@Benchmark
+	public void precompiledPerLink(Blackhole bh) {
+		for (TractiveDriveEnergyConsumption model : precompiled) {
+			for (Link link : links) {
+				bh.consume(model.calcEnergyConsumption(link, 30.0, 0));
+			}
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder()
+			.include(TractiveConsumptionBenchmark.class.getSimpleName())
+			.build();
+		new Runner(opt).run();
+	}
+}
@@ -0,0 +1,165 @@
+package org.matsim.CustomEvModule.EVfleet.EnergyConsumption;
+
+import org.junit.jupiter.api.Test;
+import org.matsim.CustomEvModule.EVfleet.EvFleetManager;
+import org.matsim.CustomEvModule.EVfleet.EvModel;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.contrib.ev.fleet.ElectricFleetUtils;
+import org.matsim.contrib.ev.fleet.ElectricVehicle;
+import org.matsim.contrib.ev.fleet.ElectricVehicleSpecificationDefaultImpl;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.vehicles.Vehicle;
+import org.matsim.vehicles.VehicleType;
+import org.matsim.vehicles.VehicleUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TractiveDriveEnergyConsumptionTest {
+
+	static EvModel evModel(String id, double capacityKwh, String segment, int widthMm, int heightMm, String body) {
+		return new EvModel(
+			Id.createVehicleId(id), "brand", "model", capacityKwh, 0.16, "Lithium-ion", 100, 300, 180, 400, 7.0,
+			100, "CCS", 0, 400, 5, "AWD", segment, 4500, widthMm, heightMm, body
+		);
+	}
+
+	static List<EvModel> models() {
+		return List.of(
+			evModel("suv", 77.4, "SUV", 1890, 1640, "SUV"),
+			evModel("hatch", 37.8, "Hatchback", 1683, 1518, "Hatchback"),
+			evModel("sedan", 60.0, "D - Large", 1850, 1440, "Sedan"),
+			evModel("van", 75.0, "N - Passenger Van", 1920, 1900, "Small Passenger Van"),
+			evModel("other", 50.0, "C - Medium", 1800, 1500, "Pickup")
+		);
+	}
+
+	static List<Link> links() {
+		return links(NetworkUtils.createNetwork());
+	}
+
+	static List<Link> links(Network network) {
+		Node a = NetworkUtils.createAndAddNode(network, Id.createNodeId("a"), new Coord(0, 0));
+		Node b = NetworkUtils.createAndAddNode(network, Id.createNodeId("b"), new Coord(500, 0));
+
+		Object[] slopes = {null, 0.0, 0.04, -0.06, 5.0, -8.0, "invalid"};
+		List<Link> links = new ArrayList<>();
+		int i = 0;
+		for (Object slope : slopes) {
+			for (double length : new double[]{12.5, 150.0, 1234.5}) {
+				for (double freespeed : new double[]{8.33, 13.89, 27.78}) {
+					Link link = NetworkUtils.createAndAddLink(network, Id.createLinkId("l" + i++), a, b, length, freespeed, 1800, 1);
+					if (slope != null) {
+						link.getAttributes().putAttribute("slope", slope);
+					}
+					links.add(link);
+				}
+			}
+		}
+		return links;
+	}
+
+	@Test
+	void energyIsBitIdenticalToLegacyModel() {
+
+		double[] travelTimes = {0.5, 1.0, 3.7, 12.0, 45.0, 90.0, 300.0, 1200.0};
+		int compared = 0;
+
+		Network network = NetworkUtils.createNetwork();
+		List<Link> links = links(network);
+		LinkSlopeTable slopeTable = LinkSlopeTable.build(network, (String) null);
+
+		for (EvModel evData : models()) {
+			evData.setState(EvModel.State.MOVING);
+			TractiveDriveEnergyConsumption model = new TractiveDriveEnergyConsumption(evData, VehiclePhysics.of(evData), slopeTable);
+
+			for (Link link : links) {
+				for (double tt : travelTimes) {
+					double expected = LegacyTractiveModel.calcModel(link, tt, evData);
+					double actual = model.calcEnergyConsumption(link, tt, 0);
+
+					assertThat(Double.doubleToRawLongBits(actual))
+						.as("vehicle %s link %s tt %s", evData.getVehicleId(), link.getId(), tt)
+						.isEqualTo(Double.doubleToRawLongBits(expected));
+					compared++;
+				}
+			}
+		}
+
+		assertThat(compared).isGreaterThan(0);
+	}
+
+	@Test
+	void noConsumptionWhenNotMovingOrUnknown() {
+
+		EvModel evData = models().get(0);
+		Link link = links().get(4);
+
+		TractiveDriveEnergyConsumption model = new TractiveDriveEnergyConsumption(evData, VehiclePhysics.of(evData));
+		assertThat(model.calcEnergyConsumption(link, 10, 0)).isEqualTo(0.0);
+		assertThat(evData.getDistanceTraveledKm()).isEqualTo(0.0);
+
+		TractiveDriveEnergyConsumption unknown = new TractiveDriveEnergyConsumption((EvModel) null, null);
+		assertThat(unknown.calcEnergyConsumption(link, 10, 0)).isEqualTo(0.0);
+	}
+
+	@Test
+	void vehiclesOfSameTypeShareModelButKeepOwnState() {
+
+		EvModel first = evModel("first", 77.4, "SUV", 1890, 1640, "SUV");
+		EvModel second = evModel("second", 77.4, "SUV", 1890, 1640, "SUV");
+		first.setState(EvModel.State.MOVING);
+		second.setState(EvModel.State.MOVING);
+		Link link = links().get(4);
+
+		TractiveTypeModel type = new TractiveTypeModel(VehiclePhysics.of(first), LinkSlopeTable.empty());
+		TractiveDriveEnergyConsumption a = new TractiveDriveEnergyConsumption(type, first);
+		TractiveDriveEnergyConsumption b = new TractiveDriveEnergyConsumption(type, second);
+
+		assertThat(a.calcEnergyConsumption(link, 10, 0)).isEqualTo(b.calcEnergyConsumption(link, 10, 0));
+		a.calcEnergyConsumption(link, 10, 0);
+
+		assertThat(first.getDistanceTraveledKm()).isEqualTo(2 * second.getDistanceTraveledKm());
+	}
+
+	@Test
+	void factoryResolvesOneSharedTypePerSpec() {
+
+		EvFleetManager fleetManager = new EvFleetManager();
+		fleetManager.registerEvModels(List.of(
+			evModel("factory_first", 77.4, "SUV", 1890, 1640, "SUV"),
+			evModel("factory_second", 77.4, "SUV", 1890, 1640, "SUV")
+		));
+		EvConsumptionModelFactory factory = new EvConsumptionModelFactory(fleetManager, LinkSlopeTable.empty());
+
+		TractiveDriveEnergyConsumption a = (TractiveDriveEnergyConsumption) factory.create(electricVehicle("factory_first_car"));
+		TractiveDriveEnergyConsumption b = (TractiveDriveEnergyConsumption) factory.create(electricVehicle("factory_second_car"));
+
+		assertThat(a.type()).isNotNull().isSameAs(b.type());
+		assertThat(factory.getTypeCount()).isEqualTo(1);
+
+		// Veicolo fuori dalla flotta: nessun tipo, consumo nullo
+		TractiveDriveEnergyConsumption unknown = (TractiveDriveEnergyConsumption) factory.create(electricVehicle("factory_unknown_car"));
+		assertThat(unknown.type()).isNull();
+		assertThat(factory.getTypeCount()).isEqualTo(1);
+	}
+
+	private static ElectricVehicle electricVehicle(String id) {
+		VehicleType type = VehicleUtils.createVehicleType(Id.create("factory_type", VehicleType.class));
+		VehicleUtils.setHbefaTechnology(type.getEngineInformation(), ElectricFleetUtils.EV_ENGINE_HBEFA_TECHNOLOGY);
+		VehicleUtils.setEnergyCapacity(type.getEngineInformation(), 77.4);
+		type.getEngineInformation().getAttributes().putAttribute(ElectricFleetUtils.CHARGER_TYPES, List.of("CCS"));
+		Vehicle vehicle = VehicleUtils.createVehicle(Id.createVehicleId(id), type);
+		vehicle.getAttributes().putAttribute(ElectricFleetUtils.INITIAL_SOC, 0.5);
+		return ElectricFleetUtils.create(new ElectricVehicleSpecificationDefaultImpl(vehicle),
+			ev -> (link, travelTime, linkEnterTime) -> 0.0,
+			ev -> (beginTime, duration, linkId) -> 0.0,
+			ev -> charger -> charger.getPlugPower());
+	}
+}
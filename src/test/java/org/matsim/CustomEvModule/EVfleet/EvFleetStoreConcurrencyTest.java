@@ -0,0 +1,177 @@
+package org.matsim.CustomEvModule.EVfleet;
+
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Id;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Stress test del seqlock: writer concorrenti (anche sullo stesso slot) e reader
+ * su altri thread. Ogni scrittura mantiene un invariante tra i campi; un reader
+ * che vedesse un record misto tra valori vecchi e nuovi lo violerebbe.
+ */
+class EvFleetStoreConcurrencyTest {
+
+	private static final double K = 3.6e6;
+	private static final int SLOTS = 4;
+	private static final long DURATION_MS = 500;
+
+	@Test
+	void readersNeverSeeTornRecords() throws Exception {
+		EvFleetStore store = new EvFleetStore(SLOTS);
+		for (int i = 0; i < SLOTS; i++) {
+			store.add(Id.createVehicleId("seq_" + i + "_car"), new EvModel(
+				Id.createVehicleId("seq_" + i), "brand", "model", 60.0, 0.16, "Lithium-ion", 100, 300, 180, 400, 7.0,
+				100, "CCS", 0, 400, 5, "AWD", "SUV", 4500, 1850, 1600, "SUV"
+			));
+			store.setCoord(i, 0, 0);
+		}
+
+		AtomicBoolean running = new AtomicBoolean(true);
+		AtomicReference<String> failure = new AtomicReference<>();
+		AtomicLong reads = new AtomicLong();
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<>();
+
+		// Due writer per slot: contendono lo stesso seqlock
+		for (int w = 0; w < SLOTS * 2; w++) {
+			int slot = w % SLOTS;
+			int offset = w;
+			threads.add(new Thread(() -> {
+				await(start);
+				double v = offset;
+				while (running.get()) {
+					v += 1.0;
+					store.updateDynamicState(slot, v, v * K);
+					store.setCoord(slot, v, -v);
+				}
+			}));
+		}
+
+		for (int r = 0; r < 3; r++) {
+			threads.add(new Thread(() -> {
+				await(start);
+				while (running.get()) {
+					for (int slot = 0; slot < SLOTS; slot++) {
+						EvSnapshot s = store.snapshot(slot);
+						if (s.energyJoules() != s.soc() * K
+							|| s.lastEnergyJoules() != s.lastSoc() * K
+							|| s.coordY() != -s.coordX()
+							|| (s.seq() & 1L) != 0) {
+							failure.compareAndSet(null, "record misto: " + s);
+						}
+						reads.incrementAndGet();
+					}
+				}
+			}));
+		}
+
+		threads.forEach(Thread::start);
+		start.countDown();
+		Thread.sleep(DURATION_MS);
+		running.set(false);
+		for (Thread t : threads) {
+			t.join();
+		}
+
+		assertThat(failure.get()).isNull();
+		assertThat(reads.get()).isGreaterThan(0);
+	}
+
+	@Test
+	void changesAfterSnapshotStayDirty() {
+		EvFleetStore store = new EvFleetStore(1);
+		store.add(Id.createVehicleId("seq_dirty_car"), new EvModel(
+			Id.createVehicleId("seq_dirty"), "brand", "model", 60.0, 0.16, "Lithium-ion", 100, 300, 180, 400, 7.0,
+			100, "CCS", 0, 400, 5, "AWD", "SUV", 4500, 1850, 1600, "SUV"
+		));
+
+		EvSnapshot published = store.snapshot(0);
+		store.setCoord(0, 1, 1); // modifica tra snapshot e conferma
+		store.commitPublished(published);
+		assertThat(store.isDirty(0)).isTrue();
+		assertThat(store.nextDirty(0)).isZero();
+
+		store.commitPublished(store.snapshot(0));
+		assertThat(store.isDirty(0)).isFalse();
+		assertThat(store.nextDirty(0)).isEqualTo(-1);
+	}
+
+	@Test
+	void publisherNeverLosesDirtySlots() throws Exception {
+		int slots = 130;
+		EvFleetStore store = new EvFleetStore(slots);
+		for (int i = 0; i < slots; i++) {
+			store.add(Id.createVehicleId("pub_" + i + "_car"), new EvModel(
+				Id.createVehicleId("pub_" + i), "brand", "model", 60.0, 0.16, "Lithium-ion", 100, 300, 180, 400, 7.0,
+				100, "CCS", 0, 400, 5, "AWD", "SUV", 4500, 1850, 1600, "SUV"
+			));
+		}
+		store.resetAllDirty();
+
+		AtomicBoolean running = new AtomicBoolean(true);
+		CountDownLatch start = new CountDownLatch(1);
+		EvSnapshot[] published = new EvSnapshot[slots];
+		List<Thread> threads = new ArrayList<>();
+
+		// Writer su slot sparsi, publisher unico che scorre solo gli slot dirty
+		for (int w = 0; w < 3; w++) {
+			int offset = w;
+			threads.add(new Thread(() -> {
+				await(start);
+				double v = 0;
+				while (running.get()) {
+					for (int slot = offset; slot < slots; slot += 7) {
+						store.setCoord(slot, ++v, offset);
+					}
+				}
+			}));
+		}
+		Thread publisher = new Thread(() -> {
+			await(start);
+			while (running.get()) {
+				for (int slot = store.nextDirty(0); slot >= 0; slot = store.nextDirty(slot + 1)) {
+					published[slot] = store.snapshot(slot);
+					store.commitPublished(published[slot]);
+				}
+			}
+		});
+
+		threads.forEach(Thread::start);
+		publisher.start();
+		start.countDown();
+		Thread.sleep(DURATION_MS);
+		running.set(false);
+		for (Thread t : threads) {
+			t.join();
+		}
+		publisher.join();
+
+		// Ultimo giro a writer fermi: ogni modifica non pubblicata deve essere trovata
+		for (int slot = store.nextDirty(0); slot >= 0; slot = store.nextDirty(slot + 1)) {
+			published[slot] = store.snapshot(slot);
+			store.commitPublished(published[slot]);
+		}
+		for (int slot = 0; slot < slots; slot++) {
+			assertThat(store.isDirty(slot)).isFalse();
+			if (published[slot] != null) {
+				assertThat(published[slot].coordX()).isEqualTo(store.coordX(slot));
+			}
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
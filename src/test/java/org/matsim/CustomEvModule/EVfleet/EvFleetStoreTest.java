@@ -0,0 +1,123 @@
+package org.matsim.CustomEvModule.EVfleet;
+
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.vehicles.Vehicle;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EvFleetStoreTest {
+
+	private static EvModel evModel(String id) {
+		return new EvModel(
+			Id.createVehicleId(id), "brand", "model", 60.0, 0.16, "Lithium-ion", 100, 300, 180, 400, 7.0,
+			100, "CCS", 0, 400, 5, "AWD", "SUV", 4500, 1850, 1600, "SUV"
+		);
+	}
+
+	@Test
+	void viewKeepsStateWhenMovedIntoStore() {
+		EvModel model = evModel("store_a");
+		model.updateDynamicState(0.5, 30.0 * 3.6e6);
+		model.setCoord(13.4, 52.5);
+		model.addDistanceTraveled(1500);
+
+		EvFleetStore store = new EvFleetStore(1);
+		Id<Vehicle> qsimId = Id.createVehicleId("store_a_car");
+		int slot = store.add(qsimId, model);
+
+		assertThat(store.slotOf(qsimId)).isEqualTo(slot);
+		assertThat(store.slotOf(Id.createVehicleId("store_missing"))).isEqualTo(-1);
+		assertThat(model.getCurrentSoc()).isEqualTo(0.5);
+		assertThat(model.getLastSoc()).isEqualTo(1.0);
+		assertThat(model.getDistanceTraveledKm()).isEqualTo(1.5);
+		assertThat(model.getCoordY()).isEqualTo(52.5);
+
+		model.setState(EvModel.State.CHARGING);
+		assertThat(store.state(slot)).isEqualTo(EvModel.State.CHARGING);
+		assertThat(model.isCharging()).isTrue();
+	}
+
+	@Test
+	void duplicateIdOverwritesSlotWithLastModel() {
+		EvFleetStore store = new EvFleetStore(2);
+		Id<Vehicle> qsimId = Id.createVehicleId("dup_car");
+		EvModel first = evModel("dup_first");
+		EvModel last = evModel("dup_last");
+		last.updateDynamicState(0.3, 18.0 * 3.6e6);
+
+		int slot = store.add(qsimId, first);
+		assertThat(store.add(qsimId, last)).isEqualTo(slot);
+
+		// Vince l'ultimo: stesso slot, nessun veicolo in più
+		assertThat(store.slotOf(qsimId)).isEqualTo(slot);
+		assertThat(store.view(slot)).isSameAs(last);
+		assertThat(last.getCurrentSoc()).isEqualTo(0.3);
+		assertThat(store.add(Id.createVehicleId("dup_other_car"), evModel("dup_other"))).isEqualTo(slot + 1);
+	}
+
+	@Test
+	void dirtyBitsIterateOnlyChangedSlots() {
+		EvFleetStore store = new EvFleetStore(2);
+		for (int i = 0; i < 130; i++) {
+			store.add(Id.createVehicleId("dirty_" + i + "_car"), evModel("dirty_" + i));
+		}
+		store.resetAllDirty();
+		assertThat(store.nextDirty(0)).isEqualTo(-1);
+
+		store.view(3).setState(EvModel.State.MOVING);
+		store.view(64).setCoord(1, 2);
+		store.view(129).updateDynamicState(0.4, 1.0);
+		store.view(64).setCoord(1, 2); // nessun cambiamento
+
+		int count = 0;
+		int last = -1;
+		for (int slot = store.nextDirty(0); slot >= 0; slot = store.nextDirty(slot + 1)) {
+			count++;
+			last = slot;
+		}
+		assertThat(count).isEqualTo(3);
+		assertThat(last).isEqualTo(129);
+	}
+
+	@Test
+	void specsAreSharedAcrossVehiclesOfSameModel() {
+		EvModel a = evModel("spec_a");
+		EvModel b = evModel("spec_b");
+		// Prima della registrazione ogni modello ha la propria scheda, nessuno store
+		assertThat(a.getSpec()).isEqualTo(b.getSpec()).isNotSameAs(b.getSpec());
+		assertThat(a.isDirty()).isTrue();
+
+		EvFleetStore store = new EvFleetStore(2);
+		store.add(Id.createVehicleId("spec_a_car"), a);
+		store.add(Id.createVehicleId("spec_b_car"), b);
+		assertThat(a.getSpec()).isSameAs(b.getSpec());
+		assertThat(store.specCount()).isEqualTo(1);
+
+		// Il catalogo vive con lo store: uno store nuovo riparte vuoto
+		assertThat(new EvFleetStore(1).specCount()).isZero();
+	}
+
+	@Test
+	void onlyChangedOrChargingSlotsAreSampled() {
+		EvFleetStore store = new EvFleetStore(2);
+		for (int i = 0; i < 70; i++) {
+			store.add(Id.createVehicleId("active_" + i + "_car"), evModel("active_" + i));
+		}
+		store.view(5).markBatteryChanged();
+		store.setCharging(66, true);
+
+		assertThat(store.activityWords()).isEqualTo(2);
+		assertThat(store.drainActiveWord(0)).isEqualTo(1L << 5);
+		assertThat(store.drainActiveWord(1)).isEqualTo(1L << 2);
+
+		// Il bit di scarica viene consumato, la ricarica resta attiva
+		assertThat(store.drainActiveWord(0)).isZero();
+		assertThat(store.drainActiveWord(1)).isEqualTo(1L << 2);
+
+		// Fine ricarica: un ultimo campionamento
+		store.setCharging(66, false);
+		assertThat(store.drainActiveWord(1)).isEqualTo(1L << 2);
+		assertThat(store.drainActiveWord(1)).isZero();
+	}
+}
@@ -0,0 +1,74 @@
+package org.matsim.CustomEvModule.EVfleet;
+
+import org.junit.jupiter.api.Test;
+import org.matsim.CustomEvModule.EVfleet.factory.EvVehicleFactory;
+import org.matsim.CustomEvModule.EVfleet.strategy.plan.PlanGenerationStrategy;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FleetRegistrationPipelineTest {
+
+	private static final int FLEET_SIZE = 3 * FleetRegistrationPipeline.CHUNK_SIZE + 17;
+
+	// Strategia che usa l'RNG: il piano dipende dal seed del veicolo
+	private static final PlanGenerationStrategy RANDOM_END_TIME = (vehicleId, scenario, rng) -> {
+		PopulationFactory factory = scenario.getPopulation().getFactory();
+		Person person = factory.createPerson(Id.createPersonId(vehicleId));
+		Plan plan = factory.createPlan();
+		Activity home = factory.createActivityFromLinkId("home", Id.createLinkId("l" + rng.nextInt(1000)));
+		home.setEndTime(rng.nextInt(24 * 3600));
+		plan.addActivity(home);
+		person.addPlan(plan);
+		return person;
+	};
+
+	private static List<String> register(int parallelism) throws Exception {
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		List<EvModel> models = new ArrayList<>();
+		for (int i = 0; i < FLEET_SIZE; i++) {
+			models.add(new EvModel(
+				Id.createVehicleId("pipe_" + i), "brand", "model_" + (i % 7), 60.0, 0.16, "Lithium-ion", 100, 300, 180, 400, 7.0,
+				100, "CCS", 0, 400, 5, "AWD", "SUV", 4500, 1850, 1600, "SUV"
+			));
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			pool.submit(() -> FleetRegistrationPipeline.register(
+				models, scenario, new EvFleetStore(16), new EvVehicleFactory(), RANDOM_END_TIME, Set.of("CCS"), 123L
+			)).get();
+		} finally {
+			pool.shutdown();
+		}
+
+		List<String> out = new ArrayList<>();
+		scenario.getVehicles().getVehicles().keySet().forEach(id -> out.add(id.toString()));
+		scenario.getPopulation().getPersons().values().forEach(p -> {
+			Activity a = (Activity) p.getSelectedPlan().getPlanElements().get(0);
+			out.add(p.getId() + "@" + a.getLinkId() + "/" + a.getEndTime().seconds());
+		});
+		return out;
+	}
+
+	@Test
+	void resultIsIdenticalForAnyParallelism() throws Exception {
+		List<String> sequential = register(1);
+		List<String> parallel = register(8);
+
+		assertThat(sequential).hasSize(2 * FLEET_SIZE);
+		assertThat(parallel).containsExactlyElementsOf(sequential);
+	}
+}
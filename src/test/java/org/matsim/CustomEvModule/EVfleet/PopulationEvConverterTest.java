@@ -0,0 +1,171 @@
+package org.matsim.CustomEvModule.EVfleet;
+
+import org.junit.jupiter.api.Test;
+import org.matsim.CustomEvModule.EVfleet.factory.EvVehicleFactory;
+import org.matsim.CustomEvModule.EVfleet.strategy.fleet.SocDistribution;
+import org.matsim.CustomEvModule.Hub.ChargingHub;
+import org.matsim.CustomEvModule.Hub.HubSpatialIndex;
+import org.matsim.ServerEvSetup.ConfigRun.ConfigRun;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.vehicles.Vehicle;
+import org.matsim.vehicles.VehicleUtils;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PopulationEvConverterTest {
+
+	private static final String CATALOG = """
+			brand,model,top_speed,battery,type,cells,torque,eff,range,acc,fast,port,tow,cargo,seats,drive,segment,len,wid,hei,body
+			Tesla,Model 3,225,75.0,Li-ion,4416,493,153,510,4.4,250,CCS,1000,425,5,AWD,D,4694,1849,1443,Sedan
+			Fiat,500e,150,42,Li-ion,0,220,140,320,9.0,85,CCS,0,185,4,FWD,A,3632,1683,1527,Hatchback
+			""";
+
+	/**
+	 * Rete lineare di tre link da 5 km: conv_l0, conv_l1, conv_l2.
+	 */
+	private static Network network(Network network) {
+		NetworkFactory f = network.getFactory();
+		for (int i = 0; i < 4; i++) {
+			network.addNode(f.createNode(Id.createNodeId("conv_n" + i), new Coord(i * 5_000.0, 0.0)));
+		}
+		for (int i = 0; i < 3; i++) {
+			Link link = f.createLink(Id.createLinkId("conv_l" + i),
+				network.getNodes().get(Id.createNodeId("conv_n" + i)), network.getNodes().get(Id.createNodeId("conv_n" + (i + 1))));
+			link.setAllowedModes(Set.of(TransportMode.car));
+			network.addLink(link);
+		}
+		return network;
+	}
+
+	private static Plan commute(PopulationFactory factory, String mode) {
+		Plan plan = factory.createPlan();
+		plan.addActivity(factory.createActivityFromLinkId("home", Id.createLinkId("conv_l0")));
+		plan.addLeg(factory.createLeg(mode));
+		plan.addActivity(factory.createActivityFromLinkId("work", Id.createLinkId("conv_l1")));
+		plan.addLeg(factory.createLeg(mode));
+		plan.addActivity(factory.createActivityFromLinkId("home", Id.createLinkId("conv_l0")));
+		return plan;
+	}
+
+	@Test
+	void fleetManagerConvertsShareOfCarUsersFromConfig() {
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		network(scenario.getNetwork());
+		PopulationFactory factory = scenario.getPopulation().getFactory();
+		// 200 automobilisti in due quartieri (50 nord, 150 sud), 40 pedoni, 10 merci con auto
+		for (int i = 0; i < 250; i++) {
+			Person person = factory.createPerson(Id.createPersonId("conv_p" + i));
+			person.addPlan(commute(factory, i < 200 || i >= 240 ? TransportMode.car : TransportMode.walk));
+			person.getAttributes().putAttribute("district", i % 4 == 0 ? "north" : "south");
+			if (i >= 240) person.getAttributes().putAttribute("subpopulation", "freight");
+			scenario.getPopulation().addPerson(person);
+		}
+
+		// Nessun numeroVeicoli: con evShare il numero di EV deriva dalla popolazione
+		ConfigRun config = ConfigRun.builder()
+			.configPath("config.xml")
+			.csvResourceEv(new ByteArrayResource(CATALOG.getBytes(StandardCharsets.UTF_8)))
+			.vehicleStrategy(ConfigRun.VehicleGenerationStrategyEnum.NORMAL)
+			.planStrategy(ConfigRun.PlanGenerationStrategyEnum.STATIC)
+			.socMedio(0.7)
+			.socStdDev(0.1)
+			.targetSocMean(0.9)
+			.evShare(0.25)
+			.evShareStratifyBy("district")
+			.evShareHubRadiusM(8_000.0)
+			.build();
+
+		EvFleetManager manager = new EvFleetManager();
+		manager.setVehicleFactory(new EvVehicleFactory());
+		manager.convertPopulation(scenario, config,
+			List.of(new ChargingHub("conv_hub", Id.createLinkId("conv_l2"), 52.5, 13.4)),
+			SocDistribution.truncatedNormal(0.7, 0.1));
+
+		List<EvModel> models = manager.getEvModels();
+		assertThat(models).hasSize(50);
+		long north = models.stream()
+			.map(m -> scenario.getPopulation().getPersons().get(Id.createPersonId(m.getVehicleId())))
+			.filter(p -> "north".equals(p.getAttributes().getAttribute("district")))
+			.count();
+		// 12.5 + 37.5: il resto va a uno dei due strati
+		assertThat(north).isBetween(12L, 13L);
+
+		for (EvModel model : models) {
+			Person person = scenario.getPopulation().getPersons().get(Id.createPersonId(model.getVehicleId()));
+			Id<Vehicle> qsimId = Id.createVehicleId(person.getId() + "_car");
+			assertThat(person.getAttributes().getAttribute("subpopulation")).isNull();
+			assertThat(VehicleUtils.getVehicleIds(person)).containsEntry(TransportMode.car, qsimId);
+			assertThat(scenario.getVehicles().getVehicles()).containsKey(qsimId);
+			assertThat(manager.getVehicle(qsimId)).isNotNull();
+			assertThat(person.getSelectedPlan().getPlanElements())
+				.anyMatch(e -> e instanceof Activity act && PopulationEvConverter.CHARGING_ACTIVITY.equals(act.getType()));
+		}
+	}
+
+	@Test
+	void selectionKeepsStratumSharesAndIsReproducible() {
+		// 1000 persone "a", 500 "b", 300 non idonee, mescolate
+		Object[] strata = new Object[1800];
+		for (int i = 0; i < strata.length; i++) {
+			strata[i] = switch (i % 6) {
+				case 0, 2, 4, 5 -> i < 1500 ? "a" : null;
+				default -> i < 1500 ? "b" : null;
+			};
+		}
+		long a = Arrays.stream(strata).filter("a"::equals).count();
+		long b = Arrays.stream(strata).filter("b"::equals).count();
+
+		int[] selected = PopulationEvConverter.select(strata, 0.2, 42L);
+
+		assertThat(selected).isSorted().doesNotHaveDuplicates();
+		assertThat(selected).allMatch(i -> strata[i] != null);
+		assertThat(Arrays.stream(selected).filter(i -> "a".equals(strata[i])).count()).isEqualTo(Math.round(0.2 * a));
+		assertThat(Arrays.stream(selected).filter(i -> "b".equals(strata[i])).count()).isEqualTo(Math.round(0.2 * b));
+		assertThat(PopulationEvConverter.select(strata, 0.2, 42L)).containsExactly(selected);
+	}
+
+	@Test
+	void chargingStopReplacesCarTripToDestinationNearestHub() {
+		Network network = network(NetworkUtils.createNetwork());
+		// Hub sul nodo di arrivo di conv_l2: a 7.5 km dal lavoro, a 12.5 km da casa
+		HubSpatialIndex hubs = PopulationEvConverter.hubIndex(
+			List.of(new ChargingHub("conv_hub", Id.createLinkId("conv_l2"), 52.5, 13.4)), network);
+
+		PopulationFactory factory = ScenarioUtils.createScenario(ConfigUtils.createConfig()).getPopulation().getFactory();
+		Plan plan = commute(factory, TransportMode.car);
+
+		boolean inserted = PopulationEvConverter.insertChargingStop(plan, hubs, 8_000.0, network, factory);
+
+		List<String> elements = new ArrayList<>();
+		for (PlanElement e : plan.getPlanElements()) {
+			elements.add(e instanceof Activity act ? act.getType() + "@" + act.getLinkId() : ((Leg) e).getMode());
+		}
+		assertThat(inserted).isTrue();
+		assertThat(elements).containsExactly(
+			"home@conv_l0", "car", "car charging@conv_l2", "car", "work@conv_l1", "car", "home@conv_l0"
+		);
+		assertThat(PopulationEvConverter.insertChargingStop(plan, hubs, 1_000.0, network, factory)).isFalse();
+	}
+}
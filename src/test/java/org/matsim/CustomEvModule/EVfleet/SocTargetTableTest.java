@@ -0,0 +1,50 @@
+package org.matsim.CustomEvModule.EVfleet;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.matsim.CustomEvModule.EVfleet.strategy.fleet.SocDistribution;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SocTargetTableTest {
+
+	@Test
+	void attributeOverridesSampledTargets(@TempDir Path dir) throws Exception {
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		Population population = scenario.getPopulation();
+		List<Id<Person>> drivers = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			Person p = population.getFactory().createPerson(Id.createPersonId("soc_target_" + i));
+			population.addPerson(p);
+			drivers.add(p.getId());
+		}
+		population.getPersons().get(drivers.get(3)).getAttributes().putAttribute(SocTargetTable.ATTRIBUTE, 0.42);
+
+		SocDistribution dist = SocDistribution.truncatedNormal(0.9, 0.05);
+		SocTargetTable table = SocTargetTable.build(population, drivers, dist, 7L, 0.8);
+		SocTargetTable again = SocTargetTable.build(population, drivers, dist, 7L, 0.8);
+
+		assertThat(table.get(drivers.get(3))).isEqualTo(0.42);
+		assertThat(table.get(Id.createPersonId("soc_target_outside"))).isEqualTo(0.8);
+		for (Id<Person> id : drivers) {
+			assertThat(table.get(id)).isBetween(0.0, 1.0).isEqualTo(again.get(id));
+		}
+
+		Path csv = dir.resolve(SocTargetTable.OUTPUT_FILE);
+		table.writeCsv(csv.toString());
+		List<String> lines = Files.readAllLines(csv);
+		assertThat(lines).hasSize(51);
+		assertThat(lines.get(4)).isEqualTo("soc_target_3;0.42");
+	}
+}
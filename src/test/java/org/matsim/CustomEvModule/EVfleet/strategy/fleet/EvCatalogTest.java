@@ -0,0 +1,57 @@
+package org.matsim.CustomEvModule.EVfleet.strategy.fleet;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EvCatalogTest {
+
+	private static final String CSV = """
+			brand,model,top_speed,battery,type,cells,torque,eff,range,acc,fast,port,tow,cargo,seats,drive,segment,len,wid,hei,body
+			Tesla,Model 3,225 km/h,75.0 kWh,Li-ion,4416,493 Nm,153,510 km,4.4 s,250 kW,CCS,1000 kg,425 L,5,AWD,D,4694,1849,1443,Sedan
+			Fiat,500e,150,42,Li-ion,n/a,220,140,320,9.0,85,CCS,0,185,4,FWD,A,3632,1683,1527,Hatchback
+			riga,malformata
+			""";
+
+	@Test
+	void parsesNumbersLikeTheLegacyRegex() throws Exception {
+		EvCatalog catalog = EvCatalog.load(new ByteArrayResource(CSV.getBytes(StandardCharsets.UTF_8)));
+
+		assertThat(catalog.size()).isEqualTo(2);
+		assertThat(catalog.getEntries().get(0).topSpeedKmh()).isEqualTo(225.0);
+		assertThat(catalog.getEntries().get(0).batteryCapacityKWh()).isEqualTo(75.0);
+		assertThat(catalog.getEntries().get(0).lengthMm()).isEqualTo(4694);
+		assertThat(catalog.getEntries().get(1).numberOfCells()).isZero();
+	}
+
+	@Test
+	void sameContentIsParsedOnce() throws Exception {
+		byte[] bytes = CSV.getBytes(StandardCharsets.UTF_8);
+		EvCatalog first = EvCatalog.load(new ByteArrayResource(bytes));
+		EvCatalog second = EvCatalog.load(new ByteArrayResource(bytes.clone()));
+
+		assertThat(second).isSameAs(first);
+	}
+
+	@Test
+	void binaryRoundTripPreservesEntries(@TempDir Path dir) throws Exception {
+		EvCatalog catalog = EvCatalog.load(new ByteArrayResource(CSV.getBytes(StandardCharsets.UTF_8)));
+		Path file = dir.resolve("ev-catalog-" + catalog.getChecksum() + ".bin");
+
+		EvCatalog.writeBinary(file, catalog);
+		assertThat(Files.isRegularFile(file)).isTrue();
+
+		EvCatalog read = EvCatalog.readBinary(file, catalog.getChecksum());
+		assertThat(read).isNotNull();
+		assertThat(read.getEntries()).isEqualTo(catalog.getEntries());
+
+		// Checksum diverso: il file non viene accettato
+		assertThat(EvCatalog.readBinary(file, "0".repeat(64))).isNull();
+	}
+}
@@ -0,0 +1,93 @@
+package org.matsim.CustomEvModule.EVfleet.strategy.fleet;
+
+import org.junit.jupiter.api.Test;
+import org.matsim.CustomEvModule.EVfleet.EvModel;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class FleetSamplerTest {
+
+	private static final int FLEET_SIZE = 5 * FleetSampler.CHUNK_SIZE + 11;
+
+	private static final String CSV = """
+			brand,model,top_speed,battery,type,cells,torque,eff,range,acc,fast,port,tow,cargo,seats,drive,segment,len,wid,hei,body
+			Tesla,Model 3,225,75,Li-ion,4416,493,153,510,4.4,250,CCS,1000,425,5,AWD,D,4694,1849,1443,Sedan
+			Fiat,500e,150,42,Li-ion,0,220,140,320,9.0,85,CCS,0,185,4,FWD,A,3632,1683,1527,Hatchback
+			Kia,EV6,185,77.4,Li-ion,384,605,172,450,5.2,233,CCS,1600,490,5,RWD,E,4680,1880,1550,SUV
+			""";
+
+	private static List<String> sample(int parallelism, long seed) throws Exception {
+		EvCatalog catalog = EvCatalog.load(new ByteArrayResource(CSV.getBytes(StandardCharsets.UTF_8)));
+		SocDistribution soc = SocDistribution.truncatedNormal(0.7, 0.2);
+
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		List<EvModel> models;
+		try {
+			models = pool.submit(() -> FleetSampler.sample(catalog, soc, FLEET_SIZE, seed)).get();
+		} finally {
+			pool.shutdown();
+		}
+
+		List<String> out = new ArrayList<>();
+		models.forEach(m -> out.add(m.getVehicleId() + ":" + m.getModel() + ":" + m.getCurrentSoc()));
+		return out;
+	}
+
+	@Test
+	void fleetDependsOnlyOnSeed() throws Exception {
+		List<String> sequential = sample(1, 42L);
+		List<String> parallel = sample(8, 42L);
+
+		assertThat(sequential).hasSize(FLEET_SIZE);
+		assertThat(parallel).containsExactlyElementsOf(sequential);
+		assertThat(sample(8, 43L)).isNotEqualTo(sequential);
+	}
+
+	@Test
+	void aliasTableFollowsWeights() {
+		AliasTable table = AliasTable.of(new double[]{1.0, 0.0, 3.0, 6.0});
+		SplittableRandom rng = new SplittableRandom(7L);
+		int n = 200_000;
+		int[] counts = new int[4];
+		for (int i = 0; i < n; i++) {
+			counts[table.sample(rng)]++;
+		}
+
+		assertThat(counts[1]).isZero();
+		assertThat(counts[0] / (double) n).isCloseTo(0.1, within(0.01));
+		assertThat(counts[2] / (double) n).isCloseTo(0.3, within(0.01));
+		assertThat(counts[3] / (double) n).isCloseTo(0.6, within(0.01));
+	}
+
+	@Test
+	void socDistributionsStayInUnitInterval() {
+		SplittableRandom rng = new SplittableRandom(11L);
+		SocDistribution normal = SocDistribution.truncatedNormal(0.95, 0.3);
+		SocDistribution uniform = SocDistribution.uniformFromMoments(0.5, 0.1);
+		SocDistribution empirical = SocDistribution.empirical(new double[]{0.2, 0.8}, new double[]{1.0, 3.0});
+
+		double uniformSum = 0.0;
+		int high = 0;
+		int n = 100_000;
+		for (int i = 0; i < n; i++) {
+			assertThat(normal.sample(rng)).isBetween(0.0, 1.0);
+			double u = uniform.sample(rng);
+			assertThat(u).isBetween(0.5 - 0.1 * Math.sqrt(3.0), 0.5 + 0.1 * Math.sqrt(3.0));
+			uniformSum += u;
+			double e = empirical.sample(rng);
+			assertThat(e).isIn(0.2, 0.8);
+			if (e == 0.8) high++;
+		}
+
+		assertThat(uniformSum / n).isCloseTo(0.5, within(0.005));
+		assertThat(high / (double) n).isCloseTo(0.75, within(0.01));
+	}
+}
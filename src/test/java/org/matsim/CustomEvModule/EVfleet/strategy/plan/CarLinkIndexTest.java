@@ -0,0 +1,99 @@
+package org.matsim.CustomEvModule.EVfleet.strategy.plan;
+
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CarLinkIndexTest {
+
+	private static final int SIDE = 60;
+	private static final double SPACING = 500.0;
+
+	/**
+	 * Griglia SIDE x SIDE di nodi con link orizzontali; le righe dispari sono solo bici.
+	 */
+	private static Network network() {
+		Network network = NetworkUtils.createNetwork();
+		NetworkFactory f = network.getFactory();
+		for (int r = 0; r < SIDE; r++) {
+			for (int c = 0; c < SIDE; c++) {
+				network.addNode(f.createNode(Id.createNodeId(r + "_" + c), new Coord(c * SPACING, r * SPACING)));
+			}
+		}
+		for (int r = 0; r < SIDE; r++) {
+			for (int c = 0; c + 1 < SIDE; c++) {
+				Node from = network.getNodes().get(Id.createNodeId(r + "_" + c));
+				Node to = network.getNodes().get(Id.createNodeId(r + "_" + (c + 1)));
+				Link link = f.createLink(Id.createLinkId("l" + r + "_" + c), from, to);
+				link.setAllowedModes(r % 2 == 0 ? Set.of(TransportMode.car) : Set.of(TransportMode.bike));
+				network.addLink(link);
+			}
+		}
+		return network;
+	}
+
+	@Test
+	void indexesOnlyCarLinks() {
+		CarLinkIndex index = CarLinkIndex.build(network(), 1_000.0);
+
+		assertThat(index.size()).isEqualTo((SIDE / 2) * (SIDE - 1));
+		assertThat(index.hasGrid()).isTrue();
+	}
+
+	@Test
+	void ringSamplesRespectDistance() {
+		CarLinkIndex index = CarLinkIndex.build(network(), 1_000.0);
+		SplittableRandom rng = new SplittableRandom(3L);
+		double cx = SIDE * SPACING / 2;
+		double cy = SIDE * SPACING / 2;
+
+		for (int k = 0; k < 1_000; k++) {
+			int i = index.randomWithin(cx, cy, 2_000.0, 6_000.0, rng);
+			double d = Math.hypot(index.x(i) - cx, index.y(i) - cy);
+			assertThat(d).isBetween(2_000.0, 6_000.0);
+		}
+	}
+
+	@Test
+	void thinRingOutsideGridFallsBackToRingCellsOrNone() {
+		CarLinkIndex grid = CarLinkIndex.build(network(), 1_000.0);
+		CarLinkIndex flat = CarLinkIndex.build(network(), 0);
+		SplittableRandom rng = new SplittableRandom(7L);
+		// Punto fuori dalla rete: quasi tutto il quadrato di estrazione cade fuori dalla griglia
+		double px = -9_000.0;
+		double py = 15_000.0;
+
+		for (CarLinkIndex index : new CarLinkIndex[]{grid, flat}) {
+			for (int k = 0; k < 200; k++) {
+				int i = index.randomWithin(px, py, 9_200.0, 9_400.0, rng);
+				assertThat(i).isNotNegative();
+				assertThat(Math.hypot(index.x(i) - px, index.y(i) - py)).isBetween(9_200.0, 9_400.0);
+			}
+			// Nessun link auto nella corona
+			assertThat(index.randomWithin(-50_000.0, 0.0, 0.0, 1_000.0, rng)).isEqualTo(-1);
+		}
+	}
+
+	@Test
+	void samplingIsDeterministic() {
+		CarLinkIndex index = CarLinkIndex.build(network(), 1_000.0);
+		SplittableRandom a = new SplittableRandom(99L);
+		SplittableRandom b = new SplittableRandom(99L);
+
+		for (int k = 0; k < 100; k++) {
+			assertThat(index.randomWithin(5_000, 5_000, 0, 3_000, a))
+				.isEqualTo(index.randomWithin(5_000, 5_000, 0, 3_000, b));
+		}
+	}
+}
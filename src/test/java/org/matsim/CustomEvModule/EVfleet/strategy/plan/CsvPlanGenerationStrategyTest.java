@@ -0,0 +1,98 @@
+package org.matsim.CustomEvModule.EVfleet.strategy.plan;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.vehicles.Vehicle;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CsvPlanGenerationStrategyTest {
+
+	private static final String CSV = """
+			vehicle_id;activity;link_id;end_time;max_duration
+			EV_0;home;car_a;07:30:00;
+			EV_1;home;car_b;28800;
+			EV_0;work;car_b;;28800
+			EV_9;home;car_a;0;
+			EV_0;home;car_a;;
+			EV_1;work;bike_only;;3600
+			EV_1;work;missing;;3600
+			""";
+
+	private static Scenario scenario() {
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		Network network = scenario.getNetwork();
+		Node n0 = network.getFactory().createNode(Id.createNodeId("n0"), new Coord(0, 0));
+		Node n1 = network.getFactory().createNode(Id.createNodeId("n1"), new Coord(1000, 0));
+		network.addNode(n0);
+		network.addNode(n1);
+		addLink(network, "car_a", n0, n1, TransportMode.car);
+		addLink(network, "car_b", n1, n0, TransportMode.car);
+		addLink(network, "bike_only", n0, n1, TransportMode.bike);
+		return scenario;
+	}
+
+	private static void addLink(Network network, String id, Node from, Node to, String mode) {
+		Link link = network.getFactory().createLink(Id.createLinkId(id), from, to);
+		link.setAllowedModes(Set.of(mode));
+		network.addLink(link);
+	}
+
+	@Test
+	void buildsPlansFromGzippedChains(@TempDir Path dir) throws Exception {
+		Path file = dir.resolve("plans.csv.gz");
+		try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+			out.write(CSV.getBytes(StandardCharsets.UTF_8));
+		}
+
+		Scenario scenario = scenario();
+		PlanGenerationStrategy fallback = (vehicleId, sc, rng) ->
+			sc.getPopulation().getFactory().createPerson(Id.createPersonId("fallback_" + vehicleId));
+
+		CsvPlanGenerationStrategy strategy = new CsvPlanGenerationStrategy(
+			file.toString(), CarLinkIndex.build(scenario.getNetwork(), 0), fallback
+		);
+
+		List<Id<Vehicle>> fleet = List.of(Id.createVehicleId("EV_0"), Id.createVehicleId("EV_1"), Id.createVehicleId("EV_2"));
+		strategy.prepare(fleet, scenario);
+
+		Person p0 = strategy.createPersonForVehicle(fleet.get(0), scenario, new SplittableRandom(1));
+		List<PlanElement> elements = p0.getSelectedPlan().getPlanElements();
+		assertThat(elements).hasSize(5);
+		Activity first = (Activity) elements.get(0);
+		assertThat(first.getLinkId()).isEqualTo(Id.createLinkId("car_a"));
+		assertThat(first.getEndTime().seconds()).isEqualTo(7.5 * 3600);
+		Activity work = (Activity) elements.get(2);
+		assertThat(work.getType()).isEqualTo("work");
+		assertThat(work.getMaximumDuration().seconds()).isEqualTo(28800.0);
+
+		// Una riga con link non auto o inesistente invalida l'intera catena: fallback
+		Person p1 = strategy.createPersonForVehicle(fleet.get(1), scenario, new SplittableRandom(1));
+		assertThat(p1.getId().toString()).isEqualTo("fallback_EV_1");
+
+		// Nessuna riga: fallback
+		Person p2 = strategy.createPersonForVehicle(fleet.get(2), scenario, new SplittableRandom(1));
+		assertThat(p2.getId().toString()).isEqualTo("fallback_EV_2");
+	}
+}
@@ -0,0 +1,98 @@
+package org.matsim.CustomEvModule.Hub;
+
+import com.google.common.collect.ImmutableList;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.contrib.ev.infrastructure.ChargingInfrastructureSpecificationDefaultImpl;
+import org.matsim.contrib.ev.infrastructure.Charger;
+import org.matsim.core.network.NetworkUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ricerca di una colonnina libera e compatibile su un link con 10k hub:
+ * scansione a stream di tutti gli hub (legacy) contro indice per link con maschere di plug.
+ * <p>
+ * Esecuzione: {@code main} dal classpath di test.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChargerLookupBenchmark {
+
+	private static final int HUBS = 10_000;
+	private static final int CHARGERS_PER_HUB = 4;
+	private static final String[] PLUGS = {"AC", "CCS", "DC"};
+
+	private HubManager hubManager;
+	private ChargerSlotIndex index;
+	private Id<Link>[] queryLinks;
+	private ImmutableList<String> vehicleTypes;
+	private long vehicleMask;
+	private Random rng;
+	private int next;
+
+	@SuppressWarnings("unchecked")
+	@Setup
+	public void setup() {
+		List<ChargingHub> hubs = new ArrayList<>(HUBS);
+		for (int h = 0; h < HUBS; h++) {
+			ChargingHub hub = new ChargingHub("bench_hub_" + h, Id.createLinkId("bench_link_" + h), 0, 0);
+			for (int c = 0; c < CHARGERS_PER_HUB; c++) {
+				Id<Charger> chargerId = Id.create("bench_" + h + "_" + c, Charger.class);
+				hub.addCharger(chargerId, Set.of(PLUGS[(h + c) % PLUGS.length]));
+				// Metà delle colonnine occupate
+				if (c % 2 == 0) hub.incrementOccupancy(chargerId, "ev_" + h);
+			}
+			hubs.add(hub);
+		}
+
+		hubManager = new HubManager(NetworkUtils.createNetwork(), new ChargingInfrastructureSpecificationDefaultImpl());
+		hubManager.registerChargingHubs(hubs);
+		index = ChargerSlotIndex.build(hubs, null);
+
+		Random setupRng = new Random(42);
+		queryLinks = new Id[1024];
+		for (int i = 0; i < queryLinks.length; i++) {
+			queryLinks[i] = Id.createLinkId("bench_link_" + setupRng.nextInt(HUBS));
+		}
+		vehicleTypes = ImmutableList.of("CCS", "AC");
+		vehicleMask = index.maskOf(vehicleTypes);
+		rng = new Random(7);
+	}
+
+	private Id<Link> nextLink() {
+		next = (next + 1) & (queryLinks.length - 1);
+		return queryLinks[next];
+	}
+
+	@Benchmark
+	public void legacyStreamLookup(Blackhole bh) {
+		bh.consume(hubManager.getAllCompatibleChargersOnLink(nextLink(), vehicleTypes));
+	}
+
+	@Benchmark
+	public void indexedLookup(Blackhole bh) {
+		bh.consume(index.pickFreeCompatible(nextLink(), vehicleMask, rng));
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder()
+			.include(ChargerLookupBenchmark.class.getSimpleName())
+			.build();
+		new Runner(opt).run();
+	}
+}
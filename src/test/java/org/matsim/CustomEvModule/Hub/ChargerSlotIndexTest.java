@@ -0,0 +1,58 @@
+package org.matsim.CustomEvModule.Hub;
+
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.contrib.ev.infrastructure.Charger;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChargerSlotIndexTest {
+
+	private static final Id<Link> LINK_A = Id.createLinkId("slot_link_a");
+	private static final Id<Link> LINK_B = Id.createLinkId("slot_link_b");
+	private static final Id<Link> LINK_EMPTY = Id.createLinkId("slot_link_empty");
+
+	private static List<ChargingHub> hubs() {
+		ChargingHub a1 = new ChargingHub("hub_a1", LINK_A, 0, 0);
+		a1.addCharger(Id.create("a1_ac", Charger.class), Set.of("AC"));
+		a1.addCharger(Id.create("a1_ccs", Charger.class), Set.of("CCS"));
+		ChargingHub a2 = new ChargingHub("hub_a2", LINK_A, 0, 0);
+		a2.addCharger(Id.create("a2_ccs", Charger.class), Set.of("CCS"));
+		ChargingHub b = new ChargingHub("hub_b", LINK_B, 0, 0);
+		b.addCharger(Id.create("b_ac", Charger.class), Set.of("AC"));
+		return List.of(b, a1, a2);
+	}
+
+	@Test
+	void freeCompatibleChargersMatchLegacyFilter() {
+		List<ChargingHub> hubs = hubs();
+		ChargerSlotIndex index = ChargerSlotIndex.build(hubs, null);
+
+		assertThat(index.size()).isEqualTo(4);
+		assertThat(index.slotCount(LINK_A)).isEqualTo(3);
+		assertThat(index.slotCount(LINK_EMPTY)).isZero();
+
+		long ccs = index.maskOf(List.of("CCS", "unknown"));
+		int[] out = new int[8];
+		int count = index.collectFreeCompatible(LINK_A, ccs, out);
+		Set<String> ids = new HashSet<>();
+		for (int i = 0; i < count; i++) ids.add(index.unit(out[i]).getChargerId().toString());
+		assertThat(ids).containsExactlyInAnyOrder("a1_ccs", "a2_ccs");
+
+		// Colonnine occupate o disattivate non sono candidate
+		hubs.get(1).incrementOccupancy(Id.create("a1_ccs", Charger.class), "ev_1");
+		hubs.get(2).setChargerActive(Id.create("a2_ccs", Charger.class), false);
+		assertThat(index.pickFreeCompatible(LINK_A, ccs, new Random(1))).isEqualTo(-1);
+
+		int ac = index.pickFreeCompatible(LINK_A, index.maskOf(List.of("AC")), new Random(1));
+		assertThat(index.unit(ac).getChargerId().toString()).isEqualTo("a1_ac");
+		assertThat(index.hubId(ac)).isEqualTo("hub_a1");
+		assertThat(index.pickFreeCompatible(LINK_EMPTY, ccs, new Random(1))).isEqualTo(-1);
+	}
+}
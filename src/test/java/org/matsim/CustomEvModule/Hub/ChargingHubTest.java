@@ -0,0 +1,100 @@
+package org.matsim.CustomEvModule.Hub;
+
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.contrib.ev.infrastructure.Charger;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChargingHubTest {
+
+	private static final Id<Charger> C1 = Id.create("hub_test_c1", Charger.class);
+	private static final Id<Charger> C2 = Id.create("hub_test_c2", Charger.class);
+
+	@Test
+	void snapshotsAreImmutableAndCountersIncremental() {
+		ChargingHub hub = new ChargingHub("hub_test", Id.createLinkId("hub_test_link"), 52.5, 13.4);
+		hub.addCharger(C1, Set.of("CCS"));
+		hub.addCharger(C2, Set.of("AC"));
+
+		HubSnapshot before = hub.snapshot();
+		hub.incrementOccupancy(C1, "ev_1");
+		hub.incrementOccupancy(C2, "ev_2");
+		hub.decrementOccupancy(C1, 1000.0);
+		HubSnapshot after = hub.snapshot();
+
+		// La versione letta prima non vede le modifiche successive
+		assertThat(before.occupancy()).isZero();
+		assertThat(before.charger(C1).occupied()).isFalse();
+		assertThat(after.version()).isGreaterThan(before.version());
+		assertThat(after.occupancy()).isEqualTo(1);
+		assertThat(after.totalEnergy()).isEqualTo(1000.0);
+		assertThat(after.charger(C2).occupyingEvId()).isEqualTo("ev_2");
+		assertThat(hub.getOccupiedChargers()).containsExactly(C2);
+
+		// Scrittura senza effetto: nessuna nuova versione
+		hub.updateChargerEnergyDelivering(C1, 0.0);
+		assertThat(hub.snapshot()).isSameAs(after);
+
+		// Aggiornamento in posto: lo snapshot già letto non cambia, il successivo sì
+		hub.updateChargerEnergyDelivering(C2, 500.0);
+		assertThat(after.charger(C2).currentEnergy()).isZero();
+		assertThat(hub.snapshot().charger(C2).currentEnergy()).isEqualTo(500.0);
+		assertThat(hub.snapshot()).isSameAs(hub.snapshot());
+	}
+
+	@Test
+	void chargingEndReleasesOnlyTheOccupyingVehicle() {
+		ChargingHub hub = new ChargingHub("hub_release", Id.createLinkId("hub_release_link"), 0, 0);
+		hub.addCharger(C1, Set.of("CCS"));
+		hub.incrementOccupancy(C1, "ev_2");
+
+		// Fine ricarica di un veicolo che non occupa più la colonnina: nessun effetto
+		assertThat(hub.decrementOccupancy(C1, Id.createVehicleId("ev_1"), 1000.0)).isFalse();
+		assertThat(hub.snapshot().charger(C1).occupyingEvId()).isEqualTo("ev_2");
+		assertThat(hub.snapshot().totalEnergy()).isZero();
+
+		assertThat(hub.decrementOccupancy(C1, Id.createVehicleId("ev_2"), 1000.0)).isTrue();
+		assertThat(hub.snapshot().occupancy()).isZero();
+		assertThat(hub.snapshot().totalEnergy()).isEqualTo(1000.0);
+	}
+
+	@Test
+	void dirtyUntilPublishedVersionIsCommitted() {
+		ChargingHub hub = new ChargingHub("hub_dirty", Id.createLinkId("hub_dirty_link"), 0, 0);
+		hub.addCharger(C1, Set.of("CCS"));
+
+		HubSnapshot published = hub.snapshot();
+		hub.incrementOccupancy(C1, "ev_1");
+		hub.commitPublished(published);
+		assertThat(hub.isDirty()).isTrue();
+
+		hub.commitPublished(hub.snapshot());
+		assertThat(hub.isDirty()).isFalse();
+
+		// Disattivazione rifiutata su colonnina occupata: lo stato resta invariato
+		assertThatThrownBy(() -> hub.setChargerActive(C1, false)).isInstanceOf(IllegalStateException.class);
+		assertThat(hub.snapshot().charger(C1).active()).isTrue();
+	}
+
+	@Test
+	void stateListSharesUnchangedChunks() {
+		HubSnapshot.ChargerState[] states = new HubSnapshot.ChargerState[40];
+		for (int i = 0; i < states.length; i++) {
+			states[i] = new HubSnapshot.ChargerState(Id.create("hub_list_c" + i, Charger.class), true, null, i, 0.0);
+		}
+		HubSnapshot.StateList before = HubSnapshot.StateList.of(states);
+		HubSnapshot.ChargerState changed = new HubSnapshot.ChargerState(states[33].chargerId(), true, "ev", 33, 5.0);
+		HubSnapshot.StateList after = before.with(33, changed);
+
+		assertThat(after).hasSize(40);
+		assertThat(after.get(33)).isSameAs(changed);
+		assertThat(before.get(33)).isSameAs(states[33]);
+		for (int i = 0; i < 40; i++) {
+			if (i != 33) assertThat(after.get(i)).isSameAs(states[i]);
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package org.matsim.CustomEvModule.Hub;
+
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.contrib.ev.infrastructure.Charger;
+import org.matsim.core.network.NetworkUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HubSpatialIndexTest {
+
+	// Hub lungo una retta, a 0, 300, 900 e 5000 m dall'origine
+	private static final double[] POSITIONS = {0, 300, 900, 5000};
+
+	@Test
+	void radiusAndNearestFreeQueries() {
+		Network network = NetworkUtils.createNetwork();
+		Node origin = NetworkUtils.createAndAddNode(network, Id.createNodeId("spatial_origin"), new Coord(-10, 0));
+		List<ChargingHub> hubs = new ArrayList<>();
+		for (int i = 0; i < POSITIONS.length; i++) {
+			Node to = NetworkUtils.createAndAddNode(network, Id.createNodeId("spatial_n" + i), new Coord(POSITIONS[i], 0));
+			Id<Link> linkId = Id.createLinkId("spatial_l" + i);
+			NetworkUtils.createAndAddLink(network, linkId, origin, to, 10, 13.9, 1800, 1);
+			ChargingHub hub = new ChargingHub("spatial_hub_" + i, linkId, 0, 0);
+			hub.addCharger(Id.create("spatial_c" + i, Charger.class), Set.of("CCS"));
+			hubs.add(hub);
+		}
+
+		ChargerSlotIndex slots = ChargerSlotIndex.build(hubs, null);
+		HubSpatialIndex spatial = new HubSpatialIndex(slots, network);
+		long ccs = slots.maskOf(List.of("CCS"));
+
+		assertThat(spatial.withinRadius(0, 0, 1000)).extracting(h -> slots.hub(h).getId())
+			.containsExactly("spatial_hub_0", "spatial_hub_1", "spatial_hub_2");
+
+		// Hub più vicini occupati: la ricerca si allarga fino al primo libero
+		hubs.get(0).incrementOccupancy(Id.create("spatial_c0", Charger.class), "ev_0");
+		hubs.get(1).incrementOccupancy(Id.create("spatial_c1", Charger.class), "ev_1");
+		int nearest = spatial.nearestWithFreePlug(0, 0, ccs, 1000);
+		assertThat(slots.hub(nearest).getId()).isEqualTo("spatial_hub_2");
+
+		assertThat(spatial.nearest(0, 0, 2, 10_000)).extracting(h -> slots.hub(h).getId())
+			.containsExactly("spatial_hub_0", "spatial_hub_1");
+		assertThat(spatial.nearestWithFreePlug(0, 0, 2, ccs, 10_000)).extracting(h -> slots.hub(h).getId())
+			.containsExactly("spatial_hub_2", "spatial_hub_3");
+		assertThat(spatial.nearestWithFreePlug(0, 0, ccs, 500)).isEqualTo(-1);
+
+		// Punto a 20 km dagli hub (oltre l'estensione del bounding box): la ricerca arriva fino a maxRadius
+		int far = spatial.nearestWithFreePlug(900, 20_000, ccs, 25_000);
+		assertThat(slots.hub(far).getId()).isEqualTo("spatial_hub_2");
+		assertThat(spatial.nearestWithFreePlug(900, 20_000, ccs, 15_000)).isEqualTo(-1);
+	}
+}
@@ -0,0 +1,66 @@
+package org.matsim.CustomEvModule.Hub;
+
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.contrib.ev.infrastructure.Charger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OccupiedChargersTest {
+
+	@Test
+	void visitsOnlyOccupiedChargersAfterSwapRemoval() {
+		ChargingHub hub = new ChargingHub("occ_hub", Id.createLinkId("occ_link"), 52.5, 13.4);
+		List<ChargerUnit> units = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			Id<Charger> id = Id.create("occ_c" + i, Charger.class);
+			hub.addCharger(id);
+			units.add(hub.getChargerUnit(id));
+		}
+
+		OccupiedChargers occupied = new OccupiedChargers();
+		units.forEach(u -> occupied.add(hub, u));
+		// Rimozione in mezzo, in testa e in coda
+		occupied.remove(units.get(5).getChargerId());
+		occupied.remove(units.get(0).getChargerId());
+		occupied.remove(units.get(19).getChargerId());
+		// Rimozione ripetuta e inserimento ripetuto: nessun effetto
+		occupied.remove(units.get(5).getChargerId());
+		occupied.add(hub, units.get(7));
+
+		List<Id<Charger>> visited = new ArrayList<>();
+		occupied.forEach((h, u) -> {
+			assertThat(h).isSameAs(hub);
+			visited.add(u.getChargerId());
+		});
+
+		assertThat(occupied.size()).isEqualTo(17);
+		assertThat(visited)
+			.hasSize(17)
+			.doesNotHaveDuplicates()
+			.doesNotContain(units.get(0).getChargerId(), units.get(5).getChargerId(), units.get(19).getChargerId());
+	}
+
+	@Test
+	void clearForgetsMembersAndAllowsReinsertion() {
+		ChargingHub hub = new ChargingHub("clr_hub", Id.createLinkId("clr_link"), 52.5, 13.4);
+		Id<Charger> a = Id.create("clr_a", Charger.class);
+		Id<Charger> b = Id.create("clr_b", Charger.class);
+		hub.addCharger(a);
+		hub.addCharger(b);
+
+		OccupiedChargers set = new OccupiedChargers();
+		set.add(hub, hub.getChargerUnit(a));
+		set.add(hub, hub.getChargerUnit(b));
+		set.clear();
+		assertThat(set.size()).isZero();
+
+		set.add(hub, hub.getChargerUnit(b));
+		List<Id<Charger>> visited = new ArrayList<>();
+		set.forEach((h, u) -> visited.add(u.getChargerId()));
+		assertThat(visited).containsExactly(b);
+	}
+}
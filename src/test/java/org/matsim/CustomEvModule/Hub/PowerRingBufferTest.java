@@ -0,0 +1,107 @@
+package org.matsim.CustomEvModule.Hub;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class PowerRingBufferTest {
+
+	@Test
+	void stepEnergyIsSpreadOverIntervals() {
+		PowerRingBuffer buffer = new PowerRingBuffer(60.0, 10);
+
+		// 1 kWh in 120 s: 0.5 kWh per minuto = 30 kW
+		buffer.add(0.0, 120.0, 1.0);
+
+		PowerRingBuffer.LoadCurve curve = buffer.curve(null, null);
+		assertThat(curve.startTime()).isZero();
+		assertThat(curve.powerKw()).hasSize(2);
+		assertThat(curve.powerKw()[0]).isCloseTo(30.0, within(1e-3));
+		assertThat(curve.powerKw()[1]).isCloseTo(30.0, within(1e-3));
+	}
+
+	@Test
+	void windowSlidesAndClearsOldIntervals() {
+		PowerRingBuffer buffer = new PowerRingBuffer(60.0, 3);
+
+		buffer.add(0.0, 60.0, 1.0);
+		buffer.add(60.0, 120.0, 2.0);
+		// Salto di due intervalli senza erogazione
+		buffer.add(240.0, 300.0, 3.0);
+
+		PowerRingBuffer.LoadCurve curve = buffer.curve(null, null);
+		assertThat(curve.startTime()).isEqualTo(120.0);
+		assertThat(curve.powerKw()).containsExactly(new double[] { 0.0, 0.0, 180.0 }, within(1e-3));
+	}
+
+	@Test
+	void statsReportPeakMeanAndPercentiles() {
+		PowerRingBuffer buffer = new PowerRingBuffer(60.0, 100);
+		for (int i = 0; i < 10; i++) {
+			// 10, 20, ..., 100 kW
+			buffer.add(i * 60.0, (i + 1) * 60.0, (i + 1) * 10.0 / 60.0);
+		}
+
+		PowerRingBuffer.LoadStats stats = buffer.stats(null, null, 50.0, 90.0, 100.0);
+		assertThat(stats.peakKw()).isCloseTo(100.0, within(1e-3));
+		assertThat(stats.peakTime()).isEqualTo(540.0);
+		assertThat(stats.meanKw()).isCloseTo(55.0, within(1e-3));
+		assertThat(stats.percentileKw()).containsExactly(new double[] { 50.0, 90.0, 100.0 }, within(1e-3));
+
+		// Finestra ristretta ai primi tre minuti
+		PowerRingBuffer.LoadStats head = buffer.stats(0.0, 180.0);
+		assertThat(head.peakKw()).isCloseTo(30.0, within(1e-3));
+		assertThat(head.energyKWh()).isCloseTo(1.0, within(1e-3));
+	}
+
+	@Test
+	void clockFillsIdleIntervalsLazilyOnRead() {
+		double[] now = { Double.NaN };
+		PowerRingBuffer buffer = new PowerRingBuffer(60.0, 10, () -> now[0]);
+
+		// Prima del primo step: nessun intervallo
+		assertThat(buffer.curve(null, null).powerKw()).isEmpty();
+
+		buffer.add(0.0, 60.0, 1.0);
+		// Tre minuti senza scritture: la lettura estende la finestra a potenza zero
+		now[0] = 240.0;
+		PowerRingBuffer.LoadCurve curve = buffer.curve(null, null);
+		assertThat(curve.powerKw()).containsExactly(new double[] { 60.0, 0.0, 0.0, 0.0, 0.0 }, within(1e-3));
+
+		// Una scrittura successiva nella finestra non viene persa
+		buffer.add(240.0, 300.0, 0.5);
+		assertThat(buffer.curve(240.0, 300.0).powerKw()).containsExactly(new double[] { 30.0 }, within(1e-3));
+	}
+
+	@Test
+	void resetStartsSecondIterationFromEmptyWindow() {
+		double[] now = { Double.NaN };
+		PowerRingBuffer buffer = new PowerRingBuffer(60.0, 10, () -> now[0]);
+
+		// Prima iterazione: erogazione a fine giornata
+		now[0] = 86_400.0;
+		buffer.add(86_340.0, 86_400.0, 1.0);
+		assertThat(buffer.curve(null, null).startTime()).isGreaterThan(80_000.0);
+
+		// Seconda iterazione: il tempo riparte da zero
+		buffer.reset();
+		now[0] = Double.NaN;
+		assertThat(buffer.curve(null, null).powerKw()).isEmpty();
+
+		now[0] = 120.0;
+		buffer.add(60.0, 120.0, 0.5);
+		PowerRingBuffer.LoadCurve curve = buffer.curve(null, null);
+		assertThat(curve.startTime()).isZero();
+		assertThat(curve.powerKw()).containsExactly(new double[] { 0.0, 30.0, 0.0 }, within(1e-3));
+		assertThat(buffer.stats(null, null).energyKWh()).isCloseTo(0.5, within(1e-3));
+	}
+
+	@Test
+	void emptyBufferAnswersWithEmptyCurve() {
+		PowerRingBuffer buffer = new PowerRingBuffer(60.0, 10);
+
+		assertThat(buffer.curve(null, null).powerKw()).isEmpty();
+		assertThat(buffer.stats(null, null, 95.0).peakKw()).isZero();
+	}
+}
@@ -0,0 +1,174 @@
+package org.matsim.CustomEvModule.Hub;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Test;
+import org.matsim.CustomEvModule.EVfleet.Charging.AnalyticChargingEngine;
+import org.matsim.CustomEvModule.EVfleet.SocTargetTable;
+import org.matsim.CustomEvModule.EVfleet.strategy.fleet.SocDistribution;
+import org.matsim.CustomEvModule.Hub.selection.QueueAtHubSelectionPolicy;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.ActivityEndEvent;
+import org.matsim.api.core.v01.events.ActivityStartEvent;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.PersonLeavesVehicleEvent;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.contrib.ev.charging.ChargingEndEvent;
+import org.matsim.contrib.ev.charging.ChargingStartEvent;
+import org.matsim.contrib.ev.fleet.ElectricFleet;
+import org.matsim.contrib.ev.fleet.ElectricFleetUtils;
+import org.matsim.contrib.ev.fleet.ElectricVehicle;
+import org.matsim.contrib.ev.fleet.ElectricVehicleSpecificationDefaultImpl;
+import org.matsim.contrib.ev.infrastructure.Charger;
+import org.matsim.contrib.ev.infrastructure.ChargingInfrastructure;
+import org.matsim.contrib.ev.infrastructure.ChargingInfrastructureSpecificationDefaultImpl;
+import org.matsim.contrib.ev.infrastructure.ChargingInfrastructureUtils;
+import org.matsim.contrib.ev.infrastructure.ImmutableChargerSpecification;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.handler.BasicEventHandler;
+import org.matsim.core.mobsim.framework.events.MobsimAfterSimStepEvent;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+import org.matsim.utils.objectattributes.attributable.AttributesImpl;
+import org.matsim.vehicles.Vehicle;
+import org.matsim.vehicles.VehicleType;
+import org.matsim.vehicles.VehicleUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class TargetSocChargingHandlerTest {
+
+	private static final String CHARGING = "car charging";
+	private static final Id<Link> HUB_LINK = Id.createLinkId("tsoc_link");
+	private static final Id<Charger> CHARGER = Id.create("tsoc_charger", Charger.class);
+
+	/**
+	 * Veicolo CCS da 10 kWh che carica a 10 kW costanti.
+	 */
+	private static ElectricVehicle vehicle(Id<Vehicle> id, double soc) {
+		VehicleType type = VehicleUtils.createVehicleType(Id.create("tsoc_type", VehicleType.class));
+		VehicleUtils.setHbefaTechnology(type.getEngineInformation(), ElectricFleetUtils.EV_ENGINE_HBEFA_TECHNOLOGY);
+		VehicleUtils.setEnergyCapacity(type.getEngineInformation(), 10.0);
+		type.getEngineInformation().getAttributes().putAttribute(ElectricFleetUtils.CHARGER_TYPES, List.of("CCS"));
+		Vehicle vehicle = VehicleUtils.createVehicle(id, type);
+		vehicle.getAttributes().putAttribute(ElectricFleetUtils.INITIAL_SOC, soc);
+		return ElectricFleetUtils.create(new ElectricVehicleSpecificationDefaultImpl(vehicle),
+			ev -> (link, travelTime, linkEnterTime) -> 0.0,
+			ev -> (beginTime, duration, linkId) -> 0.0,
+			ev -> charger -> Math.min(10_000.0, charger.getPlugPower()));
+	}
+
+	private static ActivityStartEvent arrive(double time, Id<Person> person) {
+		return new ActivityStartEvent(time, person, HUB_LINK, null, CHARGING, null);
+	}
+
+	private static ActivityEndEvent leave(double time, Id<Person> person) {
+		return new ActivityEndEvent(time, person, HUB_LINK, null, CHARGING, null);
+	}
+
+	@Test
+	void queuedVehicleGetsFreedChargerAndReleasesAreIdempotent() {
+		// Un hub con una sola colonnina CCS sul link dell'attività di ricarica
+		Network network = NetworkUtils.createNetwork();
+		Node a = NetworkUtils.createAndAddNode(network, Id.createNodeId("tsoc_a"), new Coord(0, 0));
+		Node b = NetworkUtils.createAndAddNode(network, Id.createNodeId("tsoc_b"), new Coord(100, 0));
+		NetworkUtils.createAndAddLink(network, HUB_LINK, a, b, 100, 13.9, 1800, 1);
+
+		ChargingInfrastructureSpecificationDefaultImpl infraSpec = new ChargingInfrastructureSpecificationDefaultImpl();
+		Attributes attributes = new AttributesImpl();
+		attributes.putAttribute("hubId", "tsoc_hub");
+		infraSpec.addChargerSpecification(ImmutableChargerSpecification.newBuilder()
+			.id(CHARGER)
+			.linkId(HUB_LINK)
+			.chargerType("CCS")
+			.plugPower(50_000.0)
+			.plugCount(1)
+			.attributes(attributes)
+			.build());
+		ChargingHub hub = new ChargingHub("tsoc_hub", HUB_LINK, 52.5, 13.4);
+		hub.addCharger(CHARGER, Set.of("CCS"));
+		HubManager hubManager = new HubManager(network, infraSpec);
+		hubManager.registerChargingHubs(List.of(hub));
+		ChargingInfrastructure infrastructure =
+			ChargingInfrastructureUtils.createChargingInfrastructure(infraSpec, network.getLinks()::get, spec -> null);
+
+		Id<Person> first = Id.createPersonId("tsoc_p1");
+		Id<Person> second = Id.createPersonId("tsoc_p2");
+		Id<Vehicle> firstCar = Id.createVehicleId("tsoc_p1_car");
+		Id<Vehicle> secondCar = Id.createVehicleId("tsoc_p2_car");
+		ElectricVehicle firstEv = vehicle(firstCar, 0.2);
+		ElectricVehicle secondEv = vehicle(secondCar, 0.2);
+		ElectricFleet fleet = () -> ImmutableMap.of(firstCar, firstEv, secondCar, secondEv);
+
+		// Nessuna persona in tabella: target di default 0.8
+		SocTargetTable socTargets = SocTargetTable.build(
+			ScenarioUtils.createScenario(ConfigUtils.createConfig()).getPopulation(), List.of(),
+			SocDistribution.truncatedNormal(0.8, 0.0), 1L, 0.8);
+
+		AnalyticChargingEngine engine = new AnalyticChargingEngine();
+		TargetSocChargingHandler handler = new TargetSocChargingHandler(
+			infrastructure, fleet, null, hubManager, new QueueAtHubSelectionPolicy(), network, socTargets, engine);
+
+		List<Event> emitted = new ArrayList<>();
+		EventsManager events = EventsUtils.createEventsManager();
+		events.addHandler((BasicEventHandler) emitted::add);
+		events.addHandler(handler);
+		events.initProcessing();
+		engine.reset(events);
+
+		events.processEvent(new PersonLeavesVehicleEvent(0.0, first, firstCar));
+		events.processEvent(new PersonLeavesVehicleEvent(0.0, second, secondCar));
+
+		// Il primo occupa la colonnina, il secondo resta in coda
+		events.processEvent(arrive(0.0, first));
+		events.processEvent(arrive(10.0, second));
+		assertThat(engine.getPluggedCount()).isEqualTo(1);
+		assertThat(starts(emitted)).containsExactly(firstCar);
+
+		// Dal 20% all'80% di 10 kWh a 10 kW: fine a 2160 s, la colonnina passa al secondo
+		engine.notifyMobsimAfterSimStep(new MobsimAfterSimStepEvent<>(null, 2160.0));
+		assertThat(ends(emitted)).containsExactly(firstCar);
+		assertThat(starts(emitted)).containsExactly(firstCar, secondCar);
+		assertThat(engine.getPluggedCount()).isEqualTo(1);
+		assertThat(firstEv.getBattery().getSoc()).isCloseTo(0.8, within(1e-9));
+
+		// Fine attività dopo la fine della ricarica: nessun secondo rilascio della colonnina
+		events.processEvent(leave(2500.0, first));
+		assertThat(engine.getPluggedCount()).isEqualTo(1);
+		assertThat(ends(emitted)).containsExactly(firstCar);
+
+		// Il secondo se ne va prima della fine: scollegato, il ChargingEndEvent non rilascia di nuovo
+		events.processEvent(leave(2700.0, second));
+		assertThat(engine.getPluggedCount()).isZero();
+		assertThat(ends(emitted)).containsExactly(firstCar, secondCar);
+		assertThat(secondEv.getBattery().getSoc()).isStrictlyBetween(0.2, 0.8);
+
+		// Colonnina libera una sola volta: un nuovo arrivo la ottiene subito
+		events.processEvent(arrive(3000.0, first));
+		assertThat(engine.getPluggedCount()).isEqualTo(1);
+		assertThat(starts(emitted)).containsExactly(firstCar, secondCar, firstCar);
+
+		events.finishProcessing();
+	}
+
+	private static List<Id<Vehicle>> starts(List<Event> emitted) {
+		return emitted.stream().filter(e -> e instanceof ChargingStartEvent)
+			.map(e -> ((ChargingStartEvent) e).getVehicleId()).toList();
+	}
+
+	private static List<Id<Vehicle>> ends(List<Event> emitted) {
+		return emitted.stream().filter(e -> e instanceof ChargingEndEvent)
+			.map(e -> ((ChargingEndEvent) e).getVehicleId()).toList();
+	}
+}
@@ -0,0 +1,129 @@
+package org.matsim.CustomEvModule.Hub.selection;
+
+import org.junit.jupiter.api.Test;
+import org.matsim.CustomEvModule.Hub.ChargerSlotIndex;
+import org.matsim.CustomEvModule.Hub.ChargingHub;
+import org.matsim.CustomEvModule.Hub.HubSpatialIndex;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.contrib.ev.infrastructure.Charger;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.vehicles.Vehicle;
+
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChargerSelectionStateTest {
+
+	private static final Id<Link> NEAR = Id.createLinkId("selection_near");
+	private static final Id<Link> FAR = Id.createLinkId("selection_far");
+
+	private static ChargerSelectionState state() {
+		Network network = NetworkUtils.createNetwork();
+		Node o = NetworkUtils.createAndAddNode(network, Id.createNodeId("selection_o"), new Coord(-10, 0));
+		Node a = NetworkUtils.createAndAddNode(network, Id.createNodeId("selection_a"), new Coord(0, 0));
+		Node b = NetworkUtils.createAndAddNode(network, Id.createNodeId("selection_b"), new Coord(400, 0));
+		NetworkUtils.createAndAddLink(network, NEAR, o, a, 10, 13.9, 1800, 1);
+		NetworkUtils.createAndAddLink(network, FAR, o, b, 410, 13.9, 1800, 1);
+
+		// Hub vicino: 2 colonnine CCS; hub lontano: 1 CCS + 1 AC
+		ChargingHub near = new ChargingHub("selection_hub_near", NEAR, 0, 0);
+		near.addCharger(Id.create("sel_n1", Charger.class), Set.of("CCS"));
+		near.addCharger(Id.create("sel_n2", Charger.class), Set.of("CCS"));
+		ChargingHub far = new ChargingHub("selection_hub_far", FAR, 0, 0);
+		far.addCharger(Id.create("sel_f1", Charger.class), Set.of("CCS"));
+		far.addCharger(Id.create("sel_f2", Charger.class), Set.of("AC"));
+
+		ChargerSlotIndex slots = ChargerSlotIndex.build(List.of(near, far), null);
+		return new ChargerSelectionState(new HubSpatialIndex(slots, network), network);
+	}
+
+	@Test
+	void assignedSlotsAreNeverSelectedTwice() {
+		ChargerSelectionState state = state();
+		long ccs = state.slots().maskOf(List.of("CCS"));
+		ChargerSelectionPolicy policy = new HighestPowerSelectionPolicy(1000);
+
+		int first = policy.select(state, NEAR, ccs, new Random(1));
+		state.assign(Id.createVehicleId("sel_v1"), first);
+		int second = policy.select(state, NEAR, ccs, new Random(1));
+		state.assign(Id.createVehicleId("sel_v2"), second);
+		assertThat(second).isNotEqualTo(first);
+
+		// Hub del link pieno: colonnina CCS dell'hub vicino entro il raggio
+		int third = policy.select(state, NEAR, ccs, new Random(1));
+		assertThat(state.slots().hubId(third)).isEqualTo("selection_hub_far");
+
+		assertThat(state.release(Id.createVehicleId("sel_v1"))).isEqualTo(first);
+		assertThat(policy.select(state, NEAR, ccs, new Random(1))).isEqualTo(first);
+	}
+
+	@Test
+	void leastLoadedPrefersEmptierHub() {
+		ChargerSelectionState state = state();
+		long ccs = state.slots().maskOf(List.of("CCS"));
+		ChargerSelectionPolicy policy = new LeastLoadedHubSelectionPolicy(1000);
+
+		int near = policy.select(state, NEAR, ccs, new Random(1));
+		assertThat(state.slots().hubId(near)).isEqualTo("selection_hub_near");
+		state.assign(Id.createVehicleId("sel_v1"), near);
+
+		// 1/2 contro 0/2: vince l'hub lontano
+		assertThat(state.slots().hubId(policy.select(state, NEAR, ccs, new Random(1)))).isEqualTo("selection_hub_far");
+	}
+
+	@Test
+	void areaOrderFollowsAssignmentsAndInactiveChargers() {
+		ChargerSelectionState state = state();
+		long ccs = state.slots().maskOf(List.of("CCS"));
+		ChargerSelectionPolicy leastLoaded = new LeastLoadedHubSelectionPolicy(1000);
+		ChargerSelectionPolicy nearest = new NearestHubSelectionPolicy(1000, 10);
+		ChargingHub near = state.slots().hub(0).getId().equals("selection_hub_near")
+			? state.slots().hub(0) : state.slots().hub(1);
+
+		// Hub vicino spento: entrambe le politiche ripiegano sull'hub lontano
+		near.setAllChargersActive(false);
+		assertThat(state.slots().hubId(leastLoaded.select(state, NEAR, ccs, new Random(1)))).isEqualTo("selection_hub_far");
+		assertThat(state.slots().hubId(nearest.select(state, NEAR, ccs, new Random(1)))).isEqualTo("selection_hub_far");
+
+		// Riacceso: le colonnine parcheggiate tornano disponibili
+		near.setAllChargersActive(true);
+		int slot = nearest.select(state, NEAR, ccs, new Random(1));
+		assertThat(state.slots().hubId(slot)).isEqualTo("selection_hub_near");
+
+		// Assegnazione e rilascio riordinano l'area per carico
+		state.assign(Id.createVehicleId("sel_v1"), slot);
+		assertThat(state.slots().hubId(leastLoaded.select(state, NEAR, ccs, new Random(1)))).isEqualTo("selection_hub_far");
+		state.release(Id.createVehicleId("sel_v1"));
+		assertThat(leastLoaded.select(state, NEAR, ccs, new Random(1))).isEqualTo(slot);
+	}
+
+	@Test
+	void queueServesFirstCompatibleVehicle() {
+		ChargerSelectionState state = state();
+		long ccs = state.slots().maskOf(List.of("CCS"));
+		long ac = state.slots().maskOf(List.of("AC"));
+		QueueAtHubSelectionPolicy policy = new QueueAtHubSelectionPolicy();
+
+		Id<Vehicle> charging = Id.createVehicleId("sel_charging");
+		int slot = policy.select(state, FAR, ccs, new Random(1));
+		state.assign(charging, slot);
+		assertThat(policy.select(state, FAR, ccs, new Random(1))).isEqualTo(ChargerSelectionPolicy.NO_SLOT);
+
+		int hub = policy.queueHub(state, FAR, ccs);
+		state.enqueue(hub, new ChargerSelectionState.Waiting(Id.createVehicleId("sel_ac"), null, ac, 0.8));
+		state.enqueue(hub, new ChargerSelectionState.Waiting(Id.createVehicleId("sel_gone"), null, ccs, 0.8));
+		state.enqueue(hub, new ChargerSelectionState.Waiting(Id.createVehicleId("sel_ccs"), null, ccs, 0.8));
+		assertThat(state.cancelWaiting(Id.createVehicleId("sel_gone"))).isTrue();
+
+		int freed = state.release(charging);
+		assertThat(state.pollWaiting(freed).vehicleId()).isEqualTo(Id.createVehicleId("sel_ccs"));
+		assertThat(state.waitingCount(hub)).isEqualTo(1);
+	}
+}
@@ -0,0 +1,65 @@
+package org.matsim.CustomEvModule.Utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ElevationRasterTest {
+
+	/**
+	 * Raster 20x20 su lon 13.3..13.5, lat 52.4..52.6 (passo 0.01°) con quota
+	 * lineare nella longitudine: z = (lon - 13) * 1000.
+	 */
+	private static ElevationRaster wgs84Raster() {
+		int n = 20;
+		float[] z = new float[n * n];
+		for (int row = 0; row < n; row++) {
+			for (int col = 0; col < n; col++) {
+				double lon = 13.3 + (col + 0.5) * 0.01;
+				z[row * n + col] = (float) ((lon - 13.0) * 1000.0);
+			}
+		}
+		return new ElevationRaster(n, n, z, 13.3, 52.6, 0.01, 0.01, -9999.0, "EPSG:4326");
+	}
+
+	@Test
+	void interpolatesBilinearlyAndSkipsNoData() {
+		// 3x2 pixel da 10 m, origine in alto a sinistra (0, 20)
+		float[] z = {0f, 10f, -9999f, 20f, 30f, 40f};
+		ElevationRaster raster = new ElevationRaster(3, 2, z, 0.0, 20.0, 10.0, 10.0, -9999.0, "EPSG:25832")
+			.withNetworkCrs("EPSG:25832");
+
+		// Centri dei pixel
+		assertThat(raster.elevationAt(5.0, 15.0)).isCloseTo(0.0, within(1e-9));
+		assertThat(raster.elevationAt(15.0, 5.0)).isCloseTo(30.0, within(1e-9));
+		// Centro dei primi quattro pixel: media
+		assertThat(raster.elevationAt(10.0, 10.0)).isCloseTo(15.0, within(1e-9));
+		// Cella con nodata e punto fuori dal raster
+		assertThat(raster.elevationAt(20.0, 10.0)).isNaN();
+		assertThat(raster.elevationAt(-5.0, 10.0)).isNaN();
+	}
+
+	@Test
+	void reprojectsNetworkCoordinatesIntoRasterCrs() {
+		ElevationRaster raster = wgs84Raster().withNetworkCrs("EPSG:25832");
+
+		// 52.52 N, 13.405 E in EPSG:25832
+		assertThat(raster.elevationAt(798812.8, 5827999.9)).isCloseTo(405.0, within(0.5));
+		// Senza riproiezione le coordinate metriche cadono fuori dal raster
+		assertThat(wgs84Raster().elevationAt(798812.8, 5827999.9)).isNaN();
+	}
+
+	@Test
+	void readsEpsgCodeFromGeoKeyDirectory() {
+		// Header (versione 1.1.0, 3 chiavi), poi KeyID, location, count, valore
+		int[] projected = {1, 1, 0, 3, 1024, 0, 1, 1, 2048, 0, 1, 4258, 3072, 0, 1, 25832};
+		int[] geographic = {1, 1, 0, 2, 1024, 0, 1, 2, 2048, 0, 1, 4326};
+		int[] userDefined = {1, 1, 0, 1, 3072, 0, 1, 32767};
+
+		assertThat(ElevationRaster.crsFromGeoKeys(projected)).isEqualTo("EPSG:25832");
+		assertThat(ElevationRaster.crsFromGeoKeys(geographic)).isEqualTo("EPSG:4326");
+		assertThat(ElevationRaster.crsFromGeoKeys(userDefined)).isNull();
+		assertThat(ElevationRaster.crsFromGeoKeys(null)).isNull();
+	}
+}
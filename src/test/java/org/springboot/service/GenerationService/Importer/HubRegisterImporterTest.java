@@ -0,0 +1,81 @@
+package org.springboot.service.generationService.Importer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.matsim.CustomEvModule.Hub.LinkSnapIndex;
+import org.matsim.CustomEvModule.Utils.CoordinateConverter;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+import org.springboot.service.generationService.DTO.HubSpecDto;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class HubRegisterImporterTest {
+
+	@TempDir
+	Path tmp;
+
+	@Test
+	void snapsStationsAndReportsRejectedRows() throws Exception {
+		// Berlino Mitte (52.52 N, 13.405 E) in EPSG:25832, calcolato fuori dal convertitore
+		double x = 798_812.8;
+		double y = 5_827_999.9;
+
+		// Link auto est-ovest sul punto, link solo bici 30 m più a nord
+		Network network = NetworkUtils.createNetwork();
+		Node a = NetworkUtils.createAndAddNode(network, Id.createNodeId("imp_a"), new Coord(x - 500, y));
+		Node b = NetworkUtils.createAndAddNode(network, Id.createNodeId("imp_b"), new Coord(x + 500, y));
+		Node c = NetworkUtils.createAndAddNode(network, Id.createNodeId("imp_c"), new Coord(x - 500, y + 30));
+		Node d = NetworkUtils.createAndAddNode(network, Id.createNodeId("imp_d"), new Coord(x + 500, y + 30));
+		NetworkUtils.createAndAddLink(network, Id.createLinkId("imp_car"), a, b, 1000, 13.9, 1800, 1);
+		Link bike = NetworkUtils.createAndAddLink(network, Id.createLinkId("imp_bike"), c, d, 1000, 5, 1800, 1);
+		bike.setAllowedModes(Set.of(TransportMode.bike));
+
+		Path csv = tmp.resolve("register.csv");
+		Files.writeString(csv, String.join("\n",
+			"Registro colonnine - note introduttive",
+			"",
+			"Betreiber;Breitengrad;Längengrad;Nennleistung Ladeeinrichtung [kW];Anzahl Ladepunkte",
+			"\"Op; A\";52,52;13,405;22;2",
+			"Op B;52,5201;13,4051;150;1",
+			"Op C;abc;13,405;22;1",
+			"Op D;52,60;13,405;22;1",
+			""
+		));
+
+		HubRegisterImporter.ImportReport report = new HubRegisterImporter(new LinkSnapIndex(network))
+			.importCsv(csv, 100.0);
+
+		double[] center = { 52.52, 13.405 };
+		CoordinateConverter.toNetworkInPlace(center, 1);
+		assertThat(center[0]).isCloseTo(x, within(1.0));
+		assertThat(center[1]).isCloseTo(y, within(1.0));
+
+		assertThat(report.rowsRead()).isEqualTo(5);
+		assertThat(report.stationsImported()).isEqualTo(2);
+
+		// Stazioni sullo stesso link auto aggregate in un hub, tipo dedotto dalla potenza
+		List<HubSpecDto> hubs = report.hubs();
+		assertThat(hubs).hasSize(1);
+		assertThat(hubs.get(0).getHubId()).isEqualTo(HubRegisterImporter.HUB_PREFIX + "imp_car");
+		assertThat(hubs.get(0).getChargers())
+			.extracting(ch -> ch.getChargerType() + "/" + ch.getPlugCount())
+			.containsExactly("AC/2", "CCS/1");
+
+		// Riga non numerica e stazione a ~9 km dalla rete, con il numero di riga nel file
+		assertThat(report.rejected())
+			.extracting(HubRegisterImporter.RejectedRow::line)
+			.containsExactly(6, 7);
+	}
+}